@@ -0,0 +1,264 @@
+package app.vaultkey.wallet;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Load and soak tests for the dApp Web3 bridge. A scripted page drives
+// provider calls through WalletBridge.postMessage; reads are proxied to a
+// local StubRpcServer, and signature requests are answered by a stand-in
+// signer on the same broadcasts DAppBrowserPlugin uses. Reports go to
+// logcat (tag BridgeLoad), instrumentation status and
+// files/bridge-load/*.json.
+//
+//   ./gradlew :app:connectedDebugAndroidTest \
+//     -Pandroid.testInstrumentationRunnerArguments.class=app.vaultkey.wallet.BridgeLoadTest \
+//     -Pandroid.testInstrumentationRunnerArguments.loadCalls=5000
+//
+// Arguments: loadCalls, loadConcurrency, signEvery, signDelayMs,
+// rpcLatencyMs, rpcJitterMs, rpcErrorRate, rpc429Rate, p99BudgetMs,
+// memoryBudgetMb and soakMinutes (the soak test only runs when set).
+@RunWith(AndroidJUnit4.class)
+public class BridgeLoadTest {
+    private static final String TAG = "BridgeLoad";
+    private static final String ADDRESS = "0x1111111111111111111111111111111111111111";
+
+    private Bundle args;
+    private Context context;
+    private StubRpcServer server;
+    private final BlockingQueue<JSONObject> reports = new LinkedBlockingQueue<>();
+    private final ScheduledExecutorService signer = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicLong signRequests = new AtomicLong();
+    private final AtomicLong cancels = new AtomicLong();
+    private BroadcastReceiver requestReceiver;
+    private BroadcastReceiver cancelReceiver;
+
+    @Before
+    public void setUp() throws Exception {
+        args = InstrumentationRegistry.getArguments();
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+
+        server = new StubRpcServer();
+        server.setPage(readAsset("bridge-load.html"));
+        server.latencyMs = longArg("rpcLatencyMs", 20);
+        server.jitterMs = longArg("rpcJitterMs", 30);
+        server.errorRate = doubleArg("rpcErrorRate", 0);
+        server.rateLimitRate = doubleArg("rpc429Rate", 0);
+        server.setReportListener(reports::offer);
+        RpcEndpoints.setOverride(server.baseUrl());
+
+        // Stands in for the wallet UI: approve every signature request after
+        // a fixed delay, as DAppBrowserPlugin.sendResponse would.
+        long signDelayMs = longArg("signDelayMs", 50);
+        LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(context);
+        requestReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context c, Intent intent) {
+                int id = intent.getIntExtra("id", 0);
+                signRequests.incrementAndGet();
+                signer.schedule(() -> {
+                    Intent response = new Intent(DAppBrowserActivity.ACTION_WEB3_RESPONSE);
+                    response.putExtra("id", id);
+                    response.putExtra("result", "\"0x" + repeat("ab", 65) + "\"");
+                    response.putExtra("error", "");
+                    lbm.sendBroadcast(response);
+                }, signDelayMs, TimeUnit.MILLISECONDS);
+            }
+        };
+        cancelReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context c, Intent intent) {
+                int[] ids = intent.getIntArrayExtra("ids");
+                cancels.addAndGet(ids != null ? ids.length : 0);
+            }
+        };
+        lbm.registerReceiver(requestReceiver, new IntentFilter(DAppBrowserActivity.ACTION_WEB3_REQUEST));
+        lbm.registerReceiver(cancelReceiver, new IntentFilter(DAppBrowserActivity.ACTION_WEB3_CANCEL));
+    }
+
+    @After
+    public void tearDown() {
+        LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(context);
+        lbm.unregisterReceiver(requestReceiver);
+        lbm.unregisterReceiver(cancelReceiver);
+        signer.shutdownNow();
+        server.close();
+        RpcEndpoints.setOverride(null);
+    }
+
+    @Test
+    public void load() throws Exception {
+        long[] before = memory();
+        JSONObject report;
+        try (ActivityScenario<DAppBrowserActivity> ignored = launch(0)) {
+            report = reports.poll(10, TimeUnit.MINUTES);
+            assertNotNull("Load page did not report", report);
+        }
+        long[] after = memory();
+        JSONObject result = summarize("load", report, before, after);
+
+        assertNoDroppedCallbacks(report);
+        assertTrue("p99 " + report.getLong("p99Ms") + "ms over budget",
+            report.getLong("p99Ms") <= longArg("p99BudgetMs", 2000));
+        assertTrue("Heap grew " + result.getLong("heapGrowthKb") + " KB",
+            result.getLong("heapGrowthKb") <= longArg("memoryBudgetMb", 64) * 1024);
+    }
+
+    // Repeats load rounds in one page for soakMinutes and checks that
+    // memory stops growing once the first round has warmed everything up.
+    @Test
+    public void soak() throws Exception {
+        long minutes = longArg("soakMinutes", 0);
+        assumeTrue("soakMinutes not set", minutes > 0);
+
+        List<long[]> samples = new ArrayList<>();
+        samples.add(memory());
+        JSONObject last = null;
+        try (ActivityScenario<DAppBrowserActivity> ignored = launch(minutes * 60000)) {
+            while (true) {
+                JSONObject report = reports.poll(10, TimeUnit.MINUTES);
+                assertNotNull("Soak page stopped reporting", report);
+                assertNoDroppedCallbacks(report);
+                samples.add(memory());
+                Log.i(TAG, "Round " + report.getInt("round") + ": " + report);
+                last = report;
+                if (report.optBoolean("done")) break;
+            }
+        }
+        long[] warm = samples.get(Math.min(1, samples.size() - 1));
+        JSONObject result = summarize("soak", last, warm, samples.get(samples.size() - 1));
+        assertTrue("Heap grew " + result.getLong("heapGrowthKb") + " KB after warm-up",
+            result.getLong("heapGrowthKb") <= longArg("memoryBudgetMb", 64) * 1024);
+    }
+
+    private ActivityScenario<DAppBrowserActivity> launch(long durationMs) {
+        String url = server.baseUrl() + "/load.html?calls=" + longArg("loadCalls", 2000)
+            + "&concurrency=" + longArg("loadConcurrency", 200)
+            + "&signEvery=" + longArg("signEvery", 20)
+            + (durationMs > 0 ? "&durationMs=" + durationMs : "");
+        Intent intent = new Intent(context, DAppBrowserActivity.class);
+        intent.putExtra(DAppBrowserActivity.EXTRA_URL, url);
+        intent.putExtra(DAppBrowserActivity.EXTRA_ADDRESS, ADDRESS);
+        intent.putExtra(DAppBrowserActivity.EXTRA_CHAIN_ID, 1);
+        intent.putExtra(DAppBrowserActivity.EXTRA_RESTORE_SESSION, false);
+        return ActivityScenario.launch(intent);
+    }
+
+    private void assertNoDroppedCallbacks(JSONObject report) throws Exception {
+        assertEquals("Timed-out callbacks", 0, report.getInt("timedOut"));
+        assertEquals("Callbacks settled after timeout", 0, report.getInt("late"));
+        assertEquals("Callbacks left pending", 0, report.getInt("pendingCallbacks"));
+        assertEquals("Settled callbacks", report.getInt("total"), report.getInt("ok") + report.getInt("failed"));
+        if (server.errorRate == 0 && server.rateLimitRate == 0) {
+            assertEquals("Failures without fault injection: " + report.optJSONObject("errors"), 0, report.getInt("failed"));
+        }
+    }
+
+    // Java heap used, native heap allocated and total PSS, in KB, after a GC.
+    private static long[] memory() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        runtime.runFinalization();
+        runtime.gc();
+        Debug.MemoryInfo info = new Debug.MemoryInfo();
+        Debug.getMemoryInfo(info);
+        return new long[]{
+            (runtime.totalMemory() - runtime.freeMemory()) / 1024,
+            Debug.getNativeHeapAllocatedSize() / 1024,
+            info.getTotalPss()
+        };
+    }
+
+    private JSONObject summarize(String name, JSONObject page, long[] before, long[] after) throws Exception {
+        JSONObject result = new JSONObject();
+        result.put("page", page);
+        result.put("server", server.getStats());
+        result.put("signRequests", signRequests.get());
+        result.put("signerCancels", cancels.get());
+        result.put("javaHeapKb", after[0]);
+        result.put("nativeHeapKb", after[1]);
+        result.put("pssKb", after[2]);
+        result.put("heapGrowthKb", (after[0] - before[0]) + (after[1] - before[1]));
+        result.put("pssGrowthKb", after[2] - before[2]);
+        result.put("web3", Web3Tracer.getMetrics());
+        result.put("rpc", RpcScheduler.getAllStats());
+
+        Log.i(TAG, name + ": " + result);
+        Bundle status = new Bundle();
+        status.putString(TAG, name + ": throughput=" + page.optLong("throughput") + "/s p50=" + page.optLong("p50Ms")
+            + "ms p95=" + page.optLong("p95Ms") + "ms p99=" + page.optLong("p99Ms") + "ms failed=" + page.optLong("failed")
+            + " heapGrowth=" + result.getLong("heapGrowthKb") + "KB");
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+
+        File dir = new File(context.getFilesDir(), "bridge-load");
+        if (dir.isDirectory() || dir.mkdirs()) {
+            try (FileOutputStream out = new FileOutputStream(new File(dir, name + ".json"))) {
+                out.write(result.toString(2).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    private String readAsset(String name) throws IOException {
+        try (InputStream in = InstrumentationRegistry.getInstrumentation().getContext().getAssets().open(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private long longArg(String name, long fallback) {
+        String value = args.getString(name);
+        return value != null ? Long.parseLong(value) : fallback;
+    }
+
+    private double doubleArg(String name, double fallback) {
+        String value = args.getString(name);
+        return value != null ? Double.parseDouble(value) : fallback;
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder(s.length() * times);
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
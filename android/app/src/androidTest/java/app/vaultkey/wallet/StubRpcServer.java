@@ -0,0 +1,317 @@
+package app.vaultkey.wallet;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Minimal HTTP/1.1 JSON-RPC node on 127.0.0.1 for the bridge load tests.
+// Answers the reads the provider proxies with canned values, with
+// configurable latency, JSON-RPC error rate and 429 rate. It also serves
+// the scripted load page and receives the page's final report.
+class StubRpcServer {
+    interface ReportListener {
+        void onReport(JSONObject report);
+    }
+
+    private final ServerSocket socket;
+    private final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "StubRpc");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Random random = new Random(42);
+    private final long startedAt = System.currentTimeMillis();
+    private volatile String page = "";
+    private volatile ReportListener reportListener;
+    private volatile boolean running = true;
+
+    volatile long latencyMs = 0;
+    volatile long jitterMs = 0;
+    volatile double errorRate = 0;
+    volatile double rateLimitRate = 0;
+    volatile long retryAfterSeconds = 1;
+    volatile long blockTimeMs = 2000;
+
+    final AtomicLong httpRequests = new AtomicLong();
+    final AtomicLong rpcCalls = new AtomicLong();
+    final AtomicLong injectedErrors = new AtomicLong();
+    final AtomicLong rateLimited = new AtomicLong();
+    private final Map<String, Long> methodCounts = new HashMap<>();
+
+    StubRpcServer() throws IOException {
+        socket = new ServerSocket(0, 128, InetAddress.getByName("127.0.0.1"));
+        pool.execute(this::acceptLoop);
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + socket.getLocalPort();
+    }
+
+    void setPage(String html) {
+        page = html;
+    }
+
+    void setReportListener(ReportListener listener) {
+        reportListener = listener;
+    }
+
+    void close() {
+        running = false;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+        pool.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket client = socket.accept();
+                pool.execute(() -> serve(client));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    // Keep-alive loop; HttpURLConnection reuses connections.
+    private void serve(Socket client) {
+        try (Socket s = client) {
+            InputStream in = new BufferedInputStream(s.getInputStream());
+            OutputStream out = s.getOutputStream();
+            while (running) {
+                String requestLine = readLine(in);
+                if (requestLine == null || requestLine.isEmpty()) return;
+                int contentLength = 0;
+                boolean close = false;
+                String header;
+                while ((header = readLine(in)) != null && !header.isEmpty()) {
+                    String lower = header.toLowerCase(Locale.ROOT);
+                    if (lower.startsWith("content-length:")) {
+                        contentLength = Integer.parseInt(header.substring(15).trim());
+                    } else if (lower.startsWith("connection:") && lower.contains("close")) {
+                        close = true;
+                    }
+                }
+                byte[] body = new byte[contentLength];
+                int read = 0;
+                while (read < contentLength) {
+                    int n = in.read(body, read, contentLength - read);
+                    if (n < 0) return;
+                    read += n;
+                }
+                httpRequests.incrementAndGet();
+                handle(requestLine, new String(body, StandardCharsets.UTF_8), out);
+                if (close) return;
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void handle(String requestLine, String body, OutputStream out) throws IOException {
+        String[] parts = requestLine.split(" ");
+        String method = parts[0];
+        String path = parts.length > 1 ? parts[1] : "/";
+        if ("GET".equals(method)) {
+            if (path.startsWith("/load.html")) {
+                respond(out, 200, "text/html; charset=utf-8", page, 0);
+            } else {
+                respond(out, 404, "text/plain", "not found", 0);
+            }
+            return;
+        }
+        if (path.startsWith("/report")) {
+            ReportListener listener = reportListener;
+            try {
+                if (listener != null) listener.onReport(new JSONObject(body));
+                respond(out, 204, "text/plain", "", 0);
+            } catch (JSONException e) {
+                respond(out, 400, "text/plain", "bad report", 0);
+            }
+            return;
+        }
+
+        delay();
+        if (chance(rateLimitRate)) {
+            rateLimited.incrementAndGet();
+            respond(out, 429, "text/plain", "rate limited", retryAfterSeconds);
+            return;
+        }
+        try {
+            String trimmed = body.trim();
+            String response;
+            if (trimmed.startsWith("[")) {
+                JSONArray batch = new JSONArray(trimmed);
+                JSONArray results = new JSONArray();
+                for (int i = 0; i < batch.length(); i++) {
+                    results.put(answer(batch.getJSONObject(i)));
+                }
+                response = results.toString();
+            } else {
+                response = answer(new JSONObject(trimmed)).toString();
+            }
+            respond(out, 200, "application/json", response, 0);
+        } catch (JSONException e) {
+            respond(out, 200, "application/json",
+                "{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":-32700,\"message\":\"Parse error\"}}", 0);
+        }
+    }
+
+    private JSONObject answer(JSONObject request) throws JSONException {
+        String method = request.optString("method");
+        rpcCalls.incrementAndGet();
+        synchronized (methodCounts) {
+            Long count = methodCounts.get(method);
+            methodCounts.put(method, count == null ? 1 : count + 1);
+        }
+        JSONObject response = new JSONObject();
+        response.put("jsonrpc", "2.0");
+        response.put("id", request.opt("id"));
+        if (chance(errorRate)) {
+            injectedErrors.incrementAndGet();
+            response.put("error", new JSONObject().put("code", -32000).put("message", "injected failure"));
+            return response;
+        }
+        Object result = result(method);
+        if (result == null) {
+            response.put("error", new JSONObject().put("code", -32601).put("message", "Method not found: " + method));
+        } else {
+            response.put("result", result);
+        }
+        return response;
+    }
+
+    private Object result(String method) throws JSONException {
+        long head = headNumber();
+        switch (method) {
+            case "eth_chainId": return "0x1";
+            case "net_version": return "1";
+            case "eth_blockNumber": return hex(head);
+            case "eth_getBlockByNumber":
+            case "eth_getBlockByHash":
+                return block(head);
+            case "eth_getBalance": return "0xde0b6b3a7640000";
+            case "eth_getTransactionCount": return "0x0";
+            case "eth_gasPrice":
+            case "eth_maxPriorityFeePerGas":
+                return "0x3b9aca00";
+            case "eth_estimateGas": return "0x5208";
+            case "eth_getCode": return "0x";
+            case "eth_call": return "0x0000000000000000000000000000000000000000000000000de0b6b3a7640000";
+            case "eth_getLogs": return new JSONArray();
+            case "eth_feeHistory": {
+                JSONArray baseFees = new JSONArray();
+                JSONArray ratios = new JSONArray();
+                JSONArray rewards = new JSONArray();
+                for (int i = 0; i < 5; i++) {
+                    baseFees.put("0x3b9aca00");
+                    ratios.put(0.5);
+                    rewards.put(new JSONArray().put("0x3b9aca00").put("0x3b9aca00").put("0x3b9aca00"));
+                }
+                baseFees.put("0x3b9aca00");
+                return new JSONObject().put("oldestBlock", hex(head - 4)).put("baseFeePerGas", baseFees)
+                    .put("gasUsedRatio", ratios).put("reward", rewards);
+            }
+            default: return null;
+        }
+    }
+
+    private JSONObject block(long number) throws JSONException {
+        return new JSONObject()
+            .put("number", hex(number))
+            .put("hash", String.format(Locale.ROOT, "0x%064x", number))
+            .put("parentHash", String.format(Locale.ROOT, "0x%064x", number - 1))
+            .put("timestamp", hex(startedAt / 1000 + (number - 1000) * blockTimeMs / 1000))
+            .put("baseFeePerGas", "0x3b9aca00")
+            .put("gasLimit", "0x1c9c380")
+            .put("gasUsed", "0xe4e1c0")
+            .put("transactions", new JSONArray());
+    }
+
+    private long headNumber() {
+        return 1000 + (System.currentTimeMillis() - startedAt) / Math.max(1, blockTimeMs);
+    }
+
+    private static String hex(long value) {
+        return "0x" + Long.toHexString(value);
+    }
+
+    private boolean chance(double rate) {
+        if (rate <= 0) return false;
+        synchronized (random) {
+            return random.nextDouble() < rate;
+        }
+    }
+
+    private void delay() {
+        long ms = latencyMs;
+        if (jitterMs > 0) {
+            synchronized (random) {
+                ms += (long) (random.nextDouble() * jitterMs);
+            }
+        }
+        if (ms <= 0) return;
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(OutputStream out, int status, String contentType, String body, long retryAfterSeconds) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(status).append(status == 200 ? " OK" : " Status").append("\r\n");
+        head.append("Content-Type: ").append(contentType).append("\r\n");
+        head.append("Content-Length: ").append(bytes.length).append("\r\n");
+        head.append("Cache-Control: no-store\r\n");
+        if (retryAfterSeconds > 0) {
+            head.append("Retry-After: ").append(retryAfterSeconds).append("\r\n");
+        }
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+        }
+        if (b == -1 && line.size() == 0) return null;
+        return line.toString("US-ASCII");
+    }
+
+    JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("httpRequests", httpRequests.get());
+        stats.put("rpcCalls", rpcCalls.get());
+        stats.put("injectedErrors", injectedErrors.get());
+        stats.put("rateLimited", rateLimited.get());
+        synchronized (methodCounts) {
+            stats.put("methods", new JSONObject(methodCounts));
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,116 @@
+package app.vaultkey.wallet;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+// Multi-pattern substring matcher. All patterns are found in a single pass
+// over the input regardless of how many there are. Edges are kept as sorted
+// char arrays per state, which stays small for URL-sized alphabets.
+class AhoCorasick {
+    private char[][] labels;
+    private int[][] targets;
+    private int[] fail;
+    private int[] output;
+    private int size = 1;
+
+    AhoCorasick(List<String> patterns) {
+        int capacity = 1;
+        for (String p : patterns) {
+            capacity += p.length();
+        }
+        labels = new char[capacity][];
+        targets = new int[capacity][];
+        fail = new int[capacity];
+        output = new int[capacity];
+        Arrays.fill(output, -1);
+        labels[0] = new char[0];
+        targets[0] = new int[0];
+
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            if (pattern.isEmpty()) continue;
+            int state = 0;
+            for (int j = 0; j < pattern.length(); j++) {
+                state = child(state, Character.toLowerCase(pattern.charAt(j)), true);
+            }
+            if (output[state] < 0) {
+                output[state] = i;
+            }
+        }
+        buildFailureLinks();
+    }
+
+    private int child(int state, char c, boolean create) {
+        char[] l = labels[state];
+        int idx = Arrays.binarySearch(l, c);
+        if (idx >= 0) return targets[state][idx];
+        if (!create) return -1;
+
+        int insert = -idx - 1;
+        int next = size++;
+        labels[next] = new char[0];
+        targets[next] = new int[0];
+
+        char[] nl = new char[l.length + 1];
+        int[] nt = new int[l.length + 1];
+        System.arraycopy(l, 0, nl, 0, insert);
+        System.arraycopy(targets[state], 0, nt, 0, insert);
+        nl[insert] = c;
+        nt[insert] = next;
+        System.arraycopy(l, insert, nl, insert + 1, l.length - insert);
+        System.arraycopy(targets[state], insert, nt, insert + 1, l.length - insert);
+        labels[state] = nl;
+        targets[state] = nt;
+        return next;
+    }
+
+    private void buildFailureLinks() {
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int t : targets[0]) {
+            fail[t] = 0;
+            queue.add(t);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int i = 0; i < labels[state].length; i++) {
+                char c = labels[state][i];
+                int next = targets[state][i];
+                int f = fail[state];
+                while (f > 0 && child(f, c, false) < 0) {
+                    f = fail[f];
+                }
+                int candidate = child(f, c, false);
+                fail[next] = candidate >= 0 && candidate != next ? candidate : 0;
+                // Inherit a match from the suffix so we never need to walk
+                // the failure chain while scanning.
+                if (output[next] < 0) {
+                    output[next] = output[fail[next]];
+                }
+                queue.add(next);
+            }
+        }
+    }
+
+    // Index of the pattern that ends first in text (case-insensitive), or -1.
+    int findFirst(CharSequence text) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = child(state, c, false)) < 0 && state > 0) {
+                state = fail[state];
+            }
+            state = next >= 0 ? next : 0;
+            if (output[state] >= 0) {
+                return output[state];
+            }
+        }
+        return -1;
+    }
+
+    int stateCount() {
+        return size;
+    }
+}
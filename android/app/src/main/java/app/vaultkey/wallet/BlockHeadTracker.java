@@ -0,0 +1,256 @@
+package app.vaultkey.wallet;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// One block-head poller per chain, shared by every page and frame. It
+// fetches the latest header roughly once per block, adapting the poll
+// interval to the observed block time, answers eth_blockNumber and
+// eth_getBlockByNumber('latest', false) from memory and pushes new heads to
+// subscribers. Polling stops when nobody has asked for a while.
+class BlockHeadTracker {
+    private static final String TAG = "BlockHeadTracker";
+    private static final long MIN_POLL_MS = 1000;
+    private static final long MAX_POLL_MS = 30000;
+    private static final long IDLE_TIMEOUT_MS = 30000;
+    private static final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private static final Map<Integer, BlockHeadTracker> trackers = new HashMap<>();
+
+    interface Listener {
+        void onNewHead(int chainId, JSONObject head);
+    }
+
+    final int chainId;
+    private final JsonRpcClient client;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private JSONObject head;
+    private long headNumber = -1;
+    private long headSeenAt = 0;
+    private long lastDemandAt = 0;
+    private double blockTimeMs;
+    private ScheduledFuture<?> nextPoll;
+    private FutureTask<JSONObject> inFlight;
+    // A head stored by the outstanding poll, not yet pushed to listeners.
+    private JSONObject unannounced;
+    private long polls = 0;
+    private long servedFromMemory = 0;
+
+    static synchronized BlockHeadTracker forChain(int chainId) {
+        BlockHeadTracker tracker = trackers.get(chainId);
+        if (tracker == null) {
+            tracker = new BlockHeadTracker(chainId, JsonRpcClient.forChain(chainId));
+            trackers.put(chainId, tracker);
+        }
+        return tracker;
+    }
+
+    BlockHeadTracker(int chainId, JsonRpcClient client) {
+        this.chainId = chainId;
+        this.client = client;
+        this.blockTimeMs = defaultBlockTimeMs(chainId);
+    }
+
+    static long defaultBlockTimeMs(int chainId) {
+        switch (chainId) {
+            case 1: return 12000;
+            case 56: return 3000;
+            case 137: return 2000;
+            case 43114: return 2000;
+            case 42161: return 1000;
+            case 10: return 2000;
+            case 8453: return 2000;
+            default: return 12000;
+        }
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+        touch();
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    long getBlockNumber() throws IOException {
+        JSONObject latest = getLatestHeader();
+        return JsonRpcClient.parseQuantity(latest.opt("number"));
+    }
+
+    JSONObject getLatestHeader() throws IOException {
+        synchronized (this) {
+            touch();
+            if (head != null && SystemClock.elapsedRealtime() - headSeenAt < pollIntervalMs()) {
+                servedFromMemory++;
+                return head;
+            }
+        }
+        return refresh(RpcScheduler.PRIORITY_FOREGROUND);
+    }
+
+    // Records demand and makes sure the poll loop is running.
+    private synchronized void touch() {
+        lastDemandAt = SystemClock.elapsedRealtime();
+        if (nextPoll == null || nextPoll.isDone()) {
+            schedule(head == null ? 0 : pollIntervalMs());
+        }
+    }
+
+    private synchronized void schedule(long delayMs) {
+        nextPoll = scheduler.schedule(this::pollLoop, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void pollLoop() {
+        long before;
+        synchronized (this) {
+            boolean idle = listeners.isEmpty() && SystemClock.elapsedRealtime() - lastDemandAt > IDLE_TIMEOUT_MS;
+            if (idle) {
+                Log.d(TAG, "Chain " + chainId + " idle, stopping poller");
+                nextPoll = null;
+                return;
+            }
+            before = headNumber;
+        }
+        try {
+            refresh(RpcScheduler.PRIORITY_BACKGROUND);
+        } catch (IOException e) {
+            Log.w(TAG, "Head poll failed on chain " + chainId + ": " + e.getMessage());
+        }
+        long delay;
+        synchronized (this) {
+            // Aim the next request at the expected arrival of the next block;
+            // if the head did not move, retry after a fraction of a block.
+            if (headNumber > before) {
+                delay = pollIntervalMs();
+            } else {
+                delay = Math.max(MIN_POLL_MS, pollIntervalMs() / 4);
+            }
+        }
+        schedule(delay);
+    }
+
+    // Fetches the latest header, sharing one request between every caller
+    // that arrives while it is outstanding. The request runs on the thread
+    // that started it, without the tracker's lock held, and that thread
+    // pushes a new head to listeners once the waiters have been released.
+    private JSONObject refresh(int priority) throws IOException {
+        FutureTask<JSONObject> task;
+        boolean owner = false;
+        synchronized (this) {
+            task = inFlight;
+            if (task == null) {
+                task = new FutureTask<>(() -> poll(priority));
+                inFlight = task;
+                owner = true;
+            }
+        }
+        if (owner) {
+            JSONObject fresh;
+            try {
+                task.run();
+            } finally {
+                synchronized (this) {
+                    if (inFlight == task) inFlight = null;
+                    fresh = unannounced;
+                    unannounced = null;
+                }
+            }
+            if (fresh != null) notifyListeners(fresh);
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new RpcException(RpcException.TRANSPORT_ERROR, "Head poll failed: " + cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException(RpcException.TRANSPORT_ERROR, "Interrupted waiting for head");
+        }
+    }
+
+    private JSONObject poll(int priority) throws IOException {
+        Object result = client.call("eth_getBlockByNumber", new JSONArray().put("latest").put(false), priority);
+        if (!(result instanceof JSONObject)) {
+            synchronized (this) {
+                polls++;
+            }
+            throw new RpcException(-32000, "No latest block");
+        }
+        JSONObject latest = (JSONObject) result;
+        long number = JsonRpcClient.parseQuantity(latest.opt("number"));
+
+        synchronized (this) {
+            polls++;
+            long now = SystemClock.elapsedRealtime();
+            if (number <= headNumber) {
+                headSeenAt = now;
+                return head;
+            }
+
+            if (head != null) {
+                try {
+                    long dt = JsonRpcClient.parseQuantity(latest.opt("timestamp")) - JsonRpcClient.parseQuantity(head.opt("timestamp"));
+                    long perBlock = dt * 1000 / (number - headNumber);
+                    if (perBlock > 0) {
+                        blockTimeMs = blockTimeMs * 0.8 + perBlock * 0.2;
+                    }
+                } catch (RpcException ignored) {
+                }
+            }
+
+            head = latest;
+            headNumber = number;
+            headSeenAt = now;
+            unannounced = latest;
+        }
+        return latest;
+    }
+
+    // Listeners push into pages; they run without the lock so a slow one
+    // cannot hold up readers of the cached head.
+    private void notifyListeners(JSONObject latest) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onNewHead(chainId, latest);
+            } catch (Exception e) {
+                Log.e(TAG, "Listener failed", e);
+            }
+        }
+    }
+
+    private long pollIntervalMs() {
+        return Math.max(MIN_POLL_MS, Math.min(MAX_POLL_MS, (long) blockTimeMs));
+    }
+
+    synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("chainId", chainId);
+            stats.put("head", headNumber);
+            stats.put("blockTimeMs", (long) blockTimeMs);
+            stats.put("polls", polls);
+            stats.put("servedFromMemory", servedFromMemory);
+            stats.put("subscribers", listeners.size());
+        } catch (Exception e) {
+            Log.e(TAG, "Error building stats", e);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,74 @@
+package app.vaultkey.wallet;
+
+import org.json.JSONException;
+
+// A provider request as posted by the injected script through
+// VaultKeyNative.postMessage.
+final class BridgeMessage {
+    final int id;
+    final String method;
+    final String params;
+    final int chainId;
+    // Plain node read the page wants proxied rather than signed.
+    final boolean rpc;
+    // Page clock (Date.now()) when the request was sent; 0 when unknown.
+    final long sentAt;
+
+    private BridgeMessage(int id, String method, String params, int chainId, boolean rpc, long sentAt) {
+        this.id = id;
+        this.method = method;
+        this.params = params;
+        this.chainId = chainId;
+        this.rpc = rpc;
+        this.sentAt = sentAt;
+    }
+
+    // Reads the fields with JsonScanner; params (often a large transaction
+    // or typed-data payload) is passed on as the page's own JSON text.
+    static BridgeMessage parse(String message, int defaultChainId) throws JSONException {
+        JsonScanner scanner = new JsonScanner(message);
+        boolean hasId = false;
+        int id = 0;
+        String method = null;
+        String params = "[]";
+        int chainId = defaultChainId;
+        boolean rpc = false;
+        long sentAt = 0;
+        while (scanner.nextField()) {
+            if (scanner.nameIs("id")) {
+                id = scanner.intValue();
+                hasId = true;
+            } else if (scanner.nameIs("method")) {
+                if (!scanner.isNull()) method = scanner.stringValue();
+            } else if (scanner.nameIs("params")) {
+                if (!scanner.isNull()) params = scanner.stringValue();
+            } else if (scanner.nameIs("chainId")) {
+                chainId = (int) optLong(scanner, defaultChainId);
+            } else if (scanner.nameIs("rpc")) {
+                rpc = !scanner.isNull() && optBoolean(scanner);
+            } else if (scanner.nameIs("sentAt")) {
+                sentAt = optLong(scanner, 0);
+            }
+        }
+        if (!hasId) throw new JSONException("No value for id");
+        if (method == null) throw new JSONException("No value for method");
+        return new BridgeMessage(id, method, params, chainId, rpc, sentAt);
+    }
+
+    // opt* semantics: a value of the wrong type reads as the fallback.
+    private static long optLong(JsonScanner scanner, long fallback) {
+        try {
+            return scanner.isNull() ? fallback : scanner.longValue();
+        } catch (JSONException e) {
+            return fallback;
+        }
+    }
+
+    private static boolean optBoolean(JsonScanner scanner) {
+        try {
+            return scanner.booleanValue();
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package app.vaultkey.wallet;
+
+// JavaScript the dApp browser evaluates in pages: the injected provider and
+// the snippets that settle its pending requests. Free of Android types so
+// the per-message paths can be benchmarked on a plain JVM.
+final class BridgeScripts {
+    private BridgeScripts() {
+    }
+
+    static String injection(String address, int chainId) {
+        String hexChainId = "0x" + Integer.toHexString(chainId);
+
+        return "(function(){" +
+            "'use strict';" +
+            "if(window._vkInjected)return;" +
+            "window._vkInjected=true;" +
+
+            "var _id=1;" +
+            "var _addr='" + address + "';" +
+            "var _chainId='" + hexChainId + "';" +
+            "var _netVersion='" + chainId + "';" +
+            "var _callbacks={};" +
+            "var _listeners={};" +
+
+            "var _rpcs={1:'https://eth.llamarpc.com',56:'https://bsc-dataseed1.binance.org',137:'https://polygon-rpc.com',43114:'https://api.avax.network/ext/bc/C/rpc',42161:'https://arb1.arbitrum.io/rpc',10:'https://mainnet.optimism.io',8453:'https://mainnet.base.org'};" +
+            "var _rpcUrl=_rpcs[" + chainId + "]||'https://eth.llamarpc.com';" +
+
+            "window._vkCallbacks=_callbacks;" +
+
+            "window.__vkUpdate=function(addr,chain,rpc){" +
+            "_addr=addr;_chainId=chain;_rpcUrl=rpc||_rpcUrl;" +
+            "_netVersion=String(parseInt(chain,16));" +
+            "provider.selectedAddress=_addr;" +
+            "provider.chainId=_chainId;" +
+            "provider.networkVersion=_netVersion;" +
+            "emit('accountsChanged',[_addr]);" +
+            "emit('chainChanged',_chainId);" +
+            "};" +
+
+            "function on(e,fn){if(!_listeners[e])_listeners[e]=[];_listeners[e].push(fn);return provider;}" +
+            "function off(e,fn){if(_listeners[e])_listeners[e]=_listeners[e].filter(function(f){return f!==fn;});return provider;}" +
+            "function emit(e){var args=[].slice.call(arguments,1);if(_listeners[e])_listeners[e].slice().forEach(function(fn){try{fn.apply(null,args);}catch(x){}});return true;}" +
+
+            "window.__vkSubscription=function(id,result){" +
+            "emit('message',{type:'eth_subscription',data:{subscription:id,result:result}});" +
+            "emit('data',null,{jsonrpc:'2.0',method:'eth_subscription',params:{subscription:id,result:result}});" +
+            "};" +
+
+            "function bridge(method,params,rpc){" +
+            "return new Promise(function(resolve,reject){" +
+            "var id=_id++;_callbacks[id]={resolve:resolve,reject:reject};" +
+            "try{VaultKeyNative.postMessage(JSON.stringify({id:id,method:method,params:params,chainId:parseInt(_chainId,16),rpc:!!rpc,sentAt:Date.now()}));}catch(e){delete _callbacks[id];reject(e);}" +
+            "});" +
+            "}" +
+
+            "var nativeRpc=['eth_getLogs','eth_blockNumber','eth_getBlockByNumber','eth_subscribe','eth_unsubscribe'];" +
+
+            "function request(args){" +
+            "var method=args.method;var params=args.params||[];" +
+            "if(method==='eth_accounts')return Promise.resolve(_addr?[_addr]:[]);" +
+            "if(method==='eth_requestAccounts'){emit('connect',{chainId:_chainId});return Promise.resolve([_addr]);}" +
+            "if(method==='eth_chainId')return Promise.resolve(_chainId);" +
+            "if(method==='net_version')return Promise.resolve(_netVersion);" +
+            "if(method==='eth_coinbase')return Promise.resolve(_addr);" +
+            "if(method==='wallet_requestPermissions')return Promise.resolve([{parentCapability:'eth_accounts'}]);" +
+            "if(method==='wallet_getPermissions')return Promise.resolve([{parentCapability:'eth_accounts'}]);" +
+            "if(method==='wallet_switchEthereumChain'){var c=params[0]&&params[0].chainId;if(c){var n=parseInt(c,16);if(_rpcs[n]){_chainId=c;_netVersion=String(n);_rpcUrl=_rpcs[n];provider.chainId=_chainId;emit('chainChanged',_chainId);return Promise.resolve(null);}return Promise.reject({code:4902,message:'Chain not supported'});}return Promise.resolve(null);}" +
+            "if(method==='wallet_addEthereumChain')return Promise.resolve(null);" +
+            "if(method==='wallet_watchAsset')return Promise.resolve(true);" +
+            "if(nativeRpc.indexOf(method)!==-1)return bridge(method,params);" +
+            "if(method==='eth_sendTransaction'||method==='eth_signTransaction'||method==='personal_sign'||method==='eth_sign'||method==='eth_signTypedData'||method==='eth_signTypedData_v3'||method==='eth_signTypedData_v4')return bridge(method,params);" +
+            "return bridge(method,params,true);" +
+            "}" +
+
+            "var provider={" +
+            "isMetaMask:true,isTrust:true,isVaultKey:true," +
+            "selectedAddress:_addr,chainId:_chainId,networkVersion:_netVersion," +
+            "isConnected:function(){return true;}," +
+            "request:request," +
+            "send:function(m,p){if(typeof m==='string')return request({method:m,params:p});return request(m);}," +
+            "sendAsync:function(req,cb){request({method:req.method,params:req.params}).then(function(r){cb(null,{id:req.id,jsonrpc:'2.0',result:r});}).catch(function(e){cb(e);});}," +
+            "on:on,off:off,removeListener:off,emit:emit," +
+            "enable:function(){return request({method:'eth_requestAccounts'});}" +
+            "};" +
+
+            "window.ethereum=provider;" +
+            "window.web3={currentProvider:provider};" +
+
+            "var info={uuid:'vaultkey-1',name:'VaultKey',icon:'data:image/svg+xml;base64,PHN2ZyB3aWR0aD0iMzIiIGhlaWdodD0iMzIiIHZpZXdCb3g9IjAgMCAzMiAzMiI+PGNpcmNsZSBjeD0iMTYiIGN5PSIxNiIgcj0iMTYiIGZpbGw9IiMxYTFhMmUiLz48dGV4dCB4PSIxNiIgeT0iMjEiIGZvbnQtc2l6ZT0iMTQiIGZpbGw9IiNmZmYiIHRleHQtYW5jaG9yPSJtaWRkbGUiPuKXiDwvdGV4dD48L3N2Zz4=',rdns:'app.vaultkey.wallet'};" +
+            "var detail={info:info,provider:provider};" +
+            "window.dispatchEvent(new CustomEvent('eip6963:announceProvider',{detail:detail}));" +
+            "window.addEventListener('eip6963:requestProvider',function(){window.dispatchEvent(new CustomEvent('eip6963:announceProvider',{detail:detail}));});" +
+
+            "})();";
+    }
+
+    // Settles the page's callback for a request; error wins when present.
+    static String response(int id, String result, String error) {
+        StringBuilder sb = new StringBuilder(96 + (result != null ? result.length() : 0));
+        sb.append("(function(){if(window._vkCallbacks&&window._vkCallbacks[").append(id).append("]){");
+        if (error != null && !error.isEmpty()) {
+            sb.append("window._vkCallbacks[").append(id).append("].reject(new Error('");
+            escapeInto(sb, error);
+            sb.append("'));");
+        } else {
+            sb.append("window._vkCallbacks[").append(id).append("].resolve(").append(result).append(");");
+        }
+        sb.append("delete window._vkCallbacks[").append(id).append("];}})();");
+        return sb.toString();
+    }
+
+    // Escapes text for a single-quoted JS string literal; newlines become
+    // spaces so error messages stay on one line.
+    static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        escapeInto(sb, text);
+        return sb.toString();
+    }
+
+    private static void escapeInto(StringBuilder sb, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\'':
+                    sb.append("\\'");
+                    break;
+                case '\n':
+                    sb.append(' ');
+                    break;
+                case '\r':
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+}
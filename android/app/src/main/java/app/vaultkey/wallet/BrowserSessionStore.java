@@ -0,0 +1,281 @@
+package app.vaultkey.wallet;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Persists the dApp browser's tabs (URL, back stack, scroll position) and
+// the chain each origin last used, so the browser reopens where the user
+// left it. The file holds only our own fields: WebView.saveState output is
+// an opaque, version-dependent parcel, so it is kept in memory to rebuild
+// a tab whose renderer died and never written out. Snapshots are taken on
+// the main thread but serialized and written on a background thread,
+// coalescing bursts into one write.
+//
+// Layout (version 2): int magic, int version, long savedAt, int active tab,
+// int tab count, then per tab: int id, str url, str title, int scrollX,
+// int scrollY, int back count, str per back entry (oldest first); then int
+// origin count and per origin: str origin, int chain id. A str is an int
+// byte length (-1 for null) followed by UTF-8 bytes.
+class BrowserSessionStore {
+    private static final String TAG = "BrowserSessionStore";
+    private static final String FILE_NAME = "browser-session.bin";
+    private static final int MAGIC = 0x564b5353;
+    private static final int FORMAT_VERSION = 2;
+    // Bounds what a corrupt length field can make the reader allocate.
+    private static final int MAX_STRING_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_BACK_ENTRIES = 50;
+    private static final long MAX_AGE_MS = 24 * 60 * 60 * 1000L;
+    private static final long WRITE_DELAY_MS = 2000;
+
+    private static BrowserSessionStore instance;
+
+    static class TabSnapshot {
+        int id;
+        String url;
+        String title;
+        int scrollX;
+        int scrollY;
+        // Oldest first, not including url.
+        final List<String> backStack = new ArrayList<>();
+        // In memory only; null for a snapshot read from disk.
+        Bundle state;
+    }
+
+    static class Snapshot {
+        long savedAt;
+        int activeTabId = -1;
+        final List<TabSnapshot> tabs = new ArrayList<>();
+        final Map<String, Integer> originChains = new HashMap<>();
+    }
+
+    private final File file;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "BrowserSession");
+        t.setDaemon(true);
+        return t;
+    });
+    private Snapshot latest;
+    private ScheduledFuture<?> pendingWrite;
+
+    private long writes = 0;
+    private long lastWriteBytes = 0;
+    private long lastWriteMs = 0;
+    private long restores = 0;
+    private long lastResumeMs = 0;
+    private long totalResumeMs = 0;
+    private long rendererRecoveries = 0;
+    private long lastRecoveryMs = 0;
+
+    static synchronized BrowserSessionStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new BrowserSessionStore(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    private BrowserSessionStore(File file) {
+        this.file = file;
+    }
+
+    // Records a new snapshot; immediate forces the write to start now, e.g.
+    // when the activity is going to the background.
+    synchronized void save(Snapshot snapshot, boolean immediate) {
+        snapshot.savedAt = System.currentTimeMillis();
+        latest = snapshot;
+        if (pendingWrite != null && !pendingWrite.isDone()) {
+            if (!immediate) return;
+            pendingWrite.cancel(false);
+        }
+        pendingWrite = writer.schedule(this::writeLatest, immediate ? 0 : WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void writeLatest() {
+        Snapshot snapshot;
+        synchronized (this) {
+            snapshot = latest;
+        }
+        if (snapshot == null) return;
+
+        long start = SystemClock.elapsedRealtime();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(snapshot.savedAt);
+            out.writeInt(snapshot.activeTabId);
+            out.writeInt(snapshot.tabs.size());
+            for (TabSnapshot tab : snapshot.tabs) {
+                out.writeInt(tab.id);
+                writeString(out, tab.url);
+                writeString(out, tab.title);
+                out.writeInt(tab.scrollX);
+                out.writeInt(tab.scrollY);
+                List<String> back = tab.backStack;
+                if (back.size() > MAX_BACK_ENTRIES) {
+                    back = back.subList(back.size() - MAX_BACK_ENTRIES, back.size());
+                }
+                out.writeInt(back.size());
+                for (String entry : back) {
+                    writeString(out, entry);
+                }
+            }
+            out.writeInt(snapshot.originChains.size());
+            for (Map.Entry<String, Integer> e : snapshot.originChains.entrySet()) {
+                writeString(out, e.getKey());
+                out.writeInt(e.getValue());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write session", e);
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            Log.e(TAG, "Failed to install session file");
+            return;
+        }
+        synchronized (this) {
+            writes++;
+            lastWriteBytes = file.length();
+            lastWriteMs = SystemClock.elapsedRealtime() - start;
+        }
+    }
+
+    // Most recent snapshot, from memory when this process wrote one,
+    // otherwise from disk. Null when there is none or it is too old.
+    synchronized Snapshot load() {
+        if (latest != null) return latest;
+        if (!file.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) return null;
+            Snapshot snapshot = new Snapshot();
+            snapshot.savedAt = in.readLong();
+            if (System.currentTimeMillis() - snapshot.savedAt > MAX_AGE_MS) return null;
+            snapshot.activeTabId = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                TabSnapshot tab = new TabSnapshot();
+                tab.id = in.readInt();
+                tab.url = readString(in);
+                tab.title = readString(in);
+                tab.scrollX = in.readInt();
+                tab.scrollY = in.readInt();
+                int back = in.readInt();
+                for (int j = 0; j < back; j++) {
+                    String entry = readString(in);
+                    if (entry != null) tab.backStack.add(entry);
+                }
+                snapshot.tabs.add(tab);
+            }
+            int origins = in.readInt();
+            for (int i = 0; i < origins; i++) {
+                String origin = readString(in);
+                int chainId = in.readInt();
+                if (origin != null) snapshot.originChains.put(origin, chainId);
+            }
+            latest = snapshot;
+            return snapshot;
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable session", e);
+            return null;
+        }
+    }
+
+    // Unlike writeUTF, not limited to 64 KB: long data: or query-heavy
+    // URLs must not fail the whole write.
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        if (length > MAX_STRING_BYTES) throw new IOException("String of " + length + " bytes");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Last persisted state of one tab, used to rebuild it after its
+    // renderer went away.
+    synchronized TabSnapshot lastStateFor(int tabId) {
+        if (latest == null) return null;
+        for (TabSnapshot tab : latest.tabs) {
+            if (tab.id == tabId) return tab;
+        }
+        return null;
+    }
+
+    synchronized void clear() {
+        latest = null;
+        if (pendingWrite != null) {
+            pendingWrite.cancel(false);
+            pendingWrite = null;
+        }
+        writer.execute(() -> {
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Could not delete session file");
+            }
+        });
+    }
+
+    synchronized void recordResume(long ms) {
+        restores++;
+        lastResumeMs = ms;
+        totalResumeMs += ms;
+    }
+
+    synchronized void recordRendererRecovery(long ms) {
+        rendererRecoveries++;
+        lastRecoveryMs = ms;
+    }
+
+    synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("hasSession", latest != null || file.exists());
+            stats.put("tabs", latest != null ? latest.tabs.size() : 0);
+            stats.put("writes", writes);
+            stats.put("lastWriteBytes", lastWriteBytes);
+            stats.put("lastWriteMs", lastWriteMs);
+            stats.put("restores", restores);
+            stats.put("lastResumeMs", lastResumeMs);
+            stats.put("avgResumeMs", restores > 0 ? totalResumeMs / restores : 0);
+            stats.put("rendererRecoveries", rendererRecoveries);
+            stats.put("lastRecoveryMs", lastRecoveryMs);
+        } catch (Exception e) {
+            Log.e(TAG, "Error building stats", e);
+        }
+        return stats;
+    }
+}
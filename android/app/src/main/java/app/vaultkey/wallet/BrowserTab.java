@@ -0,0 +1,183 @@
+package app.vaultkey.wallet;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebBackForwardList;
+import android.webkit.WebView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class BrowserTab {
+    private static final String TAG = "BrowserTab";
+    // What the new-tab button opens.
+    static final String START_PAGE = "about:blank";
+
+    final int id;
+    WebView webView;
+    Bundle savedState;
+    // Back-stack URLs from a persisted session, older than anything in the
+    // WebView's own history. Newest last.
+    final List<String> restoredBack = new ArrayList<>();
+    // The WebView's back entries when it was suspended.
+    private List<String> suspendedBack = new ArrayList<>();
+    // Set when a restored entry is loaded: the page it replaced must not
+    // stay in the WebView's history.
+    boolean clearHistoryOnLoad = false;
+    String url;
+    String title = "";
+    long lastActiveAt;
+    int pendingRequests = 0;
+    volatile int pageSession = 0;
+    long firstLoadStartedAt = 0;
+    boolean firstLoadReported = false;
+    long pageStartedAt = 0;
+    boolean progressReported = false;
+    int scrollX = 0;
+    int scrollY = 0;
+    boolean restoreScroll = false;
+    long resumeStartedAt = 0;
+    String resumeKind;
+    final PageDispatchQueue dispatch;
+
+    // Created on the main thread.
+    BrowserTab(int id, String url) {
+        this.id = id;
+        this.url = url;
+        this.dispatch = new PageDispatchQueue(this);
+        touch();
+    }
+
+    boolean isLive() {
+        return webView != null;
+    }
+
+    boolean isSuspended() {
+        return webView == null && savedState != null;
+    }
+
+    void touch() {
+        lastActiveAt = SystemClock.elapsedRealtime();
+    }
+
+    void pause() {
+        if (webView != null) {
+            webView.onPause();
+        }
+    }
+
+    void resume() {
+        if (webView != null) {
+            webView.onResume();
+        }
+    }
+
+    // Serializes the back stack and releases the renderer. The tab is
+    // rebuilt from savedState the next time it is selected.
+    void suspend() {
+        if (webView == null) return;
+
+        Bundle state = new Bundle();
+        try {
+            if (webView.saveState(state) != null) {
+                savedState = state;
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "saveState failed for tab " + id, e);
+        }
+        String current = webView.getUrl();
+        if (current != null && !current.isEmpty()) {
+            url = current;
+        }
+        suspendedBack = webViewBack();
+        scrollX = webView.getScrollX();
+        scrollY = webView.getScrollY();
+        restoreScroll = true;
+        destroyWebView();
+    }
+
+    // Captures what is needed to rebuild the tab: its URL and back stack for
+    // a later process, and for a renderer crash in this one the WebView's
+    // own state, live or as it was suspended.
+    BrowserSessionStore.TabSnapshot snapshot() {
+        BrowserSessionStore.TabSnapshot snap = new BrowserSessionStore.TabSnapshot();
+        snap.id = id;
+        snap.url = url;
+        snap.title = title;
+        snap.backStack.addAll(restoredBack);
+        snap.backStack.addAll(webView != null ? webViewBack() : suspendedBack);
+        Bundle state = savedState;
+        if (webView != null) {
+            scrollX = webView.getScrollX();
+            scrollY = webView.getScrollY();
+            Bundle live = new Bundle();
+            try {
+                if (webView.saveState(live) != null) {
+                    state = live;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "saveState failed for tab " + id, e);
+            }
+        }
+        snap.scrollX = scrollX;
+        snap.scrollY = scrollY;
+        snap.state = state;
+        return snap;
+    }
+
+    private List<String> webViewBack() {
+        List<String> back = new ArrayList<>();
+        WebBackForwardList list = webView.copyBackForwardList();
+        for (int i = 0; i < list.getCurrentIndex(); i++) {
+            String entry = list.getItemAtIndex(i).getUrl();
+            if (entry != null && !entry.isEmpty()) back.add(entry);
+        }
+        return back;
+    }
+
+    boolean canGoBack() {
+        return webView != null && (webView.canGoBack() || !restoredBack.isEmpty());
+    }
+
+    // Goes back in the WebView's history, then through the back stack
+    // restored from the session.
+    boolean goBack() {
+        if (webView == null) return false;
+        if (webView.canGoBack()) {
+            webView.goBack();
+            return true;
+        }
+        if (restoredBack.isEmpty()) return false;
+        clearHistoryOnLoad = true;
+        webView.loadUrl(restoredBack.remove(restoredBack.size() - 1));
+        return true;
+    }
+
+    void destroyWebView() {
+        if (webView == null) return;
+        dispatch.clear();
+        webView.stopLoading();
+        webView.removeAllViews();
+        webView.destroy();
+        webView = null;
+    }
+
+    String label() {
+        if (START_PAGE.equals(url)) {
+            return "New tab";
+        }
+        if (title != null && !title.isEmpty()) {
+            return title.length() > 18 ? title.substring(0, 18) + "\u2026" : title;
+        }
+        try {
+            String host = Uri.parse(url).getHost();
+            if (host != null) {
+                return host.startsWith("www.") ? host.substring(4) : host;
+            }
+        } catch (Exception ignored) {
+        }
+        return url;
+    }
+}
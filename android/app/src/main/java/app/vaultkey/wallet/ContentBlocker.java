@@ -0,0 +1,419 @@
+package app.vaultkey.wallet;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Blocks tracker, session-replay and ad requests in the dApp browser. The
+// bundled filter list is compiled once per app version into a flat file
+// that is memory-mapped on first use: a bloom filter and a sorted array of
+// 64-bit domain hashes answer host lookups (walking up the parent domains),
+// and path rules are matched with a single Aho-Corasick pass built lazily
+// from the mapped patterns. Main-frame navigations are never blocked, and
+// path rules only apply to third-party requests.
+class ContentBlocker {
+    private static final String TAG = "ContentBlocker";
+    private static final String PREFS = "content_blocker";
+    private static final String LIST_ASSET = "blocklist/trackers.txt";
+    private static final int MAGIC = 0x564b424c;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 40;
+    private static final int BLOOM_BITS_PER_DOMAIN = 10;
+    private static final int BLOOM_HASHES = 7;
+    private static final int MAX_TRACKED_PAGES = 20;
+
+    private static ContentBlocker instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final File compiledFile;
+    private volatile boolean enabled;
+
+    private volatile boolean loaded = false;
+    private LongBuffer bloom;
+    private int bloomBits;
+    private LongBuffer blockedHashes;
+    private LongBuffer allowedHashes;
+    private List<String> pathRules;
+    private volatile AhoCorasick pathMatcher;
+    private long loadMs = 0;
+    private boolean compiled = false;
+
+    private long checked = 0;
+    private long blocked = 0;
+    private long matchNanosTotal = 0;
+    private long matchNanosMax = 0;
+    private final LinkedHashMap<Integer, PageStats> pages = new LinkedHashMap<Integer, PageStats>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, PageStats> eldest) {
+            return size() > MAX_TRACKED_PAGES;
+        }
+    };
+
+    private static class PageStats {
+        String url;
+        int blocked;
+        final Map<String, Integer> byHost = new HashMap<>();
+    }
+
+    static synchronized ContentBlocker getInstance(Context context) {
+        if (instance == null) {
+            instance = new ContentBlocker(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ContentBlocker(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        this.enabled = prefs.getBoolean("enabled", true);
+        this.compiledFile = new File(context.getNoBackupFilesDir(), "content-blocker.bin");
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean value) {
+        enabled = value;
+        prefs.edit().putBoolean("enabled", value).apply();
+    }
+
+    // Returns an empty response for requests that match the list, or null to
+    // let the request through.
+    WebResourceResponse intercept(WebResourceRequest request, int tabId, String pageUrl) {
+        if (!enabled || request.isForMainFrame()) return null;
+        if (pageUrl == null) pageUrl = "";
+        Uri url = request.getUrl();
+        String host = url.getHost();
+        if (host == null) return null;
+
+        long start = System.nanoTime();
+        boolean match = false;
+        try {
+            ensureLoaded();
+            match = matches(host.toLowerCase(), url.toString(), isThirdParty(host, pageUrl));
+        } catch (IOException e) {
+            Log.e(TAG, "Filter list unavailable", e);
+        }
+        long nanos = System.nanoTime() - start;
+
+        synchronized (this) {
+            checked++;
+            matchNanosTotal += nanos;
+            matchNanosMax = Math.max(matchNanosMax, nanos);
+            if (match) {
+                blocked++;
+                PageStats page = pages.get(tabId);
+                if (page == null || !pageUrl.equals(page.url)) {
+                    page = new PageStats();
+                    page.url = pageUrl;
+                    pages.put(tabId, page);
+                }
+                page.blocked++;
+                Integer n = page.byHost.get(host);
+                page.byHost.put(host, n == null ? 1 : n + 1);
+            }
+        }
+        if (!match) return null;
+        return new WebResourceResponse("text/plain", "utf-8", 204, "Blocked", new HashMap<String, String>(),
+            new ByteArrayInputStream(new byte[0]));
+    }
+
+    boolean matches(String host, String url, boolean thirdParty) {
+        if (domainListed(allowedHashes, null, host)) return false;
+        if (domainListed(blockedHashes, bloom, host)) return true;
+        if (!thirdParty || pathRules.isEmpty()) return false;
+        return pathMatcher().findFirst(url) >= 0;
+    }
+
+    // Tries the host and each parent domain: a.b.example.com, b.example.com,
+    // example.com. The bloom filter rejects almost every miss without
+    // touching the sorted hash array.
+    private boolean domainListed(LongBuffer hashes, LongBuffer filter, String host) {
+        if (hashes.capacity() == 0) return false;
+        int start = 0;
+        while (start >= 0 && start < host.length()) {
+            long h = fnv1a64(host, start);
+            if ((filter == null || bloomContains(filter, h)) && binarySearch(hashes, h)) {
+                return true;
+            }
+            int dot = host.indexOf('.', start);
+            if (dot < 0 || host.indexOf('.', dot + 1) < 0) break;
+            start = dot + 1;
+        }
+        return false;
+    }
+
+    private boolean bloomContains(LongBuffer filter, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bloomBits;
+            if ((filter.get(bit >>> 6) & (1L << (bit & 63))) == 0) return false;
+        }
+        return true;
+    }
+
+    private static boolean binarySearch(LongBuffer sorted, long key) {
+        int lo = 0;
+        int hi = sorted.capacity() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long v = sorted.get(mid);
+            if (v < key) lo = mid + 1;
+            else if (v > key) hi = mid - 1;
+            else return true;
+        }
+        return false;
+    }
+
+    private AhoCorasick pathMatcher() {
+        AhoCorasick matcher = pathMatcher;
+        if (matcher == null) {
+            synchronized (this) {
+                if (pathMatcher == null) {
+                    pathMatcher = new AhoCorasick(pathRules);
+                }
+                matcher = pathMatcher;
+            }
+        }
+        return matcher;
+    }
+
+    static boolean isThirdParty(String host, String pageUrl) {
+        if (pageUrl == null) return true;
+        String pageHost = Uri.parse(pageUrl).getHost();
+        if (pageHost == null) return true;
+        return !registrableDomain(host.toLowerCase()).equals(registrableDomain(pageHost.toLowerCase()));
+    }
+
+    // Last two labels; good enough to tell a dApp's own CDN subdomains from
+    // third parties without shipping the public suffix list.
+    private static String registrableDomain(String host) {
+        int last = host.lastIndexOf('.');
+        if (last <= 0) return host;
+        int prev = host.lastIndexOf('.', last - 1);
+        return prev < 0 ? host : host.substring(prev + 1);
+    }
+
+    static long fnv1a64(String s, int from) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = from; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    void ensureLoaded() throws IOException {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            long start = SystemClock.elapsedRealtime();
+            long version = appVersion();
+            if (!mapCompiled(version)) {
+                compile(version);
+                compiled = true;
+                if (!mapCompiled(version)) {
+                    throw new IOException("Compiled filter list is unreadable");
+                }
+            }
+            loadMs = SystemClock.elapsedRealtime() - start;
+            loaded = true;
+            Log.d(TAG, "Filter list ready in " + loadMs + "ms (" + blockedHashes.capacity()
+                + " domains, " + pathRules.size() + " path rules)");
+        }
+    }
+
+    private boolean mapCompiled(long version) {
+        if (!compiledFile.exists()) return false;
+        try (RandomAccessFile raf = new RandomAccessFile(compiledFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.getInt(0) != MAGIC || map.getInt(4) != FORMAT_VERSION || map.getLong(8) != version) {
+                return false;
+            }
+            bloomBits = map.getInt(16);
+            int bloomWords = map.getInt(20);
+            int blockedCount = map.getInt(24);
+            int allowedCount = map.getInt(28);
+            int patternCount = map.getInt(32);
+
+            int pos = HEADER_BYTES;
+            bloom = slice(map, pos, bloomWords);
+            pos += bloomWords * 8;
+            blockedHashes = slice(map, pos, blockedCount);
+            pos += blockedCount * 8;
+            allowedHashes = slice(map, pos, allowedCount);
+            pos += allowedCount * 8;
+
+            List<String> patterns = new ArrayList<>(patternCount);
+            for (int i = 0; i < patternCount; i++) {
+                int len = map.getShort(pos) & 0xffff;
+                byte[] bytes = new byte[len];
+                map.position(pos + 2);
+                map.get(bytes);
+                patterns.add(new String(bytes, StandardCharsets.UTF_8));
+                pos += 2 + len;
+            }
+            pathRules = patterns;
+            return true;
+        } catch (Exception e) {
+            Log.w(TAG, "Discarding compiled filter list", e);
+            return false;
+        }
+    }
+
+    private static LongBuffer slice(MappedByteBuffer map, int offset, int count) {
+        ByteBuffer view = map.duplicate();
+        view.position(offset);
+        view.limit(offset + count * 8);
+        return view.slice().asLongBuffer();
+    }
+
+    private void compile(long version) throws IOException {
+        List<String> blockedDomains = new ArrayList<>();
+        List<String> allowedDomains = new ArrayList<>();
+        List<String> patterns = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(context.getAssets().open(LIST_ASSET), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                parseRule(line.trim(), blockedDomains, allowedDomains, patterns);
+            }
+        }
+
+        long[] blockedSorted = hashAll(blockedDomains);
+        long[] allowedSorted = hashAll(allowedDomains);
+        int bits = Math.max(64, blockedSorted.length * BLOOM_BITS_PER_DOMAIN);
+        long[] bloomWords = new long[(bits + 63) / 64];
+        bits = bloomWords.length * 64;
+        for (long h : blockedSorted) {
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bits;
+                bloomWords[bit >>> 6] |= 1L << (bit & 63);
+            }
+        }
+
+        File tmp = new File(compiledFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(version);
+            out.writeInt(bits);
+            out.writeInt(bloomWords.length);
+            out.writeInt(blockedSorted.length);
+            out.writeInt(allowedSorted.length);
+            out.writeInt(patterns.size());
+            out.writeInt(0);
+            for (long w : bloomWords) out.writeLong(w);
+            for (long h : blockedSorted) out.writeLong(h);
+            for (long h : allowedSorted) out.writeLong(h);
+            for (String p : patterns) {
+                byte[] bytes = p.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(bytes.length);
+                out.write(bytes);
+            }
+        }
+        if (!tmp.renameTo(compiledFile)) {
+            throw new IOException("Could not install compiled filter list");
+        }
+    }
+
+    static void parseRule(String line, List<String> blocked, List<String> allowed, List<String> patterns) {
+        if (line.isEmpty() || line.startsWith("!") || line.startsWith("[")) return;
+        boolean exception = line.startsWith("@@");
+        String rule = exception ? line.substring(2) : line;
+        if (rule.startsWith("||") && rule.endsWith("^")) {
+            String domain = rule.substring(2, rule.length() - 1).toLowerCase();
+            (exception ? allowed : blocked).add(domain);
+        } else if (!exception && rule.length() >= 4 && rule.length() < 0xffff) {
+            patterns.add(rule.toLowerCase());
+        }
+    }
+
+    private static long[] hashAll(List<String> domains) {
+        long[] hashes = new long[domains.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = fnv1a64(domains.get(i), 0);
+        }
+        Arrays.sort(hashes);
+        return hashes;
+    }
+
+    @SuppressWarnings("deprecation")
+    private long appVersion() {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return info.lastUpdateTime ^ ((long) info.versionCode << 40);
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("enabled", enabled);
+            stats.put("loaded", loaded);
+            stats.put("compiledThisRun", compiled);
+            stats.put("loadMs", loadMs);
+            stats.put("domainRules", loaded ? blockedHashes.capacity() : 0);
+            stats.put("pathRules", loaded ? pathRules.size() : 0);
+            stats.put("checked", checked);
+            stats.put("blocked", blocked);
+            stats.put("avgMatchMicros", checked > 0 ? matchNanosTotal / checked / 1000.0 : 0);
+            stats.put("maxMatchMicros", matchNanosMax / 1000.0);
+            JSONArray pageList = new JSONArray();
+            for (Map.Entry<Integer, PageStats> e : pages.entrySet()) {
+                JSONObject page = new JSONObject();
+                page.put("tabId", e.getKey());
+                page.put("url", e.getValue().url);
+                page.put("blocked", e.getValue().blocked);
+                page.put("hosts", new JSONObject(e.getValue().byHost));
+                pageList.put(page);
+            }
+            stats.put("pages", pageList);
+        } catch (Exception e) {
+            Log.e(TAG, "Error building stats", e);
+        }
+        return stats;
+    }
+
+    synchronized int blockedOnPage(int tabId) {
+        PageStats page = pages.get(tabId);
+        return page != null ? page.blocked : 0;
+    }
+}
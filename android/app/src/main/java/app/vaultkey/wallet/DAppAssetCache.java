@@ -0,0 +1,832 @@
+package app.vaultkey.wallet;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+// Opt-in disk cache for dApp static assets (scripts, styles, fonts, wasm).
+// Entries are indexed by URL and carry the response validators; bodies are
+// stored once per SHA-256 content hash, so the same bundle served from
+// several URLs or re-deployed unchanged occupies a single blob. A miss is
+// streamed to the WebView as it arrives and written to disk on the way.
+// Only immutable or fingerprinted entries, and others within their
+// max-age, are served without asking the server; the rest are revalidated
+// with their ETag or Last-Modified before the WebView gets an answer.
+// Responses that depend on who asked (private, Vary, a CORS grant for one
+// origin) are passed through without being stored, since the index is
+// keyed by URL alone.
+class DAppAssetCache {
+    private static final String TAG = "DAppAssetCache";
+    private static final String PREFS = "dapp_asset_cache";
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_ASSET_BYTES = 8 * 1024 * 1024;
+    // A content hash before the extension: hex, or 8+ alphanumerics with at
+    // least one digit (main.3f2a9c1b.js, index-BfT3k9aZ.js). Plain names such
+    // as google-analytics.js or app-settings.js do not qualify.
+    private static final Pattern FINGERPRINTED =
+        Pattern.compile(".*[.\\-_@~](?:[0-9a-fA-F]{8,}|(?=[A-Za-z]*[0-9])[A-Za-z0-9]{8,})\\.[a-z0-9]+$");
+    private static final String[] REPLAYED_HEADERS = {
+        "Access-Control-Allow-Origin", "Access-Control-Allow-Credentials",
+        "Access-Control-Expose-Headers", "Timing-Allow-Origin", "Cross-Origin-Resource-Policy"
+    };
+
+    private static DAppAssetCache instance;
+
+    private final File blobDir;
+    private final File indexFile;
+    private final SharedPreferences prefs;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Integer> blobRefs = new HashMap<>();
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private long totalBytes = 0;
+    private boolean indexDirty = false;
+    private volatile boolean enabled;
+    private volatile long maxBytes;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+    private final AtomicLong bytesFetched = new AtomicLong();
+
+    static class Entry {
+        String url;
+        String hash;
+        long size;
+        String mimeType;
+        String encoding;
+        String etag;
+        String lastModified;
+        boolean immutable;
+        // From Cache-Control: -1 when the response gave no max-age.
+        long maxAgeMs = -1;
+        boolean noCache;
+        long storedAt;
+        Map<String, String> headers = new HashMap<>();
+    }
+
+    static synchronized DAppAssetCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new DAppAssetCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DAppAssetCache(Context context) {
+        File root = new File(context.getCacheDir(), "dapp-assets");
+        blobDir = new File(root, "blobs");
+        indexFile = new File(root, "index.json");
+        prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        enabled = prefs.getBoolean("enabled", false);
+        maxBytes = prefs.getLong("maxBytes", DEFAULT_MAX_BYTES);
+        if (enabled) {
+            ioExecutor.execute(this::loadIndex);
+        }
+    }
+
+    void configure(boolean enabled, long maxBytes) {
+        boolean wasEnabled = this.enabled;
+        this.enabled = enabled;
+        this.maxBytes = maxBytes > 0 ? maxBytes : DEFAULT_MAX_BYTES;
+        prefs.edit().putBoolean("enabled", enabled).putLong("maxBytes", this.maxBytes).apply();
+        ioExecutor.execute(() -> {
+            if (enabled && !wasEnabled) {
+                loadIndex();
+            }
+            synchronized (this) {
+                evictToFit(0);
+            }
+            saveIndexIfDirty();
+        });
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    static boolean isCacheableUrl(Uri uri) {
+        String scheme = uri.getScheme();
+        if (!"https".equals(scheme) && !"http".equals(scheme)) return false;
+        String path = uri.getPath();
+        if (path == null) return false;
+        path = path.toLowerCase(Locale.US);
+        return path.endsWith(".js") || path.endsWith(".mjs") || path.endsWith(".css")
+            || path.endsWith(".woff") || path.endsWith(".woff2") || path.endsWith(".ttf")
+            || path.endsWith(".otf") || path.endsWith(".wasm");
+    }
+
+    // Called from WebViewClient.shouldInterceptRequest on a WebView IO thread.
+    // Returns null to let the WebView network stack handle the request.
+    WebResourceResponse intercept(WebResourceRequest request) {
+        if (!enabled || !"GET".equalsIgnoreCase(request.getMethod())) return null;
+        if (request.getRequestHeaders().containsKey("Range")) return null;
+        Uri uri = request.getUrl();
+        if (!isCacheableUrl(uri)) return null;
+
+        requests.incrementAndGet();
+        String url = uri.toString();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(url);
+        }
+
+        if (entry != null && isFresh(entry, System.currentTimeMillis())) {
+            InputStream body = openBlob(entry.hash);
+            if (body != null) {
+                hits.incrementAndGet();
+                bytesSaved.addAndGet(entry.size);
+                return toResponse(entry, body);
+            }
+            synchronized (this) {
+                removeEntry(url);
+            }
+        } else if (entry != null && (entry.etag != null || entry.lastModified != null)) {
+            try {
+                return revalidate(entry, request.getRequestHeaders());
+            } catch (Exception e) {
+                // Never fall back to the stale copy: the WebView asks the
+                // network itself.
+                Log.w(TAG, "Revalidation failed, falling back to WebView: " + url, e);
+                return null;
+            }
+        }
+
+        misses.incrementAndGet();
+        try {
+            return fetchAndStore(url, request.getRequestHeaders());
+        } catch (Exception e) {
+            Log.w(TAG, "Fetch failed, falling back to WebView: " + url, e);
+            return null;
+        }
+    }
+
+    // Fills the cache without an originating WebView request. Returns the
+    // number of bytes downloaded, 0 if already cached, or -1 on failure.
+    long prefetch(String url, Map<String, String> headers) {
+        if (!enabled || !isCacheableUrl(Uri.parse(url))) return -1;
+        synchronized (this) {
+            if (entries.containsKey(url)) return 0;
+        }
+        try {
+            long before = bytesFetched.get();
+            WebResourceResponse response = fetchAndStore(url, headers);
+            if (response == null || response.getStatusCode() != 200) {
+                if (response != null && response.getData() != null) response.getData().close();
+                return -1;
+            }
+            // Reading to the end is what stores the body.
+            try (InputStream body = response.getData()) {
+                byte[] buffer = new byte[16 * 1024];
+                while (body.read(buffer) != -1) {
+                    // drain
+                }
+            }
+            return bytesFetched.get() - before;
+        } catch (Exception e) {
+            Log.w(TAG, "Prefetch failed: " + url, e);
+            return -1;
+        }
+    }
+
+    // Returns once the response headers are in; the body is read by the
+    // caller through the returned stream, which stores it when it reaches
+    // the end.
+    private WebResourceResponse fetchAndStore(String url, Map<String, String> requestHeaders) throws IOException {
+        return respond(url, openConnection(url, requestHeaders));
+    }
+
+    private WebResourceResponse respond(String url, HttpURLConnection conn) throws IOException {
+        try {
+            int status = conn.getResponseCode();
+            String contentType = conn.getContentType();
+            String mimeType = mimeTypeOf(contentType, url);
+            String encoding = charsetOf(contentType);
+
+            if (status != 200) {
+                InputStream err = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+                InputStream body;
+                if (err != null) {
+                    body = new ConnectionInputStream(conn, err);
+                } else {
+                    conn.disconnect();
+                    body = new ByteArrayInputStream(new byte[0]);
+                }
+                return new WebResourceResponse(mimeType, encoding, status, reasonOf(conn), collectHeaders(conn), body);
+            }
+
+            Entry entry = new Entry();
+            entry.url = url;
+            entry.mimeType = mimeType;
+            entry.encoding = encoding;
+            entry.etag = conn.getHeaderField("ETag");
+            entry.lastModified = conn.getHeaderField("Last-Modified");
+            entry.headers = collectHeaders(conn);
+            entry.storedAt = System.currentTimeMillis();
+            applyCacheControl(entry, conn.getHeaderField("Cache-Control"));
+
+            InputStream body = isStorable(conn)
+                ? new StoringInputStream(conn, entry, Math.min(MAX_ASSET_BYTES, maxBytes / 4))
+                : new CountingInputStream(conn);
+            return new WebResourceResponse(mimeType, encoding, 200, "OK", entry.headers, body);
+        } catch (IOException | RuntimeException e) {
+            conn.disconnect();
+            throw e;
+        }
+    }
+
+    // Whether a 200 can be replayed to any later request for the URL.
+    private static boolean isStorable(HttpURLConnection conn) {
+        String cacheControl = conn.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            String cc = cacheControl.toLowerCase(Locale.US);
+            if (cc.contains("no-store") || cc.contains("private")) return false;
+        }
+        String vary = conn.getHeaderField("Vary");
+        if (vary != null) {
+            for (String field : vary.split(",")) {
+                if (!field.trim().isEmpty() && !"accept-encoding".equalsIgnoreCase(field.trim())) return false;
+            }
+        }
+        String allowOrigin = conn.getHeaderField("Access-Control-Allow-Origin");
+        return allowOrigin == null || "*".equals(allowOrigin.trim());
+    }
+
+    // The same check for headers kept in the index by earlier versions.
+    private static boolean isStorable(Entry entry) {
+        String allowOrigin = entry.headers.get("Access-Control-Allow-Origin");
+        return allowOrigin == null || "*".equals(allowOrigin.trim());
+    }
+
+    private static void applyCacheControl(Entry entry, String cacheControl) {
+        String cc = cacheControl != null ? cacheControl.toLowerCase(Locale.US) : "";
+        entry.maxAgeMs = maxAgeMsOf(cc);
+        entry.noCache = cc.contains("no-cache");
+        // The file-name heuristic never overrides an explicit no-cache.
+        entry.immutable = cc.contains("immutable")
+            || (!entry.noCache && FINGERPRINTED.matcher(Uri.parse(entry.url).getPath()).matches());
+    }
+
+    static long maxAgeMsOf(String cacheControl) {
+        for (String directive : cacheControl.split(",")) {
+            String d = directive.trim();
+            if (!d.startsWith("max-age=")) continue;
+            try {
+                return Math.max(0, Long.parseLong(d.substring(8).replace("\"", "").trim())) * 1000;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return -1;
+    }
+
+    // Whether an entry may be served without asking the server. Without a
+    // max-age there is no freshness to go on, so the entry is revalidated;
+    // must-revalidate needs nothing extra since stale entries never are
+    // served unchecked.
+    static boolean isFresh(Entry entry, long now) {
+        if (entry.immutable) return true;
+        if (entry.noCache || entry.maxAgeMs <= 0) return false;
+        return now - entry.storedAt < entry.maxAgeMs;
+    }
+
+    // Conditional request for a stale entry, made before the WebView is
+    // answered. A 304 is served from disk; anything else is handled like a
+    // miss, replacing the entry when the new body is stored.
+    private WebResourceResponse revalidate(Entry entry, Map<String, String> requestHeaders) throws IOException {
+        revalidations.incrementAndGet();
+        Map<String, String> headers = new HashMap<>(requestHeaders);
+        if (entry.etag != null) headers.put("If-None-Match", entry.etag);
+        if (entry.lastModified != null) headers.put("If-Modified-Since", entry.lastModified);
+
+        HttpURLConnection conn = openConnection(entry.url, headers);
+        int status;
+        try {
+            status = conn.getResponseCode();
+        } catch (IOException | RuntimeException e) {
+            conn.disconnect();
+            throw e;
+        }
+        if (status == 304) {
+            String cacheControl = conn.getHeaderField("Cache-Control");
+            conn.disconnect();
+            notModified.incrementAndGet();
+            InputStream body = openBlob(entry.hash);
+            synchronized (this) {
+                if (body == null) {
+                    removeEntry(entry.url);
+                } else {
+                    entry.storedAt = System.currentTimeMillis();
+                    if (cacheControl != null) applyCacheControl(entry, cacheControl);
+                    indexDirty = true;
+                }
+            }
+            ioExecutor.execute(this::saveIndexIfDirty);
+            if (body == null) return null;
+            hits.incrementAndGet();
+            bytesSaved.addAndGet(entry.size);
+            return toResponse(entry, body);
+        }
+
+        misses.incrementAndGet();
+        if (status == 404 || status == 410 || (status == 200 && !isStorable(conn))) {
+            synchronized (this) {
+                removeEntry(entry.url);
+            }
+            ioExecutor.execute(this::saveIndexIfDirty);
+        }
+        return respond(entry.url, conn);
+    }
+
+    private HttpURLConnection openConnection(String url, Map<String, String> headers) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(15000);
+        conn.setReadTimeout(30000);
+        conn.setInstanceFollowRedirects(true);
+        if (headers != null) {
+            for (Map.Entry<String, String> h : headers.entrySet()) {
+                // Left to HttpURLConnection so bodies are stored decoded.
+                if ("Accept-Encoding".equalsIgnoreCase(h.getKey())) continue;
+                conn.setRequestProperty(h.getKey(), h.getValue());
+            }
+        }
+        String cookies = CookieManager.getInstance().getCookie(url);
+        if (cookies != null && !cookies.isEmpty()) {
+            conn.setRequestProperty("Cookie", cookies);
+        }
+        return conn;
+    }
+
+    private WebResourceResponse toResponse(Entry entry, InputStream body) {
+        Map<String, String> headers = new HashMap<>(entry.headers);
+        headers.put("Content-Length", String.valueOf(entry.size));
+        return new WebResourceResponse(entry.mimeType, entry.encoding, 200, "OK", headers, body);
+    }
+
+    private InputStream openBlob(String hash) {
+        File file = new File(blobDir, hash);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedInputStream(mapped);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void putEntry(Entry entry) {
+        // Take the new reference first so an unchanged body is never deleted
+        // while its entry is being replaced.
+        Integer refs = blobRefs.get(entry.hash);
+        if (refs == null) {
+            blobRefs.put(entry.hash, 1);
+            totalBytes += entry.size;
+        } else {
+            blobRefs.put(entry.hash, refs + 1);
+        }
+        Entry old = entries.put(entry.url, entry);
+        if (old != null) {
+            releaseBlob(old);
+        }
+        indexDirty = true;
+    }
+
+    private void removeEntry(String url) {
+        Entry old = entries.remove(url);
+        if (old != null) {
+            releaseBlob(old);
+            indexDirty = true;
+        }
+    }
+
+    private void releaseBlob(Entry entry) {
+        Integer refs = blobRefs.get(entry.hash);
+        if (refs == null || refs <= 1) {
+            blobRefs.remove(entry.hash);
+            totalBytes -= entry.size;
+            new File(blobDir, entry.hash).delete();
+        } else {
+            blobRefs.put(entry.hash, refs - 1);
+        }
+    }
+
+    // Drops least recently used entries until the store fits its budget.
+    private void evictToFit(long incoming) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (totalBytes + incoming > maxBytes && it.hasNext()) {
+            Entry old = it.next();
+            it.remove();
+            releaseBlob(old);
+            indexDirty = true;
+        }
+    }
+
+    private void scheduleIndexSave() {
+        ioExecutor.execute(this::saveIndexIfDirty);
+    }
+
+    private void loadIndex() {
+        if (!indexFile.exists()) return;
+        try (FileInputStream in = new FileInputStream(indexFile)) {
+            JSONArray list = new JSONArray(new String(readFully(in, Integer.MAX_VALUE), StandardCharsets.UTF_8));
+            synchronized (this) {
+                // Entries stored while the index was loading are newer than
+                // anything in it: they win, and stay most recently used.
+                List<Entry> stored = new ArrayList<>(entries.values());
+                // The index is written in LRU order, so inserting in order restores recency.
+                for (int i = 0; i < list.length(); i++) {
+                    JSONObject o = list.getJSONObject(i);
+                    Entry e = new Entry();
+                    e.url = o.getString("url");
+                    e.hash = o.getString("hash");
+                    e.size = o.getLong("size");
+                    e.mimeType = o.optString("mime", "application/octet-stream");
+                    e.encoding = o.optString("enc", null);
+                    e.etag = o.optString("etag", null);
+                    e.lastModified = o.optString("lm", null);
+                    e.immutable = o.optBoolean("imm", false);
+                    e.maxAgeMs = o.optLong("ma", -1);
+                    e.noCache = o.optBoolean("nc", false);
+                    e.storedAt = o.optLong("at", 0);
+                    JSONObject h = o.optJSONObject("h");
+                    if (h != null) {
+                        Iterator<String> keys = h.keys();
+                        while (keys.hasNext()) {
+                            String k = keys.next();
+                            e.headers.put(k, h.getString(k));
+                        }
+                    }
+                    if (entries.containsKey(e.url) || !new File(blobDir, e.hash).exists()) continue;
+                    if (!isStorable(e)) {
+                        if (!blobRefs.containsKey(e.hash)) new File(blobDir, e.hash).delete();
+                        indexDirty = true;
+                        continue;
+                    }
+                    putEntry(e);
+                }
+                for (Entry e : stored) {
+                    entries.get(e.url);
+                }
+                indexDirty = !stored.isEmpty() || indexDirty;
+                evictToFit(0);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Discarding unreadable asset index", e);
+            indexFile.delete();
+        }
+    }
+
+    private void saveIndexIfDirty() {
+        JSONArray list = new JSONArray();
+        synchronized (this) {
+            if (!indexDirty) return;
+            try {
+                for (Entry e : entries.values()) {
+                    JSONObject o = new JSONObject();
+                    o.put("url", e.url);
+                    o.put("hash", e.hash);
+                    o.put("size", e.size);
+                    o.put("mime", e.mimeType);
+                    if (e.encoding != null) o.put("enc", e.encoding);
+                    if (e.etag != null) o.put("etag", e.etag);
+                    if (e.lastModified != null) o.put("lm", e.lastModified);
+                    o.put("imm", e.immutable);
+                    o.put("ma", e.maxAgeMs);
+                    o.put("nc", e.noCache);
+                    o.put("at", e.storedAt);
+                    o.put("h", new JSONObject(e.headers));
+                    list.put(o);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error serializing asset index", e);
+                return;
+            }
+            indexDirty = false;
+        }
+
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try {
+            indexFile.getParentFile().mkdirs();
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                out.write(list.toString().getBytes(StandardCharsets.UTF_8));
+            }
+            if (!tmp.renameTo(indexFile)) {
+                Log.w(TAG, "Could not replace asset index");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error writing asset index", e);
+        }
+    }
+
+    synchronized void clear() {
+        for (String hash : blobRefs.keySet()) {
+            new File(blobDir, hash).delete();
+        }
+        entries.clear();
+        blobRefs.clear();
+        totalBytes = 0;
+        indexDirty = true;
+        scheduleIndexSave();
+    }
+
+    JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            long total = requests.get();
+            stats.put("enabled", enabled);
+            stats.put("requests", total);
+            stats.put("hits", hits.get());
+            stats.put("misses", misses.get());
+            stats.put("hitRate", total > 0 ? (double) hits.get() / total : 0.0);
+            stats.put("bytesSaved", bytesSaved.get());
+            stats.put("bytesFetched", bytesFetched.get());
+            stats.put("revalidations", revalidations.get());
+            stats.put("notModified", notModified.get());
+            synchronized (this) {
+                stats.put("entries", entries.size());
+                stats.put("blobs", blobRefs.size());
+                stats.put("sizeBytes", totalBytes);
+            }
+            stats.put("maxBytes", maxBytes);
+        } catch (Exception e) {
+            Log.e(TAG, "Error building stats", e);
+        }
+        return stats;
+    }
+
+    private static Map<String, String> collectHeaders(HttpURLConnection conn) {
+        Map<String, String> headers = new HashMap<>();
+        for (String name : REPLAYED_HEADERS) {
+            String value = conn.getHeaderField(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        return headers;
+    }
+
+    private static String reasonOf(HttpURLConnection conn) {
+        try {
+            String reason = conn.getResponseMessage();
+            return reason != null && !reason.isEmpty() ? reason : "Status";
+        } catch (IOException e) {
+            return "Status";
+        }
+    }
+
+    private static String mimeTypeOf(String contentType, String url) {
+        if (contentType != null && !contentType.isEmpty()) {
+            int semi = contentType.indexOf(';');
+            return (semi >= 0 ? contentType.substring(0, semi) : contentType).trim();
+        }
+        String path = url.toLowerCase(Locale.US);
+        if (path.contains(".css")) return "text/css";
+        if (path.contains(".wasm")) return "application/wasm";
+        if (path.contains(".woff2")) return "font/woff2";
+        if (path.contains(".woff")) return "font/woff";
+        if (path.contains(".js") || path.contains(".mjs")) return "application/javascript";
+        return "application/octet-stream";
+    }
+
+    private static String charsetOf(String contentType) {
+        if (contentType == null) return null;
+        int idx = contentType.toLowerCase(Locale.US).indexOf("charset=");
+        if (idx < 0) return null;
+        String charset = contentType.substring(idx + 8).trim();
+        int semi = charset.indexOf(';');
+        return (semi >= 0 ? charset.substring(0, semi) : charset).replace("\"", "");
+    }
+
+    static class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        TooLargeException(int limit) {
+            super("Asset exceeds " + limit + " bytes");
+        }
+    }
+
+    static byte[] readFully(InputStream in, int limit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        byte[] buffer = new byte[16 * 1024];
+        int n;
+        try {
+            while ((n = in.read(buffer)) != -1) {
+                if (out.size() + n > limit) {
+                    throw new TooLargeException(limit);
+                }
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    // A response body read straight from the connection, which is released
+    // when the WebView closes the stream.
+    private class ConnectionInputStream extends FilterInputStream {
+        private final HttpURLConnection conn;
+
+        ConnectionInputStream(HttpURLConnection conn, InputStream in) {
+            super(in);
+            this.conn = conn;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) bytesFetched.addAndGet(n);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                conn.disconnect();
+            }
+        }
+    }
+
+    private class CountingInputStream extends ConnectionInputStream {
+        CountingInputStream(HttpURLConnection conn) throws IOException {
+            super(conn, conn.getInputStream());
+        }
+    }
+
+    // Copies the body to a temporary file and digest as the WebView reads
+    // it, and adds the entry once the body is complete. A body that grows
+    // past limit is still streamed, just not stored; one abandoned before
+    // its end is discarded.
+    private class StoringInputStream extends ConnectionInputStream {
+        private final Entry entry;
+        private final long limit;
+        private final MessageDigest digest;
+        private File tmp;
+        private FileOutputStream out;
+        private long size = 0;
+
+        StoringInputStream(HttpURLConnection conn, Entry entry, long limit) throws IOException {
+            super(conn, conn.getInputStream());
+            this.entry = entry;
+            this.limit = limit;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (Exception e) {
+                throw new IOException("SHA-256 unavailable", e);
+            }
+            if (!blobDir.exists() && !blobDir.mkdirs()) {
+                throw new IOException("Cannot create " + blobDir);
+            }
+            tmp = File.createTempFile("fetch", ".tmp", blobDir);
+            out = new FileOutputStream(tmp);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (out == null) return n;
+            if (n == -1) {
+                store();
+            } else if (n > 0) {
+                size += n;
+                if (size > limit) {
+                    abandon();
+                } else {
+                    try {
+                        out.write(b, off, n);
+                        digest.update(b, off, n);
+                    } catch (IOException e) {
+                        Log.w(TAG, "Not caching " + entry.url, e);
+                        abandon();
+                    }
+                }
+            }
+            return n;
+        }
+
+        private void store() {
+            try {
+                out.getFD().sync();
+                out.close();
+                out = null;
+                entry.hash = hex(digest.digest());
+                entry.size = size;
+                File target = new File(blobDir, entry.hash);
+                if (target.exists() && target.length() == size) {
+                    tmp.delete();
+                } else if (!tmp.renameTo(target)) {
+                    throw new IOException("Cannot store blob " + entry.hash);
+                }
+                tmp = null;
+                synchronized (DAppAssetCache.this) {
+                    putEntry(entry);
+                    evictToFit(0);
+                }
+                scheduleIndexSave();
+            } catch (IOException e) {
+                Log.w(TAG, "Not caching " + entry.url, e);
+                abandon();
+            }
+        }
+
+        private void abandon() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+                out = null;
+            }
+            if (tmp != null) {
+                tmp.delete();
+                tmp = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            abandon();
+            super.close();
+        }
+    }
+
+    private static class MappedInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
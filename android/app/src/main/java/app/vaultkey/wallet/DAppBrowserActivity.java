@@ -2,6 +2,7 @@ package app.vaultkey.wallet;
 
 import android.annotation.SuppressLint;
 import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -10,22 +11,28 @@ import android.graphics.Color;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.inputmethod.EditorInfo;
 import android.webkit.CookieManager;
 import android.webkit.JavascriptInterface;
+import android.webkit.RenderProcessGoneDetail;
 import android.webkit.WebChromeClient;
 import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.FrameLayout;
+import android.widget.HorizontalScrollView;
 import android.widget.LinearLayout;
 import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
@@ -33,7 +40,15 @@ import androidx.webkit.WebSettingsCompat;
 import androidx.webkit.WebViewCompat;
 import androidx.webkit.WebViewFeature;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DAppBrowserActivity extends AppCompatActivity {
     private static final String TAG = "DAppBrowserActivity";
@@ -41,14 +56,28 @@ public class DAppBrowserActivity extends AppCompatActivity {
     public static final String EXTRA_URL = "url";
     public static final String EXTRA_ADDRESS = "address";
     public static final String EXTRA_CHAIN_ID = "chainId";
+    public static final String EXTRA_MAX_LIVE_TABS = "maxLiveTabs";
+    public static final String EXTRA_RESTORE_SESSION = "restoreSession";
+    
+    static final String USER_AGENT = "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Mobile Safari/537.36 VaultKey/1.0";
+    
+    private static final int DEFAULT_MAX_LIVE_TABS = 3;
     
     public static final String ACTION_WEB3_REQUEST = "app.vaultkey.wallet.WEB3_REQUEST";
     public static final String ACTION_WEB3_RESPONSE = "app.vaultkey.wallet.WEB3_RESPONSE";
     public static final String ACTION_BROWSER_EVENT = "app.vaultkey.wallet.BROWSER_EVENT";
     public static final String ACTION_CLOSE_BROWSER = "app.vaultkey.wallet.CLOSE_BROWSER";
     public static final String ACTION_UPDATE_ACCOUNT = "app.vaultkey.wallet.UPDATE_ACCOUNT";
+    public static final String ACTION_WEB3_CANCEL = "app.vaultkey.wallet.WEB3_CANCEL";
+    private static final long READ_TIMEOUT_MS = 120000;
+    private static final long SIGN_TIMEOUT_MS = 300000;
+    // Dispatch key for account and chain updates; only the latest queued
+    // one reaches the page.
+    private static final String ACCOUNT_UPDATE = "account";
     
     private WebView webView;
+    private FrameLayout webViewContainer;
+    private LinearLayout tabStrip;
     private ProgressBar progressBar;
     private EditText urlInput;
     private Button backButton;
@@ -56,21 +85,49 @@ public class DAppBrowserActivity extends AppCompatActivity {
     private Button refreshButton;
     private Button closeButton;
     
-    private String currentAddress = "";
-    private int currentChainId = 1;
+    // Read by the bridge on binder threads.
+    private volatile String currentAddress = "";
+    private volatile int currentChainId = 1;
     private String rpcUrl = "https://eth.llamarpc.com";
     
+    private final List<BrowserTab> tabs = new ArrayList<>();
+    private BrowserTab activeTab;
+    private int nextTabId = 1;
+    private int maxLiveTabs = DEFAULT_MAX_LIVE_TABS;
+    
+    // Page-local callback ids are only unique per document, so requests are
+    // re-keyed with a global id and routed back to the tab that issued them.
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    private final PendingRequestRegistry<PendingCallback> requestRegistry = new PendingRequestRegistry<>(this::onRequestExpired);
+    private final Map<String, PageSubscription> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSubscriptionId = new AtomicInteger(1);
+    
     private BroadcastReceiver responseReceiver;
     private BroadcastReceiver closeReceiver;
     private BroadcastReceiver updateReceiver;
     
+    private DAppAssetCache assetCache;
+    private ContentBlocker contentBlocker;
+    private BrowserSessionStore sessionStore;
+    // Chain each origin last used, so a restored page comes back on it.
+    private final Map<String, Integer> originChains = new ConcurrentHashMap<>();
+    private final ExecutorService nativeRpcExecutor = Executors.newFixedThreadPool(4);
+    // Cancelled signer requests whose nonce waits for the signer's ack.
+    private final Map<Integer, PendingCallback> awaitingAbort = new ConcurrentHashMap<>();
+    // Work the user is waiting on (preflights, URL-bar ENS lookups). Tasks
+    // block in RpcScheduler.acquire, so they get their own threads rather
+    // than queueing behind page reads on nativeRpcExecutor.
+    private final ExecutorService userRpcExecutor = Executors.newFixedThreadPool(2);
+    
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        long createdAt = SystemClock.elapsedRealtime();
         
         String url = getIntent().getStringExtra(EXTRA_URL);
         currentAddress = getIntent().getStringExtra(EXTRA_ADDRESS);
         currentChainId = getIntent().getIntExtra(EXTRA_CHAIN_ID, 1);
+        maxLiveTabs = Math.max(1, getIntent().getIntExtra(EXTRA_MAX_LIVE_TABS, DEFAULT_MAX_LIVE_TABS));
         rpcUrl = getRpcUrl(currentChainId);
         
         if (url == null || url.isEmpty()) {
@@ -80,13 +137,119 @@ public class DAppBrowserActivity extends AppCompatActivity {
         
         Log.d(TAG, "Opening browser - URL: " + url + ", Address: " + currentAddress + ", ChainId: " + currentChainId);
         
+        assetCache = DAppAssetCache.getInstance(this);
+        EnsResolver.init(this);
+        contentBlocker = ContentBlocker.getInstance(this);
+        if (contentBlocker.isEnabled()) {
+            nativeRpcExecutor.execute(() -> {
+                try {
+                    contentBlocker.ensureLoaded();
+                } catch (Exception e) {
+                    Log.w(TAG, "Content blocker failed to load", e);
+                }
+            });
+        }
+        
+        sessionStore = BrowserSessionStore.getInstance(this);
+        
         createUI();
         setupBroadcastReceivers();
-        loadUrl(url);
+        if (!getIntent().getBooleanExtra(EXTRA_RESTORE_SESSION, true) || !restoreSession(url, createdAt)) {
+            openTab(url);
+        }
         
         sendBrowserEvent(url, true);
     }
     
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        setIntent(intent);
+        
+        // A re-open from the wallet carries the account and chain it wants
+        // injected, which may differ from the ones this instance started with.
+        boolean accountChanged = false;
+        String address = intent.getStringExtra(EXTRA_ADDRESS);
+        if (address != null && !address.equals(currentAddress)) {
+            currentAddress = address;
+            accountChanged = true;
+        }
+        if (intent.hasExtra(EXTRA_CHAIN_ID)) {
+            int chainId = intent.getIntExtra(EXTRA_CHAIN_ID, currentChainId);
+            if (chainId != currentChainId) {
+                currentChainId = chainId;
+                rpcUrl = getRpcUrl(currentChainId);
+                accountChanged = true;
+            }
+        }
+        if (intent.hasExtra(EXTRA_MAX_LIVE_TABS)) {
+            maxLiveTabs = Math.max(1, intent.getIntExtra(EXTRA_MAX_LIVE_TABS, maxLiveTabs));
+            enforceLiveTabBudget(maxLiveTabs);
+        }
+        if (accountChanged) {
+            updateWebViewAccount();
+        }
+        
+        String url = intent.getStringExtra(EXTRA_URL);
+        if (url == null || url.isEmpty()) return;
+        
+        for (BrowserTab tab : tabs) {
+            if (url.equals(tab.url)) {
+                selectTab(tab);
+                return;
+            }
+        }
+        openTab(url);
+    }
+    
+    // Rebuilds the tabs of the previous session. Background tabs come back
+    // suspended and only get a renderer when selected; the requested URL is
+    // selected if it was already open, otherwise opened in a new tab.
+    private boolean restoreSession(String url, long createdAt) {
+        BrowserSessionStore.Snapshot snapshot = sessionStore.load();
+        if (snapshot == null || snapshot.tabs.isEmpty()) return false;
+        
+        BrowserTab target = null;
+        for (BrowserSessionStore.TabSnapshot snap : snapshot.tabs) {
+            if (snap.url == null || snap.url.isEmpty()) continue;
+            BrowserTab tab = new BrowserTab(snap.id, snap.url);
+            tab.title = snap.title;
+            tab.savedState = snap.state;
+            tab.restoredBack.addAll(snap.backStack);
+            tab.scrollX = snap.scrollX;
+            tab.scrollY = snap.scrollY;
+            tab.restoreScroll = true;
+            tabs.add(tab);
+            nextTabId = Math.max(nextTabId, snap.id + 1);
+            if (target == null && url.equals(snap.url)) target = tab;
+        }
+        if (tabs.isEmpty()) return false;
+        originChains.putAll(snapshot.originChains);
+        Log.d(TAG, "Restoring " + tabs.size() + " tabs from session");
+        
+        if (target == null) {
+            target = new BrowserTab(nextTabId++, url);
+            tabs.add(target);
+        }
+        target.resumeStartedAt = createdAt;
+        target.resumeKind = "resume";
+        selectTab(target);
+        return true;
+    }
+    
+    // Snapshots every tab and hands the result to the session store, which
+    // writes it off the main thread. Must run on the main thread.
+    private void saveSession(boolean immediate) {
+        if (sessionStore == null || tabs.isEmpty()) return;
+        BrowserSessionStore.Snapshot snapshot = new BrowserSessionStore.Snapshot();
+        for (BrowserTab tab : tabs) {
+            snapshot.tabs.add(tab.snapshot());
+        }
+        snapshot.activeTabId = activeTab != null ? activeTab.id : -1;
+        snapshot.originChains.putAll(originChains);
+        sessionStore.save(snapshot, immediate);
+    }
+    
     private void createUI() {
         LinearLayout root = new LinearLayout(this);
         root.setOrientation(LinearLayout.VERTICAL);
@@ -139,8 +302,8 @@ public class DAppBrowserActivity extends AppCompatActivity {
         
         backButton = createTextButton("\u25C0", density);
         backButton.setOnClickListener(v -> {
-            if (webView != null && webView.canGoBack()) {
-                webView.goBack();
+            if (activeTab != null) {
+                activeTab.goBack();
             }
         });
         header.addView(backButton);
@@ -172,18 +335,185 @@ public class DAppBrowserActivity extends AppCompatActivity {
         progressBar.setProgress(0);
         root.addView(progressBar);
         
-        createWebView();
-        LinearLayout.LayoutParams webViewParams = new LinearLayout.LayoutParams(
+        HorizontalScrollView tabScroller = new HorizontalScrollView(this);
+        tabScroller.setBackgroundColor(Color.parseColor("#12121f"));
+        tabScroller.setHorizontalScrollBarEnabled(false);
+        tabScroller.setLayoutParams(new LinearLayout.LayoutParams(
+            ViewGroup.LayoutParams.MATCH_PARENT,
+            ViewGroup.LayoutParams.WRAP_CONTENT
+        ));
+        tabStrip = new LinearLayout(this);
+        tabStrip.setOrientation(LinearLayout.HORIZONTAL);
+        tabStrip.setPadding((int)(4 * density), (int)(2 * density), (int)(4 * density), (int)(2 * density));
+        tabScroller.addView(tabStrip);
+        root.addView(tabScroller);
+        
+        webViewContainer = new FrameLayout(this);
+        LinearLayout.LayoutParams containerParams = new LinearLayout.LayoutParams(
             ViewGroup.LayoutParams.MATCH_PARENT,
             0,
             1.0f
         );
-        webView.setLayoutParams(webViewParams);
-        root.addView(webView);
+        webViewContainer.setLayoutParams(containerParams);
+        root.addView(webViewContainer);
         
         setContentView(root);
     }
     
+    private void renderTabStrip() {
+        if (tabStrip == null) return;
+        tabStrip.removeAllViews();
+        float density = getResources().getDisplayMetrics().density;
+        
+        for (BrowserTab tab : tabs) {
+            Button tabButton = new Button(this);
+            tabButton.setText(tab.label());
+            tabButton.setAllCaps(false);
+            tabButton.setSingleLine(true);
+            tabButton.setTextSize(12);
+            tabButton.setTextColor(tab == activeTab ? Color.WHITE : Color.parseColor("#888888"));
+            tabButton.setBackgroundColor(tab == activeTab ? Color.parseColor("#2d2d44") : Color.TRANSPARENT);
+            tabButton.setPadding((int)(10 * density), 0, (int)(10 * density), 0);
+            tabButton.setMinWidth(0);
+            tabButton.setMinimumWidth(0);
+            tabButton.setMinHeight(0);
+            tabButton.setMinimumHeight(0);
+            tabButton.setLayoutParams(new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT,
+                (int)(32 * density)
+            ));
+            tabButton.setOnClickListener(v -> selectTab(tab));
+            tabButton.setOnLongClickListener(v -> {
+                closeTab(tab);
+                return true;
+            });
+            tabStrip.addView(tabButton);
+        }
+        
+        Button newTabButton = createTextButton("+", density);
+        newTabButton.setOnClickListener(v -> {
+            openTab(BrowserTab.START_PAGE);
+            urlInput.requestFocus();
+        });
+        tabStrip.addView(newTabButton);
+    }
+    
+    private void openTab(String url) {
+        BrowserTab tab = new BrowserTab(nextTabId++, url);
+        tabs.add(tab);
+        selectTab(tab);
+    }
+    
+    private void selectTab(BrowserTab tab) {
+        if (tab == activeTab && tab.isLive()) return;
+        
+        if (activeTab != null && activeTab.isLive()) {
+            activeTab.webView.setVisibility(View.GONE);
+            activeTab.pause();
+        }
+        
+        activeTab = tab;
+        tab.touch();
+        
+        if (!tab.isLive()) {
+            tab.webView = createWebView(tab);
+            webViewContainer.addView(tab.webView, new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.MATCH_PARENT
+            ));
+            boolean restored = false;
+            if (tab.savedState != null) {
+                restored = tab.webView.restoreState(tab.savedState) != null;
+                tab.savedState = null;
+            }
+            if (!restored) {
+                tab.webView.loadUrl(tab.url);
+            }
+        } else {
+            tab.webView.setVisibility(View.VISIBLE);
+            tab.resume();
+        }
+        
+        webView = tab.webView;
+        showUrl(tab.url);
+        progressBar.setVisibility(View.GONE);
+        updateNavigationButtons();
+        enforceLiveTabBudget(maxLiveTabs);
+        renderTabStrip();
+        sendBrowserEvent(tab.url, false);
+        saveSession(false);
+    }
+    
+    private void closeTab(BrowserTab tab) {
+        int index = tabs.indexOf(tab);
+        if (index < 0) return;
+        
+        tabs.remove(index);
+        cancelRequests(requestRegistry.cancelTab(tab.id), "closed");
+        tab.pendingRequests = 0;
+        dropSubscriptions(tab);
+        if (tab.isLive()) {
+            webViewContainer.removeView(tab.webView);
+            tab.destroyWebView();
+        }
+        
+        if (tabs.isEmpty()) {
+            activeTab = null;
+            webView = null;
+            sessionStore.clear();
+            finish();
+            return;
+        }
+        
+        if (tab == activeTab) {
+            activeTab = null;
+            selectTab(tabs.get(Math.min(index, tabs.size() - 1)));
+        } else {
+            renderTabStrip();
+        }
+    }
+    
+    // Suspends least recently used background tabs until at most liveBudget
+    // tabs (including the active one) still hold a renderer. Tabs with
+    // signing requests in flight are skipped so their callbacks survive.
+    private void enforceLiveTabBudget(int liveBudget) {
+        int live = 0;
+        for (BrowserTab tab : tabs) {
+            if (tab.isLive()) live++;
+        }
+        
+        while (live > Math.max(1, liveBudget)) {
+            BrowserTab victim = null;
+            for (BrowserTab tab : tabs) {
+                if (tab == activeTab || !tab.isLive() || tab.pendingRequests > 0) continue;
+                if (victim == null || tab.lastActiveAt < victim.lastActiveAt) {
+                    victim = tab;
+                }
+            }
+            if (victim == null) break;
+            
+            Log.d(TAG, "Suspending tab " + victim.id + " (" + victim.url + ")");
+            webViewContainer.removeView(victim.webView);
+            victim.suspend();
+            live--;
+        }
+    }
+    
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            enforceLiveTabBudget(1);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            enforceLiveTabBudget(Math.max(1, maxLiveTabs - 1));
+        }
+        renderTabStrip();
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            saveSession(true);
+        }
+    }
+    
     private Button createTextButton(String text, float density) {
         Button btn = new Button(this);
         btn.setText(text);
@@ -208,6 +538,11 @@ public class DAppBrowserActivity extends AppCompatActivity {
     private void navigateToUrl() {
         String url = urlInput.getText().toString().trim();
         if (!url.isEmpty()) {
+            String gateway = EnsResolver.gatewayUrl(url);
+            if (gateway != null) {
+                openEnsName(gateway);
+                return;
+            }
             if (!url.startsWith("http://") && !url.startsWith("https://")) {
                 url = "https://" + url;
             }
@@ -215,9 +550,32 @@ public class DAppBrowserActivity extends AppCompatActivity {
         }
     }
     
+    // .eth names open through the eth.limo gateway. The contenthash lookup
+    // is usually a cache hit; a name known to have no website is reported
+    // instead of loading the gateway's error page.
+    private void openEnsName(String gateway) {
+        String name = EnsResolver.nameOfGatewayHost(Uri.parse(gateway).getHost());
+        userRpcExecutor.execute(() -> {
+            boolean hasContent = true;
+            try {
+                hasContent = EnsResolver.hasContent(name);
+            } catch (Exception e) {
+                Log.w(TAG, "ENS lookup for " + name + " failed, trying the gateway", e);
+            }
+            boolean open = hasContent;
+            runOnUiThread(() -> {
+                if (open) {
+                    loadUrl(gateway);
+                } else {
+                    Toast.makeText(this, name + " has no website", Toast.LENGTH_SHORT).show();
+                }
+            });
+        });
+    }
+    
     @SuppressLint("SetJavaScriptEnabled")
-    private void createWebView() {
-        webView = new WebView(this);
+    private WebView createWebView(BrowserTab tab) {
+        WebView webView = new WebView(this);
         webView.setBackgroundColor(Color.WHITE);
         
         WebSettings settings = webView.getSettings();
@@ -255,14 +613,19 @@ public class DAppBrowserActivity extends AppCompatActivity {
             }
         }
         
-        String ua = "Mozilla/5.0 (Linux; Android 14; Pixel 8) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Mobile Safari/537.36 VaultKey/1.0";
-        settings.setUserAgentString(ua);
+        settings.setUserAgentString(USER_AGENT);
         
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
             WebView.setWebContentsDebuggingEnabled(true);
         }
         
-        webView.addJavascriptInterface(new WalletBridge(), "VaultKeyNative");
+        // Keep the renderer of the visible tab alive under memory pressure;
+        // background tabs are suspended by us instead.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            webView.setRendererPriorityPolicy(WebView.RENDERER_PRIORITY_IMPORTANT, true);
+        }
+        
+        webView.addJavascriptInterface(new WalletBridge(tab), "VaultKeyNative");
         
         String injectionScript = buildInjectionScript();
         
@@ -280,8 +643,15 @@ public class DAppBrowserActivity extends AppCompatActivity {
             @Override
             public void onPageStarted(WebView view, String url, Bitmap favicon) {
                 super.onPageStarted(view, url, favicon);
-                progressBar.setVisibility(View.VISIBLE);
-                urlInput.setText(url);
+                tab.url = url;
+                tab.pageSession++;
+                cancelRequests(requestRegistry.cancelStale(tab.id, tab.pageSession), "navigation");
+                dropSubscriptions(tab);
+                if (tab.firstLoadStartedAt == 0) {
+                    tab.firstLoadStartedAt = SystemClock.elapsedRealtime();
+                }
+                tab.pageStartedAt = SystemClock.elapsedRealtime();
+                tab.progressReported = false;
                 
                 try {
                     view.evaluateJavascript(injectionScript, null);
@@ -289,6 +659,9 @@ public class DAppBrowserActivity extends AppCompatActivity {
                     Log.e(TAG, "Injection error", e);
                 }
                 
+                if (tab != activeTab) return;
+                progressBar.setVisibility(View.VISIBLE);
+                showUrl(url);
                 sendBrowserEvent(url, true);
                 updateNavigationButtons();
             }
@@ -296,19 +669,65 @@ public class DAppBrowserActivity extends AppCompatActivity {
             @Override
             public void onPageFinished(WebView view, String url) {
                 super.onPageFinished(view, url);
-                progressBar.setVisibility(View.GONE);
-                urlInput.setText(url);
+                if (tab.clearHistoryOnLoad) {
+                    tab.clearHistoryOnLoad = false;
+                    view.clearHistory();
+                }
+                tab.url = url;
+                tab.title = view.getTitle();
+                if (!tab.firstLoadReported && tab.firstLoadStartedAt > 0 && !BrowserTab.START_PAGE.equals(url)) {
+                    tab.firstLoadReported = true;
+                    DAppWarmup.getInstance(DAppBrowserActivity.this)
+                        .recordOpen(url, SystemClock.elapsedRealtime() - tab.firstLoadStartedAt);
+                }
+                if (tab.pageStartedAt > 0) {
+                    Web3Tracer.recordPageLoad("load", SystemClock.elapsedRealtime() - tab.pageStartedAt);
+                    tab.pageStartedAt = 0;
+                }
                 
                 try {
                     view.evaluateJavascript(injectionScript, null);
                 } catch (Exception e) {
                     Log.e(TAG, "Injection error", e);
                 }
+                restorePageState(tab, view, url);
                 
+                renderTabStrip();
+                saveSession(false);
+                if (tab != activeTab) return;
+                progressBar.setVisibility(View.GONE);
+                showUrl(url);
                 sendBrowserEvent(url, false);
                 updateNavigationButtons();
             }
             
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                WebResourceResponse blocked = contentBlocker.intercept(request, tab.id, tab.url);
+                if (blocked != null) {
+                    return blocked;
+                }
+                if (assetCache.isEnabled() && !request.isForMainFrame()) {
+                    WebResourceResponse cached = assetCache.intercept(request);
+                    if (cached != null) {
+                        return cached;
+                    }
+                }
+                return super.shouldInterceptRequest(view, request);
+            }
+            
+            @Override
+            public boolean onRenderProcessGone(WebView view, RenderProcessGoneDetail detail) {
+                Log.w(TAG, "Renderer gone for tab " + tab.id + " (crashed: " + detail.didCrash() + ")");
+                if (tab.webView != view) {
+                    // A WebView we already replaced; just release it.
+                    view.destroy();
+                    return true;
+                }
+                webViewContainer.post(() -> recoverTab(tab));
+                return true;
+            }
+            
             @Override
             public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request) {
                 String reqUrl = request.getUrl().toString();
@@ -328,26 +747,120 @@ public class DAppBrowserActivity extends AppCompatActivity {
         webView.setWebChromeClient(new WebChromeClient() {
             @Override
             public void onProgressChanged(WebView view, int newProgress) {
+                if (newProgress >= 100 && !tab.progressReported && tab.pageStartedAt > 0) {
+                    tab.progressReported = true;
+                    Web3Tracer.recordPageLoad("firstProgress100", SystemClock.elapsedRealtime() - tab.pageStartedAt);
+                }
+                if (tab != activeTab) return;
                 progressBar.setProgress(newProgress);
                 if (newProgress >= 100) {
                     progressBar.setVisibility(View.GONE);
                 }
             }
         });
+        
+        return webView;
+    }
+    
+    // Puts back the scroll position and the chain the origin was using when
+    // a tab is rebuilt, and records how long the resume took.
+    private void restorePageState(BrowserTab tab, WebView view, String url) {
+        if (tab.restoreScroll) {
+            tab.restoreScroll = false;
+            if (tab.scrollX != 0 || tab.scrollY != 0) {
+                view.scrollTo(tab.scrollX, tab.scrollY);
+            }
+        }
+        
+        Integer chainId = originChains.get(originOf(url));
+        if (chainId != null && chainId != currentChainId) {
+            tab.dispatch.postLatest(ACCOUNT_UPDATE, "(function(){if(window.__vkUpdate){window.__vkUpdate('" + currentAddress + "','0x" +
+                Integer.toHexString(chainId) + "','" + getRpcUrl(chainId) + "');}})();");
+        }
+        
+        if (tab.resumeStartedAt > 0) {
+            long ms = SystemClock.elapsedRealtime() - tab.resumeStartedAt;
+            if ("resume".equals(tab.resumeKind)) {
+                sessionStore.recordResume(ms);
+            } else {
+                sessionStore.recordRendererRecovery(ms);
+            }
+            Web3Tracer.recordPageLoad(tab.resumeKind, ms);
+            Log.d(TAG, "Tab " + tab.id + " " + tab.resumeKind + " took " + ms + "ms");
+            tab.resumeStartedAt = 0;
+        }
+    }
+    
+    private static String originOf(String url) {
+        try {
+            Uri uri = Uri.parse(url);
+            if (uri.getScheme() == null || uri.getHost() == null) return "";
+            return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() > 0 ? ":" + uri.getPort() : "");
+        } catch (Exception e) {
+            return "";
+        }
+    }
+    
+    // Rebuilds a tab whose renderer process died. Its requests cannot be
+    // answered any more, so they are cancelled, and the tab is restored
+    // from its last session snapshot: immediately if it is visible,
+    // otherwise the next time it is selected.
+    private void recoverTab(BrowserTab tab) {
+        if (!tabs.contains(tab)) return;
+        long startedAt = SystemClock.elapsedRealtime();
+        
+        cancelRequests(requestRegistry.cancelTab(tab.id), "crashed");
+        tab.pendingRequests = 0;
+        dropSubscriptions(tab);
+        if (tab.webView != null) {
+            webViewContainer.removeView(tab.webView);
+            tab.dispatch.clear();
+            tab.webView.destroy();
+            tab.webView = null;
+        }
+        
+        BrowserSessionStore.TabSnapshot snap = sessionStore.lastStateFor(tab.id);
+        if (snap != null) {
+            tab.savedState = snap.state;
+            if (snap.state == null) {
+                // Only the URLs survived; rebuild the back stack from them.
+                tab.restoredBack.clear();
+                tab.restoredBack.addAll(snap.backStack);
+                tab.url = snap.url;
+            }
+            tab.scrollX = snap.scrollX;
+            tab.scrollY = snap.scrollY;
+            tab.restoreScroll = true;
+        }
+        tab.resumeStartedAt = startedAt;
+        tab.resumeKind = "rendererRecovery";
+        
+        if (tab == activeTab) {
+            selectTab(tab);
+        } else {
+            renderTabStrip();
+        }
     }
     
     private void updateNavigationButtons() {
+        if (webView == null) return;
         if (backButton != null) {
-            backButton.setAlpha(webView.canGoBack() ? 1.0f : 0.3f);
+            backButton.setAlpha(activeTab != null && activeTab.canGoBack() ? 1.0f : 0.3f);
         }
         if (forwardButton != null) {
             forwardButton.setAlpha(webView.canGoForward() ? 1.0f : 0.3f);
         }
     }
     
+    // The start page shows as an empty URL bar, ready for input.
+    private void showUrl(String url) {
+        urlInput.setText(BrowserTab.START_PAGE.equals(url) ? "" : url);
+    }
+    
     private void loadUrl(String url) {
         if (webView != null) {
-            urlInput.setText(url);
+            showUrl(url);
+            activeTab.url = url;
             webView.loadUrl(url);
         }
     }
@@ -387,58 +900,215 @@ public class DAppBrowserActivity extends AppCompatActivity {
     }
     
     private void handleWeb3Response(int id, String result, String error) {
-        String script;
-        if (error != null && !error.isEmpty()) {
-            String escapedError = error.replace("\\", "\\\\").replace("'", "\\'").replace("\n", " ").replace("\r", "");
-            script = "(function(){" +
-                "if(window._vkCallbacks&&window._vkCallbacks[" + id + "]){" +
-                "window._vkCallbacks[" + id + "].reject(new Error('" + escapedError + "'));" +
-                "delete window._vkCallbacks[" + id + "];" +
-                "}})();";
-        } else {
-            script = "(function(){" +
-                "if(window._vkCallbacks&&window._vkCallbacks[" + id + "]){" +
-                "window._vkCallbacks[" + id + "].resolve(" + result + ");" +
-                "delete window._vkCallbacks[" + id + "];" +
-                "}})();";
+        PendingCallback pending = requestRegistry.complete(id);
+        if (pending == null) {
+            // The signer acknowledging a request we cancelled: the page was
+            // already answered, but the outcome decides the nonce.
+            PendingCallback cancelled = awaitingAbort.remove(id);
+            if (cancelled != null) {
+                cancelled.settleNonce(result, error);
+            } else {
+                Log.w(TAG, "Dropping response for unknown request " + id);
+            }
+            return;
         }
+        runOnUiThread(() -> pending.tab.pendingRequests = Math.max(0, pending.tab.pendingRequests - 1));
+        pending.settleNonce(result, error);
+        Web3Tracer.mark(id, "response");
+        deliverResponse(pending.tab, pending.pageRequestId, result, error, Web3Tracer.detach(id));
+    }
+    
+    private void deliverResponse(BrowserTab tab, int id, String result, String error) {
+        deliverResponse(tab, id, result, error, null);
+    }
+    
+    private void deliverResponse(BrowserTab tab, int id, String result, String error, Web3Tracer.Trace trace) {
+        String script = BridgeScripts.response(id, result, error);
         
-        if (webView != null) {
-            runOnUiThread(() -> {
-                try {
-                    webView.evaluateJavascript(script, null);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error sending response", e);
-                }
-            });
+        if (trace == null) {
+            tab.dispatch.post(script);
+            return;
         }
+        boolean failed = error != null && !error.isEmpty();
+        tab.dispatch.post(script, () -> {
+            trace.mark("deliver");
+            Web3Tracer.finish(trace, failed);
+        });
     }
     
-    private void updateWebViewAccount() {
-        if (webView != null) {
-            String hexChainId = "0x" + Integer.toHexString(currentChainId);
-            String script = 
-                "(function(){" +
-                "if(window.__vkUpdate){" +
-                "window.__vkUpdate('" + currentAddress + "','" + hexChainId + "','" + rpcUrl + "');" +
-                "}else if(window.ethereum){" +
-                "window.ethereum.selectedAddress='" + currentAddress + "';" +
-                "window.ethereum.chainId='" + hexChainId + "';" +
-                "if(window.ethereum.emit){" +
-                "window.ethereum.emit('accountsChanged',['" + currentAddress + "']);" +
-                "window.ethereum.emit('chainChanged','" + hexChainId + "');" +
-                "}}})();";
-            
-            runOnUiThread(() -> {
-                try {
-                    webView.evaluateJavascript(script, null);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error updating account", e);
+    private static boolean isNativeMethod(String method) {
+        switch (method) {
+            case "eth_getLogs":
+            case "eth_blockNumber":
+            case "eth_getBlockByNumber":
+            case "eth_subscribe":
+            case "eth_unsubscribe":
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    // Provider calls served by native components instead of the page's fetch().
+    private void handleNativeRequest(BrowserTab tab, int requestId, int chainId, String method, String params, Web3Tracer.Trace trace) {
+        if (trace != null) trace.mark("queue");
+        // Reads from tabs the user is not looking at queue behind everything else.
+        int priority = tab == activeTab ? RpcScheduler.PRIORITY_FOREGROUND : RpcScheduler.PRIORITY_BACKGROUND;
+        try {
+            // Params are parsed only where they are read; plain reads relay
+            // the page's JSON text to the node and its result back as is.
+            String result;
+            switch (method) {
+                case "eth_getLogs": {
+                    org.json.JSONObject filter = new org.json.JSONArray(params).optJSONObject(0);
+                    // Expired, navigated-away and closed-tab requests leave
+                    // the registry; their remaining sub-ranges are not sent.
+                    result = LogQueryEngine.forChain(chainId)
+                        .getLogs(filter != null ? filter : new org.json.JSONObject(), priority,
+                            () -> requestRegistry.get(requestId) == null)
+                        .toString();
+                    break;
                 }
-            });
+                case "eth_blockNumber":
+                    result = JsonRpcClient.toJson(JsonRpcClient.toQuantity(BlockHeadTracker.forChain(chainId).getBlockNumber()));
+                    break;
+                case "eth_getBlockByNumber": {
+                    org.json.JSONArray args = new org.json.JSONArray(params);
+                    if ("latest".equals(args.optString(0)) && !args.optBoolean(1, false)) {
+                        result = BlockHeadTracker.forChain(chainId).getLatestHeader().toString();
+                    } else {
+                        result = JsonRpcClient.forChain(chainId).callRaw(method, params, priority);
+                    }
+                    break;
+                }
+                case "eth_call": {
+                    org.json.JSONArray args = EnsResolver.appliesTo(chainId) ? new org.json.JSONArray(params) : null;
+                    if (args != null && EnsResolver.isCacheableCall(chainId, args)) {
+                        result = JsonRpcClient.toJson(EnsResolver.call(args, priority));
+                    } else {
+                        result = JsonRpcClient.forChain(chainId).callRaw(method, params, priority);
+                    }
+                    break;
+                }
+                case "eth_subscribe":
+                    result = JsonRpcClient.toJson(subscribe(tab, chainId, new org.json.JSONArray(params)));
+                    break;
+                case "eth_unsubscribe": {
+                    PageSubscription sub = subscriptions.get(new org.json.JSONArray(params).optString(0));
+                    boolean removed = sub != null && sub.tab == tab;
+                    if (removed) {
+                        sub.cancel();
+                    }
+                    result = String.valueOf(removed);
+                    break;
+                }
+                default:
+                    result = JsonRpcClient.forChain(chainId).callRaw(method, params, priority);
+                    break;
+            }
+            if (trace != null) trace.mark("rpc");
+            completeNativeRequest(requestId, result, null, trace);
+        } catch (Exception e) {
+            Log.w(TAG, "Native " + method + " failed", e);
+            if (trace != null) trace.mark("rpc");
+            completeNativeRequest(requestId, null, e.getMessage() != null ? e.getMessage() : "Request failed", trace);
         }
     }
     
+    private void completeNativeRequest(int requestId, String result, String error, Web3Tracer.Trace trace) {
+        PendingCallback pending = requestRegistry.complete(requestId);
+        if (pending == null) return;
+        deliverResponse(pending.tab, pending.pageRequestId, result, error, trace);
+    }
+    
+    // Timing-wheel expiry: the page gets a rejection and the signer is told
+    // to stop working on the request.
+    private void onRequestExpired(int requestId, PendingCallback pending) {
+        Log.w(TAG, "Request " + requestId + " timed out");
+        Map<Integer, PendingCallback> expired = new HashMap<>();
+        expired.put(requestId, pending);
+        cancelRequests(expired, "timeout");
+        deliverResponse(pending.tab, pending.pageRequestId, null, "Request timed out");
+    }
+    
+    // Settles everything tied to requests that will never be answered and
+    // lets the JS signer abort them (including any device round trip). A
+    // signer may already be past the point of no return, so a nonce it was
+    // given stays reserved until it acknowledges the abort with the outcome;
+    // if that never comes, NonceManager reclaims the reservation.
+    private void cancelRequests(Map<Integer, PendingCallback> cancelled, String reason) {
+        if (cancelled.isEmpty()) return;
+        List<Integer> signerIds = new ArrayList<>();
+        for (Map.Entry<Integer, PendingCallback> entry : cancelled.entrySet()) {
+            PendingCallback pending = entry.getValue();
+            Web3Tracer.detach(entry.getKey());
+            if (!pending.toSigner) {
+                pending.settleNonce(null, "Request cancelled");
+            } else {
+                awaitingAbort.put(entry.getKey(), pending);
+                signerIds.add(entry.getKey());
+                runOnUiThread(() -> pending.tab.pendingRequests = Math.max(0, pending.tab.pendingRequests - 1));
+            }
+        }
+        if (signerIds.isEmpty()) return;
+        
+        int[] ids = new int[signerIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = signerIds.get(i);
+        }
+        Intent intent = new Intent(ACTION_WEB3_CANCEL);
+        intent.putExtra("ids", ids);
+        intent.putExtra("reason", reason);
+        LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
+    }
+    
+    private String subscribe(BrowserTab tab, int chainId, org.json.JSONArray args) throws RpcException {
+        String type = args.optString(0);
+        if (!"newHeads".equals(type) && !"logs".equals(type)) {
+            throw new RpcException(-32602, "Unsupported subscription type " + type);
+        }
+        org.json.JSONObject filter = args.optJSONObject(1);
+        String id = "0x" + Integer.toHexString(nextSubscriptionId.getAndIncrement());
+        PageSubscription sub = new PageSubscription(id, tab, chainId, type, filter);
+        subscriptions.put(id, sub);
+        BlockHeadTracker.forChain(chainId).addListener(sub);
+        return id;
+    }
+    
+    private void dropSubscriptions(BrowserTab tab) {
+        for (PageSubscription sub : subscriptions.values()) {
+            if (tab == null || sub.tab == tab) {
+                sub.cancel();
+            }
+        }
+    }
+    
+    private void pushToPage(BrowserTab tab, String script) {
+        tab.dispatch.post(script);
+    }
+    
+    private void updateWebViewAccount() {
+        String hexChainId = "0x" + Integer.toHexString(currentChainId);
+        String script = 
+            "(function(){" +
+            "if(window.__vkUpdate){" +
+            "window.__vkUpdate('" + currentAddress + "','" + hexChainId + "','" + rpcUrl + "');" +
+            "}else if(window.ethereum){" +
+            "window.ethereum.selectedAddress='" + currentAddress + "';" +
+            "window.ethereum.chainId='" + hexChainId + "';" +
+            "if(window.ethereum.emit){" +
+            "window.ethereum.emit('accountsChanged',['" + currentAddress + "']);" +
+            "window.ethereum.emit('chainChanged','" + hexChainId + "');" +
+            "}}})();";
+        
+        runOnUiThread(() -> {
+            for (BrowserTab tab : tabs) {
+                if (!tab.isLive()) continue;
+                tab.dispatch.postLatest(ACCOUNT_UPDATE, script);
+            }
+        });
+    }
+    
     private void sendBrowserEvent(String url, boolean loading) {
         Intent intent = new Intent(ACTION_BROWSER_EVENT);
         intent.putExtra("url", url);
@@ -446,125 +1116,205 @@ public class DAppBrowserActivity extends AppCompatActivity {
         LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
     }
     
-    private void sendWeb3Request(int id, String method, String params) {
+    private void sendWeb3Request(int id, String method, String params, String preflight, long receivedAt) {
+        Web3Tracer.mark(id, "bridge");
         Intent intent = new Intent(ACTION_WEB3_REQUEST);
         intent.putExtra("id", id);
         intent.putExtra("method", method);
         intent.putExtra("params", params);
+        intent.putExtra("receivedAt", receivedAt);
+        if (preflight != null) {
+            intent.putExtra("preflight", preflight);
+        }
         LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
     }
     
     private String getRpcUrl(int chainId) {
-        switch (chainId) {
-            case 1: return "https://eth.llamarpc.com";
-            case 56: return "https://bsc-dataseed1.binance.org";
-            case 137: return "https://polygon-rpc.com";
-            case 43114: return "https://api.avax.network/ext/bc/C/rpc";
-            case 42161: return "https://arb1.arbitrum.io/rpc";
-            case 10: return "https://mainnet.optimism.io";
-            case 8453: return "https://mainnet.base.org";
-            default: return "https://eth.llamarpc.com";
-        }
+        return RpcEndpoints.forChain(chainId);
     }
     
     private String buildInjectionScript() {
-        String hexChainId = "0x" + Integer.toHexString(currentChainId);
+        return BridgeScripts.injection(currentAddress, currentChainId);
+    }
+    
+    // A page's eth_subscribe registration, fed by the chain's shared head tracker.
+    private class PageSubscription implements BlockHeadTracker.Listener {
+        final String id;
+        final BrowserTab tab;
+        final int chainId;
+        final int pageSession;
+        final String type;
+        final org.json.JSONObject filter;
+        private long lastLogBlock = -1;
         
-        return "(function(){" +
-            "'use strict';" +
-            "if(window._vkInjected)return;" +
-            "window._vkInjected=true;" +
-            
-            "var _id=1;" +
-            "var _addr='" + currentAddress + "';" +
-            "var _chainId='" + hexChainId + "';" +
-            "var _netVersion='" + currentChainId + "';" +
-            "var _callbacks={};" +
-            "var _listeners={};" +
-            
-            "var _rpcs={1:'https://eth.llamarpc.com',56:'https://bsc-dataseed1.binance.org',137:'https://polygon-rpc.com',43114:'https://api.avax.network/ext/bc/C/rpc',42161:'https://arb1.arbitrum.io/rpc',10:'https://mainnet.optimism.io',8453:'https://mainnet.base.org'};" +
-            "var _rpcUrl=_rpcs[" + currentChainId + "]||'https://eth.llamarpc.com';" +
-            
-            "window._vkCallbacks=_callbacks;" +
-            
-            "window.__vkUpdate=function(addr,chain,rpc){" +
-            "_addr=addr;_chainId=chain;_rpcUrl=rpc||_rpcUrl;" +
-            "_netVersion=String(parseInt(chain,16));" +
-            "provider.selectedAddress=_addr;" +
-            "provider.chainId=_chainId;" +
-            "provider.networkVersion=_netVersion;" +
-            "emit('accountsChanged',[_addr]);" +
-            "emit('chainChanged',_chainId);" +
-            "};" +
-            
-            "function rpc(method,params){" +
-            "return fetch(_rpcUrl,{method:'POST',headers:{'Content-Type':'application/json'},body:JSON.stringify({jsonrpc:'2.0',id:Date.now(),method:method,params:params||[]})}).then(function(r){return r.json();}).then(function(d){if(d.error)throw new Error(d.error.message);return d.result;});" +
-            "}" +
-            
-            "function on(e,fn){if(!_listeners[e])_listeners[e]=[];_listeners[e].push(fn);return provider;}" +
-            "function off(e,fn){if(_listeners[e])_listeners[e]=_listeners[e].filter(function(f){return f!==fn;});return provider;}" +
-            "function emit(e){var args=[].slice.call(arguments,1);if(_listeners[e])_listeners[e].slice().forEach(function(fn){try{fn.apply(null,args);}catch(x){}});return true;}" +
-            
-            "function bridge(method,params){" +
-            "return new Promise(function(resolve,reject){" +
-            "var id=_id++;_callbacks[id]={resolve:resolve,reject:reject};" +
-            "try{VaultKeyNative.postMessage(JSON.stringify({id:id,method:method,params:params}));}catch(e){delete _callbacks[id];reject(e);}" +
-            "setTimeout(function(){if(_callbacks[id]){delete _callbacks[id];reject(new Error('Timeout'));}},120000);" +
-            "});" +
-            "}" +
-            
-            "var directRpc=['eth_blockNumber','eth_getBlockByNumber','eth_getBlockByHash','eth_call','eth_getBalance','eth_getCode','eth_getStorageAt','eth_getTransactionCount','eth_getTransactionByHash','eth_getTransactionReceipt','eth_getLogs','eth_estimateGas','eth_gasPrice','eth_feeHistory','eth_maxPriorityFeePerGas','net_listening','web3_clientVersion'];" +
-            
-            "function request(args){" +
-            "var method=args.method;var params=args.params||[];" +
-            "if(method==='eth_accounts')return Promise.resolve(_addr?[_addr]:[]);" +
-            "if(method==='eth_requestAccounts'){emit('connect',{chainId:_chainId});return Promise.resolve([_addr]);}" +
-            "if(method==='eth_chainId')return Promise.resolve(_chainId);" +
-            "if(method==='net_version')return Promise.resolve(_netVersion);" +
-            "if(method==='eth_coinbase')return Promise.resolve(_addr);" +
-            "if(method==='wallet_requestPermissions')return Promise.resolve([{parentCapability:'eth_accounts'}]);" +
-            "if(method==='wallet_getPermissions')return Promise.resolve([{parentCapability:'eth_accounts'}]);" +
-            "if(method==='wallet_switchEthereumChain'){var c=params[0]&&params[0].chainId;if(c){var n=parseInt(c,16);if(_rpcs[n]){_chainId=c;_netVersion=String(n);_rpcUrl=_rpcs[n];provider.chainId=_chainId;emit('chainChanged',_chainId);return Promise.resolve(null);}return Promise.reject({code:4902,message:'Chain not supported'});}return Promise.resolve(null);}" +
-            "if(method==='wallet_addEthereumChain')return Promise.resolve(null);" +
-            "if(method==='wallet_watchAsset')return Promise.resolve(true);" +
-            "if(directRpc.indexOf(method)!==-1)return rpc(method,params);" +
-            "if(method==='eth_sendTransaction'||method==='eth_signTransaction'||method==='personal_sign'||method==='eth_sign'||method==='eth_signTypedData'||method==='eth_signTypedData_v3'||method==='eth_signTypedData_v4')return bridge(method,params);" +
-            "return rpc(method,params);" +
-            "}" +
-            
-            "var provider={" +
-            "isMetaMask:true,isTrust:true,isVaultKey:true," +
-            "selectedAddress:_addr,chainId:_chainId,networkVersion:_netVersion," +
-            "isConnected:function(){return true;}," +
-            "request:request," +
-            "send:function(m,p){if(typeof m==='string')return request({method:m,params:p});return request(m);}," +
-            "sendAsync:function(req,cb){request({method:req.method,params:req.params}).then(function(r){cb(null,{id:req.id,jsonrpc:'2.0',result:r});}).catch(function(e){cb(e);});}," +
-            "on:on,off:off,removeListener:off,emit:emit," +
-            "enable:function(){return request({method:'eth_requestAccounts'});}" +
-            "};" +
-            
-            "window.ethereum=provider;" +
-            "window.web3={currentProvider:provider};" +
-            
-            "var info={uuid:'vaultkey-1',name:'VaultKey',icon:'data:image/svg+xml;base64,PHN2ZyB3aWR0aD0iMzIiIGhlaWdodD0iMzIiIHZpZXdCb3g9IjAgMCAzMiAzMiI+PGNpcmNsZSBjeD0iMTYiIGN5PSIxNiIgcj0iMTYiIGZpbGw9IiMxYTFhMmUiLz48dGV4dCB4PSIxNiIgeT0iMjEiIGZvbnQtc2l6ZT0iMTQiIGZpbGw9IiNmZmYiIHRleHQtYW5jaG9yPSJtaWRkbGUiPuKXiDwvdGV4dD48L3N2Zz4=',rdns:'app.vaultkey.wallet'};" +
-            "var detail={info:info,provider:provider};" +
-            "window.dispatchEvent(new CustomEvent('eip6963:announceProvider',{detail:detail}));" +
-            "window.addEventListener('eip6963:requestProvider',function(){window.dispatchEvent(new CustomEvent('eip6963:announceProvider',{detail:detail}));});" +
+        PageSubscription(String id, BrowserTab tab, int chainId, String type, org.json.JSONObject filter) {
+            this.id = id;
+            this.tab = tab;
+            this.chainId = chainId;
+            this.pageSession = tab.pageSession;
+            this.type = type;
+            this.filter = filter;
+        }
+        
+        void cancel() {
+            subscriptions.remove(id);
+            BlockHeadTracker.forChain(chainId).removeListener(this);
+        }
+        
+        @Override
+        public void onNewHead(int chainId, org.json.JSONObject head) {
+            if (tab.pageSession != pageSession || !tabs.contains(tab)) {
+                cancel();
+                return;
+            }
+            if ("newHeads".equals(type)) {
+                push(head.toString());
+                return;
+            }
             
-            "})();";
+            long number;
+            try {
+                number = JsonRpcClient.parseQuantity(head.opt("number"));
+            } catch (RpcException e) {
+                return;
+            }
+            long from = lastLogBlock < 0 ? number : lastLogBlock + 1;
+            lastLogBlock = number;
+            final long to = number;
+            nativeRpcExecutor.execute(() -> {
+                try {
+                    org.json.JSONObject query = new org.json.JSONObject(filter != null ? filter.toString() : "{}");
+                    query.put("fromBlock", JsonRpcClient.toQuantity(from));
+                    query.put("toBlock", JsonRpcClient.toQuantity(to));
+                    org.json.JSONArray logs = LogQueryEngine.forChain(chainId).getLogs(query, RpcScheduler.PRIORITY_BACKGROUND,
+                        () -> subscriptions.get(id) != this);
+                    for (int i = 0; i < logs.length(); i++) {
+                        push(logs.get(i).toString());
+                    }
+                } catch (Exception e) {
+                    Log.w(TAG, "Log subscription " + id + " failed", e);
+                }
+            });
+        }
+        
+        private void push(String resultJson) {
+            pushToPage(tab, "window.__vkSubscription&&window.__vkSubscription('" + id + "'," + resultJson + ");");
+        }
+    }
+    
+    private static class PendingCallback {
+        final BrowserTab tab;
+        final int pageRequestId;
+        // False for requests answered natively; true once the JS signer owns it.
+        final boolean toSigner;
+        
+        volatile NonceManager nonceAccount;
+        volatile long nonce = -1;
+        // eth_signTransaction: the signed transaction goes back to the page,
+        // which may never broadcast it.
+        volatile boolean signOnly;
+        
+        PendingCallback(BrowserTab tab, int pageRequestId, boolean toSigner) {
+            this.tab = tab;
+            this.pageRequestId = pageRequestId;
+            this.toSigner = toSigner;
+        }
+        
+        // Settles a nonce reserved by the preflight once the signer answered.
+        void settleNonce(String result, String error) {
+            NonceManager account = nonceAccount;
+            if (account == null || nonce < 0) return;
+            if ((error == null || error.isEmpty()) && !signOnly) {
+                account.markSent(nonce, result);
+            } else if (error == null || error.isEmpty()) {
+                // The page holds a signed transaction it may broadcast, so
+                // the nonce stays reserved until the node reports it mined
+                // (or it is abandoned); the next reservation asks the node.
+                account.invalidate();
+            } else {
+                account.release(nonce);
+                if (error.toLowerCase().contains("nonce")) {
+                    account.invalidate();
+                }
+            }
+        }
     }
     
     private class WalletBridge {
+        private final BrowserTab tab;
+        
+        WalletBridge(BrowserTab tab) {
+            this.tab = tab;
+        }
+        
         @JavascriptInterface
         public void postMessage(String message) {
             try {
-                org.json.JSONObject json = new org.json.JSONObject(message);
-                int id = json.getInt("id");
-                String method = json.getString("method");
-                String params = json.optString("params", "[]");
+                BridgeMessage msg = BridgeMessage.parse(message, currentChainId);
+                int id = msg.id;
+                String method = msg.method;
+                String params = msg.params;
+                int chainId = msg.chainId;
+                String origin = originOf(tab.url);
+                if (!origin.isEmpty()) {
+                    originChains.put(origin, chainId);
+                }
+                Web3Tracer.Trace trace = Web3Tracer.start(method, msg.sentAt);
+                
+                // Plain node reads are proxied natively so they pass the
+                // endpoint's scheduler instead of hitting it from the page.
+                boolean proxied = msg.rpc && !TransactionPreflight.appliesTo(method);
+                boolean nativeHandled = isNativeMethod(method) || proxied;
+                int requestId = nextRequestId.getAndIncrement();
+                PendingCallback callback = new PendingCallback(tab, id, !nativeHandled);
+                requestRegistry.register(requestId, tab.id, tab.pageSession,
+                    nativeHandled ? READ_TIMEOUT_MS : SIGN_TIMEOUT_MS, callback);
                 
-                Log.d(TAG, "Web3 request: " + method);
-                sendWeb3Request(id, method, params);
+                if (nativeHandled) {
+                    nativeRpcExecutor.execute(() -> handleNativeRequest(tab, requestId, chainId, method, params, trace));
+                    return;
+                }
+                
+                Log.d(TAG, "Web3 request: " + method + " (tab " + tab.id + ")");
+                Web3Tracer.track(requestId, trace);
+                runOnUiThread(() -> tab.pendingRequests++);
+                long receivedAt = SystemClock.elapsedRealtime();
+                
+                // Nonce, gas and fee lookups run here in parallel so the
+                // signer can show a ready-to-sign screen without round trips.
+                // They run for the wallet's own chain and account; a page
+                // asking for anything else gets no preflight, and the signer
+                // rejects it as before.
+                int walletChainId = currentChainId;
+                String account = currentAddress;
+                if (TransactionPreflight.appliesTo(method) && chainId == walletChainId
+                        && account != null && !account.isEmpty()) {
+                    userRpcExecutor.execute(() -> {
+                        String preflight = null;
+                        try {
+                            org.json.JSONObject result = TransactionPreflight.runForParams(walletChainId, account, params);
+                            if (result.has("nonce")) {
+                                callback.nonceAccount = NonceManager.forAccount(walletChainId, account);
+                                callback.signOnly = "eth_signTransaction".equals(method);
+                                callback.nonce = JsonRpcClient.parseQuantity(result.get("nonce"));
+                                if (requestRegistry.get(requestId) != callback) {
+                                    // The page went away while the preflight ran;
+                                    // the signer never saw the request.
+                                    awaitingAbort.remove(requestId);
+                                    callback.settleNonce(null, "Page closed");
+                                    return;
+                                }
+                            }
+                            preflight = result.toString();
+                            Web3Tracer.mark(requestId, "preflight");
+                        } catch (Exception e) {
+                            Log.w(TAG, "Preflight failed: " + e.getMessage());
+                        }
+                        sendWeb3Request(requestId, method, params, preflight, receivedAt);
+                    });
+                    return;
+                }
+                sendWeb3Request(requestId, method, params, null, receivedAt);
             } catch (Exception e) {
                 Log.e(TAG, "Error parsing message", e);
             }
@@ -580,23 +1330,48 @@ public class DAppBrowserActivity extends AppCompatActivity {
         if (closeReceiver != null) lbm.unregisterReceiver(closeReceiver);
         if (updateReceiver != null) lbm.unregisterReceiver(updateReceiver);
         
-        if (webView != null) {
-            webView.stopLoading();
-            webView.loadUrl("about:blank");
-            webView.clearHistory();
-            webView.removeAllViews();
-            webView.destroy();
-            webView = null;
+        saveSession(true);
+        for (BrowserTab tab : tabs) {
+            if (tab.isLive()) {
+                tab.webView.loadUrl("about:blank");
+                tab.webView.clearHistory();
+                tab.destroyWebView();
+            }
         }
+        dropSubscriptions(null);
+        tabs.clear();
+        cancelRequests(requestRegistry.cancelAll(), "closed");
+        requestRegistry.shutdown();
+        nativeRpcExecutor.shutdownNow();
+        userRpcExecutor.shutdownNow();
+        activeTab = null;
+        webView = null;
         
         sendBrowserEvent("", false);
     }
     
+    @Override
+    protected void onPause() {
+        super.onPause();
+        saveSession(true);
+        // Only the tab is paused: WebView.pauseTimers() is process-wide and
+        // would also stop the wallet UI's WebView in MainActivity.
+        if (activeTab != null) {
+            activeTab.pause();
+        }
+    }
+    
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (activeTab != null) {
+            activeTab.resume();
+        }
+    }
+    
     @Override
     public void onBackPressed() {
-        if (webView != null && webView.canGoBack()) {
-            webView.goBack();
-        } else {
+        if (activeTab == null || !activeTab.goBack()) {
             super.onBackPressed();
         }
     }
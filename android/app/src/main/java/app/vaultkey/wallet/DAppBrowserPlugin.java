@@ -6,31 +6,84 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 @CapacitorPlugin(name = "DAppBrowser")
 public class DAppBrowserPlugin extends Plugin {
     private static final String TAG = "DAppBrowserPlugin";
-    private Handler mainHandler = new Handler(Looper.getMainLooper());
     private BroadcastReceiver browserEventReceiver;
     private BroadcastReceiver web3RequestReceiver;
+    private BroadcastReceiver web3CancelReceiver;
     private boolean isBrowserOpen = false;
+    private final Map<Integer, Long> requestReceivedAt = new ConcurrentHashMap<>();
+    // Handler, batcher and receivers are only needed once the browser is
+    // used, so they are created then rather than during app start.
+    private Handler mainHandler;
+    private SignatureBatcher signatureBatcher;
 
     @Override
     public void load() {
+        StartupTrace.begin("DAppBrowserPlugin.load");
         super.load();
+        StartupTrace.end();
+    }
+
+    private synchronized Handler mainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
+    private synchronized SignatureBatcher signatureBatcher() {
+        if (signatureBatcher == null) {
+            signatureBatcher = new SignatureBatcher(mainHandler(), new SignatureBatcher.Listener() {
+                @Override
+                public void onSingle(JSObject request) {
+                    notifyListeners("web3Request", request);
+                }
+                
+                @Override
+                public void onBatch(List<JSObject> requests) {
+                    JSObject event = new JSObject();
+                    event.put("requests", new JSArray(requests));
+                    notifyListeners("web3BatchRequest", event);
+                }
+            });
+        }
+        return signatureBatcher;
+    }
+
+    synchronized boolean isInitialized() {
+        return mainHandler != null || signatureBatcher != null || browserEventReceiver != null;
+    }
+
+    // The page subscribes before opening the browser, so registering here
+    // means no browser event or request is missed.
+    @Override
+    @PluginMethod(returnType = PluginMethod.RETURN_CALLBACK)
+    public void addListener(PluginCall call) {
         setupBroadcastReceivers();
+        super.addListener(call);
     }
 
-    private void setupBroadcastReceivers() {
+    private synchronized void setupBroadcastReceivers() {
+        if (browserEventReceiver != null) return;
         LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(getContext());
         
         browserEventReceiver = new BroadcastReceiver() {
@@ -56,19 +109,58 @@ public class DAppBrowserPlugin extends Plugin {
             @Override
             public void onReceive(Context context, Intent intent) {
                 int id = intent.getIntExtra("id", 0);
+                Web3Tracer.mark(id, "broadcast");
                 String method = intent.getStringExtra("method");
                 String params = intent.getStringExtra("params");
+                String preflight = intent.getStringExtra("preflight");
                 
                 JSObject event = new JSObject();
                 event.put("id", id);
                 event.put("method", method != null ? method : "");
                 event.put("params", params != null ? params : "[]");
-                notifyListeners("web3Request", event);
+                if (preflight != null) {
+                    try {
+                        event.put("preflight", new JSObject(preflight));
+                    } catch (Exception e) {
+                        Log.w(TAG, "Dropping malformed preflight", e);
+                    }
+                    requestReceivedAt.put(id, intent.getLongExtra("receivedAt", SystemClock.elapsedRealtime()));
+                }
+                if (method != null && SignatureBatcher.isBatchable(method)) {
+                    signatureBatcher().offer(event);
+                } else {
+                    notifyListeners("web3Request", event);
+                }
             }
         };
         
         lbm.registerReceiver(browserEventReceiver, new IntentFilter(DAppBrowserActivity.ACTION_BROWSER_EVENT));
+        web3CancelReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                int[] ids = intent.getIntArrayExtra("ids");
+                String reason = intent.getStringExtra("reason");
+                if (ids == null) return;
+                for (int id : ids) {
+                    requestReceivedAt.remove(id);
+                    if (signatureBatcher().cancel(id)) {
+                        // Never reached the signer, so acknowledge the abort here.
+                        Intent ack = new Intent(DAppBrowserActivity.ACTION_WEB3_RESPONSE);
+                        ack.putExtra("id", id);
+                        ack.putExtra("error", "Request cancelled");
+                        LocalBroadcastManager.getInstance(getContext()).sendBroadcast(ack);
+                        continue;
+                    }
+                    JSObject event = new JSObject();
+                    event.put("id", id);
+                    event.put("reason", reason != null ? reason : "cancelled");
+                    notifyListeners("web3Cancel", event);
+                }
+            }
+        };
+        
         lbm.registerReceiver(web3RequestReceiver, new IntentFilter(DAppBrowserActivity.ACTION_WEB3_REQUEST));
+        lbm.registerReceiver(web3CancelReceiver, new IntentFilter(DAppBrowserActivity.ACTION_WEB3_CANCEL));
     }
 
     @PluginMethod
@@ -76,6 +168,8 @@ public class DAppBrowserPlugin extends Plugin {
         String url = call.getString("url", "");
         String address = call.getString("address", "");
         int chainId = call.getInt("chainId", 1);
+        int maxLiveTabs = call.getInt("maxLiveTabs", 3);
+        boolean restoreSession = call.getBoolean("restoreSession", true);
         
         if (url.isEmpty()) {
             call.reject("URL is required");
@@ -83,14 +177,18 @@ public class DAppBrowserPlugin extends Plugin {
         }
 
         Log.d(TAG, "Opening DApp browser: " + url);
+        setupBroadcastReceivers();
         
-        mainHandler.post(() -> {
+        mainHandler().post(() -> {
             try {
                 Intent intent = new Intent(getContext(), DAppBrowserActivity.class);
                 intent.putExtra(DAppBrowserActivity.EXTRA_URL, url);
                 intent.putExtra(DAppBrowserActivity.EXTRA_ADDRESS, address);
                 intent.putExtra(DAppBrowserActivity.EXTRA_CHAIN_ID, chainId);
-                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                intent.putExtra(DAppBrowserActivity.EXTRA_MAX_LIVE_TABS, maxLiveTabs);
+                intent.putExtra(DAppBrowserActivity.EXTRA_RESTORE_SESSION, restoreSession);
+                // An already open browser receives the URL as a new tab via onNewIntent.
+                intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
                 getContext().startActivity(intent);
                 
                 isBrowserOpen = true;
@@ -107,7 +205,7 @@ public class DAppBrowserPlugin extends Plugin {
 
     @PluginMethod
     public void close(PluginCall call) {
-        mainHandler.post(() -> {
+        mainHandler().post(() -> {
             try {
                 Intent intent = new Intent(DAppBrowserActivity.ACTION_CLOSE_BROWSER);
                 LocalBroadcastManager.getInstance(getContext()).sendBroadcast(intent);
@@ -143,6 +241,13 @@ public class DAppBrowserPlugin extends Plugin {
         String result = call.getString("result", "null");
         String error = call.getString("error", "");
         
+        Web3Tracer.mark(id, "signer");
+        Long signingMs = call.getLong("signingMs");
+        if (signingMs != null) {
+            // Approve-to-signature time; includes the device round trip for hardware wallets.
+            Web3Tracer.put(id, "signing." + call.getString("signer", "soft_wallet"), signingMs);
+        }
+        
         Intent intent = new Intent(DAppBrowserActivity.ACTION_WEB3_RESPONSE);
         intent.putExtra("id", id);
         intent.putExtra("result", result);
@@ -154,16 +259,200 @@ public class DAppBrowserPlugin extends Plugin {
         call.resolve(ret);
     }
 
+    @PluginMethod
+    public void reportSignReady(PluginCall call) {
+        int id = call.getInt("id", 0);
+        Web3Tracer.mark(id, "uiReady");
+        Long receivedAt = requestReceivedAt.remove(id);
+        if (receivedAt != null) {
+            TransactionPreflight.recordReady(SystemClock.elapsedRealtime() - receivedAt);
+        }
+        
+        JSObject ret = new JSObject();
+        ret.put("success", true);
+        call.resolve(ret);
+    }
+    
+    @PluginMethod
+    public void configureSignBatching(PluginCall call) {
+        boolean enabled = call.getBoolean("enabled", true);
+        long windowMs = call.getLong("windowMs", SignatureBatcher.DEFAULT_WINDOW_MS);
+        mainHandler().post(() -> {
+            signatureBatcher().configure(enabled, windowMs);
+            JSObject ret = new JSObject();
+            ret.put("success", true);
+            call.resolve(ret);
+        });
+    }
+
+    @PluginMethod
+    public void getSignBatchStats(PluginCall call) {
+        mainHandler().post(() -> {
+            try {
+                call.resolve(JSObject.fromJSONObject(signatureBatcher().getStats()));
+            } catch (Exception e) {
+                call.reject("Failed to read batch stats: " + e.getMessage());
+            }
+        });
+    }
+
+    @PluginMethod
+    public void getPreflightStats(PluginCall call) {
+        try {
+            call.resolve(JSObject.fromJSONObject(TransactionPreflight.getStats()));
+        } catch (Exception e) {
+            call.reject("Failed to read preflight stats: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void setMetricsEnabled(PluginCall call) {
+        Web3Tracer.setEnabled(call.getBoolean("enabled", false));
+        
+        JSObject ret = new JSObject();
+        ret.put("success", true);
+        call.resolve(ret);
+    }
+    
+    @PluginMethod
+    public void getMetrics(PluginCall call) {
+        try {
+            JSObject ret = JSObject.fromJSONObject(Web3Tracer.getMetrics());
+            JSObject startup = new JSObject();
+            for (Map.Entry<String, Long> section : StartupTrace.durationsMicros().entrySet()) {
+                startup.put(section.getKey(), section.getValue());
+            }
+            ret.put("startupMicros", startup);
+            ret.put("pageDispatch", JSObject.fromJSONObject(PageDispatchQueue.getStats()));
+            if (call.getBoolean("reset", false)) {
+                Web3Tracer.reset();
+                PageDispatchQueue.reset();
+            }
+            call.resolve(ret);
+        } catch (Exception e) {
+            call.reject("Failed to read metrics: " + e.getMessage());
+        }
+    }
+    
+    @PluginMethod
+    public void getRpcStats(PluginCall call) {
+        try {
+            JSObject ret = new JSObject();
+            ret.put("endpoints", new JSArray(RpcScheduler.getAllStats().toString()));
+            ret.put("ens", JSObject.fromJSONObject(EnsResolver.getStats()));
+            call.resolve(ret);
+        } catch (Exception e) {
+            call.reject("Failed to read RPC stats: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void configureContentBlocker(PluginCall call) {
+        ContentBlocker.getInstance(getContext()).setEnabled(call.getBoolean("enabled", true));
+        
+        JSObject ret = new JSObject();
+        ret.put("success", true);
+        call.resolve(ret);
+    }
+    
+    @PluginMethod
+    public void getContentBlockerStats(PluginCall call) {
+        try {
+            call.resolve(JSObject.fromJSONObject(ContentBlocker.getInstance(getContext()).getStats()));
+        } catch (Exception e) {
+            call.reject("Failed to read blocker stats: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getSessionStats(PluginCall call) {
+        try {
+            call.resolve(JSObject.fromJSONObject(BrowserSessionStore.getInstance(getContext()).getStats()));
+        } catch (Exception e) {
+            call.reject("Failed to read session stats: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void clearSession(PluginCall call) {
+        BrowserSessionStore.getInstance(getContext()).clear();
+        JSObject ret = new JSObject();
+        ret.put("success", true);
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void configureAssetCache(PluginCall call) {
+        boolean enabled = call.getBoolean("enabled", false);
+        long maxBytes = call.getLong("maxBytes", 0L);
+        
+        DAppAssetCache cache = DAppAssetCache.getInstance(getContext());
+        cache.configure(enabled, maxBytes);
+        if (call.getBoolean("clear", false)) {
+            cache.clear();
+        }
+        
+        JSObject ret = new JSObject();
+        ret.put("success", true);
+        call.resolve(ret);
+    }
+    
+    @PluginMethod
+    public void getAssetCacheStats(PluginCall call) {
+        try {
+            call.resolve(JSObject.fromJSONObject(DAppAssetCache.getInstance(getContext()).getStats()));
+        } catch (Exception e) {
+            call.reject("Failed to read cache stats: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void warmup(PluginCall call) {
+        JSArray urls = call.getArray("urls", new JSArray());
+        long byteBudget = call.getLong("byteBudget", 0L);
+        boolean allowMetered = call.getBoolean("allowMetered", false);
+        
+        List<String> targets = new ArrayList<>();
+        for (int i = 0; i < urls.length(); i++) {
+            String url = urls.optString(i, "");
+            if (url.startsWith("http://") || url.startsWith("https://")) {
+                targets.add(url);
+            }
+        }
+        
+        String skipReason = DAppWarmup.getInstance(getContext()).warmup(targets, byteBudget, allowMetered);
+        
+        JSObject ret = new JSObject();
+        ret.put("success", true);
+        ret.put("scheduled", skipReason == null ? targets.size() : 0);
+        if (skipReason != null) {
+            ret.put("skipped", skipReason);
+        }
+        call.resolve(ret);
+    }
+    
+    @PluginMethod
+    public void getWarmupStats(PluginCall call) {
+        try {
+            call.resolve(JSObject.fromJSONObject(DAppWarmup.getInstance(getContext()).getStats()));
+        } catch (Exception e) {
+            call.reject("Failed to read warm-up stats: " + e.getMessage());
+        }
+    }
+
     @Override
     protected void handleOnDestroy() {
         super.handleOnDestroy();
         
-        LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(getContext());
-        if (browserEventReceiver != null) {
+        synchronized (this) {
+            if (browserEventReceiver == null) return;
+            LocalBroadcastManager lbm = LocalBroadcastManager.getInstance(getContext());
             lbm.unregisterReceiver(browserEventReceiver);
-        }
-        if (web3RequestReceiver != null) {
+            lbm.unregisterReceiver(web3CancelReceiver);
             lbm.unregisterReceiver(web3RequestReceiver);
+            browserEventReceiver = null;
+            web3CancelReceiver = null;
+            web3RequestReceiver = null;
         }
     }
 }
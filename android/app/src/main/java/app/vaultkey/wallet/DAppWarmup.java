@@ -0,0 +1,326 @@
+package app.vaultkey.wallet;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Uri;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.webkit.WebSettings;
+
+import org.json.JSONObject;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Speculatively prepares favourite dApps before they are opened: resolves
+// DNS, opens a connection for the landing document and pulls its critical
+// scripts and styles into DAppAssetCache. Work is deferred to main-thread
+// idle time, runs at background priority and stops at the data budget.
+class DAppWarmup {
+    private static final String TAG = "DAppWarmup";
+    private static final int MAX_URLS = 6;
+    private static final int MAX_SUBRESOURCES = 8;
+    private static final int MAX_DOCUMENT_BYTES = 512 * 1024;
+    private static final long DEFAULT_BYTE_BUDGET = 4L * 1024 * 1024;
+    private static final long REWARM_AFTER_MS = 10 * 60 * 1000;
+    private static final long WARM_WINDOW_MS = 15 * 60 * 1000;
+    private static final int MIN_BATTERY_PERCENT = 20;
+    private static final Pattern SCRIPT_SRC = Pattern.compile("<script[^>]+src=[\"']([^\"']+)[\"']", Pattern.CASE_INSENSITIVE);
+    private static final Pattern LINK_TAG = Pattern.compile("<link[^>]+>", Pattern.CASE_INSENSITIVE);
+    private static final Pattern LINK_REL = Pattern.compile("rel=[\"']?(stylesheet|modulepreload|preload)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern LINK_HREF = Pattern.compile("href=[\"']([^\"']+)[\"']", Pattern.CASE_INSENSITIVE);
+
+    private static DAppWarmup instance;
+
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "DAppWarmup");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, WarmState> warmed = new HashMap<>();
+    private boolean webViewProviderLoaded = false;
+
+    private long warmups = 0;
+    private long skipped = 0;
+    private long bytesUsed = 0;
+    private long warmOpens = 0;
+    private long coldOpens = 0;
+    private long warmLoadMsTotal = 0;
+    private long coldLoadMsTotal = 0;
+    private String lastSkipReason = "";
+
+    private static class WarmState {
+        long warmedAt;
+        long dnsMs;
+        long documentMs;
+        long prefetchMs;
+        int prefetched;
+        long bytes;
+    }
+
+    static synchronized DAppWarmup getInstance(Context context) {
+        if (instance == null) {
+            instance = new DAppWarmup(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DAppWarmup(Context context) {
+        this.context = context;
+    }
+
+    // Returns the reason warm-up was refused, or null when it was scheduled.
+    String warmup(List<String> urls, long byteBudget, boolean allowMetered) {
+        String reason = checkConditions(allowMetered);
+        if (reason != null) {
+            synchronized (this) {
+                skipped++;
+                lastSkipReason = reason;
+            }
+            Log.d(TAG, "Skipping warm-up: " + reason);
+            return reason;
+        }
+
+        boolean metered = isMetered() && !allowMetered;
+        long budget = byteBudget > 0 ? byteBudget : DEFAULT_BYTE_BUDGET;
+        List<String> targets = new ArrayList<>(urls.subList(0, Math.min(urls.size(), MAX_URLS)));
+
+        mainHandler.post(() -> Looper.myQueue().addIdleHandler(() -> {
+            ensureWebViewProvider();
+            executor.execute(() -> runWarmup(targets, budget, metered));
+            return false;
+        }));
+        return null;
+    }
+
+    // Loading the WebView provider (Chromium) is the largest fixed cost of
+    // the first browser open; pulling the default user agent forces it.
+    private void ensureWebViewProvider() {
+        if (webViewProviderLoaded) return;
+        long start = SystemClock.elapsedRealtime();
+        try {
+            WebSettings.getDefaultUserAgent(context);
+            webViewProviderLoaded = true;
+            Log.d(TAG, "WebView provider loaded in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        } catch (Exception e) {
+            Log.w(TAG, "WebView provider warm-up failed", e);
+        }
+    }
+
+    private void runWarmup(List<String> urls, long budget, boolean metered) {
+        DAppAssetCache cache = DAppAssetCache.getInstance(context);
+        long remaining = budget;
+
+        for (String url : urls) {
+            String origin = originOf(url);
+            if (origin == null) continue;
+            synchronized (this) {
+                WarmState previous = warmed.get(origin);
+                if (previous != null && SystemClock.elapsedRealtime() - previous.warmedAt < REWARM_AFTER_MS) {
+                    continue;
+                }
+            }
+
+            WarmState state = new WarmState();
+            try {
+                String host = Uri.parse(url).getHost();
+                long start = SystemClock.elapsedRealtime();
+                InetAddress.getAllByName(host);
+                state.dnsMs = SystemClock.elapsedRealtime() - start;
+
+                // Metered links only get DNS; the document and bundles cost
+                // data. The document is only worth fetching for the bundles
+                // it names, which need the asset cache to be kept.
+                if (!metered && remaining > 0 && cache.isEnabled()) {
+                    start = SystemClock.elapsedRealtime();
+                    String html = fetchDocument(url, state);
+                    state.documentMs = SystemClock.elapsedRealtime() - start;
+                    remaining -= state.bytes;
+
+                    if (html != null) {
+                        start = SystemClock.elapsedRealtime();
+                        for (String asset : findCriticalSubresources(url, html)) {
+                            if (remaining <= 0) break;
+                            long fetched = cache.prefetch(asset, userAgentHeaders());
+                            if (fetched >= 0) {
+                                state.prefetched++;
+                                state.bytes += fetched;
+                                remaining -= fetched;
+                            }
+                        }
+                        state.prefetchMs = SystemClock.elapsedRealtime() - start;
+                    }
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Warm-up failed for " + url, e);
+            }
+
+            state.warmedAt = SystemClock.elapsedRealtime();
+            synchronized (this) {
+                warmed.put(origin, state);
+                warmups++;
+                bytesUsed += state.bytes;
+            }
+            Log.d(TAG, "Warmed " + origin + " dns=" + state.dnsMs + "ms doc=" + state.documentMs
+                + "ms assets=" + state.prefetched + " bytes=" + state.bytes);
+        }
+    }
+
+    private String fetchDocument(String url, WarmState state) throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setConnectTimeout(10000);
+        conn.setReadTimeout(15000);
+        for (Map.Entry<String, String> h : userAgentHeaders().entrySet()) {
+            conn.setRequestProperty(h.getKey(), h.getValue());
+        }
+        conn.setRequestProperty("Accept", "text/html");
+        try {
+            if (conn.getResponseCode() != 200) return null;
+            InputStream in = conn.getInputStream();
+            byte[] body = DAppAssetCache.readFully(in, MAX_DOCUMENT_BYTES);
+            state.bytes += body.length;
+            return new String(body, StandardCharsets.UTF_8);
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    static List<String> findCriticalSubresources(String pageUrl, String html) {
+        Set<String> found = new LinkedHashSet<>();
+        Uri base = Uri.parse(pageUrl);
+
+        Matcher scripts = SCRIPT_SRC.matcher(html);
+        while (scripts.find() && found.size() < MAX_SUBRESOURCES) {
+            addResolved(found, base, scripts.group(1));
+        }
+        Matcher links = LINK_TAG.matcher(html);
+        while (links.find() && found.size() < MAX_SUBRESOURCES) {
+            String tag = links.group();
+            if (!LINK_REL.matcher(tag).find()) continue;
+            Matcher href = LINK_HREF.matcher(tag);
+            if (href.find()) {
+                addResolved(found, base, href.group(1));
+            }
+        }
+        return new ArrayList<>(found);
+    }
+
+    private static void addResolved(Set<String> out, Uri base, String ref) {
+        try {
+            String resolved = new URL(new URL(base.toString()), ref).toString();
+            if (DAppAssetCache.isCacheableUrl(Uri.parse(resolved))) {
+                out.add(resolved);
+            }
+        } catch (Exception ignored) {
+        }
+    }
+
+    private Map<String, String> userAgentHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("User-Agent", DAppBrowserActivity.USER_AGENT);
+        return headers;
+    }
+
+    private String checkConditions(boolean allowMetered) {
+        PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (pm != null && pm.isPowerSaveMode()) {
+            return "power_save";
+        }
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+            int plugged = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+            if (plugged == 0 && level >= 0 && scale > 0 && level * 100 / scale < MIN_BATTERY_PERCENT) {
+                return "low_battery";
+            }
+        }
+        if (!hasNetwork()) {
+            return "offline";
+        }
+        return null;
+    }
+
+    private boolean isMetered() {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return cm == null || cm.isActiveNetworkMetered();
+    }
+
+    @SuppressWarnings("deprecation")
+    private boolean hasNetwork() {
+        ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return cm != null && cm.getActiveNetworkInfo() != null && cm.getActiveNetworkInfo().isConnected();
+    }
+
+    // Called by the browser when the first load of a freshly opened tab
+    // finishes, so warm and cold opens can be compared.
+    synchronized void recordOpen(String url, long loadMs) {
+        String origin = originOf(url);
+        WarmState state = origin != null ? warmed.get(origin) : null;
+        boolean warm = state != null && SystemClock.elapsedRealtime() - state.warmedAt < WARM_WINDOW_MS;
+        if (warm) {
+            warmOpens++;
+            warmLoadMsTotal += loadMs;
+        } else {
+            coldOpens++;
+            coldLoadMsTotal += loadMs;
+        }
+    }
+
+    synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("warmups", warmups);
+            stats.put("skipped", skipped);
+            stats.put("lastSkipReason", lastSkipReason);
+            stats.put("bytesUsed", bytesUsed);
+            stats.put("warmOrigins", warmed.size());
+            stats.put("warmOpens", warmOpens);
+            stats.put("coldOpens", coldOpens);
+            stats.put("avgWarmLoadMs", warmOpens > 0 ? warmLoadMsTotal / warmOpens : 0);
+            stats.put("avgColdLoadMs", coldOpens > 0 ? coldLoadMsTotal / coldOpens : 0);
+            // Measured difference between the two first-load averages; only
+            // meaningful once both kinds of open have been seen.
+            stats.put("avgSavedMs", warmOpens > 0 && coldOpens > 0
+                ? coldLoadMsTotal / coldOpens - warmLoadMsTotal / warmOpens : 0);
+        } catch (Exception e) {
+            Log.e(TAG, "Error building stats", e);
+        }
+        return stats;
+    }
+
+    static String originOf(String url) {
+        try {
+            Uri uri = Uri.parse(url);
+            if (uri.getScheme() == null || uri.getHost() == null) return null;
+            return uri.getScheme() + "://" + uri.getHost() + (uri.getPort() > 0 ? ":" + uri.getPort() : "");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
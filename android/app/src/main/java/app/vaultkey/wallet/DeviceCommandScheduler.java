@@ -0,0 +1,289 @@
+package app.vaultkey.wallet;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Orders commands for the hardware wallet's single serial link. Commands
+// queue in three classes (signing and unlock, foreground queries,
+// background sweeps and polls) and run one at a time on a worker thread.
+// A command is atomic on the wire, so a signing request preempts
+// background work at the next command boundary rather than mid-exchange.
+// Waiting commands move up one class per AGING_MS, which bounds how long a
+// sweep can be held back. Queued commands can be cancelled by tag or class,
+// and may carry a queue deadline after which they are dropped unsent.
+class DeviceCommandScheduler {
+    static final int PRIORITY_INTERACTIVE = 0;
+    static final int PRIORITY_FOREGROUND = 1;
+    static final int PRIORITY_BACKGROUND = 2;
+    private static final String[] PRIORITY_NAMES = {"interactive", "foreground", "background"};
+    static final long AGING_MS = 5000;
+
+    interface Transport {
+        JSONObject exchange(JSONObject command, long timeoutMs) throws IOException;
+    }
+
+    interface Callback {
+        // Exactly one of response and error is non-null.
+        void onComplete(JSONObject response, String error);
+    }
+
+    private static class Ticket {
+        final int id;
+        final int priority;
+        final JSONObject command;
+        final long timeoutMs;
+        final String tag;
+        final long enqueuedAt;
+        final long expiresAt;
+        final Callback callback;
+
+        Ticket(int id, int priority, JSONObject command, long timeoutMs, String tag, long enqueuedAt, long expiresAt, Callback callback) {
+            this.id = id;
+            this.priority = priority;
+            this.command = command;
+            this.timeoutMs = timeoutMs;
+            this.tag = tag;
+            this.enqueuedAt = enqueuedAt;
+            this.expiresAt = expiresAt;
+            this.callback = callback;
+        }
+
+        int effectivePriority(long now) {
+            return (int) Math.max(PRIORITY_INTERACTIVE, priority - (now - enqueuedAt) / AGING_MS);
+        }
+    }
+
+    private final Transport transport;
+    // Arrival order; the worker scans it for the best effective priority.
+    private final List<Ticket> queue = new ArrayList<>();
+    private Thread worker;
+    private boolean stopped = false;
+    private int nextId = 1;
+    private String runningAction;
+
+    private final int[] queued = new int[3];
+    private final int[] maxQueued = new int[3];
+    private final long[] started = new long[3];
+    private final long[] executed = new long[3];
+    private final long[] cancelled = new long[3];
+    private final long[] expired = new long[3];
+    private final long[] aged = new long[3];
+    private final long[] totalWaitMs = new long[3];
+    private final long[] maxWaitMs = new long[3];
+    private final long[] totalRunMs = new long[3];
+
+    DeviceCommandScheduler(Transport transport) {
+        this.transport = transport;
+    }
+
+    // Default class for a firmware action when the caller does not say.
+    static int priorityFor(String action) {
+        switch (action) {
+            case "sign_transaction":
+            case "sign_message":
+            case "sign_batch":
+            case "unlock":
+            case "lock":
+            case "setup":
+            case "get_seed":
+                return PRIORITY_INTERACTIVE;
+            case "get_addresses":
+            case "status":
+                return PRIORITY_BACKGROUND;
+            default:
+                return PRIORITY_FOREGROUND;
+        }
+    }
+
+    static int parsePriority(String name, int fallback) {
+        if (name == null) return fallback;
+        for (int p = 0; p < PRIORITY_NAMES.length; p++) {
+            if (PRIORITY_NAMES[p].equals(name)) return p;
+        }
+        return fallback;
+    }
+
+    // Queues a command and returns its ticket id. maxQueueMs of 0 means it
+    // waits as long as it takes; otherwise it is dropped with an error if it
+    // has not started by then.
+    int submit(JSONObject command, int priority, long timeoutMs, long maxQueueMs, String tag, Callback callback) {
+        synchronized (this) {
+            if (!stopped) {
+                return enqueue(command, priority, timeoutMs, maxQueueMs, tag, callback);
+            }
+        }
+        callback.onComplete(null, "Scheduler stopped");
+        return 0;
+    }
+
+    private int enqueue(JSONObject command, int priority, long timeoutMs, long maxQueueMs, String tag, Callback callback) {
+        int p = Math.max(PRIORITY_INTERACTIVE, Math.min(PRIORITY_BACKGROUND, priority));
+        long now = now();
+        Ticket ticket = new Ticket(nextId++, p, command, timeoutMs, tag, now, maxQueueMs > 0 ? now + maxQueueMs : 0, callback);
+        queue.add(ticket);
+        queued[p]++;
+        maxQueued[p] = Math.max(maxQueued[p], queued[p]);
+        if (worker == null) {
+            worker = new Thread(this::runLoop, "DeviceCommands");
+            worker.setDaemon(true);
+            worker.start();
+        }
+        notifyAll();
+        return ticket.id;
+    }
+
+    // Cancels queued commands whose class is at or below minPriority and,
+    // when tag is given, whose tag matches. Running commands are not
+    // affected. Returns how many were cancelled.
+    int cancel(String tag, int minPriority, String reason) {
+        List<Ticket> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Ticket> it = queue.iterator();
+            while (it.hasNext()) {
+                Ticket t = it.next();
+                if (t.priority >= minPriority && (tag == null || tag.equals(t.tag))) {
+                    it.remove();
+                    queued[t.priority]--;
+                    cancelled[t.priority]++;
+                    removed.add(t);
+                }
+            }
+        }
+        for (Ticket t : removed) {
+            t.callback.onComplete(null, reason);
+        }
+        return removed.size();
+    }
+
+    synchronized int size() {
+        return queue.size();
+    }
+
+    void shutdown() {
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+        cancel(null, PRIORITY_INTERACTIVE, "Scheduler stopped");
+    }
+
+    private void runLoop() {
+        while (true) {
+            Ticket next;
+            List<Ticket> dropped = new ArrayList<>();
+            synchronized (this) {
+                while (true) {
+                    if (stopped) return;
+                    next = take(now(), dropped);
+                    if (next != null || !dropped.isEmpty()) break;
+                    try {
+                        wait(nextExpiry());
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (next != null) {
+                    runningAction = next.command.optString("action", "");
+                }
+            }
+            for (Ticket t : dropped) {
+                t.callback.onComplete(null, "Command expired in queue");
+            }
+            if (next == null) continue;
+
+            long start = now();
+            JSONObject response = null;
+            String error = null;
+            try {
+                response = transport.exchange(next.command, next.timeoutMs);
+            } catch (IOException | RuntimeException e) {
+                error = e.getMessage() != null ? e.getMessage() : "Command failed";
+            }
+            synchronized (this) {
+                runningAction = null;
+                executed[next.priority]++;
+                totalRunMs[next.priority] += now() - start;
+            }
+            next.callback.onComplete(response, error);
+        }
+    }
+
+    // Removes and returns the ticket to run next, moving expired ones into
+    // dropped. Lowest effective class wins, earliest arrival within it.
+    private Ticket take(long now, List<Ticket> dropped) {
+        Ticket best = null;
+        int bestPriority = Integer.MAX_VALUE;
+        Iterator<Ticket> it = queue.iterator();
+        while (it.hasNext()) {
+            Ticket t = it.next();
+            if (t.expiresAt != 0 && now >= t.expiresAt) {
+                it.remove();
+                queued[t.priority]--;
+                expired[t.priority]++;
+                dropped.add(t);
+                continue;
+            }
+            int effective = t.effectivePriority(now);
+            if (effective < bestPriority) {
+                best = t;
+                bestPriority = effective;
+            }
+        }
+        if (best == null) return null;
+        queue.remove(best);
+        int p = best.priority;
+        long waited = now - best.enqueuedAt;
+        queued[p]--;
+        started[p]++;
+        totalWaitMs[p] += waited;
+        maxWaitMs[p] = Math.max(maxWaitMs[p], waited);
+        if (bestPriority < p) {
+            aged[p]++;
+        }
+        return best;
+    }
+
+    // Milliseconds until the next queue deadline, or 0 to wait for a submit.
+    private long nextExpiry() {
+        long now = now();
+        long soonest = 0;
+        for (Ticket t : queue) {
+            if (t.expiresAt == 0) continue;
+            long in = Math.max(1, t.expiresAt - now);
+            soonest = soonest == 0 ? in : Math.min(soonest, in);
+        }
+        return soonest;
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1_000_000;
+    }
+
+    synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("running", runningAction != null ? runningAction : JSONObject.NULL);
+            stats.put("queued", queue.size());
+            for (int p = 0; p < PRIORITY_NAMES.length; p++) {
+                JSONObject cls = new JSONObject();
+                cls.put("queued", queued[p]);
+                cls.put("maxQueued", maxQueued[p]);
+                cls.put("executed", executed[p]);
+                cls.put("cancelled", cancelled[p]);
+                cls.put("expired", expired[p]);
+                cls.put("aged", aged[p]);
+                cls.put("avgWaitMs", started[p] > 0 ? totalWaitMs[p] / started[p] : 0);
+                cls.put("maxWaitMs", maxWaitMs[p]);
+                cls.put("avgRunMs", executed[p] > 0 ? totalRunMs[p] / executed[p] : 0);
+                stats.put(PRIORITY_NAMES[p], cls);
+            }
+        } catch (JSONException ignored) {
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,514 @@
+package app.vaultkey.wallet;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// ENS resolution for the URL bar and the page's provider. Every registry
+// and resolver read is cached by (contract, calldata) with a TTL. Pages
+// only get the registry's resolver() lookup from the cache, within its
+// TTL; their record reads (addresses, names, text) always go to the node,
+// since a page may pay whatever address it is told. Empty and reverted
+// results are cached for a short time. A found contenthash, which only
+// decides whether the URL bar opens the gateway, is served stale for up
+// to a week while a background refresh runs; nothing that yields an
+// address is. The cache is bounded in memory and written to disk, so
+// names resolved in an earlier session come back without a round trip.
+// A name's record reads go out together in one Multicall3 call once its
+// resolver is known.
+class EnsResolver {
+    private static final String TAG = "EnsResolver";
+    static final String REGISTRY = "0x00000000000c2e074ec69a0dfb2997ba6c7d2e1e";
+    private static final int CHAIN_ID = 1;
+    private static final String RESOLVER = "0178b8bf";
+    private static final String CONTENTHASH = "bc1c58d1";
+    private static final String GATEWAY = ".limo";
+    private static final long POSITIVE_TTL_MS = 60 * 60 * 1000L;
+    private static final long NEGATIVE_TTL_MS = 5 * 60 * 1000L;
+    private static final long MAX_STALE_MS = 7 * 24 * 60 * 60 * 1000L;
+    private static final int MAX_ENTRIES = 1024;
+    private static final String FILE_NAME = "ens-cache.json";
+    private static final long WRITE_DELAY_MS = 5000;
+    private static final String ZERO_NODE = "0000000000000000000000000000000000000000000000000000000000000000";
+
+    private static final LinkedHashMap<String, Entry> cache = new LinkedHashMap<String, Entry>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private static final Set<String> refreshing = new HashSet<>();
+    private static final ExecutorService refreshPool = Executors.newFixedThreadPool(2);
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    private static File file;
+    private static ScheduledFuture<?> pendingWrite;
+
+    private static long hits = 0;
+    private static long staleHits = 0;
+    private static long misses = 0;
+    private static long fetches = 0;
+    private static long batchedReads = 0;
+    private static long loaded = 0;
+
+    // A cached eth_call outcome: the raw return data, or the revert.
+    private static class Entry {
+        final String result;
+        final int errorCode;
+        final String errorMessage;
+        final long expiresAt;
+
+        Entry(String result, int errorCode, String errorMessage, long expiresAt) {
+            this.result = result;
+            this.errorCode = errorCode;
+            this.errorMessage = errorMessage;
+            this.expiresAt = expiresAt;
+        }
+
+        String get() throws RpcException {
+            if (result == null) throw new RpcException(errorCode, errorMessage);
+            return result;
+        }
+    }
+
+    private EnsResolver() {
+    }
+
+    // Loads the disk tier in the background; lookups before it finishes
+    // simply miss.
+    static synchronized void init(Context context) {
+        if (file != null) return;
+        file = new File(context.getApplicationContext().getCacheDir(), FILE_NAME);
+        writer.execute(EnsResolver::load);
+    }
+
+    // ---- Names ----
+
+    // Lowercased, NFC-normalized name, or null if it is not a usable ENS
+    // name. Full ENSIP-15 normalization is left to the dApps.
+    static String normalize(String name) {
+        if (name == null) return null;
+        String n = Normalizer.normalize(name.trim(), Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        if (n.isEmpty() || n.startsWith(".") || n.endsWith(".") || n.contains("..")) return null;
+        for (int i = 0; i < n.length(); i++) {
+            char c = n.charAt(i);
+            if (c <= ' ' || c == '/' || c == ':' || c == '?' || c == '#' || c == '@') return null;
+        }
+        return n;
+    }
+
+    // Hex without 0x.
+    static String namehash(String name) {
+        byte[] node = new byte[32];
+        if (!name.isEmpty()) {
+            String[] labels = name.split("\\.");
+            for (int i = labels.length - 1; i >= 0; i--) {
+                byte[] joined = new byte[64];
+                System.arraycopy(node, 0, joined, 0, 32);
+                System.arraycopy(Keccak.keccak256(labels[i]), 0, joined, 32, 32);
+                node = Keccak.keccak256(joined);
+            }
+        }
+        return toHex(node);
+    }
+
+    // Returns the eth.limo gateway URL for input typed into the URL bar when
+    // its host is a .eth name, keeping any path, or null otherwise.
+    static String gatewayUrl(String input) {
+        String rest = input.trim();
+        int scheme = rest.indexOf("://");
+        if (scheme >= 0) {
+            String s = rest.substring(0, scheme).toLowerCase(Locale.ROOT);
+            if (!s.equals("http") && !s.equals("https")) return null;
+            rest = rest.substring(scheme + 3);
+        }
+        int end = rest.length();
+        for (int i = 0; i < rest.length(); i++) {
+            char c = rest.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                end = i;
+                break;
+            }
+        }
+        String name = normalize(rest.substring(0, end));
+        if (name == null || !name.endsWith(".eth")) return null;
+        return "https://" + name + GATEWAY + rest.substring(end);
+    }
+
+    // Name part of an eth.limo gateway URL's host, or null.
+    static String nameOfGatewayHost(String host) {
+        if (host == null || !host.endsWith(".eth" + GATEWAY)) return null;
+        return normalize(host.substring(0, host.length() - GATEWAY.length()));
+    }
+
+    // True when the name has a contenthash record, i.e. a website.
+    static boolean hasContent(String name) throws IOException {
+        byte[][] records = readRecords(name, new String[]{CONTENTHASH + namehash(name)}, RpcScheduler.PRIORITY_USER, true);
+        return records != null && records[0] != null && decodeBytes(records[0]).length > 0;
+    }
+
+    // Reads records (full calldata, hex without 0x) from name's resolver.
+    // Returns null when the name has no resolver; an element is null when
+    // that record reverted. allowStale lets expired answers through, the
+    // resolver included, while they are refreshed.
+    private static byte[][] readRecords(String name, String[] callData, int priority, boolean allowStale) throws IOException {
+        String resolver = decodeAddress(Multicall3.fromHex(
+            call(REGISTRY, "0x" + RESOLVER + namehash(name), priority, allowStale)));
+        if (resolver == null) return null;
+
+        byte[][] out = new byte[callData.length][];
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < callData.length; i++) {
+            Entry entry = cached(resolver, "0x" + callData[i], allowStale);
+            if (entry == null) {
+                missing.add(i);
+            } else if (entry.result != null) {
+                out[i] = Multicall3.fromHex(entry.result);
+            }
+        }
+        if (missing.size() == 1) {
+            int i = missing.get(0);
+            try {
+                out[i] = Multicall3.fromHex(fetch(resolver, "0x" + callData[i], priority));
+            } catch (RpcException e) {
+                if (!isRevert(e)) throw e;
+            }
+        } else if (missing.size() > 1) {
+            List<Multicall3.Call> calls = new ArrayList<>();
+            for (int i : missing) {
+                calls.add(new Multicall3.Call(resolver, callData[i]));
+            }
+            JSONArray params = new JSONArray();
+            try {
+                params.put(new JSONObject().put("to", Multicall3.ADDRESS).put("data", Multicall3.encodeAggregate3(calls)));
+                params.put("latest");
+            } catch (JSONException e) {
+                throw new RpcException(-32602, "Invalid params");
+            }
+            Object result = JsonRpcClient.forChain(CHAIN_ID).call("eth_call", params, priority);
+            List<Multicall3.Result> results;
+            try {
+                results = Multicall3.decodeAggregate3(String.valueOf(result));
+            } catch (IllegalArgumentException e) {
+                throw new RpcException(-32700, e.getMessage());
+            }
+            if (results.size() != missing.size()) {
+                throw new RpcException(-32700, "aggregate3 returned " + results.size() + " results");
+            }
+            synchronized (EnsResolver.class) {
+                batchedReads += missing.size();
+            }
+            for (int j = 0; j < missing.size(); j++) {
+                int i = missing.get(j);
+                Multicall3.Result r = results.get(j);
+                if (r.success) {
+                    out[i] = r.data;
+                    store(resolver, "0x" + callData[i], "0x" + toHex(r.data), 0, null);
+                } else {
+                    store(resolver, "0x" + callData[i], null, 3, "execution reverted");
+                }
+            }
+        }
+        return out;
+    }
+
+    // ---- Provider eth_call ----
+
+    static boolean appliesTo(int chainId) {
+        return chainId == CHAIN_ID;
+    }
+
+    // True for a page's mainnet eth_call to the registry's resolver(), at
+    // latest. Record reads are not served to pages from the cache.
+    static boolean isCacheableCall(int chainId, JSONArray args) {
+        if (chainId != CHAIN_ID || args.length() > 2) return false;
+        Object tag = args.opt(1);
+        if (tag != null && !"latest".equals(tag)) return false;
+        JSONObject tx = args.optJSONObject(0);
+        if (tx == null) return false;
+        Iterator<String> keys = tx.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!key.equals("to") && !key.equals("data") && !key.equals("input") && !key.equals("from")) return false;
+        }
+        String to = tx.optString("to").toLowerCase(Locale.ROOT);
+        String data = callData(tx);
+        if (data.length() < 10 || !data.startsWith("0x")) return false;
+        return to.equals(REGISTRY) && data.substring(2, 10).equals(RESOLVER);
+    }
+
+    // Serves a call accepted by isCacheableCall, never from an expired
+    // entry; reverts are rethrown as the node reported them.
+    static String call(JSONArray args, int priority) throws IOException {
+        JSONObject tx = args.optJSONObject(0);
+        return call(tx.optString("to").toLowerCase(Locale.ROOT), callData(tx), priority, false);
+    }
+
+    private static String callData(JSONObject tx) {
+        String data = tx.optString("data", "");
+        if (data.isEmpty()) data = tx.optString("input", "");
+        return data.toLowerCase(Locale.ROOT);
+    }
+
+    private static String call(String to, String data, int priority, boolean allowStale) throws IOException {
+        Entry entry = cached(to, data, allowStale);
+        return entry != null ? entry.get() : fetch(to, data, priority);
+    }
+
+    // Returns the entry for a call, or null on a miss. With allowStale, a
+    // found record past its TTL is returned as is and refreshed in the
+    // background; otherwise it counts as a miss and is kept for callers
+    // that do allow it until the fetch replaces it.
+    private static Entry cached(String to, String data, boolean allowStale) {
+        String key = to + data;
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (EnsResolver.class) {
+            entry = cache.get(key);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            if (now < entry.expiresAt) {
+                hits++;
+                return entry;
+            }
+            if (entry.result == null || now >= entry.expiresAt + MAX_STALE_MS) {
+                cache.remove(key);
+                misses++;
+                return null;
+            }
+            if (!allowStale) {
+                misses++;
+                return null;
+            }
+            staleHits++;
+            if (!refreshing.add(key)) return entry;
+        }
+        refreshPool.execute(() -> {
+            try {
+                fetch(to, data, RpcScheduler.PRIORITY_BACKGROUND);
+            } catch (IOException e) {
+                Log.d(TAG, "Refresh failed: " + e.getMessage());
+            } finally {
+                synchronized (EnsResolver.class) {
+                    refreshing.remove(key);
+                }
+            }
+        });
+        return entry;
+    }
+
+    private static String fetch(String to, String data, int priority) throws IOException {
+        JSONArray params = new JSONArray();
+        try {
+            params.put(new JSONObject().put("to", to).put("data", data));
+            params.put("latest");
+        } catch (JSONException e) {
+            throw new RpcException(-32602, "Invalid params");
+        }
+        synchronized (EnsResolver.class) {
+            fetches++;
+        }
+        try {
+            String result = String.valueOf(JsonRpcClient.forChain(CHAIN_ID).call("eth_call", params, priority));
+            store(to, data, result, 0, null);
+            return result;
+        } catch (RpcException e) {
+            if (isRevert(e)) {
+                store(to, data, null, e.code, e.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isRevert(RpcException e) {
+        return e.code == 3 || (e.getMessage() != null && e.getMessage().contains("revert"));
+    }
+
+    private static void store(String to, String data, String result, int errorCode, String errorMessage) {
+        boolean empty = result == null || isEmptyResult(result);
+        long expiresAt = System.currentTimeMillis() + (empty ? NEGATIVE_TTL_MS : POSITIVE_TTL_MS);
+        synchronized (EnsResolver.class) {
+            cache.put(to + data, new Entry(result, errorCode, errorMessage, expiresAt));
+            scheduleWrite();
+        }
+    }
+
+    // Zero address, zero word or empty bytes: the name or record is unset.
+    private static boolean isEmptyResult(String hex) {
+        int start = hex.startsWith("0x") ? 2 : 0;
+        boolean allZero = true;
+        for (int i = start; i < hex.length() && allZero; i++) {
+            allZero = hex.charAt(i) == '0';
+        }
+        if (allZero) return true;
+        return hex.length() - start == 128
+            && hex.regionMatches(start, ZERO_NODE.substring(2) + "20", 0, 64)
+            && hex.regionMatches(start + 64, ZERO_NODE, 0, 64);
+    }
+
+    // ---- ABI ----
+
+    private static String decodeAddress(byte[] word) {
+        if (word.length < 32) return null;
+        boolean zero = true;
+        for (int i = 12; i < 32; i++) {
+            if (word[i] != 0) zero = false;
+        }
+        if (zero) return null;
+        byte[] address = new byte[20];
+        System.arraycopy(word, 12, address, 0, 20);
+        return "0x" + toHex(address);
+    }
+
+    // A single ABI-encoded bytes or string return value.
+    private static byte[] decodeBytes(byte[] data) {
+        if (data.length < 64) return new byte[0];
+        long offset = readWord(data, 0);
+        if (offset > data.length - 32) return new byte[0];
+        long length = readWord(data, (int) offset);
+        if (length > data.length - offset - 32) return new byte[0];
+        byte[] out = new byte[(int) length];
+        System.arraycopy(data, (int) offset + 32, out, 0, (int) length);
+        return out;
+    }
+
+    private static long readWord(byte[] data, int at) {
+        for (int i = at; i < at + 24; i++) {
+            if (data[i] != 0) return Long.MAX_VALUE;
+        }
+        long value = 0;
+        for (int i = at + 24; i < at + 32; i++) {
+            value = (value << 8) | (data[i] & 0xff);
+        }
+        return value < 0 ? Long.MAX_VALUE : value;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    // ---- Disk tier ----
+
+    // Caller holds the class lock.
+    private static void scheduleWrite() {
+        if (file == null || (pendingWrite != null && !pendingWrite.isDone())) return;
+        pendingWrite = writer.schedule(EnsResolver::save, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private static void load() {
+        File f;
+        synchronized (EnsResolver.class) {
+            f = file;
+        }
+        if (f == null || !f.isFile()) return;
+        try (InputStream in = new FileInputStream(f)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                buffer.write(chunk, 0, n);
+            }
+            JSONObject root = new JSONObject(new String(buffer.toByteArray(), StandardCharsets.UTF_8));
+            JSONArray entries = root.getJSONArray("entries");
+            long now = System.currentTimeMillis();
+            synchronized (EnsResolver.class) {
+                // Oldest first, so the access order survives the round trip.
+                for (int i = 0; i < entries.length(); i++) {
+                    JSONObject e = entries.getJSONObject(i);
+                    String key = e.getString("k");
+                    long expiresAt = e.getLong("x");
+                    boolean found = e.has("r");
+                    if (cache.containsKey(key) || now >= expiresAt + (found ? MAX_STALE_MS : 0)) continue;
+                    cache.put(key, new Entry(found ? e.getString("r") : null, e.optInt("c", 3),
+                        e.optString("m", "execution reverted"), expiresAt));
+                    loaded++;
+                }
+            }
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Discarding unreadable ENS cache", e);
+            f.delete();
+        }
+    }
+
+    private static void save() {
+        File f;
+        JSONObject root = new JSONObject();
+        try {
+            JSONArray entries = new JSONArray();
+            synchronized (EnsResolver.class) {
+                f = file;
+                for (Map.Entry<String, Entry> e : cache.entrySet()) {
+                    Entry entry = e.getValue();
+                    JSONObject item = new JSONObject().put("k", e.getKey()).put("x", entry.expiresAt);
+                    if (entry.result != null) {
+                        item.put("r", entry.result);
+                    } else {
+                        item.put("c", entry.errorCode).put("m", entry.errorMessage);
+                    }
+                    entries.put(item);
+                }
+            }
+            root.put("entries", entries);
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to serialize ENS cache", e);
+            return;
+        }
+        File tmp = new File(f.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(root.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write ENS cache", e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(f)) {
+            Log.w(TAG, "Failed to replace ENS cache");
+            tmp.delete();
+        }
+    }
+
+    static synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("entries", cache.size());
+            stats.put("hits", hits);
+            stats.put("staleHits", staleHits);
+            stats.put("misses", misses);
+            stats.put("fetches", fetches);
+            stats.put("batchedReads", batchedReads);
+            stats.put("loadedFromDisk", loaded);
+        } catch (JSONException ignored) {
+        }
+        return stats;
+    }
+}
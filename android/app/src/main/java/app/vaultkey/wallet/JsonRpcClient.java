@@ -0,0 +1,224 @@
+package app.vaultkey.wallet;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Minimal JSON-RPC 2.0 client shared by the native provider components.
+// Results are returned as org.json values (JSONObject, JSONArray, String,
+// Boolean, Number or JSONObject.NULL).
+class JsonRpcClient {
+    private static final int MAX_RESPONSE_BYTES = 32 * 1024 * 1024;
+    private static final Map<Integer, JsonRpcClient> clients = new HashMap<>();
+    private static final ThreadLocal<JsonWriter> writers = new ThreadLocal<JsonWriter>() {
+        @Override
+        protected JsonWriter initialValue() {
+            return new JsonWriter(512);
+        }
+    };
+
+    final int chainId;
+    final String endpoint;
+    private final RpcScheduler scheduler;
+    private final AtomicInteger nextId = new AtomicInteger(1);
+
+    static synchronized JsonRpcClient forChain(int chainId) {
+        JsonRpcClient client = clients.get(chainId);
+        String endpoint = RpcEndpoints.forChain(chainId);
+        if (client == null || !client.endpoint.equals(endpoint)) {
+            client = new JsonRpcClient(chainId, endpoint);
+            clients.put(chainId, client);
+        }
+        return client;
+    }
+
+    JsonRpcClient(int chainId, String endpoint) {
+        this.chainId = chainId;
+        this.endpoint = endpoint;
+        this.scheduler = RpcScheduler.forEndpoint(endpoint);
+    }
+
+    Object call(String method, JSONArray params) throws IOException {
+        return call(method, params, RpcScheduler.PRIORITY_FOREGROUND);
+    }
+
+    Object call(String method, JSONArray params, int priority) throws IOException {
+        String body = send(method, params != null ? params.toString() : "[]", priority);
+        try {
+            JSONObject response = new JSONObject(body);
+            JSONObject error = response.optJSONObject("error");
+            if (error != null) {
+                throw new RpcException(error.optInt("code", -32000), error.optString("message", "RPC error"));
+            }
+            return response.has("result") ? response.get("result") : JSONObject.NULL;
+        } catch (JSONException e) {
+            throw new RpcException(-32700, "Invalid JSON-RPC response from " + endpoint);
+        }
+    }
+
+    // Passes a page's params and the node's result through as JSON text,
+    // for callers that only relay them. Returns "null" when the response
+    // has no result.
+    String callRaw(String method, String paramsJson, int priority) throws IOException {
+        String params = paramsJson != null && !paramsJson.isEmpty() ? paramsJson : "[]";
+        if (!JsonScanner.isArray(params)) {
+            throw new RpcException(-32602, "Invalid params");
+        }
+        String body = send(method, params, priority);
+        try {
+            JsonScanner response = new JsonScanner(body);
+            String result = "null";
+            while (response.nextField()) {
+                if (response.nameIs("result")) {
+                    result = response.rawValue();
+                } else if (response.nameIs("error") && !response.isNull()) {
+                    JsonScanner error = new JsonScanner(response.rawValue());
+                    int code = -32000;
+                    String message = "RPC error";
+                    while (error.nextField()) {
+                        if (error.nameIs("code")) {
+                            code = error.intValue();
+                        } else if (error.nameIs("message")) {
+                            message = error.stringValue();
+                        }
+                    }
+                    throw new RpcException(code, message);
+                }
+            }
+            return result;
+        } catch (JSONException e) {
+            throw new RpcException(-32700, "Invalid JSON-RPC response from " + endpoint);
+        }
+    }
+
+    private String send(String method, String paramsJson, int priority) throws IOException {
+        JsonWriter writer = writers.get().reset();
+        String request = writer.beginObject()
+            .name("jsonrpc").value("2.0")
+            .name("id").value(nextId.getAndIncrement())
+            .name("method").value(method)
+            .name("params").rawValue(paramsJson)
+            .endObject()
+            .toString();
+
+        scheduler.acquire(priority);
+        int status = 200;
+        long retryAfterMs = 0;
+        try {
+            return post(request);
+        } catch (RpcException e) {
+            status = e.httpStatus > 0 ? e.httpStatus : 599;
+            retryAfterMs = e.retryAfterMs;
+            throw e;
+        } catch (IOException e) {
+            status = 599;
+            throw e;
+        } finally {
+            scheduler.release(status, retryAfterMs);
+        }
+    }
+
+    Object call(String method, String paramsJson) throws IOException {
+        return call(method, paramsJson, RpcScheduler.PRIORITY_FOREGROUND);
+    }
+
+    Object call(String method, String paramsJson, int priority) throws IOException {
+        try {
+            return call(method, new JSONArray(paramsJson != null && !paramsJson.isEmpty() ? paramsJson : "[]"), priority);
+        } catch (JSONException e) {
+            throw new RpcException(-32602, "Invalid params");
+        }
+    }
+
+    protected String post(String payload) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(endpoint).openConnection();
+        try {
+            conn.setConnectTimeout(15000);
+            conn.setReadTimeout(30000);
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setRequestProperty("Accept", "application/json");
+            byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+            conn.setFixedLengthStreamingMode(bytes.length);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(bytes);
+            }
+
+            int status = conn.getResponseCode();
+            if (status == 429) {
+                throw new RpcException(RpcException.TRANSPORT_ERROR, "Rate limited by " + endpoint, status,
+                    parseRetryAfter(conn.getHeaderField("Retry-After")));
+            }
+            InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            byte[] raw;
+            try {
+                raw = in != null ? DAppAssetCache.readFully(in, MAX_RESPONSE_BYTES) : new byte[0];
+            } catch (DAppAssetCache.TooLargeException e) {
+                throw new RpcException(RpcException.RESPONSE_TOO_LARGE,
+                    "Response from " + endpoint + " exceeds " + MAX_RESPONSE_BYTES + " bytes", status);
+            }
+            String body = new String(raw, StandardCharsets.UTF_8);
+            if (status >= 400 && !body.trim().startsWith("{")) {
+                throw new RpcException(RpcException.TRANSPORT_ERROR, "HTTP " + status + " from " + endpoint, status);
+            }
+            return body;
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    // Retry-After is either delta-seconds or an HTTP date.
+    static long parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) return 0;
+        try {
+            return Long.parseLong(value.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+                return Math.max(0, format.parse(value.trim()).getTime() - System.currentTimeMillis());
+            } catch (ParseException ignored) {
+                return 0;
+            }
+        }
+    }
+
+    static long parseQuantity(Object value) throws RpcException {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof String) {
+            String s = (String) value;
+            try {
+                return s.startsWith("0x") ? Long.parseLong(s.substring(2), 16) : Long.parseLong(s);
+            } catch (NumberFormatException e) {
+                throw new RpcException(-32602, "Invalid quantity: " + s);
+            }
+        }
+        throw new RpcException(-32602, "Invalid quantity: " + value);
+    }
+
+    static String toQuantity(long value) {
+        return "0x" + Long.toHexString(value);
+    }
+
+    // Serializes an org.json value as JSON text suitable for resolving a page promise.
+    static String toJson(Object value) {
+        if (value == null || value == JSONObject.NULL) return "null";
+        if (value instanceof String) return JSONObject.quote((String) value);
+        return value.toString();
+    }
+}
@@ -0,0 +1,257 @@
+package app.vaultkey.wallet;
+
+import org.json.JSONException;
+
+// Pull reader over the fields of one JSON object, for bridge messages
+// where only a few top-level fields are read. Nothing is built for fields
+// that are skipped, names are compared in place, and rawValue() hands
+// nested objects and arrays back as their original text so they can be
+// passed on without a parse. Values are checked structurally only as far
+// as needed to find where they end.
+final class JsonScanner {
+    private final String text;
+    private int pos;
+    private int nameStart;
+    private int nameEnd;
+    private boolean nameEscaped;
+    // Start of the current field's value; -1 once it has been consumed.
+    private int valueStart = -1;
+    private boolean first = true;
+
+    JsonScanner(String text) throws JSONException {
+        this.text = text;
+        skipWhitespace();
+        expect('{');
+    }
+
+    // Moves to the next field, skipping the current value if it was not
+    // read. Returns false at the end of the object.
+    boolean nextField() throws JSONException {
+        if (valueStart >= 0) skipValue();
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return false;
+        }
+        if (!first) {
+            expect(',');
+            skipWhitespace();
+        }
+        first = false;
+        expect('"');
+        nameStart = pos;
+        nameEscaped = skipStringBody();
+        nameEnd = pos - 1;
+        skipWhitespace();
+        expect(':');
+        skipWhitespace();
+        valueStart = pos;
+        return true;
+    }
+
+    boolean nameIs(String name) throws JSONException {
+        if (nameEscaped) return name.equals(unescape(nameStart, nameEnd));
+        return nameEnd - nameStart == name.length() && text.regionMatches(nameStart, name, 0, name.length());
+    }
+
+    String name() throws JSONException {
+        return nameEscaped ? unescape(nameStart, nameEnd) : text.substring(nameStart, nameEnd);
+    }
+
+    boolean isNull() {
+        return valueStart >= 0 && text.startsWith("null", valueStart);
+    }
+
+    // The value as org.json's optString gives it: strings unescaped, other
+    // values as their JSON text.
+    String stringValue() throws JSONException {
+        int start = valueStart;
+        skipValue();
+        if (text.charAt(start) == '"') {
+            return unescape(start + 1, pos - 1);
+        }
+        return text.substring(start, pos);
+    }
+
+    // Numbers, and numeric strings as org.json accepts them.
+    long longValue() throws JSONException {
+        int start = valueStart;
+        skipValue();
+        int from = start;
+        int to = pos;
+        if (text.charAt(start) == '"') {
+            from++;
+            to--;
+        }
+        boolean integral = to > from;
+        for (int i = from; i < to && integral; i++) {
+            char c = text.charAt(i);
+            integral = (c >= '0' && c <= '9') || (i == from && c == '-' && to - from > 1);
+        }
+        try {
+            if (integral && to - from <= 18) {
+                return Long.parseLong(text.substring(from, to));
+            }
+            return (long) Double.parseDouble(text.substring(from, to));
+        } catch (NumberFormatException e) {
+            throw new JSONException("Not a number: " + text.substring(from, to));
+        }
+    }
+
+    int intValue() throws JSONException {
+        return (int) longValue();
+    }
+
+    boolean booleanValue() throws JSONException {
+        int start = valueStart;
+        skipValue();
+        int from = start;
+        int to = pos;
+        if (text.charAt(start) == '"') {
+            from++;
+            to--;
+        }
+        if (to - from == 4 && text.regionMatches(true, from, "true", 0, 4)) return true;
+        if (to - from == 5 && text.regionMatches(true, from, "false", 0, 5)) return false;
+        throw new JSONException("Not a boolean: " + text.substring(start, pos));
+    }
+
+    // The value's JSON text, unparsed.
+    String rawValue() throws JSONException {
+        int start = valueStart;
+        skipValue();
+        return text.substring(start, pos);
+    }
+
+    void skipValue() throws JSONException {
+        if (valueStart < 0) throw new JSONException("No current value");
+        pos = valueStart;
+        valueStart = -1;
+        skipAnyValue();
+    }
+
+    // True when text is exactly one JSON array, checked structurally.
+    static boolean isArray(String text) {
+        try {
+            JsonScanner scanner = new JsonScanner(text, 0);
+            scanner.skipWhitespace();
+            if (scanner.peek() != '[') return false;
+            scanner.skipAnyValue();
+            scanner.skipWhitespace();
+            return scanner.pos == text.length();
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    private JsonScanner(String text, int pos) {
+        this.text = text;
+        this.pos = pos;
+    }
+
+    private void skipAnyValue() throws JSONException {
+        char c = peek();
+        if (c == '"') {
+            pos++;
+            skipStringBody();
+        } else if (c == '{' || c == '[') {
+            skipContainer();
+        } else {
+            int start = pos;
+            while (pos < text.length()) {
+                char d = text.charAt(pos);
+                if (d == ',' || d == '}' || d == ']' || d <= ' ') break;
+                pos++;
+            }
+            if (pos == start) throw syntax("Expected a value");
+        }
+    }
+
+    // Skips a balanced object or array, stepping over strings whole.
+    private void skipContainer() throws JSONException {
+        int depth = 0;
+        do {
+            if (pos >= text.length()) throw syntax("Unterminated container");
+            char c = text.charAt(pos++);
+            if (c == '"') {
+                skipStringBody();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        } while (depth > 0);
+    }
+
+    // Called just past an opening quote; leaves pos past the closing one.
+    // Returns whether the string contained escapes.
+    private boolean skipStringBody() throws JSONException {
+        boolean escaped = false;
+        while (pos < text.length()) {
+            char c = text.charAt(pos++);
+            if (c == '"') return escaped;
+            if (c == '\\') {
+                escaped = true;
+                pos++;
+            }
+        }
+        throw syntax("Unterminated string");
+    }
+
+    private String unescape(int from, int to) throws JSONException {
+        int slash = text.indexOf('\\', from);
+        if (slash < 0 || slash >= to) return text.substring(from, to);
+        StringBuilder sb = new StringBuilder(to - from);
+        sb.append(text, from, slash);
+        int i = slash;
+        while (i < to) {
+            char c = text.charAt(i++);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (i >= to) throw syntax("Bad escape");
+            char e = text.charAt(i++);
+            switch (e) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (i + 4 > to) throw syntax("Bad unicode escape");
+                    int code = 0;
+                    for (int k = 0; k < 4; k++) {
+                        int digit = Character.digit(text.charAt(i++), 16);
+                        if (digit < 0) throw syntax("Bad unicode escape");
+                        code = (code << 4) | digit;
+                    }
+                    sb.append((char) code);
+                    break;
+                default:
+                    sb.append(e);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && text.charAt(pos) <= ' ') {
+            pos++;
+        }
+    }
+
+    private char peek() throws JSONException {
+        if (pos >= text.length()) throw syntax("Unexpected end of input");
+        return text.charAt(pos);
+    }
+
+    private void expect(char c) throws JSONException {
+        if (peek() != c) throw syntax("Expected '" + c + "'");
+        pos++;
+    }
+
+    private JSONException syntax(String message) {
+        return new JSONException(message + " at character " + pos);
+    }
+}
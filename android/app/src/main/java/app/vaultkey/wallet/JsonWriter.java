@@ -0,0 +1,154 @@
+package app.vaultkey.wallet;
+
+// Writes JSON into a buffer that is kept between messages, so building a
+// request or event costs one String at the end instead of a tree of maps.
+// rawValue() splices in JSON text that is already serialized, such as a
+// page's params, without parsing it.
+final class JsonWriter {
+    // Buffers that grew past this for one large message are not kept.
+    private static final int MAX_RETAINED_CHARS = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final char LINE_SEPARATOR = 0x2028;
+    private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+    private final StringBuilder sb;
+    private final int initialCapacity;
+    // Bit per nesting level: set once that level holds an element.
+    private long hasElement = 0;
+    private int depth = 0;
+    private boolean afterName = false;
+
+    JsonWriter(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+        this.sb = new StringBuilder(initialCapacity);
+    }
+
+    JsonWriter reset() {
+        sb.setLength(0);
+        if (sb.capacity() > MAX_RETAINED_CHARS) {
+            sb.trimToSize();
+            sb.ensureCapacity(initialCapacity);
+        }
+        hasElement = 0;
+        depth = 0;
+        afterName = false;
+        return this;
+    }
+
+    JsonWriter beginObject() {
+        separate();
+        sb.append('{');
+        push();
+        return this;
+    }
+
+    JsonWriter endObject() {
+        depth--;
+        sb.append('}');
+        return this;
+    }
+
+    JsonWriter beginArray() {
+        separate();
+        sb.append('[');
+        push();
+        return this;
+    }
+
+    JsonWriter endArray() {
+        depth--;
+        sb.append(']');
+        return this;
+    }
+
+    JsonWriter name(String name) {
+        separate();
+        quote(name);
+        sb.append(':');
+        afterName = true;
+        return this;
+    }
+
+    JsonWriter value(String value) {
+        separate();
+        if (value == null) {
+            sb.append("null");
+        } else {
+            quote(value);
+        }
+        return this;
+    }
+
+    JsonWriter value(long value) {
+        separate();
+        sb.append(value);
+        return this;
+    }
+
+    JsonWriter value(boolean value) {
+        separate();
+        sb.append(value);
+        return this;
+    }
+
+    // Appends json, which must be one complete JSON value.
+    JsonWriter rawValue(String json) {
+        separate();
+        sb.append(json);
+        return this;
+    }
+
+    int length() {
+        return sb.length();
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+
+    private void push() {
+        if (depth >= 63) throw new IllegalStateException("JSON nested too deeply");
+        depth++;
+        hasElement &= ~(1L << depth);
+    }
+
+    private void separate() {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if ((hasElement & (1L << depth)) != 0) {
+            sb.append(',');
+        } else {
+            hasElement |= 1L << depth;
+        }
+    }
+
+    // Escapes as org.json does, plus U+2028 and U+2029 so the text is also
+    // safe to evaluate as script.
+    private void quote(String s) {
+        sb.append('"');
+        int run = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= ' ' && c != '"' && c != '\\' && c != LINE_SEPARATOR && c != PARAGRAPH_SEPARATOR) continue;
+            sb.append(s, run, i);
+            run = i + 1;
+            switch (c) {
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\b': sb.append("\\b"); break;
+                case '\f': sb.append("\\f"); break;
+                default:
+                    sb.append("\\u").append(HEX[c >> 12]).append(HEX[(c >> 8) & 0xf])
+                        .append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+            }
+        }
+        sb.append(s, run, s.length());
+        sb.append('"');
+    }
+}
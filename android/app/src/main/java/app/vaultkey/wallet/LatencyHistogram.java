@@ -0,0 +1,55 @@
+package app.vaultkey.wallet;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+// Fixed-bucket latency histogram in milliseconds. Buckets follow a 1-2-5
+// series up to a minute, which keeps recording to a short scan and lets
+// percentiles be estimated to within one bucket.
+class LatencyHistogram {
+    private static final long[] BOUNDS = {
+        1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 60000
+    };
+
+    private final long[] counts = new long[BOUNDS.length + 1];
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    synchronized void record(long ms) {
+        long value = Math.max(0, ms);
+        int i = 0;
+        while (i < BOUNDS.length && value > BOUNDS[i]) {
+            i++;
+        }
+        counts[i]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    // Upper bound of the bucket holding the given quantile.
+    synchronized long percentile(double q) {
+        if (count == 0) return 0;
+        long rank = (long) Math.ceil(q * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return i < BOUNDS.length ? Math.min(BOUNDS[i], max) : max;
+            }
+        }
+        return max;
+    }
+
+    synchronized JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("count", count);
+        json.put("avgMs", count > 0 ? sum / count : 0);
+        json.put("p50Ms", percentile(0.5));
+        json.put("p90Ms", percentile(0.9));
+        json.put("p99Ms", percentile(0.99));
+        json.put("maxMs", max);
+        return json;
+    }
+}
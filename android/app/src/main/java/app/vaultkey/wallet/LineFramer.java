@@ -0,0 +1,70 @@
+package app.vaultkey.wallet;
+
+import java.nio.charset.StandardCharsets;
+
+// Splits the device's serial byte stream into newline-terminated lines.
+// Bytes are buffered until the terminator so UTF-8 sequences that straddle
+// USB packets decode correctly; a trailing '\r' is dropped. Plain Java so
+// it can be benchmarked off-device.
+class LineFramer {
+    private static final int MAX_LINE = 256 * 1024;
+
+    interface Listener {
+        void onLine(String line);
+    }
+
+    private final Listener listener;
+    private byte[] buffer = new byte[1024];
+    private int length = 0;
+    private boolean overflowed = false;
+    private long droppedLines = 0;
+
+    LineFramer(Listener listener) {
+        this.listener = listener;
+    }
+
+    synchronized void feed(byte[] data, int offset, int count) {
+        for (int i = offset; i < offset + count; i++) {
+            byte b = data[i];
+            if (b == '\n') {
+                emit();
+                continue;
+            }
+            if (overflowed) continue;
+            if (length == buffer.length) {
+                if (buffer.length >= MAX_LINE) {
+                    overflowed = true;
+                    continue;
+                }
+                byte[] grown = new byte[Math.min(MAX_LINE, buffer.length * 2)];
+                System.arraycopy(buffer, 0, grown, 0, length);
+                buffer = grown;
+            }
+            buffer[length++] = b;
+        }
+    }
+
+    private void emit() {
+        int end = length;
+        if (end > 0 && buffer[end - 1] == '\r') end--;
+        boolean drop = overflowed;
+        length = 0;
+        overflowed = false;
+        if (drop) {
+            droppedLines++;
+            return;
+        }
+        if (end == 0) return;
+        listener.onLine(new String(buffer, 0, end, StandardCharsets.UTF_8));
+    }
+
+    // Lines discarded for exceeding MAX_LINE bytes.
+    synchronized long droppedLines() {
+        return droppedLines;
+    }
+
+    synchronized void reset() {
+        length = 0;
+        overflowed = false;
+    }
+}
@@ -0,0 +1,406 @@
+package app.vaultkey.wallet;
+
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Serves eth_getLogs by sending the requested range whole and splitting it
+// only when the endpoint rejects it as too large. The span the endpoint
+// accepted is kept as a hint for later queries, grows again after
+// successes and is forgotten once it grows past MAX_CHUNK. Sub-ranges run
+// concurrently under a cap and are merged back in block order, and stop
+// being issued once the caller no longer wants the answer. Ranges below
+// the chain's finality depth are cached per filter, so repeated dashboard
+// queries only fetch the new tail.
+class LogQueryEngine {
+    private static final String TAG = "LogQueryEngine";
+    private static final int MAX_CONCURRENCY = 4;
+    private static final long MAX_CHUNK = 50000;
+    private static final int MAX_RETRIES = 2;
+    private static final int MAX_CACHED_FILTERS = 32;
+    private static final int MAX_CACHED_LOGS = 50000;
+    private static final Pattern SUGGESTED_RANGE = Pattern.compile("\\[(0x[0-9a-fA-F]+),\\s*(0x[0-9a-fA-F]+)\\]");
+    private static final ExecutorService pool = Executors.newFixedThreadPool(6);
+    private static final Map<Integer, LogQueryEngine> engines = new HashMap<>();
+
+    private final JsonRpcClient client;
+    private final int finalityDepth;
+    // 0 while the endpoint has not refused a range: gaps are sent whole.
+    private long chunkSize = 0;
+    private final LinkedHashMap<String, TreeMap<Long, Segment>> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private int cachedLogs = 0;
+
+    // Polled between sub-ranges; a query nobody waits for stops early.
+    interface Cancellation {
+        boolean isCancelled();
+    }
+
+    private static final Cancellation NEVER = () -> false;
+
+    private static class Segment {
+        final long from;
+        final long to;
+        final JSONArray logs;
+
+        Segment(long from, long to, JSONArray logs) {
+            this.from = from;
+            this.to = to;
+            this.logs = logs;
+        }
+    }
+
+    private static class RangeResult {
+        final long from;
+        final long to;
+        final JSONArray logs;
+        final IOException error;
+
+        RangeResult(long from, long to, JSONArray logs, IOException error) {
+            this.from = from;
+            this.to = to;
+            this.logs = logs;
+            this.error = error;
+        }
+    }
+
+    static synchronized LogQueryEngine forChain(int chainId) {
+        LogQueryEngine engine = engines.get(chainId);
+        if (engine == null) {
+            engine = new LogQueryEngine(JsonRpcClient.forChain(chainId), RpcEndpoints.finalityDepth(chainId));
+            engines.put(chainId, engine);
+        }
+        return engine;
+    }
+
+    LogQueryEngine(JsonRpcClient client, int finalityDepth) {
+        this.client = client;
+        this.finalityDepth = finalityDepth;
+    }
+
+    JSONArray getLogs(JSONObject filter) throws IOException {
+        return getLogs(filter, RpcScheduler.PRIORITY_FOREGROUND);
+    }
+
+    JSONArray getLogs(JSONObject filter, int priority) throws IOException {
+        return getLogs(filter, priority, NEVER);
+    }
+
+    JSONArray getLogs(JSONObject filter, int priority, Cancellation cancellation) throws IOException {
+        if (filter.has("blockHash")) {
+            return (JSONArray) client.call("eth_getLogs", new JSONArray().put(filter), priority);
+        }
+
+        long head = currentHead();
+        long from = resolveBlock(filter.opt("fromBlock"), head);
+        long to = resolveBlock(filter.opt("toBlock"), head);
+        if (from > to) {
+            return new JSONArray();
+        }
+
+        long finalized = head - finalityDepth;
+        String key = filterKey(filter);
+        TreeMap<Long, JSONArray> parts = new TreeMap<>();
+        List<long[]> gaps = collectCached(key, from, to, parts);
+
+        if (!gaps.isEmpty()) {
+            for (RangeResult r : fetchRanges(filter, gaps, priority, cancellation)) {
+                parts.put(r.from, r.logs);
+                if (r.from <= finalized) {
+                    storeFinalized(key, r.from, Math.min(r.to, finalized), r.logs);
+                }
+            }
+        }
+
+        JSONArray merged = new JSONArray();
+        for (JSONArray part : parts.values()) {
+            for (int i = 0; i < part.length(); i++) {
+                merged.put(part.opt(i));
+            }
+        }
+        return merged;
+    }
+
+    protected long currentHead() throws IOException {
+        return BlockHeadTracker.forChain(client.chainId).getBlockNumber();
+    }
+
+    private long resolveBlock(Object tag, long head) throws RpcException {
+        if (tag == null || tag == JSONObject.NULL) return head;
+        String s = String.valueOf(tag);
+        switch (s) {
+            case "latest":
+            case "pending":
+                return head;
+            case "earliest":
+                return 0;
+            case "safe":
+            case "finalized":
+                return Math.max(0, head - finalityDepth);
+            default:
+                return JsonRpcClient.parseQuantity(tag);
+        }
+    }
+
+    private List<RangeResult> fetchRanges(JSONObject filter, List<long[]> gaps, int priority,
+                                          Cancellation cancellation) throws IOException {
+        ExecutorCompletionService<RangeResult> completion = new ExecutorCompletionService<>(pool);
+        Deque<long[]> pending = new ArrayDeque<>(gaps);
+        Map<Long, Integer> retries = new HashMap<>();
+        List<RangeResult> done = new ArrayList<>();
+        List<Future<RangeResult>> inflight = new ArrayList<>();
+
+        try {
+            while (!pending.isEmpty() || !inflight.isEmpty()) {
+                if (cancellation.isCancelled()) {
+                    throw new RpcException(RpcException.TRANSPORT_ERROR, "Log query cancelled");
+                }
+                while (!pending.isEmpty() && inflight.size() < MAX_CONCURRENCY) {
+                    long[] range = pending.pollFirst();
+                    long chunk = currentChunk();
+                    long end = range[1];
+                    if (chunk > 0 && end - range[0] + 1 > chunk) {
+                        end = range[0] + chunk - 1;
+                        pending.addFirst(new long[] { end + 1, range[1] });
+                    }
+                    final long start = range[0];
+                    final long stop = end;
+                    inflight.add(completion.submit(() -> fetchRange(filter, start, stop, priority)));
+                }
+
+                Future<RangeResult> next = completion.take();
+                inflight.remove(next);
+                RangeResult r = next.get();
+
+                if (r.error == null) {
+                    done.add(r);
+                    adjustChunk(r.to - r.from + 1, true, 0);
+                } else if (isRangeTooLarge(r.error) && r.to > r.from) {
+                    long span = r.to - r.from + 1;
+                    adjustChunk(span, false, suggestedSpan(r.error.getMessage()));
+                    long mid = r.from + span / 2 - 1;
+                    pending.addFirst(new long[] { mid + 1, r.to });
+                    pending.addFirst(new long[] { r.from, mid });
+                } else {
+                    Integer attempts = retries.get(r.from);
+                    int n = attempts == null ? 1 : attempts + 1;
+                    if (n > MAX_RETRIES) {
+                        throw r.error;
+                    }
+                    retries.put(r.from, n);
+                    pending.addFirst(new long[] { r.from, r.to });
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException(RpcException.TRANSPORT_ERROR, "Log query interrupted");
+        } catch (ExecutionException e) {
+            throw new RpcException(RpcException.TRANSPORT_ERROR, "Log query failed: " + e.getCause());
+        } finally {
+            for (Future<RangeResult> f : inflight) {
+                f.cancel(true);
+            }
+        }
+
+        Collections.sort(done, (a, b) -> Long.compare(a.from, b.from));
+        return done;
+    }
+
+    private RangeResult fetchRange(JSONObject filter, long from, long to, int priority) {
+        try {
+            JSONObject sub = new JSONObject(filter.toString());
+            sub.put("fromBlock", JsonRpcClient.toQuantity(from));
+            sub.put("toBlock", JsonRpcClient.toQuantity(to));
+            Object result = client.call("eth_getLogs", new JSONArray().put(sub), priority);
+            JSONArray logs = result instanceof JSONArray ? (JSONArray) result : new JSONArray();
+            return new RangeResult(from, to, logs, null);
+        } catch (IOException e) {
+            return new RangeResult(from, to, null, e);
+        } catch (JSONException e) {
+            return new RangeResult(from, to, null, new RpcException(-32602, e.getMessage()));
+        }
+    }
+
+    private synchronized long currentChunk() {
+        return chunkSize;
+    }
+
+    private synchronized void adjustChunk(long span, boolean success, long suggested) {
+        if (success) {
+            // Grow only when the range that succeeded was at the current
+            // size; past MAX_CHUNK the next query tries its whole range again.
+            if (chunkSize > 0 && span >= chunkSize) {
+                chunkSize = chunkSize * 2 > MAX_CHUNK ? 0 : chunkSize * 2;
+            }
+        } else {
+            long limit = chunkSize > 0 ? Math.min(chunkSize, span) : span;
+            chunkSize = suggested > 0 ? Math.max(1, Math.min(limit, suggested)) : Math.max(1, limit / 2);
+        }
+    }
+
+    // Only the node saying the range or its result is too big warrants a
+    // split. Rate limits, queue timeouts and transport failures do not get
+    // better with smaller ranges; they only multiply the requests.
+    static boolean isRangeTooLarge(IOException e) {
+        if (!(e instanceof RpcException)) return false;
+        RpcException rpc = (RpcException) e;
+        if (rpc.httpStatus == 429 || rpc.code == RpcException.TRANSPORT_ERROR
+            || rpc.code == RpcException.QUEUE_TIMEOUT) return false;
+        if (rpc.code == -32005) return true;
+        String msg = e.getMessage();
+        if (msg == null) return false;
+        msg = msg.toLowerCase(Locale.US);
+        if (msg.contains("rate limit")) return false;
+        return msg.contains("block range") || msg.contains("range too") || msg.contains("range is too")
+            || msg.contains("too many logs") || msg.contains("too many results") || msg.contains("more than")
+            || msg.contains("response size") || msg.contains("result size") || msg.contains("results limit");
+    }
+
+    // Some providers name the range they would accept, e.g. "try with this block range [0x1, 0x2]".
+    static long suggestedSpan(String message) {
+        if (message == null) return 0;
+        Matcher m = SUGGESTED_RANGE.matcher(message);
+        if (!m.find()) return 0;
+        try {
+            long a = Long.parseLong(m.group(1).substring(2), 16);
+            long b = Long.parseLong(m.group(2).substring(2), 16);
+            return b >= a ? b - a + 1 : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    static String filterKey(JSONObject filter) {
+        StringBuilder key = new StringBuilder();
+        Object address = filter.opt("address");
+        if (address instanceof JSONArray) {
+            List<String> addresses = new ArrayList<>();
+            JSONArray arr = (JSONArray) address;
+            for (int i = 0; i < arr.length(); i++) {
+                addresses.add(arr.optString(i).toLowerCase(Locale.US));
+            }
+            Collections.sort(addresses);
+            key.append(addresses);
+        } else if (address != null && address != JSONObject.NULL) {
+            key.append(String.valueOf(address).toLowerCase(Locale.US));
+        }
+        key.append('|');
+        Object topics = filter.opt("topics");
+        if (topics != null && topics != JSONObject.NULL) {
+            key.append(topics.toString().toLowerCase(Locale.US));
+        }
+        return key.toString();
+    }
+
+    // Copies cached logs for [from, to] into parts and returns the uncovered gaps.
+    private synchronized List<long[]> collectCached(String key, long from, long to, TreeMap<Long, JSONArray> parts) {
+        List<long[]> gaps = new ArrayList<>();
+        TreeMap<Long, Segment> segments = cache.get(key);
+        long cursor = from;
+
+        if (segments != null) {
+            Map.Entry<Long, Segment> floor = segments.floorEntry(from);
+            Long startKey = floor != null && floor.getValue().to >= from ? floor.getKey() : from;
+            for (Segment seg : segments.tailMap(startKey, true).values()) {
+                if (seg.from > to) break;
+                if (seg.to < cursor) continue;
+                if (seg.from > cursor) {
+                    gaps.add(new long[] { cursor, seg.from - 1 });
+                }
+                long clipFrom = Math.max(seg.from, cursor);
+                long clipTo = Math.min(seg.to, to);
+                parts.put(clipFrom, clip(seg.logs, clipFrom, clipTo));
+                cursor = clipTo + 1;
+                if (cursor > to) break;
+            }
+        }
+        if (cursor <= to) {
+            gaps.add(new long[] { cursor, to });
+        }
+        return gaps;
+    }
+
+    private synchronized void storeFinalized(String key, long from, long to, JSONArray logs) {
+        TreeMap<Long, Segment> segments = cache.get(key);
+        if (segments == null) {
+            segments = new TreeMap<>();
+            cache.put(key, segments);
+        }
+        segments.put(from, new Segment(from, to, clip(logs, from, to)));
+        coalesce(segments);
+        cachedLogs = 0;
+        for (TreeMap<Long, Segment> perFilter : cache.values()) {
+            for (Segment seg : perFilter.values()) {
+                cachedLogs += seg.logs.length();
+            }
+        }
+
+        while ((cache.size() > MAX_CACHED_FILTERS || cachedLogs > MAX_CACHED_LOGS) && cache.size() > 1) {
+            String eldest = cache.keySet().iterator().next();
+            if (eldest.equals(key)) break;
+            for (Segment seg : cache.remove(eldest).values()) {
+                cachedLogs -= seg.logs.length();
+            }
+        }
+    }
+
+    // Merges adjacent segments so lookups walk as few entries as possible.
+    private static void coalesce(TreeMap<Long, Segment> segments) {
+        Segment prev = null;
+        List<Segment> merged = new ArrayList<>();
+        for (Segment seg : segments.values()) {
+            if (prev != null && seg.from <= prev.to + 1) {
+                JSONArray logs = new JSONArray();
+                for (int i = 0; i < prev.logs.length(); i++) logs.put(prev.logs.opt(i));
+                JSONArray tail = clip(seg.logs, prev.to + 1, seg.to);
+                for (int i = 0; i < tail.length(); i++) logs.put(tail.opt(i));
+                prev = new Segment(prev.from, Math.max(prev.to, seg.to), logs);
+                merged.set(merged.size() - 1, prev);
+            } else {
+                merged.add(seg);
+                prev = seg;
+            }
+        }
+        segments.clear();
+        for (Segment seg : merged) {
+            segments.put(seg.from, seg);
+        }
+    }
+
+    private static JSONArray clip(JSONArray logs, long from, long to) {
+        JSONArray out = new JSONArray();
+        for (int i = 0; i < logs.length(); i++) {
+            JSONObject log = logs.optJSONObject(i);
+            if (log == null) continue;
+            try {
+                long block = JsonRpcClient.parseQuantity(log.opt("blockNumber"));
+                if (block >= from && block <= to) {
+                    out.put(log);
+                }
+            } catch (RpcException e) {
+                Log.w(TAG, "Skipping log without block number");
+            }
+        }
+        return out;
+    }
+}
@@ -6,8 +6,16 @@ import com.getcapacitor.BridgeActivity;
 public class MainActivity extends BridgeActivity {
     @Override
     public void onCreate(Bundle savedInstanceState) {
+        StartupTrace.begin("MainActivity.onCreate");
+        StartupTrace.begin("registerPlugins");
         registerPlugin(UsbSerialPlugin.class);
         registerPlugin(DAppBrowserPlugin.class);
+        registerPlugin(PortfolioPlugin.class);
+        StartupTrace.end();
+        // Bridge init; plugin load() calls run inside and trace themselves.
+        StartupTrace.begin("bridgeInit");
         super.onCreate(savedInstanceState);
+        StartupTrace.end();
+        StartupTrace.end();
     }
 }
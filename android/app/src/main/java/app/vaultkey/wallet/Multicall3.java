@@ -0,0 +1,160 @@
+package app.vaultkey.wallet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ABI encoding for Multicall3's aggregate3 and the two balance reads the
+// portfolio scanner packs into it. Multicall3 is deployed at the same
+// address on every supported chain. Plain Java so it can be tested and
+// benchmarked off-device.
+final class Multicall3 {
+    static final String ADDRESS = "0xca11bde05977b3631167028862be2a173976ca11";
+    private static final String AGGREGATE3 = "82ad56cb";
+    private static final String GET_ETH_BALANCE = "4d2301cc";
+    private static final String BALANCE_OF = "70a08231";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    static final class Call {
+        final String target;
+        // Hex without 0x.
+        final String callData;
+
+        Call(String target, String callData) {
+            this.target = target;
+            this.callData = callData;
+        }
+    }
+
+    // One entry of the aggregate3 result; data is null when the call reverted.
+    static final class Result {
+        final boolean success;
+        final byte[] data;
+
+        Result(boolean success, byte[] data) {
+            this.success = success;
+            this.data = data;
+        }
+    }
+
+    private Multicall3() {
+    }
+
+    static boolean isAddress(String value) {
+        if (value == null || value.length() != 42 || !value.startsWith("0x")) return false;
+        for (int i = 2; i < 42; i++) {
+            if (Character.digit(value.charAt(i), 16) < 0) return false;
+        }
+        return true;
+    }
+
+    // Native balance of holder, read through Multicall3 itself.
+    static Call ethBalance(String holder) {
+        return new Call(ADDRESS, GET_ETH_BALANCE + addressWord(holder));
+    }
+
+    static Call erc20Balance(String token, String holder) {
+        return new Call(token, BALANCE_OF + addressWord(holder));
+    }
+
+    // aggregate3((address target, bool allowFailure, bytes callData)[]) with
+    // allowFailure set on every call, so one bad token does not revert the
+    // whole batch. Returns 0x-prefixed calldata.
+    static String encodeAggregate3(List<Call> calls) {
+        int n = calls.size();
+        StringBuilder sb = new StringBuilder(10 + 64 * (2 + n * 6));
+        sb.append("0x").append(AGGREGATE3);
+        appendWord(sb, 32);
+        appendWord(sb, n);
+        // Tuple offsets are relative to the first offset word.
+        long offset = 32L * n;
+        for (Call call : calls) {
+            appendWord(sb, offset);
+            offset += 32 * 4 + paddedLength(call.callData.length() / 2);
+        }
+        for (Call call : calls) {
+            sb.append(addressWord(call.target));
+            appendWord(sb, 1);
+            appendWord(sb, 96);
+            int length = call.callData.length() / 2;
+            appendWord(sb, length);
+            sb.append(call.callData.toLowerCase());
+            for (int i = length * 2; i < paddedLength(length) * 2; i++) {
+                sb.append('0');
+            }
+        }
+        return sb.toString();
+    }
+
+    // Decodes the (bool success, bytes returnData)[] aggregate3 returns.
+    static List<Result> decodeAggregate3(String hex) {
+        byte[] data = fromHex(hex);
+        int array = word(data, 0);
+        int n = word(data, array);
+        int base = array + 32;
+        List<Result> results = new ArrayList<>(Math.min(n, data.length / 32));
+        for (int i = 0; i < n; i++) {
+            int tuple = (int) Math.min(Integer.MAX_VALUE, (long) base + word(data, base + 32 * i));
+            boolean success = word(data, tuple) != 0;
+            int bytesAt = (int) Math.min(Integer.MAX_VALUE, (long) tuple + word(data, tuple + 32));
+            int length = word(data, bytesAt);
+            if (length > data.length - bytesAt - 32) {
+                throw new IllegalArgumentException("Truncated aggregate3 result");
+            }
+            byte[] returnData = new byte[length];
+            System.arraycopy(data, bytesAt + 32, returnData, 0, length);
+            results.add(new Result(success, success ? returnData : null));
+        }
+        return results;
+    }
+
+    private static int paddedLength(int length) {
+        return (length + 31) / 32 * 32;
+    }
+
+    private static String addressWord(String address) {
+        StringBuilder sb = new StringBuilder(64);
+        for (int i = 0; i < 24; i++) {
+            sb.append('0');
+        }
+        return sb.append(address.substring(2).toLowerCase()).toString();
+    }
+
+    private static void appendWord(StringBuilder sb, long value) {
+        for (int shift = 252; shift >= 0; shift -= 4) {
+            sb.append(shift >= 64 ? '0' : HEX[(int) (value >>> shift) & 0xf]);
+        }
+    }
+
+    // Reads an offset, length or flag word. Values that do not fit an int
+    // come back as Integer.MAX_VALUE, which fails the next bounds check.
+    private static int word(byte[] data, int at) {
+        if (at < 0 || at > data.length - 32) {
+            throw new IllegalArgumentException("Truncated aggregate3 result");
+        }
+        for (int i = at; i < at + 29; i++) {
+            if (data[i] != 0 && (i < at + 28 || data[i] < 0)) {
+                return Integer.MAX_VALUE;
+            }
+        }
+        int value = 0;
+        for (int i = at + 28; i < at + 32; i++) {
+            value = (value << 8) | (data[i] & 0xff);
+        }
+        return value;
+    }
+
+    static byte[] fromHex(String hex) {
+        int start = hex.startsWith("0x") ? 2 : 0;
+        int length = (hex.length() - start) / 2;
+        byte[] out = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int hi = Character.digit(hex.charAt(start + 2 * i), 16);
+            int lo = Character.digit(hex.charAt(start + 2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("Invalid hex in aggregate3 result");
+            }
+            out[i] = (byte) ((hi << 4) | lo);
+        }
+        return out;
+    }
+}
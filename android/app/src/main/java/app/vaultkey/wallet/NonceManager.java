@@ -0,0 +1,213 @@
+package app.vaultkey.wallet;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Hands out nonces for one (chain, address) pair without a round trip per
+// transaction in a burst. The node's pending count is consulted when
+// nothing is reserved locally (the account may have sent from the wallet
+// or another device since), when the last sync is older than a block,
+// after a nonce error, or when a sent transaction is old enough to check
+// whether it was mined or dropped. Nonces handed out since then are
+// tracked until they are mined, released (user rejected) or considered
+// dropped, and released nonces are reused before new ones so no gap is
+// left behind. The node is queried without the lock held.
+class NonceManager {
+    private static final String TAG = "NonceManager";
+    private static final long DROP_AFTER_MS = 5 * 60 * 1000;
+    // A reservation the signer never reported on (its ack was lost with the
+    // browser, say) is taken back after this long; well past the browser's
+    // own signing timeout.
+    private static final long ABANDON_AFTER_MS = 15 * 60 * 1000;
+    private static final Map<String, NonceManager> managers = new HashMap<>();
+
+    private static class Pending {
+        final long reservedAt = SystemClock.elapsedRealtime();
+        long sentAt = 0;
+        String result;
+    }
+
+    final int chainId;
+    final String address;
+    private final JsonRpcClient client;
+    private final TreeMap<Long, Pending> pending = new TreeMap<>();
+    private final TreeSet<Long> gaps = new TreeSet<>();
+    private long next = -1;
+    private boolean stale = true;
+    private long lastSyncAt = 0;
+    private final long syncTtlMs;
+
+    private long reservations = 0;
+    private long syncs = 0;
+    private long released = 0;
+    private long dropped = 0;
+
+    static synchronized NonceManager forAccount(int chainId, String address) {
+        String key = chainId + ":" + address.toLowerCase();
+        NonceManager manager = managers.get(key);
+        if (manager == null) {
+            manager = new NonceManager(chainId, address.toLowerCase(), JsonRpcClient.forChain(chainId));
+            managers.put(key, manager);
+        }
+        return manager;
+    }
+
+    NonceManager(int chainId, String address, JsonRpcClient client) {
+        this.chainId = chainId;
+        this.address = address;
+        this.client = client;
+        this.syncTtlMs = BlockHeadTracker.defaultBlockTimeMs(chainId);
+    }
+
+    long reserve() throws IOException {
+        synchronized (this) {
+            if (!needsSync()) return take();
+        }
+        long nodePending;
+        long mined;
+        try {
+            nodePending = JsonRpcClient.parseQuantity(
+                client.call("eth_getTransactionCount", new JSONArray().put(address).put("pending"), RpcScheduler.PRIORITY_USER));
+            mined = JsonRpcClient.parseQuantity(
+                client.call("eth_getTransactionCount", new JSONArray().put(address).put("latest"), RpcScheduler.PRIORITY_USER));
+        } catch (IOException e) {
+            synchronized (this) {
+                // A stale local view is still better than failing the request.
+                if (next < 0) throw e;
+                Log.w(TAG, "Resync failed for " + address + ", using local nonce: " + e.getMessage());
+                return take();
+            }
+        }
+        synchronized (this) {
+            apply(nodePending, mined);
+            return take();
+        }
+    }
+
+    private boolean needsSync() {
+        if (next < 0 || stale || pending.isEmpty()) return true;
+        // Within a burst the local count is exact unless something else
+        // sent from the account, which a block-old view would not see, or a
+        // sent transaction is old enough to be called dropped.
+        long now = SystemClock.elapsedRealtime();
+        if (now - lastSyncAt > syncTtlMs) return true;
+        for (Pending p : pending.values()) {
+            if (p.sentAt > 0 && now - p.sentAt > DROP_AFTER_MS) return true;
+            if (p.sentAt == 0 && now - p.reservedAt > ABANDON_AFTER_MS) return true;
+        }
+        return false;
+    }
+
+    private long take() {
+        long nonce = gaps.isEmpty() ? next++ : gaps.pollFirst();
+        pending.put(nonce, new Pending());
+        reservations++;
+        return nonce;
+    }
+
+    // The transaction using this nonce was signed (and usually broadcast).
+    synchronized void markSent(long nonce, String result) {
+        Pending p = pending.get(nonce);
+        if (p == null) {
+            // Reclaimed as abandoned, but the signer went through after all.
+            p = new Pending();
+            pending.put(nonce, p);
+            gaps.remove(nonce);
+            next = Math.max(next, nonce + 1);
+        }
+        p.sentAt = SystemClock.elapsedRealtime();
+        p.result = result;
+    }
+
+    // The nonce was never used: the user rejected or the page went away.
+    synchronized void release(long nonce) {
+        if (pending.remove(nonce) == null) return;
+        released++;
+        if (nonce == next - 1) {
+            next--;
+            while (gaps.remove(next - 1)) {
+                next--;
+            }
+        } else {
+            gaps.add(nonce);
+        }
+    }
+
+    // Forces the next reservation to consult the node, e.g. after a
+    // "nonce too low" error from a transaction sent elsewhere.
+    synchronized void invalidate() {
+        stale = true;
+    }
+
+    private void apply(long nodePending, long mined) {
+        long now = SystemClock.elapsedRealtime();
+        lastSyncAt = now;
+        syncs++;
+
+        TreeSet<Long> reclaimed = new TreeSet<>();
+        Iterator<Map.Entry<Long, Pending>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Pending> entry = it.next();
+            Pending p = entry.getValue();
+            if (entry.getKey() < mined) {
+                it.remove();
+            } else if (p.sentAt > 0 && entry.getKey() >= nodePending && now - p.sentAt > DROP_AFTER_MS) {
+                Log.w(TAG, "Nonce " + entry.getKey() + " for " + address + " looks dropped");
+                it.remove();
+                reclaimed.add(entry.getKey());
+                dropped++;
+            } else if (p.sentAt == 0 && entry.getKey() >= nodePending && now - p.reservedAt > ABANDON_AFTER_MS) {
+                Log.w(TAG, "Nonce " + entry.getKey() + " for " + address + " was never reported on, reclaiming");
+                it.remove();
+                reclaimed.add(entry.getKey());
+                dropped++;
+            }
+        }
+
+        long localNext = pending.isEmpty() ? 0 : pending.lastKey() + 1;
+        next = Math.max(nodePending, localNext);
+        gaps.addAll(reclaimed);
+        gaps.headSet(nodePending).clear();
+        gaps.tailSet(next).clear();
+        for (Long nonce : pending.keySet()) {
+            gaps.remove(nonce);
+        }
+        stale = false;
+    }
+
+    synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("chainId", chainId);
+            stats.put("address", address);
+            stats.put("next", next);
+            stats.put("pending", pending.size());
+            stats.put("gaps", gaps.size());
+            stats.put("reservations", reservations);
+            stats.put("syncs", syncs);
+            stats.put("released", released);
+            stats.put("dropped", dropped);
+        } catch (Exception e) {
+            Log.e(TAG, "Error building stats", e);
+        }
+        return stats;
+    }
+
+    static synchronized JSONArray getAllStats() {
+        JSONArray all = new JSONArray();
+        for (NonceManager manager : managers.values()) {
+            all.put(manager.getStats());
+        }
+        return all;
+    }
+}
@@ -0,0 +1,175 @@
+package app.vaultkey.wallet;
+
+import android.util.Log;
+import android.view.Choreographer;
+import android.webkit.WebView;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Scripts the browser pushes into one tab's page (responses, subscription
+// events, account and chain updates), queued from any thread and
+// evaluated once per frame as a single batch. A keyed script replaces the
+// one still queued under the same key, keeping its place, so a burst of
+// account or chain switches reaches the page as its final state.
+class PageDispatchQueue implements Choreographer.FrameCallback {
+    private static final String TAG = "PageDispatchQueue";
+    // A quarter of a 60 Hz frame; flushes above it are counted as slow.
+    private static final long SLOW_FLUSH_MICROS = 4000;
+
+    private static long flushes = 0;
+    private static long delivered = 0;
+    private static long collapsed = 0;
+    private static long dropped = 0;
+    private static long slowFlushes = 0;
+    private static long totalMicros = 0;
+    private static long maxMicros = 0;
+    private static int maxBatch = 0;
+
+    private static class Item {
+        String script;
+        final Runnable afterDelivery;
+
+        Item(String script, Runnable afterDelivery) {
+            this.script = script;
+            this.afterDelivery = afterDelivery;
+        }
+    }
+
+    private final BrowserTab tab;
+    private final Choreographer choreographer;
+    private List<Item> pending = new ArrayList<>();
+    private final Map<String, Item> keyed = new HashMap<>();
+    private boolean scheduled = false;
+
+    // Created on the main thread, whose Choreographer it posts to.
+    PageDispatchQueue(BrowserTab tab) {
+        this.tab = tab;
+        this.choreographer = Choreographer.getInstance();
+    }
+
+    void post(String script) {
+        enqueue(null, script, null);
+    }
+
+    // afterDelivery runs on the main thread once the batch holding the
+    // script has been handed to the WebView.
+    void post(String script, Runnable afterDelivery) {
+        enqueue(null, script, afterDelivery);
+    }
+
+    // Replaces the script queued under key, if any.
+    void postLatest(String key, String script) {
+        enqueue(key, script, null);
+    }
+
+    private void enqueue(String key, String script, Runnable afterDelivery) {
+        synchronized (this) {
+            Item queued = key != null ? keyed.get(key) : null;
+            if (queued != null) {
+                queued.script = script;
+                synchronized (PageDispatchQueue.class) {
+                    collapsed++;
+                }
+                return;
+            }
+            Item item = new Item(script, afterDelivery);
+            pending.add(item);
+            if (key != null) keyed.put(key, item);
+            if (scheduled) return;
+            scheduled = true;
+        }
+        choreographer.postFrameCallback(this);
+    }
+
+    // Drops everything queued for a page that is going away.
+    synchronized void clear() {
+        synchronized (PageDispatchQueue.class) {
+            dropped += pending.size();
+        }
+        pending = new ArrayList<>();
+        keyed.clear();
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        long start = System.nanoTime();
+        List<Item> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new ArrayList<>();
+            keyed.clear();
+            scheduled = false;
+        }
+        if (batch.isEmpty()) return;
+
+        WebView view = tab.webView;
+        if (view == null) {
+            synchronized (PageDispatchQueue.class) {
+                dropped += batch.size();
+            }
+            return;
+        }
+        int length = 0;
+        for (Item item : batch) {
+            length += item.script.length() + 16;
+        }
+        // Each script keeps its own try block, as it had with a separate
+        // evaluateJavascript call.
+        StringBuilder sb = new StringBuilder(length);
+        for (Item item : batch) {
+            sb.append("try{").append(item.script).append("}catch(e){}\n");
+        }
+        try {
+            view.evaluateJavascript(sb.toString(), null);
+        } catch (Exception e) {
+            Log.e(TAG, "Error dispatching to page", e);
+        }
+        for (Item item : batch) {
+            if (item.afterDelivery != null) item.afterDelivery.run();
+        }
+
+        long micros = (System.nanoTime() - start) / 1000;
+        synchronized (PageDispatchQueue.class) {
+            flushes++;
+            delivered += batch.size();
+            maxBatch = Math.max(maxBatch, batch.size());
+            totalMicros += micros;
+            maxMicros = Math.max(maxMicros, micros);
+            if (micros > SLOW_FLUSH_MICROS) slowFlushes++;
+        }
+    }
+
+    static synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("flushes", flushes);
+            stats.put("delivered", delivered);
+            stats.put("collapsed", collapsed);
+            stats.put("dropped", dropped);
+            stats.put("avgBatch", flushes > 0 ? (double) delivered / flushes : 0);
+            stats.put("maxBatch", maxBatch);
+            stats.put("avgFlushMicros", flushes > 0 ? totalMicros / flushes : 0);
+            stats.put("maxFlushMicros", maxMicros);
+            stats.put("slowFlushes", slowFlushes);
+        } catch (JSONException ignored) {
+        }
+        return stats;
+    }
+
+    static synchronized void reset() {
+        flushes = 0;
+        delivered = 0;
+        collapsed = 0;
+        dropped = 0;
+        slowFlushes = 0;
+        totalMicros = 0;
+        maxMicros = 0;
+        maxBatch = 0;
+    }
+}
@@ -0,0 +1,207 @@
+package app.vaultkey.wallet;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Outstanding provider requests keyed by global request id, remembering the
+// tab and page session each came from. Timeouts live on a hashed timing
+// wheel: registering, completing and cancelling are O(1) and one tick
+// expires a whole slot, instead of a timer per request. The wheel only
+// ticks while something is pending.
+class PendingRequestRegistry<V> {
+    static final long TICK_MS = 250;
+    private static final int WHEEL_SIZE = 512;
+
+    interface Listener<V> {
+        // Called on the registry's timer thread for requests that timed out.
+        void onExpired(int id, V value);
+    }
+
+    private static class Node<V> {
+        final int id;
+        final int tabId;
+        final int pageSession;
+        final V value;
+        int slot;
+        long rounds;
+        Node<V> prev;
+        Node<V> next;
+
+        Node(int id, int tabId, int pageSession, V value) {
+            this.id = id;
+            this.tabId = tabId;
+            this.pageSession = pageSession;
+            this.value = value;
+        }
+    }
+
+    private final Listener<V> listener;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "PendingRequests");
+        t.setDaemon(true);
+        return t;
+    });
+    @SuppressWarnings("unchecked")
+    private final Node<V>[] wheel = (Node<V>[]) new Node<?>[WHEEL_SIZE];
+    private final Map<Integer, Node<V>> byId = new HashMap<>();
+    private int cursor = 0;
+    private ScheduledFuture<?> ticking;
+
+    private long registered = 0;
+    private long completed = 0;
+    private long expired = 0;
+    private long cancelled = 0;
+
+    PendingRequestRegistry(Listener<V> listener) {
+        this.listener = listener;
+    }
+
+    synchronized void register(int id, int tabId, int pageSession, long timeoutMs, V value) {
+        Node<V> node = new Node<>(id, tabId, pageSession, value);
+        long ticks = Math.max(1, (timeoutMs + TICK_MS - 1) / TICK_MS);
+        node.slot = (int) ((cursor + ticks) % WHEEL_SIZE);
+        node.rounds = (ticks - 1) / WHEEL_SIZE;
+        link(node);
+        byId.put(id, node);
+        registered++;
+        if (ticking == null) {
+            ticking = timer.scheduleAtFixedRate(this::tick, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized V get(int id) {
+        Node<V> node = byId.get(id);
+        return node != null ? node.value : null;
+    }
+
+    // Removes a request that got its answer; null if it already expired or
+    // was cancelled.
+    synchronized V complete(int id) {
+        Node<V> node = byId.remove(id);
+        if (node == null) return null;
+        unlink(node);
+        completed++;
+        stopIfIdle();
+        return node.value;
+    }
+
+    // Removes the requests a tab made from pages other than currentSession,
+    // i.e. from documents it has navigated away from, and returns them so
+    // the caller can notify the signer.
+    synchronized Map<Integer, V> cancelStale(int tabId, int currentSession) {
+        return cancelMatching(tabId, currentSession);
+    }
+
+    // Removes every request of a tab that is closing.
+    synchronized Map<Integer, V> cancelTab(int tabId) {
+        return cancelMatching(tabId, Integer.MIN_VALUE);
+    }
+
+    private Map<Integer, V> cancelMatching(int tabId, int keepSession) {
+        Map<Integer, V> removed = new HashMap<>();
+        for (Node<V> node : new ArrayList<>(byId.values())) {
+            if (node.tabId == tabId && node.pageSession != keepSession) {
+                removed.put(node.id, node.value);
+                byId.remove(node.id);
+                unlink(node);
+            }
+        }
+        cancelled += removed.size();
+        stopIfIdle();
+        return removed;
+    }
+
+    synchronized Map<Integer, V> cancelAll() {
+        Map<Integer, V> removed = new HashMap<>();
+        for (Node<V> node : byId.values()) {
+            removed.put(node.id, node.value);
+        }
+        byId.clear();
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = null;
+        }
+        cancelled += removed.size();
+        stopIfIdle();
+        return removed;
+    }
+
+    synchronized int size() {
+        return byId.size();
+    }
+
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private void tick() {
+        List<Node<V>> due = new ArrayList<>();
+        synchronized (this) {
+            cursor = (cursor + 1) % WHEEL_SIZE;
+            Node<V> node = wheel[cursor];
+            while (node != null) {
+                Node<V> next = node.next;
+                if (node.rounds > 0) {
+                    node.rounds--;
+                } else {
+                    unlink(node);
+                    byId.remove(node.id);
+                    due.add(node);
+                }
+                node = next;
+            }
+            expired += due.size();
+            stopIfIdle();
+        }
+        for (Node<V> node : due) {
+            listener.onExpired(node.id, node.value);
+        }
+    }
+
+    private void link(Node<V> node) {
+        Node<V> head = wheel[node.slot];
+        node.prev = null;
+        node.next = head;
+        if (head != null) head.prev = node;
+        wheel[node.slot] = node;
+    }
+
+    private void unlink(Node<V> node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else if (wheel[node.slot] == node) {
+            wheel[node.slot] = node.next;
+        }
+        if (node.next != null) node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    private void stopIfIdle() {
+        if (byId.isEmpty() && ticking != null) {
+            ticking.cancel(false);
+            ticking = null;
+        }
+    }
+
+    synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("pending", byId.size());
+            stats.put("registered", registered);
+            stats.put("completed", completed);
+            stats.put("expired", expired);
+            stats.put("cancelled", cancelled);
+        } catch (JSONException ignored) {
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,135 @@
+package app.vaultkey.wallet;
+
+import android.util.Log;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.getcapacitor.Plugin;
+import com.getcapacitor.PluginCall;
+import com.getcapacitor.PluginMethod;
+import com.getcapacitor.annotation.CapacitorPlugin;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+@CapacitorPlugin(name = "Portfolio")
+public class PortfolioPlugin extends Plugin {
+    private static final String TAG = "PortfolioPlugin";
+
+    private final PortfolioScanner.Listener listener = new PortfolioScanner.Listener() {
+        @Override
+        public void onBalances(String scanId, int chainId, JSONArray balances) {
+            JSObject event = new JSObject();
+            event.put("scanId", scanId);
+            event.put("chainId", chainId);
+            try {
+                event.put("balances", new JSArray(balances.toString()));
+            } catch (Exception e) {
+                Log.e(TAG, "Error forwarding balances", e);
+                return;
+            }
+            notifyListeners("portfolioBalances", event);
+        }
+        
+        @Override
+        public void onChainDone(String scanId, int chainId, JSONObject summary) {
+            try {
+                JSObject event = JSObject.fromJSONObject(summary);
+                event.put("scanId", scanId);
+                event.put("chainId", chainId);
+                notifyListeners("portfolioChainDone", event);
+            } catch (Exception e) {
+                Log.e(TAG, "Error forwarding chain summary", e);
+            }
+        }
+        
+        @Override
+        public void onComplete(String scanId, JSONObject summary) {
+            try {
+                JSObject event = JSObject.fromJSONObject(summary);
+                event.put("scanId", scanId);
+                notifyListeners("portfolioComplete", event);
+            } catch (Exception e) {
+                Log.e(TAG, "Error forwarding scan summary", e);
+            }
+        }
+    };
+
+    // Starts a scan and resolves as soon as it is planned; balances stream
+    // in as portfolioBalances events, one per finished batch.
+    @PluginMethod
+    public void scan(PluginCall call) {
+        JSArray chains = call.getArray("chains", new JSArray());
+        List<PortfolioScanner.ChainRequest> requests = new ArrayList<>();
+        try {
+            for (int i = 0; i < chains.length(); i++) {
+                JSONObject chain = chains.getJSONObject(i);
+                int chainId = chain.optInt("chainId", 0);
+                if (!RpcEndpoints.isSupported(chainId)) {
+                    resolveError(call, "Unsupported chain " + chainId);
+                    return;
+                }
+                List<String> addresses = addressList(chain.optJSONArray("addresses"));
+                List<String> tokens = addressList(chain.optJSONArray("tokens"));
+                if (addresses == null || tokens == null) {
+                    resolveError(call, "Invalid address on chain " + chainId);
+                    return;
+                }
+                requests.add(new PortfolioScanner.ChainRequest(chainId, addresses, tokens,
+                    chain.optBoolean("includeNative", true)));
+            }
+        } catch (Exception e) {
+            resolveError(call, "Invalid scan request: " + e.getMessage());
+            return;
+        }
+        
+        try {
+            JSObject ret = JSObject.fromJSONObject(PortfolioScanner.scan(requests, listener));
+            ret.put("success", true);
+            call.resolve(ret);
+        } catch (Exception e) {
+            call.reject("Failed to start scan: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void cancel(PluginCall call) {
+        JSObject ret = new JSObject();
+        ret.put("success", PortfolioScanner.cancel(call.getString("scanId", "")));
+        call.resolve(ret);
+    }
+
+    @PluginMethod
+    public void getStats(PluginCall call) {
+        try {
+            call.resolve(JSObject.fromJSONObject(PortfolioScanner.getStats()));
+        } catch (Exception e) {
+            call.reject("Failed to read portfolio stats: " + e.getMessage());
+        }
+    }
+
+    // Lower-cased and de-duplicated; null if any entry is not an address.
+    private static List<String> addressList(JSONArray values) {
+        Set<String> out = new LinkedHashSet<>();
+        if (values == null) return new ArrayList<>(out);
+        for (int i = 0; i < values.length(); i++) {
+            String value = values.optString(i, "");
+            if (!Multicall3.isAddress(value)) return null;
+            out.add(value.toLowerCase(Locale.ROOT));
+        }
+        return new ArrayList<>(out);
+    }
+
+    private static void resolveError(PluginCall call, String error) {
+        JSObject ret = new JSObject();
+        ret.put("success", false);
+        ret.put("error", error);
+        call.resolve(ret);
+    }
+}
@@ -0,0 +1,402 @@
+package app.vaultkey.wallet;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Reads native and ERC-20 balances for many addresses across chains by
+// packing the reads into Multicall3 aggregate3 eth_calls. Batches are sized
+// to stay under node eth_call gas caps and response limits; a batch the
+// node still rejects is split in half and retried. Chains run in parallel,
+// each with a small number of batches in flight, and every finished batch
+// is handed to the listener straight away.
+class PortfolioScanner {
+    private static final String TAG = "PortfolioScanner";
+    static final String NATIVE = "native";
+    // About 160 bytes of ABI result per call, so a full batch returns
+    // roughly 160 KB of hex.
+    private static final int MAX_CALLS_PER_BATCH = 500;
+    // Well below the 50M eth_call gas cap most nodes apply.
+    private static final long MAX_BATCH_GAS = 20_000_000;
+    private static final long NATIVE_CALL_GAS = 5_000;
+    // Generous for proxied tokens whose balanceOf touches cold storage.
+    private static final long TOKEN_CALL_GAS = 40_000;
+    private static final int PER_CHAIN_CONCURRENCY = 2;
+    private static final ExecutorService pool = Executors.newFixedThreadPool(8);
+    private static final Map<String, Scan> scans = new HashMap<>();
+    private static final AtomicInteger nextScanId = new AtomicInteger(1);
+
+    private static long scansStarted = 0;
+    private static long batches = 0;
+    private static long calls = 0;
+    private static long splits = 0;
+    private static long failedCalls = 0;
+    private static long totalBatchMs = 0;
+    private static long lastScanMs = 0;
+
+    interface Listener {
+        void onBalances(String scanId, int chainId, JSONArray balances);
+
+        void onChainDone(String scanId, int chainId, JSONObject summary);
+
+        void onComplete(String scanId, JSONObject summary);
+    }
+
+    static class ChainRequest {
+        final int chainId;
+        final List<String> addresses;
+        final List<String> tokens;
+        final boolean includeNative;
+
+        ChainRequest(int chainId, List<String> addresses, List<String> tokens, boolean includeNative) {
+            this.chainId = chainId;
+            this.addresses = addresses;
+            this.tokens = tokens;
+            this.includeNative = includeNative;
+        }
+    }
+
+    private static class Query {
+        final String holder;
+        final String token;
+
+        Query(String holder, String token) {
+            this.holder = holder;
+            this.token = token;
+        }
+
+        Multicall3.Call toCall() {
+            return NATIVE.equals(token) ? Multicall3.ethBalance(holder) : Multicall3.erc20Balance(token, holder);
+        }
+    }
+
+    private static class Scan {
+        final String id;
+        final Listener listener;
+        final long startedAt = SystemClock.elapsedRealtime();
+        final AtomicInteger chainsLeft;
+        final AtomicInteger balances = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        volatile boolean cancelled = false;
+
+        Scan(String id, Listener listener, int chains) {
+            this.id = id;
+            this.listener = listener;
+            this.chainsLeft = new AtomicInteger(chains);
+        }
+    }
+
+    private static class ChainRun {
+        final Scan scan;
+        final int chainId;
+        final JsonRpcClient client;
+        final Deque<List<Query>> queue = new ArrayDeque<>();
+        final AtomicInteger workers = new AtomicInteger();
+        final AtomicInteger requests = new AtomicInteger();
+        final long startedAt = SystemClock.elapsedRealtime();
+
+        ChainRun(Scan scan, int chainId) {
+            this.scan = scan;
+            this.chainId = chainId;
+            this.client = JsonRpcClient.forChain(chainId);
+        }
+
+        synchronized List<Query> poll() {
+            return queue.pollFirst();
+        }
+
+        synchronized void pushFront(List<Query> batch) {
+            queue.addFirst(batch);
+        }
+    }
+
+    private PortfolioScanner() {
+    }
+
+    // Plans and starts a scan; results arrive on the listener from pool
+    // threads. Returns the scan id with the planned batch and call counts.
+    static JSONObject scan(List<ChainRequest> requests, Listener listener) {
+        String id = "scan-" + nextScanId.getAndIncrement();
+        Scan scan = new Scan(id, listener, requests.size());
+        List<ChainRun> runs = new ArrayList<>();
+        int plannedBatches = 0;
+        int plannedCalls = 0;
+        for (ChainRequest request : requests) {
+            ChainRun run = new ChainRun(scan, request.chainId);
+            List<Query> queries = plan(request);
+            plannedCalls += queries.size();
+            for (List<Query> batch : pack(queries)) {
+                run.queue.add(batch);
+            }
+            plannedBatches += run.queue.size();
+            runs.add(run);
+        }
+        synchronized (PortfolioScanner.class) {
+            scans.put(id, scan);
+            scansStarted++;
+        }
+
+        for (ChainRun run : runs) {
+            int workers = Math.min(PER_CHAIN_CONCURRENCY, run.queue.size());
+            if (workers == 0) {
+                finishChain(run);
+                continue;
+            }
+            run.workers.set(workers);
+            for (int i = 0; i < workers; i++) {
+                pool.execute(() -> work(run));
+            }
+        }
+        if (requests.isEmpty()) {
+            finishScan(scan);
+        }
+
+        JSONObject plan = new JSONObject();
+        try {
+            plan.put("scanId", id);
+            plan.put("batches", plannedBatches);
+            plan.put("calls", plannedCalls);
+        } catch (JSONException ignored) {
+        }
+        return plan;
+    }
+
+    static boolean cancel(String scanId) {
+        Scan scan;
+        synchronized (PortfolioScanner.class) {
+            scan = scans.get(scanId);
+        }
+        if (scan == null) return false;
+        scan.cancelled = true;
+        return true;
+    }
+
+    // Holder-major order, so an address's balances tend to land together.
+    private static List<Query> plan(ChainRequest request) {
+        List<Query> queries = new ArrayList<>();
+        for (String holder : request.addresses) {
+            if (request.includeNative) {
+                queries.add(new Query(holder, NATIVE));
+            }
+            for (String token : request.tokens) {
+                queries.add(new Query(holder, token));
+            }
+        }
+        return queries;
+    }
+
+    private static List<List<Query>> pack(List<Query> queries) {
+        List<List<Query>> packed = new ArrayList<>();
+        List<Query> batch = new ArrayList<>();
+        long gas = 0;
+        for (Query query : queries) {
+            long cost = NATIVE.equals(query.token) ? NATIVE_CALL_GAS : TOKEN_CALL_GAS;
+            if (!batch.isEmpty() && (batch.size() >= MAX_CALLS_PER_BATCH || gas + cost > MAX_BATCH_GAS)) {
+                packed.add(batch);
+                batch = new ArrayList<>();
+                gas = 0;
+            }
+            batch.add(query);
+            gas += cost;
+        }
+        if (!batch.isEmpty()) {
+            packed.add(batch);
+        }
+        return packed;
+    }
+
+    private static void work(ChainRun run) {
+        List<Query> batch;
+        while (!run.scan.cancelled && (batch = run.poll()) != null) {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                run.requests.incrementAndGet();
+                JSONArray balances = execute(run.client, batch);
+                synchronized (PortfolioScanner.class) {
+                    batches++;
+                    calls += batch.size();
+                    totalBatchMs += SystemClock.elapsedRealtime() - start;
+                }
+                deliver(run, balances);
+            } catch (IOException | RuntimeException e) {
+                if (batch.size() > 1 && isSplittable(e)) {
+                    // Out of gas or response too large: retry as halves.
+                    synchronized (PortfolioScanner.class) {
+                        splits++;
+                    }
+                    int half = batch.size() / 2;
+                    run.pushFront(new ArrayList<>(batch.subList(half, batch.size())));
+                    run.pushFront(new ArrayList<>(batch.subList(0, half)));
+                    continue;
+                }
+                Log.w(TAG, "Batch of " + batch.size() + " failed on chain " + run.chainId + ": " + e.getMessage());
+                synchronized (PortfolioScanner.class) {
+                    failedCalls += batch.size();
+                }
+                deliver(run, errors(batch, e.getMessage() != null ? e.getMessage() : "Request failed"));
+            }
+        }
+        if (run.workers.decrementAndGet() == 0) {
+            finishChain(run);
+        }
+    }
+
+    // Only a batch the node refused for its size gets smaller by splitting:
+    // out of gas, over the call gas cap, or a response too large. Anything
+    // else (rate limits, queue timeouts, offline, DNS, 5xx) fails the same
+    // way for the halves and only adds load.
+    private static boolean isSplittable(Exception e) {
+        if (!(e instanceof RpcException)) return false;
+        RpcException rpc = (RpcException) e;
+        if (rpc.code == RpcException.RESPONSE_TOO_LARGE) return true;
+        if (rpc.httpStatus == 429 || rpc.httpStatus >= 500 || rpc.code == RpcException.TRANSPORT_ERROR
+                || rpc.code == RpcException.QUEUE_TIMEOUT) {
+            return false;
+        }
+        String msg = e.getMessage();
+        if (msg == null) return false;
+        msg = msg.toLowerCase(Locale.US);
+        return msg.contains("out of gas") || msg.contains("gas limit") || msg.contains("gas required exceeds")
+            || msg.contains("gas cap") || msg.contains("response size") || msg.contains("too large")
+            || msg.contains("response too big");
+    }
+
+    private static JSONArray execute(JsonRpcClient client, List<Query> batch) throws IOException {
+        List<Multicall3.Call> callList = new ArrayList<>(batch.size());
+        for (Query query : batch) {
+            callList.add(query.toCall());
+        }
+        JSONObject tx = new JSONObject();
+        try {
+            tx.put("to", Multicall3.ADDRESS);
+            tx.put("data", Multicall3.encodeAggregate3(callList));
+        } catch (JSONException e) {
+            throw new RpcException(-32602, "Invalid call: " + e.getMessage());
+        }
+        Object result = client.call("eth_call", new JSONArray().put(tx).put("latest"), RpcScheduler.PRIORITY_BACKGROUND);
+        if (!(result instanceof String)) {
+            throw new RpcException(-32700, "Unexpected eth_call result");
+        }
+        List<Multicall3.Result> results = Multicall3.decodeAggregate3((String) result);
+        if (results.size() != batch.size()) {
+            throw new RpcException(-32700, "aggregate3 returned " + results.size() + " results for " + batch.size() + " calls");
+        }
+
+        JSONArray balances = new JSONArray();
+        for (int i = 0; i < batch.size(); i++) {
+            Query query = batch.get(i);
+            Multicall3.Result r = results.get(i);
+            JSONObject entry = entry(query);
+            try {
+                if (r.success && r.data.length >= 32) {
+                    entry.put("balance", new BigInteger(1, Arrays.copyOf(r.data, 32)).toString());
+                } else {
+                    entry.put("error", r.success ? "Not an ERC-20 balance" : "Call reverted");
+                }
+            } catch (JSONException ignored) {
+            }
+            balances.put(entry);
+        }
+        return balances;
+    }
+
+    private static JSONArray errors(List<Query> batch, String message) {
+        JSONArray out = new JSONArray();
+        for (Query query : batch) {
+            JSONObject entry = entry(query);
+            try {
+                entry.put("error", message);
+            } catch (JSONException ignored) {
+            }
+            out.put(entry);
+        }
+        return out;
+    }
+
+    private static JSONObject entry(Query query) {
+        JSONObject entry = new JSONObject();
+        try {
+            entry.put("address", query.holder);
+            entry.put("token", query.token);
+        } catch (JSONException ignored) {
+        }
+        return entry;
+    }
+
+    private static void deliver(ChainRun run, JSONArray balances) {
+        int failed = 0;
+        for (int i = 0; i < balances.length(); i++) {
+            if (balances.optJSONObject(i).has("error")) failed++;
+        }
+        run.scan.balances.addAndGet(balances.length() - failed);
+        run.scan.errors.addAndGet(failed);
+        if (!run.scan.cancelled) {
+            run.scan.listener.onBalances(run.scan.id, run.chainId, balances);
+        }
+    }
+
+    private static void finishChain(ChainRun run) {
+        JSONObject summary = new JSONObject();
+        try {
+            summary.put("requests", run.requests.get());
+            summary.put("elapsedMs", SystemClock.elapsedRealtime() - run.startedAt);
+            summary.put("cancelled", run.scan.cancelled);
+        } catch (JSONException ignored) {
+        }
+        run.scan.listener.onChainDone(run.scan.id, run.chainId, summary);
+        if (run.scan.chainsLeft.decrementAndGet() == 0) {
+            finishScan(run.scan);
+        }
+    }
+
+    private static void finishScan(Scan scan) {
+        long elapsed = SystemClock.elapsedRealtime() - scan.startedAt;
+        synchronized (PortfolioScanner.class) {
+            scans.remove(scan.id);
+            lastScanMs = elapsed;
+        }
+        JSONObject summary = new JSONObject();
+        try {
+            summary.put("balances", scan.balances.get());
+            summary.put("errors", scan.errors.get());
+            summary.put("elapsedMs", elapsed);
+            summary.put("cancelled", scan.cancelled);
+        } catch (JSONException ignored) {
+        }
+        scan.listener.onComplete(scan.id, summary);
+    }
+
+    static synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("scans", scansStarted);
+            stats.put("activeScans", scans.size());
+            stats.put("batches", batches);
+            stats.put("calls", calls);
+            stats.put("callsPerBatch", batches > 0 ? calls / batches : 0);
+            stats.put("splits", splits);
+            stats.put("failedCalls", failedCalls);
+            stats.put("avgBatchMs", batches > 0 ? totalBatchMs / batches : 0);
+            stats.put("lastScanMs", lastScanMs);
+        } catch (JSONException ignored) {
+        }
+        return stats;
+    }
+}
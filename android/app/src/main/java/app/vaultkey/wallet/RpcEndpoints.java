@@ -0,0 +1,52 @@
+package app.vaultkey.wallet;
+
+final class RpcEndpoints {
+    static final String DEFAULT_URL = "https://eth.llamarpc.com";
+
+    // Sends every chain to one endpoint; the bridge load tests point this at
+    // a local stub node. Block trackers and log engines keep the client they
+    // were built with, so set it before the browser starts.
+    private static volatile String override;
+
+    private RpcEndpoints() {
+    }
+
+    static void setOverride(String url) {
+        override = url;
+    }
+
+    static String forChain(int chainId) {
+        String url = override;
+        if (url != null) return url;
+        switch (chainId) {
+            case 1: return "https://eth.llamarpc.com";
+            case 56: return "https://bsc-dataseed1.binance.org";
+            case 137: return "https://polygon-rpc.com";
+            case 43114: return "https://api.avax.network/ext/bc/C/rpc";
+            case 42161: return "https://arb1.arbitrum.io/rpc";
+            case 10: return "https://mainnet.optimism.io";
+            case 8453: return "https://mainnet.base.org";
+            default: return DEFAULT_URL;
+        }
+    }
+
+    static boolean isSupported(int chainId) {
+        switch (chainId) {
+            case 1: case 56: case 137: case 43114: case 42161: case 10: case 8453:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Depth after which a block is treated as final for caching purposes.
+    static int finalityDepth(int chainId) {
+        switch (chainId) {
+            case 1: return 64;
+            case 56: return 15;
+            case 137: return 256;
+            case 43114: return 1;
+            default: return 64;
+        }
+    }
+}
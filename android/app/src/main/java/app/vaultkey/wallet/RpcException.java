@@ -0,0 +1,33 @@
+package app.vaultkey.wallet;
+
+import java.io.IOException;
+
+class RpcException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    static final int TRANSPORT_ERROR = -32603;
+    // Our own scheduler gave up waiting for a slot; the endpoint never saw
+    // the request.
+    static final int QUEUE_TIMEOUT = -32098;
+    // The response was larger than we accept from an endpoint.
+    static final int RESPONSE_TOO_LARGE = -32097;
+
+    final int code;
+    final int httpStatus;
+    final long retryAfterMs;
+
+    RpcException(int code, String message) {
+        this(code, message, 0);
+    }
+
+    RpcException(int code, String message, int httpStatus) {
+        this(code, message, httpStatus, 0);
+    }
+
+    RpcException(int code, String message, int httpStatus, long retryAfterMs) {
+        super(message);
+        this.code = code;
+        this.httpStatus = httpStatus;
+        this.retryAfterMs = retryAfterMs;
+    }
+}
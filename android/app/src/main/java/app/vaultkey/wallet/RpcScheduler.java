@@ -0,0 +1,193 @@
+package app.vaultkey.wallet;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Admission control for one RPC endpoint. Requests queue by priority class
+// (signing and preflight first, then reads for the visible page, then
+// polling and background tabs), pass a token bucket and run inside a
+// bounded concurrency window. Lower classes can never fill the whole
+// window, so a busy dashboard cannot starve the user's own transaction.
+// A 429 halves the refill rate and pauses the endpoint for Retry-After.
+class RpcScheduler {
+    private static final String TAG = "RpcScheduler";
+
+    static final int PRIORITY_USER = 0;
+    static final int PRIORITY_FOREGROUND = 1;
+    static final int PRIORITY_BACKGROUND = 2;
+    private static final String[] PRIORITY_NAMES = {"user", "foreground", "background"};
+
+    private static final int MAX_CONCURRENCY = 6;
+    private static final double MAX_RATE_PER_SEC = 20;
+    private static final double MIN_RATE_PER_SEC = 1;
+    private static final double BURST = 10;
+    private static final long DEFAULT_BACKOFF_MS = 2000;
+    private static final long MAX_BACKOFF_MS = 60000;
+    private static final long MAX_WAIT_MS = 30000;
+    private static final Map<String, RpcScheduler> schedulers = new HashMap<>();
+
+    private static class Ticket implements Comparable<Ticket> {
+        final int priority;
+        final long seq;
+        final long enqueuedAt = SystemClock.elapsedRealtime();
+
+        Ticket(int priority, long seq) {
+            this.priority = priority;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            if (priority != other.priority) return priority < other.priority ? -1 : 1;
+            return seq < other.seq ? -1 : (seq == other.seq ? 0 : 1);
+        }
+    }
+
+    final String endpoint;
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>();
+    private long nextSeq = 0;
+    private int inflight = 0;
+    private double tokens = BURST;
+    private double ratePerSec = MAX_RATE_PER_SEC;
+    private long lastRefillAt = SystemClock.elapsedRealtime();
+    private long pausedUntil = 0;
+
+    private final long[] admitted = new long[3];
+    private final long[] totalWaitMs = new long[3];
+    private final long[] maxWaitMs = new long[3];
+    private final int[] queued = new int[3];
+    private final int[] maxQueued = new int[3];
+    private long throttled = 0;
+    private long timedOut = 0;
+
+    static synchronized RpcScheduler forEndpoint(String endpoint) {
+        RpcScheduler scheduler = schedulers.get(endpoint);
+        if (scheduler == null) {
+            scheduler = new RpcScheduler(endpoint);
+            schedulers.put(endpoint, scheduler);
+        }
+        return scheduler;
+    }
+
+    RpcScheduler(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    // Blocks until the request may go out. Every successful acquire must be
+    // paired with release().
+    synchronized void acquire(int priority) throws RpcException {
+        int p = Math.max(PRIORITY_USER, Math.min(PRIORITY_BACKGROUND, priority));
+        Ticket ticket = new Ticket(p, nextSeq++);
+        queue.add(ticket);
+        queued[p]++;
+        maxQueued[p] = Math.max(maxQueued[p], queued[p]);
+        try {
+            while (true) {
+                long now = SystemClock.elapsedRealtime();
+                refill(now);
+                long waitMs = admissionDelay(ticket, now);
+                if (waitMs == 0) break;
+                if (now - ticket.enqueuedAt > MAX_WAIT_MS) {
+                    timedOut++;
+                    throw new RpcException(RpcException.QUEUE_TIMEOUT, "RPC queue timeout for " + endpoint);
+                }
+                wait(waitMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RpcException(RpcException.TRANSPORT_ERROR, "Interrupted while queued");
+        } finally {
+            queue.remove(ticket);
+            queued[p]--;
+            // The head of the queue may have changed.
+            notifyAll();
+        }
+
+        long waited = SystemClock.elapsedRealtime() - ticket.enqueuedAt;
+        inflight++;
+        tokens -= 1;
+        admitted[p]++;
+        totalWaitMs[p] += waited;
+        maxWaitMs[p] = Math.max(maxWaitMs[p], waited);
+    }
+
+    // Returns 0 when the ticket may run now, otherwise how long to sleep
+    // before checking again.
+    private long admissionDelay(Ticket ticket, long now) {
+        if (now < pausedUntil) {
+            return pausedUntil - now;
+        }
+        if (queue.peek() != ticket) {
+            return 1000;
+        }
+        // User requests may use the whole window; reads leave one slot and
+        // background traffic two.
+        if (inflight >= MAX_CONCURRENCY - ticket.priority) {
+            return 1000;
+        }
+        if (tokens < 1) {
+            return Math.max(1, (long) Math.ceil((1 - tokens) * 1000 / ratePerSec));
+        }
+        return 0;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(BURST, tokens + (now - lastRefillAt) * ratePerSec / 1000.0);
+        lastRefillAt = now;
+    }
+
+    // retryAfterMs is only meaningful for a 429; pass 0 otherwise.
+    synchronized void release(int httpStatus, long retryAfterMs) {
+        inflight = Math.max(0, inflight - 1);
+        if (httpStatus == 429) {
+            throttled++;
+            ratePerSec = Math.max(MIN_RATE_PER_SEC, ratePerSec / 2);
+            long backoff = retryAfterMs > 0 ? Math.min(MAX_BACKOFF_MS, retryAfterMs) : DEFAULT_BACKOFF_MS;
+            pausedUntil = Math.max(pausedUntil, SystemClock.elapsedRealtime() + backoff);
+            tokens = 0;
+            Log.w(TAG, endpoint + " throttled, pausing " + backoff + "ms at " + ratePerSec + " req/s");
+        } else if (httpStatus > 0 && httpStatus < 400) {
+            ratePerSec = Math.min(MAX_RATE_PER_SEC, ratePerSec + 0.1);
+        }
+        notifyAll();
+    }
+
+    synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("endpoint", endpoint);
+            stats.put("inflight", inflight);
+            stats.put("ratePerSec", Math.round(ratePerSec * 10) / 10.0);
+            stats.put("throttled", throttled);
+            stats.put("timedOut", timedOut);
+            stats.put("pausedMs", Math.max(0, pausedUntil - SystemClock.elapsedRealtime()));
+            for (int p = 0; p < PRIORITY_NAMES.length; p++) {
+                JSONObject cls = new JSONObject();
+                cls.put("queued", queued[p]);
+                cls.put("maxQueued", maxQueued[p]);
+                cls.put("admitted", admitted[p]);
+                cls.put("avgWaitMs", admitted[p] > 0 ? totalWaitMs[p] / admitted[p] : 0);
+                cls.put("maxWaitMs", maxWaitMs[p]);
+                stats.put(PRIORITY_NAMES[p], cls);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error building stats", e);
+        }
+        return stats;
+    }
+
+    static synchronized JSONArray getAllStats() {
+        JSONArray all = new JSONArray();
+        for (RpcScheduler scheduler : schedulers.values()) {
+            all.put(scheduler.getStats());
+        }
+        return all;
+    }
+}
@@ -0,0 +1,131 @@
+package app.vaultkey.wallet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// The hardware wallet's command protocol over one SerialTransport. A read
+// thread frames incoming bytes into lines; commands are strictly
+// request/response on the wire, so only one is in flight at a time and it
+// takes the next JSON line as its reply. A SessionRecorder, when set, sees
+// every transfer in both directions. Plain Java so a recorded session can
+// be replayed through it off-device.
+class SerialSession {
+    private static final int WRITE_CHUNK = 16384;
+    private static final int WRITE_TIMEOUT_MS = 5000;
+    private static final int READ_POLL_MS = 100;
+
+    interface DataListener {
+        void onData(byte[] data, int offset, int count);
+    }
+
+    private final SerialTransport transport;
+    private final DataListener listener;
+    private final Object commandLock = new Object();
+    private final BlockingQueue<String> responseLines = new LinkedBlockingQueue<>();
+    private final LineFramer framer = new LineFramer(line -> {
+        if (line.startsWith("{")) {
+            responseLines.offer(line);
+        }
+    });
+    private volatile SessionRecorder recorder;
+    private volatile boolean open = true;
+    private Thread readThread;
+
+    SerialSession(SerialTransport transport, DataListener listener) {
+        this.transport = transport;
+        this.listener = listener;
+    }
+
+    void start(String threadName) {
+        readThread = new Thread(() -> {
+            byte[] buffer = new byte[1024];
+            while (open) {
+                try {
+                    int bytesRead = transport.read(buffer, READ_POLL_MS);
+                    if (bytesRead > 0) {
+                        SessionRecorder r = recorder;
+                        if (r != null) r.recordIn(buffer, 0, bytesRead);
+                        framer.feed(buffer, 0, bytesRead);
+                        if (listener != null) listener.onData(buffer, 0, bytesRead);
+                    }
+                } catch (Exception e) {
+                    break;
+                }
+            }
+        }, threadName);
+        readThread.start();
+    }
+
+    // Null stops recording.
+    void setRecorder(SessionRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    // Sends one command line and returns the device's JSON reply line.
+    String exchange(String command, long timeoutMs) throws IOException {
+        synchronized (commandLock) {
+            if (!open) {
+                throw new IOException("Not connected");
+            }
+            responseLines.clear();
+
+            byte[] bytes = (command + "\r\n").getBytes(StandardCharsets.UTF_8);
+            for (int offset = 0; offset < bytes.length; offset += WRITE_CHUNK) {
+                int count = Math.min(WRITE_CHUNK, bytes.length - offset);
+                if (writeChunk(bytes, offset, count) < 0) {
+                    throw new IOException("Write failed");
+                }
+            }
+
+            try {
+                String line = responseLines.poll(timeoutMs, TimeUnit.MILLISECONDS);
+                if (line == null) {
+                    throw new IOException("Command timed out");
+                }
+                return line;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted");
+            }
+        }
+    }
+
+    // Raw write outside the command protocol, in one transfer.
+    int write(byte[] data) throws IOException {
+        return writeChunk(data, 0, data.length);
+    }
+
+    // Raw read outside the read thread; returns what the transport returns.
+    int read(byte[] buffer, int timeoutMs) throws IOException {
+        int bytesRead = transport.read(buffer, timeoutMs);
+        SessionRecorder r = recorder;
+        if (r != null && bytesRead > 0) r.recordIn(buffer, 0, bytesRead);
+        return bytesRead;
+    }
+
+    // Recorded before the transfer: the reply can be read before write()
+    // returns, and a capture has to keep it after its command.
+    private int writeChunk(byte[] data, int offset, int count) throws IOException {
+        SessionRecorder r = recorder;
+        if (r != null) r.recordOut(data, offset, count);
+        return transport.write(data, offset, count, WRITE_TIMEOUT_MS);
+    }
+
+    void close() {
+        open = false;
+        recorder = null;
+        transport.close();
+        framer.reset();
+        responseLines.clear();
+        if (readThread != null) {
+            readThread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package app.vaultkey.wallet;
+
+import java.io.IOException;
+
+// One serial link to the hardware wallet: bulk writes of command bytes and
+// timed reads of whatever the device has sent. UsbSerialTransport drives
+// the USB endpoints; SessionReplay stands in for the device from a
+// recorded session, so SerialSession runs unchanged on a plain JVM.
+interface SerialTransport {
+    // Returns the number of bytes written, or a negative value on failure.
+    int write(byte[] data, int offset, int count, int timeoutMs) throws IOException;
+
+    // Returns the number of bytes read; zero or negative when nothing
+    // arrived within timeoutMs.
+    int read(byte[] buffer, int timeoutMs) throws IOException;
+
+    void close();
+}
@@ -0,0 +1,405 @@
+package app.vaultkey.wallet;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Opt-in capture of a hardware wallet session: every transfer on the
+// serial link, timestamped and tagged with its direction, appended to a
+// memory-mapped file of fixed size. The file is a ring; once full, the
+// oldest records are overwritten, so a long session keeps its most recent
+// traffic. Commands that carry or return secrets (PIN, seed) are redacted
+// before they reach the file, together with the device's reply, and
+// replaced by placeholder lines that keep the session replayable. A command
+// is held until its line is complete, so it is classified as a whole
+// however it was split into writes, and is recorded as one record.
+//
+// Layout, big-endian. The header is HEADER_SIZE bytes:
+//   int magic, short version, short header size, int file size,
+//   int head, int tail, int live records, long start (epoch ms),
+//   long records written, long records overwritten
+// Each record is RECORD_HEADER bytes followed by its payload:
+//   int payload length, byte direction, byte flags,
+//   int original length, long micros since start
+// A payload length of WRAP (or fewer than four bytes left before the end
+// of the file) sends the reader back to the first record slot.
+class SessionRecorder {
+    static final int MAGIC = 0x564b5352; // "VKSR"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_HEADER = 18;
+    static final int MIN_SIZE = 4 * 1024;
+    static final int MAX_SIZE = 64 * 1024 * 1024;
+    static final int DEFAULT_SIZE = 1024 * 1024;
+
+    static final byte OUT = 1; // host to device
+    static final byte IN = 2; // device to host
+    static final byte FLAG_REDACTED = 1;
+    static final byte FLAG_TRUNCATED = 2;
+
+    private static final int WRAP = -1;
+    private static final int OFFSET_HEAD = 12;
+    private static final int OFFSET_TAIL = 16;
+    private static final int OFFSET_LIVE = 20;
+    private static final int OFFSET_WRITTEN = 32;
+    private static final int OFFSET_OVERWRITTEN = 40;
+
+    // Commands whose parameters or reply hold a secret.
+    private static final String[] SECRET_ACTIONS = {"get_seed", "unlock", "setup"};
+    // Redacted wherever they appear as a key, whatever the action.
+    private static final String[] SECRET_FIELDS = {"\"pin\"", "\"seed\"", "\"mnemonic\"", "\"password\""};
+    private static final byte[] EMPTY = new byte[0];
+    private static final int SCAN_OVERLAP = 64;
+    private static final byte[] REDACTED_REPLY = "{\"redacted\":true}\n".getBytes(StandardCharsets.UTF_8);
+
+    static final class Record {
+        final byte direction;
+        final byte flags;
+        final int originalLength;
+        final long micros;
+        final byte[] payload;
+
+        Record(byte direction, byte flags, int originalLength, long micros, byte[] payload) {
+            this.direction = direction;
+            this.flags = flags;
+            this.originalLength = originalLength;
+            this.micros = micros;
+            this.payload = payload;
+        }
+
+        boolean isRedacted() {
+            return (flags & FLAG_REDACTED) != 0;
+        }
+
+        boolean endsLine() {
+            return payload.length > 0 && payload[payload.length - 1] == '\n';
+        }
+    }
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer map;
+    private final int size;
+    private final int maxPayload;
+    private final long startNanos = System.nanoTime();
+    private int head = HEADER_SIZE;
+    private int tail = HEADER_SIZE;
+    private int live = 0;
+    private long written = 0;
+    private long overwritten = 0;
+    private long redacted = 0;
+    private long truncated = 0;
+    private long bytesOut = 0;
+    private long bytesIn = 0;
+    private boolean closed = false;
+
+    // Redaction state. Command lines may span several writes and replies
+    // several reads, so it is carried between transfers. Of a command line,
+    // only the first maxPayload bytes are kept; the rest is only scanned,
+    // SCAN_OVERLAP bytes at a time behind it, so a key split across writes
+    // is still found.
+    private final ByteArrayOutputStream outLine = new ByteArrayOutputStream();
+    private int outLineLength = 0;
+    private String outSecret;
+    private byte[] outScanTail = EMPTY;
+    private boolean inRedacting = false;
+    private boolean inAtLineStart = true;
+    private boolean inLineJson = false;
+
+    // Starts a new capture in file, replacing whatever it held.
+    SessionRecorder(File file, int size) throws IOException {
+        this.file = file;
+        this.size = Math.max(MIN_SIZE, Math.min(MAX_SIZE, size));
+        this.maxPayload = (this.size - HEADER_SIZE) / 4 - RECORD_HEADER;
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(this.size);
+            map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, this.size);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        map.putInt(0, MAGIC);
+        map.putShort(4, VERSION);
+        map.putShort(6, (short) HEADER_SIZE);
+        map.putInt(8, this.size);
+        map.putLong(24, System.currentTimeMillis());
+        writeHeader();
+    }
+
+    synchronized void recordOut(byte[] data, int offset, int count) {
+        if (closed || count <= 0) return;
+        bytesOut += count;
+        int end = offset + count;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            if (data[i] == '\n') {
+                addToLine(data, start, i + 1 - start);
+                finishLine();
+                start = i + 1;
+            }
+        }
+        if (start < end) {
+            addToLine(data, start, end - start);
+        }
+    }
+
+    private void addToLine(byte[] data, int offset, int count) {
+        outLineLength += count;
+        int keep = Math.min(Math.max(0, maxPayload - outLine.size()), count);
+        outLine.write(data, offset, keep);
+        if (keep == count || outSecret != null) return;
+        // Beyond what is kept: look for secrets in the rest, with the bytes
+        // before it in front.
+        byte[] before = outScanTail.length > 0 ? outScanTail : copyTail(outLine.toByteArray());
+        byte[] scan = new byte[before.length + count - keep];
+        System.arraycopy(before, 0, scan, 0, before.length);
+        System.arraycopy(data, offset + keep, scan, before.length, count - keep);
+        outSecret = secretAction(scan, 0, scan.length);
+        outScanTail = copyTail(scan);
+    }
+
+    private static byte[] copyTail(byte[] data) {
+        int n = Math.min(SCAN_OVERLAP, data.length);
+        byte[] tail = new byte[n];
+        System.arraycopy(data, data.length - n, tail, 0, n);
+        return tail;
+    }
+
+    // Records the buffered command line, or its placeholder.
+    private void finishLine() {
+        byte[] line = outLine.toByteArray();
+        String secret = outSecret != null ? outSecret : secretAction(line, 0, line.length);
+        if (secret != null) {
+            byte[] placeholder = placeholderCommand(secret);
+            append(OUT, FLAG_REDACTED, outLineLength, placeholder, 0, placeholder.length);
+            redacted++;
+            inRedacting = true;
+        } else {
+            byte flags = 0;
+            if (outLineLength > line.length) {
+                flags = FLAG_TRUNCATED;
+                truncated++;
+            }
+            append(OUT, flags, outLineLength, line, 0, line.length);
+        }
+        outLine.reset();
+        outLineLength = 0;
+        outSecret = null;
+        outScanTail = EMPTY;
+    }
+
+    synchronized void recordIn(byte[] data, int offset, int count) {
+        if (closed || count <= 0) return;
+        bytesIn += count;
+        int end = offset + count;
+        int replyEnd = -1;
+        for (int i = offset; i < end; i++) {
+            byte b = data[i];
+            if (inAtLineStart) {
+                inLineJson = b == '{';
+                inAtLineStart = false;
+            }
+            if (b == '\n') {
+                inAtLineStart = true;
+                // The reply is the first JSON line after the command, as
+                // SerialSession takes it; lines before it go with it.
+                if (inRedacting && replyEnd < 0 && inLineJson) {
+                    replyEnd = i + 1;
+                }
+            }
+        }
+        if (!inRedacting) {
+            append(IN, (byte) 0, count, data, offset, count);
+            return;
+        }
+        redacted++;
+        if (replyEnd < 0) {
+            append(IN, FLAG_REDACTED, count, EMPTY, 0, 0);
+            return;
+        }
+        inRedacting = false;
+        append(IN, FLAG_REDACTED, replyEnd - offset, REDACTED_REPLY, 0, REDACTED_REPLY.length);
+        if (replyEnd < end) {
+            append(IN, (byte) 0, end - replyEnd, data, replyEnd, end - replyEnd);
+        }
+    }
+
+    private void append(byte direction, byte flags, int originalLength, byte[] data, int offset, int count) {
+        if (count > maxPayload) {
+            count = maxPayload;
+            flags |= FLAG_TRUNCATED;
+            truncated++;
+        }
+        int length = RECORD_HEADER + count;
+        makeRoom(length);
+        map.position(head);
+        map.putInt(count);
+        map.put(direction);
+        map.put(flags);
+        map.putInt(originalLength);
+        map.putLong((System.nanoTime() - startNanos) / 1000);
+        map.put(data, offset, count);
+        head += length;
+        live++;
+        written++;
+        writeHeader();
+    }
+
+    // Moves head to a slot with length bytes free, wrapping at the end of
+    // the file and overwriting the oldest records as needed.
+    private void makeRoom(int length) {
+        while (true) {
+            if (live == 0) {
+                head = HEADER_SIZE;
+                tail = HEADER_SIZE;
+            }
+            if (live == 0 || head > tail) {
+                // Free space runs from head to the end of the file.
+                if (size - head >= length) return;
+                if (size - head >= 4) map.putInt(head, WRAP);
+                head = HEADER_SIZE;
+                if (live == 0) return;
+            } else {
+                // Wrapped: free space runs from head up to the oldest record.
+                if (tail - head >= length) return;
+                dropOldest();
+            }
+        }
+    }
+
+    private void dropOldest() {
+        int payload = map.getInt(tail);
+        tail += RECORD_HEADER + payload;
+        live--;
+        overwritten++;
+        if (tail > size - 4 || map.getInt(tail) == WRAP) {
+            tail = HEADER_SIZE;
+        }
+    }
+
+    private void writeHeader() {
+        map.putInt(OFFSET_HEAD, head);
+        map.putInt(OFFSET_TAIL, tail);
+        map.putInt(OFFSET_LIVE, live);
+        map.putLong(OFFSET_WRITTEN, written);
+        map.putLong(OFFSET_OVERWRITTEN, overwritten);
+    }
+
+    synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("path", file.getAbsolutePath());
+            stats.put("fileBytes", size);
+            stats.put("records", live);
+            stats.put("recordsWritten", written);
+            stats.put("overwritten", overwritten);
+            stats.put("redacted", redacted);
+            stats.put("truncated", truncated);
+            stats.put("bytesOut", bytesOut);
+            stats.put("bytesIn", bytesIn);
+            stats.put("durationMs", (System.nanoTime() - startNanos) / 1000000);
+        } catch (JSONException ignored) {
+        }
+        return stats;
+    }
+
+    // Flushes the map to the file and stops recording.
+    synchronized void close() {
+        if (closed) return;
+        if (outLineLength > 0) {
+            // An unfinished command: recorded only if nothing in it is secret.
+            byte[] line = outLine.toByteArray();
+            if (outSecret == null && secretAction(line, 0, line.length) == null) {
+                append(OUT, (byte) 0, outLineLength, line, 0, line.length);
+            } else {
+                append(OUT, FLAG_REDACTED, outLineLength, EMPTY, 0, 0);
+                redacted++;
+            }
+        }
+        closed = true;
+        map.force();
+        try {
+            raf.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // Reads a capture back, oldest record first.
+    static List<Record> read(File file) throws IOException {
+        byte[] bytes;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            bytes = new byte[(int) Math.min(in.length(), MAX_SIZE)];
+            in.readFully(bytes);
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+            throw new IOException("Not a session recording: " + file);
+        }
+        if (buf.getShort(4) != VERSION) {
+            throw new IOException("Unsupported recording version " + buf.getShort(4));
+        }
+        int size = Math.min(buf.getInt(8), bytes.length);
+        int pos = buf.getInt(OFFSET_TAIL);
+        int live = buf.getInt(OFFSET_LIVE);
+        List<Record> records = new ArrayList<>(live);
+        for (int i = 0; i < live; i++) {
+            if (pos > size - 4 || buf.getInt(pos) == WRAP) {
+                pos = HEADER_SIZE;
+            }
+            int count = buf.getInt(pos);
+            if (count < 0 || pos + RECORD_HEADER + count > size) {
+                throw new IOException("Corrupt record at offset " + pos);
+            }
+            buf.position(pos + 4);
+            byte direction = buf.get();
+            byte flags = buf.get();
+            int originalLength = buf.getInt();
+            long micros = buf.getLong();
+            byte[] payload = new byte[count];
+            buf.get(payload);
+            records.add(new Record(direction, flags, originalLength, micros, payload));
+            pos += RECORD_HEADER + count;
+        }
+        return records;
+    }
+
+    // Returns the action to redact the command line starting in this chunk
+    // under ("" when only a secret field gave it away), or null when it
+    // carries nothing secret.
+    private static String secretAction(byte[] data, int offset, int count) {
+        String text = new String(data, offset, count, StandardCharsets.ISO_8859_1);
+        for (String action : SECRET_ACTIONS) {
+            if (hasAction(text, action)) return action;
+        }
+        for (String field : SECRET_FIELDS) {
+            if (text.contains(field)) return "";
+        }
+        return null;
+    }
+
+    private static boolean hasAction(String text, String action) {
+        int key = text.indexOf("\"action\"");
+        if (key < 0) return false;
+        int i = key + 8;
+        while (i < text.length() && (text.charAt(i) == ' ' || text.charAt(i) == ':')) i++;
+        return text.startsWith("\"" + action + "\"", i);
+    }
+
+    private static byte[] placeholderCommand(String action) {
+        String json = action.isEmpty()
+            ? "{\"redacted\":true}\r\n"
+            : "{\"action\":\"" + action + "\",\"redacted\":true}\r\n";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,240 @@
+package app.vaultkey.wallet;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Plays a SessionRecorder capture back through SerialSession with a
+// transport that stands in for the device. The recorded commands are sent
+// again with the host's original think time between them, and the device's
+// bytes come back with their original delay after the command they
+// followed, both divided by speed; a speed of zero or less replays with no
+// delays, for benchmarks. Each exchange is timed, so a slow session from
+// the field can be reproduced and measured on a plain JVM.
+final class SessionReplay {
+    static final class Command {
+        final String line;
+        // Delay before the command, after the previous one was answered.
+        final long thinkMicros;
+        // From the end of the command to the end of its reply, as recorded;
+        // -1 when the device sent nothing back.
+        final long recordedMicros;
+        final boolean redacted;
+
+        Command(String line, long thinkMicros, long recordedMicros, boolean redacted) {
+            this.line = line;
+            this.thinkMicros = thinkMicros;
+            this.recordedMicros = recordedMicros;
+            this.redacted = redacted;
+        }
+    }
+
+    static final class Result {
+        int commands = 0;
+        int answered = 0;
+        int failed = 0;
+        int redacted = 0;
+        long wallMicros = 0;
+        final LatencyHistogram replayed = new LatencyHistogram();
+        final LatencyHistogram recorded = new LatencyHistogram();
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("commands", commands);
+            json.put("answered", answered);
+            json.put("failed", failed);
+            json.put("redacted", redacted);
+            json.put("wallMs", wallMicros / 1000);
+            json.put("replayed", replayed.toJson());
+            json.put("recorded", recorded.toJson());
+            return json;
+        }
+    }
+
+    // A device's output, held until its command has been written again.
+    private static final class Chunk {
+        final byte[] bytes;
+        // Command lines that preceded it in the recording.
+        final int afterCommands;
+        final long delayMicros;
+
+        Chunk(byte[] bytes, int afterCommands, long delayMicros) {
+            this.bytes = bytes;
+            this.afterCommands = afterCommands;
+            this.delayMicros = delayMicros;
+        }
+    }
+
+    private final List<Command> commands = new ArrayList<>();
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final double speed;
+
+    SessionReplay(List<SessionRecorder.Record> records, double speed) {
+        this.speed = speed;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        boolean lineRedacted = false;
+        long lineStartMicros = -1;
+        long lastMicros = records.isEmpty() ? 0 : records.get(0).micros;
+        long commandEndMicros = lastMicros;
+        long thinkMicros = 0;
+        boolean inAtLineStart = true;
+        boolean inLineJson = false;
+        for (SessionRecorder.Record record : records) {
+            if (record.direction == SessionRecorder.OUT) {
+                if (lineStartMicros < 0) {
+                    lineStartMicros = record.micros;
+                    thinkMicros = Math.max(0, record.micros - lastMicros);
+                }
+                line.write(record.payload, 0, record.payload.length);
+                lineRedacted |= record.isRedacted();
+                if (record.endsLine()) {
+                    String text = new String(line.toByteArray(), StandardCharsets.UTF_8).trim();
+                    // A capture that has wrapped can start mid-command.
+                    if (text.startsWith("{")) {
+                        commands.add(new Command(text, thinkMicros, -1, lineRedacted));
+                        commandEndMicros = record.micros;
+                    }
+                    line.reset();
+                    lineRedacted = false;
+                    lineStartMicros = -1;
+                }
+            } else if (record.direction == SessionRecorder.IN && record.payload.length > 0) {
+                chunks.add(new Chunk(record.payload, commands.size(), Math.max(0, record.micros - commandEndMicros)));
+                for (byte b : record.payload) {
+                    if (inAtLineStart) {
+                        inLineJson = b == '{';
+                        inAtLineStart = false;
+                    }
+                    if (b != '\n') continue;
+                    inAtLineStart = true;
+                    int last = commands.size() - 1;
+                    if (inLineJson && last >= 0 && commands.get(last).recordedMicros < 0) {
+                        Command command = commands.get(last);
+                        commands.set(last, new Command(command.line, command.thinkMicros,
+                            record.micros - commandEndMicros, command.redacted));
+                    }
+                }
+            }
+            lastMicros = record.micros;
+        }
+    }
+
+    List<Command> commands() {
+        return commands;
+    }
+
+    // Replays every command, waiting at most timeoutMs for each reply.
+    Result run(long timeoutMs) throws IOException {
+        Result result = new Result();
+        ReplayTransport transport = new ReplayTransport();
+        SerialSession session = new SerialSession(transport, null);
+        session.start("SessionReplay");
+        long start = System.nanoTime();
+        try {
+            for (Command command : commands) {
+                pause(command.thinkMicros);
+                result.commands++;
+                if (command.redacted) result.redacted++;
+                long sent = System.nanoTime();
+                if (command.recordedMicros < 0) {
+                    // No reply was recorded, so there is none to wait for.
+                    session.write((command.line + "\r\n").getBytes(StandardCharsets.UTF_8));
+                    continue;
+                }
+                try {
+                    session.exchange(command.line, timeoutMs);
+                    result.answered++;
+                    result.replayed.record((System.nanoTime() - sent) / 1000000);
+                    result.recorded.record(command.recordedMicros / 1000);
+                } catch (IOException e) {
+                    result.failed++;
+                }
+            }
+        } finally {
+            session.close();
+        }
+        result.wallMicros = (System.nanoTime() - start) / 1000;
+        return result;
+    }
+
+    private void pause(long micros) throws IOException {
+        long nanos = scaled(micros);
+        if (nanos <= 0) return;
+        try {
+            Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+    }
+
+    private long scaled(long micros) {
+        return speed > 0 ? (long) (micros * 1000 / speed) : 0;
+    }
+
+    // Hands out the recorded device output. A chunk is released once the
+    // commands before it have been written, after its recorded delay.
+    private class ReplayTransport implements SerialTransport {
+        private final List<Long> writtenAt = new ArrayList<>();
+        private int next = 0;
+        private int nextOffset = 0;
+        private boolean closed = false;
+
+        ReplayTransport() {
+            writtenAt.add(System.nanoTime());
+        }
+
+        @Override
+        public synchronized int write(byte[] data, int offset, int count, int timeoutMs) {
+            if (closed) return -1;
+            if (count > 0 && data[offset + count - 1] == '\n') {
+                writtenAt.add(System.nanoTime());
+                notifyAll();
+            }
+            return count;
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int timeoutMs) throws IOException {
+            long deadline = System.nanoTime() + timeoutMs * 1000000L;
+            try {
+                while (!closed) {
+                    long now = System.nanoTime();
+                    long until = deadline;
+                    Chunk chunk = next < chunks.size() ? chunks.get(next) : null;
+                    if (chunk != null && chunk.afterCommands < writtenAt.size()) {
+                        long due = writtenAt.get(chunk.afterCommands) + scaled(chunk.delayMicros);
+                        if (due <= now) {
+                            int count = Math.min(buffer.length, chunk.bytes.length - nextOffset);
+                            System.arraycopy(chunk.bytes, nextOffset, buffer, 0, count);
+                            nextOffset += count;
+                            if (nextOffset == chunk.bytes.length) {
+                                next++;
+                                nextOffset = 0;
+                            }
+                            return count;
+                        }
+                        until = Math.min(due, deadline);
+                    }
+                    long wait = until - now;
+                    if (wait <= 0) return 0;
+                    wait(wait / 1000000, (int) (wait % 1000000));
+                }
+                return -1;
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted");
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+}
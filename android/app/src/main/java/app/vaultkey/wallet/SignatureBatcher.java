@@ -0,0 +1,138 @@
+package app.vaultkey.wallet;
+
+import android.os.Handler;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+// Groups signing requests that arrive close together (permit + order,
+// batch listings) so the wallet asks for one confirmation and, on the
+// hardware wallet, makes one sign_batch round trip. The first request opens
+// a window that flushes after windowMs or as soon as it holds MAX_BATCH
+// requests. A window holding a single request is delivered on its own.
+// All methods run on the handler's thread.
+class SignatureBatcher {
+    private static final String TAG = "SignatureBatcher";
+    static final long DEFAULT_WINDOW_MS = 300;
+    static final int MAX_BATCH = 8;
+
+    interface Listener {
+        void onSingle(JSObject request);
+
+        void onBatch(List<JSObject> requests);
+    }
+
+    private final Handler handler;
+    private final Listener listener;
+    private final Runnable flushTask = this::flush;
+    private final List<JSObject> window = new ArrayList<>();
+    private boolean enabled = true;
+    private long windowMs = DEFAULT_WINDOW_MS;
+
+    private long singles = 0;
+    private long batches = 0;
+    private long batchedRequests = 0;
+    private int largestBatch = 0;
+
+    SignatureBatcher(Handler handler, Listener listener) {
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    static boolean isBatchable(String method) {
+        switch (method) {
+            case "personal_sign":
+            case "eth_sign":
+            case "eth_signTypedData":
+            case "eth_signTypedData_v3":
+            case "eth_signTypedData_v4":
+            case "eth_signTransaction":
+            case "eth_sendTransaction":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    void configure(boolean enabled, long windowMs) {
+        this.enabled = enabled;
+        this.windowMs = Math.max(50, Math.min(windowMs, 2000));
+        if (!enabled) {
+            flush();
+        }
+    }
+
+    void offer(JSObject request) {
+        if (!enabled) {
+            singles++;
+            listener.onSingle(request);
+            return;
+        }
+        window.add(request);
+        if (window.size() == 1) {
+            handler.postDelayed(flushTask, windowMs);
+        } else if (window.size() >= MAX_BATCH) {
+            flush();
+        }
+    }
+
+    // Drops a request the page stopped waiting for before its window closed.
+    // Returns true when the request was still waiting here, i.e. the
+    // signer never saw it.
+    boolean cancel(int id) {
+        boolean removed = false;
+        Iterator<JSObject> it = window.iterator();
+        while (it.hasNext()) {
+            if (it.next().optInt("id", -1) == id) {
+                it.remove();
+                removed = true;
+            }
+        }
+        if (window.isEmpty()) {
+            handler.removeCallbacks(flushTask);
+        }
+        return removed;
+    }
+
+    void flush() {
+        handler.removeCallbacks(flushTask);
+        if (window.isEmpty()) return;
+        List<JSObject> requests = new ArrayList<>(window);
+        window.clear();
+        for (JSObject request : requests) {
+            Web3Tracer.mark(request.optInt("id", -1), "batchWindow");
+        }
+        if (requests.size() == 1) {
+            singles++;
+            listener.onSingle(requests.get(0));
+            return;
+        }
+        batches++;
+        batchedRequests += requests.size();
+        largestBatch = Math.max(largestBatch, requests.size());
+        Log.d(TAG, "Delivering " + requests.size() + " signing requests as one batch");
+        listener.onBatch(requests);
+    }
+
+    JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("enabled", enabled);
+            stats.put("windowMs", windowMs);
+            stats.put("singles", singles);
+            stats.put("batches", batches);
+            stats.put("batchedRequests", batchedRequests);
+            stats.put("largestBatch", largestBatch);
+            stats.put("waiting", window.size());
+        } catch (JSONException ignored) {
+        }
+        return stats;
+    }
+}
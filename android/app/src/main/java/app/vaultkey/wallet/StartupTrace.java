@@ -0,0 +1,56 @@
+package app.vaultkey.wallet;
+
+import android.os.Trace;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Named sections of app startup. Each one shows up in system traces via
+// android.os.Trace and is also timed here, so cold-start cost can be read
+// back at runtime and checked in tests. Like Trace sections they must be
+// ended on the thread that began them, innermost first.
+final class StartupTrace {
+    private static final Map<String, Long> durationsMicros = new LinkedHashMap<>();
+    private static final ThreadLocal<Deque<Object[]>> open = new ThreadLocal<Deque<Object[]>>() {
+        @Override
+        protected Deque<Object[]> initialValue() {
+            return new ArrayDeque<>();
+        }
+    };
+
+    private StartupTrace() {
+    }
+
+    static void begin(String section) {
+        open.get().push(new Object[]{section, System.nanoTime()});
+        Trace.beginSection(section);
+    }
+
+    static void end() {
+        Deque<Object[]> stack = open.get();
+        if (stack.isEmpty()) return;
+        Trace.endSection();
+        Object[] entry = stack.pop();
+        long micros = (System.nanoTime() - (Long) entry[1]) / 1000;
+        synchronized (durationsMicros) {
+            durationsMicros.put((String) entry[0], micros);
+        }
+    }
+
+    // Most recent duration of every section that has ended, in the order
+    // they ended.
+    static Map<String, Long> durationsMicros() {
+        synchronized (durationsMicros) {
+            return new LinkedHashMap<>(durationsMicros);
+        }
+    }
+
+    static void reset() {
+        synchronized (durationsMicros) {
+            durationsMicros.clear();
+        }
+        open.remove();
+    }
+}
@@ -0,0 +1,215 @@
+package app.vaultkey.wallet;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Gathers everything the signer needs for eth_sendTransaction while the
+// request is still on its way to the wallet UI: pending nonce, gas estimate,
+// fee data and whether the recipient is a contract. The calls run
+// concurrently and whatever finished within the deadline is attached to the
+// web3Request event.
+class TransactionPreflight {
+    private static final String TAG = "TransactionPreflight";
+    static final long DEFAULT_DEADLINE_MS = 2500;
+    private static final ExecutorService pool = Executors.newFixedThreadPool(5);
+
+    private static long runs = 0;
+    private static long totalPreflightMs = 0;
+    private static long readyCount = 0;
+    private static long totalReadyMs = 0;
+    private static long maxReadyMs = 0;
+
+    private TransactionPreflight() {
+    }
+
+    static JSONObject run(int chainId, JSONObject tx, long deadlineMs) {
+        long start = SystemClock.elapsedRealtime();
+        JsonRpcClient client = JsonRpcClient.forChain(chainId);
+        String from = tx.optString("from", "");
+        String to = tx.optString("to", "");
+
+        Map<String, Future<Object>> calls = new LinkedHashMap<>();
+        // The nonce is reserved rather than just read, so back-to-back
+        // requests from the same account never collide.
+        NonceManager nonces = !from.isEmpty() && !tx.has("nonce") ? NonceManager.forAccount(chainId, from) : null;
+        if (nonces != null) {
+            calls.put("nonce", pool.submit(() -> (Object) JsonRpcClient.toQuantity(nonces.reserve())));
+        }
+        calls.put("gas", submit(client, "eth_estimateGas", new JSONArray().put(stripFeeFields(tx))));
+        calls.put("feeHistory", submit(client, "eth_feeHistory", new JSONArray().put("0x5").put("latest").put(new JSONArray().put(25).put(50).put(75))));
+        calls.put("maxPriorityFeePerGas", submit(client, "eth_maxPriorityFeePerGas", new JSONArray()));
+        if (!to.isEmpty()) {
+            calls.put("code", submit(client, "eth_getCode", new JSONArray().put(to).put("latest")));
+        }
+
+        JSONObject result = new JSONObject();
+        JSONObject errors = new JSONObject();
+        JSONObject timings = new JSONObject();
+        try {
+            for (Map.Entry<String, Future<Object>> call : calls.entrySet()) {
+                long remaining = deadlineMs - (SystemClock.elapsedRealtime() - start);
+                try {
+                    Object value = call.getValue().get(Math.max(0, remaining), TimeUnit.MILLISECONDS);
+                    result.put(call.getKey(), value);
+                } catch (TimeoutException e) {
+                    if ("nonce".equals(call.getKey())) {
+                        releaseWhenDone(nonces, call.getValue());
+                    } else {
+                        call.getValue().cancel(true);
+                    }
+                    errors.put(call.getKey(), "timeout");
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    errors.put(call.getKey(), cause != null ? cause.getMessage() : "failed");
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    errors.put(call.getKey(), "interrupted");
+                }
+                timings.put(call.getKey(), SystemClock.elapsedRealtime() - start);
+            }
+            deriveFees(result);
+            if (result.has("code")) {
+                String code = result.optString("code", "0x");
+                result.put("isContract", !code.isEmpty() && !"0x".equals(code));
+                // The bytecode itself is not needed by the signer.
+                result.remove("code");
+            }
+            long elapsed = SystemClock.elapsedRealtime() - start;
+            result.put("errors", errors);
+            result.put("timings", timings);
+            result.put("elapsedMs", elapsed);
+            result.put("chainId", chainId);
+            recordPreflight(elapsed);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error building preflight", e);
+        }
+        return result;
+    }
+
+    // A reservation that completes after the deadline was never seen by the
+    // signer, so hand the nonce back.
+    private static void releaseWhenDone(NonceManager nonces, Future<Object> reservation) {
+        pool.execute(() -> {
+            try {
+                nonces.release(JsonRpcClient.parseQuantity(reservation.get()));
+            } catch (Exception ignored) {
+            }
+        });
+    }
+
+    private static Future<Object> submit(JsonRpcClient client, String method, JSONArray params) {
+        Callable<Object> task = () -> client.call(method, params, RpcScheduler.PRIORITY_USER);
+        return pool.submit(task);
+    }
+
+    private static JSONObject stripFeeFields(JSONObject tx) {
+        try {
+            JSONObject copy = new JSONObject(tx.toString());
+            copy.remove("gas");
+            copy.remove("gasLimit");
+            copy.remove("nonce");
+            return copy;
+        } catch (JSONException e) {
+            return tx;
+        }
+    }
+
+    // Suggests EIP-1559 fees from the newest base fee: maxFee = 2 * baseFee + tip.
+    private static void deriveFees(JSONObject result) throws JSONException {
+        JSONObject history = result.optJSONObject("feeHistory");
+        if (history == null) return;
+        JSONArray baseFees = history.optJSONArray("baseFeePerGas");
+        if (baseFees == null || baseFees.length() == 0) return;
+
+        BigInteger baseFee = toBigInteger(baseFees.optString(baseFees.length() - 1));
+        BigInteger tip = toBigInteger(result.optString("maxPriorityFeePerGas", ""));
+        if (tip == null) {
+            JSONArray rewards = history.optJSONArray("reward");
+            JSONArray last = rewards != null && rewards.length() > 0 ? rewards.optJSONArray(rewards.length() - 1) : null;
+            tip = last != null ? toBigInteger(last.optString(1)) : null;
+        }
+        if (baseFee == null || tip == null) return;
+
+        result.put("baseFeePerGas", "0x" + baseFee.toString(16));
+        result.put("suggestedMaxPriorityFeePerGas", "0x" + tip.toString(16));
+        result.put("suggestedMaxFeePerGas", "0x" + baseFee.shiftLeft(1).add(tip).toString(16));
+        result.remove("feeHistory");
+    }
+
+    private static BigInteger toBigInteger(String hex) {
+        if (hex == null || !hex.startsWith("0x") || hex.length() < 3) return null;
+        try {
+            return new BigInteger(hex.substring(2), 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static synchronized void recordPreflight(long elapsedMs) {
+        runs++;
+        totalPreflightMs += elapsedMs;
+    }
+
+    // Time from the page's request reaching native code to the signer
+    // showing a ready-to-sign screen.
+    static synchronized void recordReady(long elapsedMs) {
+        readyCount++;
+        totalReadyMs += elapsedMs;
+        maxReadyMs = Math.max(maxReadyMs, elapsedMs);
+        Log.d(TAG, "Ready to sign after " + elapsedMs + "ms");
+    }
+
+    static synchronized JSONObject getStats() {
+        JSONObject stats = new JSONObject();
+        try {
+            stats.put("preflights", runs);
+            stats.put("avgPreflightMs", runs > 0 ? totalPreflightMs / runs : 0);
+            stats.put("readyCount", readyCount);
+            stats.put("avgReadyMs", readyCount > 0 ? totalReadyMs / readyCount : 0);
+            stats.put("maxReadyMs", maxReadyMs);
+            stats.put("nonceAccounts", NonceManager.getAllStats());
+        } catch (JSONException e) {
+            Log.e(TAG, "Error building stats", e);
+        }
+        return stats;
+    }
+
+    static boolean appliesTo(String method) {
+        return "eth_sendTransaction".equals(method) || "eth_signTransaction".equals(method);
+    }
+
+    // Runs the preflight for account, the wallet's connected address. A
+    // transaction from any other address is refused rather than looked up.
+    static JSONObject runForParams(int chainId, String account, String params) throws IOException {
+        try {
+            JSONObject tx = new JSONArray(params).optJSONObject(0);
+            if (tx == null) tx = new JSONObject();
+            String from = tx.optString("from", "");
+            if (!from.isEmpty() && !from.equalsIgnoreCase(account)) {
+                throw new RpcException(-32602, "Transaction is not from the connected account");
+            }
+            tx.put("from", account);
+            JSONObject result = run(chainId, tx, DEFAULT_DEADLINE_MS);
+            result.put("from", account);
+            return result;
+        } catch (JSONException e) {
+            throw new RpcException(-32602, "Invalid transaction params");
+        }
+    }
+}
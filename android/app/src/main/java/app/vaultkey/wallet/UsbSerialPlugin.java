@@ -11,15 +11,22 @@ import android.hardware.usb.UsbManager;
 import android.os.Build;
 import android.util.Log;
 
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
 import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -31,6 +38,9 @@ import android.hardware.usb.UsbConstants;
 public class UsbSerialPlugin extends Plugin {
     private static final String TAG = "UsbSerialPlugin";
     private static final String ACTION_USB_PERMISSION = "app.vaultkey.wallet.USB_PERMISSION";
+    private static final long DEFAULT_COMMAND_TIMEOUT_MS = 10000;
+    private static final long DEFAULT_BATCH_TIMEOUT_MS = 120000;
+    private static final String RECORDING_FILE = "usb-session.vksr";
     
     private UsbManager usbManager;
     private UsbDevice device;
@@ -38,11 +48,19 @@ public class UsbSerialPlugin extends Plugin {
     private UsbEndpoint endpointIn;
     private UsbEndpoint endpointOut;
     private boolean isConnected = false;
-    private ExecutorService commandExecutor = Executors.newCachedThreadPool();
-    private Thread listenerThread;
-    private StringBuilder readBuffer = new StringBuilder();
+    private volatile SerialSession session;
+    // Set while startRecording is in effect; carried over to new sessions.
+    private SessionRecorder recorder;
+    // Created on first use so cold start pays for neither the thread pool
+    // nor the receiver when no wallet is plugged in.
+    private ExecutorService commandExecutor;
+    private DeviceCommandScheduler commandScheduler;
+    private boolean receiverRegistered = false;
     private PluginCall pendingCall;
     
+    // Whether the firmware understands sign_batch; null until we have asked.
+    private volatile Boolean batchSupported;
+    
     private final BroadcastReceiver usbReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -69,17 +87,8 @@ public class UsbSerialPlugin extends Plugin {
                 UsbDevice dev = intent.getParcelableExtra(UsbManager.EXTRA_DEVICE);
                 if (dev != null) {
                     Log.d(TAG, "USB device attached: " + dev.getDeviceName());
-                    JSObject deviceInfo = new JSObject();
-                    deviceInfo.put("deviceId", dev.getDeviceId());
-                    deviceInfo.put("vendorId", dev.getVendorId());
-                    deviceInfo.put("productId", dev.getProductId());
-                    deviceInfo.put("deviceName", dev.getDeviceName());
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                        deviceInfo.put("productName", dev.getProductName());
-                        deviceInfo.put("manufacturerName", dev.getManufacturerName());
-                    }
                     JSObject event = new JSObject();
-                    event.put("device", deviceInfo);
+                    event.put("device", describeDevice(dev));
                     notifyListeners("usbAttached", event);
                 }
             } else if (UsbManager.ACTION_USB_DEVICE_DETACHED.equals(action)) {
@@ -94,8 +103,38 @@ public class UsbSerialPlugin extends Plugin {
 
     @Override
     public void load() {
-        usbManager = (UsbManager) getContext().getSystemService(Context.USB_SERVICE);
-        
+        StartupTrace.begin("UsbSerialPlugin.load");
+        // Launched by plugging the wallet in: start watching right away.
+        Intent launch = getActivity() != null ? getActivity().getIntent() : null;
+        if (launch != null && UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(launch.getAction())) {
+            ensureReceiver();
+        }
+        StartupTrace.end();
+    }
+
+    private synchronized UsbManager usbManager() {
+        if (usbManager == null) {
+            usbManager = (UsbManager) getContext().getSystemService(Context.USB_SERVICE);
+        }
+        return usbManager;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (commandExecutor == null) {
+            commandExecutor = Executors.newCachedThreadPool();
+        }
+        return commandExecutor;
+    }
+
+    private synchronized DeviceCommandScheduler scheduler() {
+        if (commandScheduler == null) {
+            commandScheduler = new DeviceCommandScheduler(this::exchange);
+        }
+        return commandScheduler;
+    }
+
+    private synchronized void ensureReceiver() {
+        if (receiverRegistered) return;
         IntentFilter filter = new IntentFilter(ACTION_USB_PERMISSION);
         filter.addAction(UsbManager.ACTION_USB_DEVICE_ATTACHED);
         filter.addAction(UsbManager.ACTION_USB_DEVICE_DETACHED);
@@ -104,25 +143,63 @@ public class UsbSerialPlugin extends Plugin {
         } else {
             getContext().registerReceiver(usbReceiver, filter);
         }
+        receiverRegistered = true;
+    }
+
+    // Nobody hears usbAttached/usbDisconnected until the page subscribes, so
+    // that is when the receiver is registered.
+    @Override
+    @PluginMethod(returnType = PluginMethod.RETURN_CALLBACK)
+    public void addListener(PluginCall call) {
+        ensureReceiver();
+        super.addListener(call);
+    }
+
+    // MainActivity's USB_DEVICE_ATTACHED filter delivers attaches here while
+    // the receiver is not registered yet.
+    @Override
+    protected void handleOnNewIntent(Intent intent) {
+        super.handleOnNewIntent(intent);
+        if (intent == null || !UsbManager.ACTION_USB_DEVICE_ATTACHED.equals(intent.getAction())) return;
+        boolean wasRegistered;
+        synchronized (this) {
+            wasRegistered = receiverRegistered;
+        }
+        ensureReceiver();
+        if (!wasRegistered) {
+            usbReceiver.onReceive(getContext(), intent);
+        }
+    }
+
+    synchronized boolean isExecutorCreated() {
+        return commandExecutor != null || commandScheduler != null;
+    }
+
+    synchronized boolean isReceiverRegistered() {
+        return receiverRegistered;
+    }
+
+    private static JSObject describeDevice(UsbDevice dev) {
+        JSObject deviceInfo = new JSObject();
+        deviceInfo.put("deviceId", dev.getDeviceId());
+        deviceInfo.put("vendorId", dev.getVendorId());
+        deviceInfo.put("productId", dev.getProductId());
+        deviceInfo.put("deviceName", dev.getDeviceName());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            deviceInfo.put("productName", dev.getProductName());
+            deviceInfo.put("manufacturerName", dev.getManufacturerName());
+        }
+        return deviceInfo;
     }
 
     @PluginMethod
     public void getDevices(PluginCall call) {
         JSObject ret = new JSObject();
-        HashMap<String, UsbDevice> deviceList = usbManager.getDeviceList();
+        HashMap<String, UsbDevice> deviceList = usbManager().getDeviceList();
         
         JSObject devices = new JSObject();
         for (UsbDevice dev : deviceList.values()) {
-            JSObject deviceInfo = new JSObject();
-            deviceInfo.put("deviceId", dev.getDeviceId());
-            deviceInfo.put("vendorId", dev.getVendorId());
-            deviceInfo.put("productId", dev.getProductId());
-            deviceInfo.put("deviceName", dev.getDeviceName());
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                deviceInfo.put("productName", dev.getProductName());
-                deviceInfo.put("manufacturerName", dev.getManufacturerName());
-            }
-            devices.put(String.valueOf(dev.getDeviceId()), deviceInfo);
+            devices.put(String.valueOf(dev.getDeviceId()), describeDevice(dev));
         }
         
         ret.put("success", true);
@@ -135,8 +212,11 @@ public class UsbSerialPlugin extends Plugin {
     public void connect(PluginCall call) {
         int vendorId = call.getInt("vendorId", 11914);
         int productId = call.getInt("productId", 5);
+        // Permission grants and detaches of the connected device arrive as
+        // broadcasts.
+        ensureReceiver();
         
-        HashMap<String, UsbDevice> deviceList = usbManager.getDeviceList();
+        HashMap<String, UsbDevice> deviceList = usbManager().getDeviceList();
         UsbDevice targetDevice = null;
         
         for (UsbDevice dev : deviceList.values()) {
@@ -156,21 +236,21 @@ public class UsbSerialPlugin extends Plugin {
             return;
         }
         
-        if (usbManager.hasPermission(targetDevice)) {
+        if (usbManager().hasPermission(targetDevice)) {
             openConnection(targetDevice, call);
         } else {
             pendingCall = call;
             int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? PendingIntent.FLAG_MUTABLE : 0;
             PendingIntent permissionIntent = PendingIntent.getBroadcast(getContext(), 0, 
                 new Intent(ACTION_USB_PERMISSION), flags);
-            usbManager.requestPermission(targetDevice, permissionIntent);
+            usbManager().requestPermission(targetDevice, permissionIntent);
         }
     }
     
     private void openConnection(UsbDevice dev, PluginCall call) {
         try {
             device = dev;
-            connection = usbManager.openDevice(device);
+            connection = usbManager().openDevice(device);
             
             if (connection == null) {
                 JSObject ret = new JSObject();
@@ -209,7 +289,7 @@ public class UsbSerialPlugin extends Plugin {
             }
             
             isConnected = true;
-            startReadThread();
+            startSession();
             
             JSObject ret = new JSObject();
             ret.put("success", true);
@@ -235,10 +315,22 @@ public class UsbSerialPlugin extends Plugin {
     
     private void closeConnection() {
         isConnected = false;
-        if (connection != null) {
+        batchSupported = null;
+        DeviceCommandScheduler scheduler;
+        synchronized (this) {
+            scheduler = commandScheduler;
+        }
+        if (scheduler != null) {
+            scheduler.cancel(null, DeviceCommandScheduler.PRIORITY_INTERACTIVE, "Not connected");
+        }
+        SerialSession current = session;
+        session = null;
+        if (current != null) {
+            current.close();
+        } else if (connection != null) {
             connection.close();
-            connection = null;
         }
+        connection = null;
         device = null;
         endpointIn = null;
         endpointOut = null;
@@ -247,8 +339,9 @@ public class UsbSerialPlugin extends Plugin {
     @PluginMethod
     public void write(PluginCall call) {
         String data = call.getString("data", "");
+        SerialSession current = session;
         
-        if (!isConnected || connection == null || endpointOut == null) {
+        if (!isConnected || current == null) {
             JSObject ret = new JSObject();
             ret.put("success", false);
             ret.put("error", "Not connected");
@@ -256,10 +349,10 @@ public class UsbSerialPlugin extends Plugin {
             return;
         }
         
-        commandExecutor.execute(() -> {
+        executor().execute(() -> {
             try {
                 byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
-                int result = connection.bulkTransfer(endpointOut, bytes, bytes.length, 5000);
+                int result = current.write(bytes);
                 
                 JSObject ret = new JSObject();
                 ret.put("success", result >= 0);
@@ -281,8 +374,9 @@ public class UsbSerialPlugin extends Plugin {
     @PluginMethod
     public void read(PluginCall call) {
         int timeout = call.getInt("timeout", 5000);
+        SerialSession current = session;
         
-        if (!isConnected || connection == null || endpointIn == null) {
+        if (!isConnected || current == null) {
             JSObject ret = new JSObject();
             ret.put("success", false);
             ret.put("error", "Not connected");
@@ -290,10 +384,10 @@ public class UsbSerialPlugin extends Plugin {
             return;
         }
         
-        commandExecutor.execute(() -> {
+        executor().execute(() -> {
             try {
                 byte[] buffer = new byte[1024];
-                int bytesRead = connection.bulkTransfer(endpointIn, buffer, buffer.length, timeout);
+                int bytesRead = current.read(buffer, timeout);
                 
                 JSObject ret = new JSObject();
                 if (bytesRead > 0) {
@@ -316,6 +410,161 @@ public class UsbSerialPlugin extends Plugin {
         });
     }
 
+    // Sends one JSON command and waits for the device's JSON reply.
+    private JSONObject exchange(JSONObject command, long timeoutMs) throws IOException {
+        SerialSession current = session;
+        if (!isConnected || current == null) {
+            throw new IOException("Not connected");
+        }
+        String line = current.exchange(command.toString(), timeoutMs);
+        try {
+            // Parsed straight into the JSObject the plugin call resolves with.
+            return new JSObject(line);
+        } catch (JSONException e) {
+            throw new IOException("Malformed response from device");
+        }
+    }
+    
+    // Queues a command on the device scheduler. priority is "interactive",
+    // "foreground" or "background" and defaults by action; maxQueueMs drops
+    // the command if it cannot start in time, and tag lets cancelCommands
+    // withdraw it while queued.
+    @PluginMethod
+    public void sendCommand(PluginCall call) {
+        String action = call.getString("action", "");
+        JSObject params = call.getObject("params", new JSObject());
+        long timeout = call.getLong("timeout", DEFAULT_COMMAND_TIMEOUT_MS);
+        int priority = DeviceCommandScheduler.parsePriority(call.getString("priority"), DeviceCommandScheduler.priorityFor(action));
+        long maxQueueMs = call.getLong("maxQueueMs", 0L);
+        
+        if (action.isEmpty()) {
+            call.reject("Action is required");
+            return;
+        }
+        
+        JSONObject command = new JSONObject();
+        try {
+            command.put("action", action);
+            Iterator<String> keys = params.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                command.put(key, params.get(key));
+            }
+        } catch (JSONException e) {
+            call.reject("Invalid params: " + e.getMessage());
+            return;
+        }
+        
+        scheduler().submit(command, priority, timeout, maxQueueMs, call.getString("tag"), (response, error) -> {
+            JSObject ret = new JSObject();
+            try {
+                if (error != null) {
+                    throw new IOException(error);
+                }
+                ret.put("success", true);
+                ret.put("response", response instanceof JSObject ? (JSObject) response : JSObject.fromJSONObject(response));
+            } catch (Exception e) {
+                ret.put("success", false);
+                ret.put("error", e.getMessage());
+            }
+            getActivity().runOnUiThread(() -> call.resolve(ret));
+        });
+    }
+    
+    // Withdraws queued commands; running ones finish. With no arguments
+    // this clears the background class.
+    @PluginMethod
+    public void cancelCommands(PluginCall call) {
+        int minPriority = DeviceCommandScheduler.parsePriority(call.getString("priority"), DeviceCommandScheduler.PRIORITY_BACKGROUND);
+        DeviceCommandScheduler scheduler;
+        synchronized (this) {
+            scheduler = commandScheduler;
+        }
+        JSObject ret = new JSObject();
+        ret.put("success", true);
+        ret.put("cancelled", scheduler != null ? scheduler.cancel(call.getString("tag"), minPriority, "Cancelled") : 0);
+        call.resolve(ret);
+    }
+    
+    @PluginMethod
+    public void getCommandStats(PluginCall call) {
+        try {
+            call.resolve(JSObject.fromJSONObject(scheduler().getStats()));
+        } catch (Exception e) {
+            call.reject("Failed to read command stats: " + e.getMessage());
+        }
+    }
+    
+    // Signs several items behind a single on-device confirmation. Resolves
+    // with supported=false when the firmware has no sign_batch command, so
+    // the caller can fall back to one command per item. Each entry of
+    // results carries either the signature or its own error.
+    @PluginMethod
+    public void signBatch(PluginCall call) {
+        JSArray items = call.getArray("items", new JSArray());
+        long timeout = call.getLong("timeout", DEFAULT_BATCH_TIMEOUT_MS);
+        
+        if (Boolean.FALSE.equals(batchSupported)) {
+            JSObject ret = new JSObject();
+            ret.put("success", false);
+            ret.put("supported", false);
+            call.resolve(ret);
+            return;
+        }
+        
+        JSONObject command = new JSONObject();
+        try {
+            command.put("action", "sign_batch");
+            command.put("items", items);
+        } catch (JSONException e) {
+            call.reject("Invalid items: " + e.getMessage());
+            return;
+        }
+        
+        scheduler().submit(command, DeviceCommandScheduler.PRIORITY_INTERACTIVE, timeout, 0, null, (response, error) -> {
+            JSObject ret = new JSObject();
+            try {
+                if (error != null) {
+                    throw new IOException(error);
+                }
+                JSONArray results = response.optJSONArray("results");
+                
+                if (results != null) {
+                    batchSupported = true;
+                    if (results.length() != items.length()) {
+                        throw new IOException("Device returned " + results.length() + " results for " + items.length() + " items");
+                    }
+                    ret.put("success", true);
+                    ret.put("supported", true);
+                    ret.put("results", new JSArray(results.toString()));
+                } else {
+                    String deviceError = response.optString("error", "Batch signing failed");
+                    if (isUnknownAction(deviceError)) {
+                        Log.d(TAG, "Device does not support sign_batch: " + deviceError);
+                        batchSupported = false;
+                        ret.put("success", false);
+                        ret.put("supported", false);
+                    } else {
+                        batchSupported = true;
+                        ret.put("success", false);
+                        ret.put("supported", true);
+                        ret.put("error", deviceError);
+                    }
+                }
+            } catch (Exception e) {
+                ret.put("success", false);
+                ret.put("supported", !Boolean.FALSE.equals(batchSupported));
+                ret.put("error", e.getMessage());
+            }
+            getActivity().runOnUiThread(() -> call.resolve(ret));
+        });
+    }
+    
+    private static boolean isUnknownAction(String error) {
+        String e = error.toLowerCase();
+        return e.contains("unknown") || e.contains("unsupported") || e.contains("not supported") || e.contains("invalid action");
+    }
+    
     @PluginMethod
     public void isConnected(PluginCall call) {
         JSObject ret = new JSObject();
@@ -323,38 +572,98 @@ public class UsbSerialPlugin extends Plugin {
         call.resolve(ret);
     }
     
-    private void startReadThread() {
-        listenerThread = new Thread(() -> {
-            byte[] buffer = new byte[1024];
-            while (isConnected && connection != null && endpointIn != null) {
-                try {
-                    int bytesRead = connection.bulkTransfer(endpointIn, buffer, buffer.length, 100);
-                    if (bytesRead > 0) {
-                        String data = new String(buffer, 0, bytesRead, StandardCharsets.UTF_8);
-                        JSObject event = new JSObject();
-                        event.put("data", data);
-                        notifyListeners("usbData", event);
-                    }
-                } catch (Exception e) {
-                    break;
+    private void startSession() {
+        SerialSession started = new SerialSession(new UsbSerialTransport(connection, endpointIn, endpointOut), (data, offset, count) -> {
+            JSObject event = new JSObject();
+            event.put("data", new String(data, offset, count, StandardCharsets.UTF_8));
+            notifyListeners("usbData", event);
+        });
+        synchronized (this) {
+            started.setRecorder(recorder);
+        }
+        session = started;
+        started.start("UsbSerialListener");
+    }
+
+    // Starts capturing the serial traffic of this and later connections to
+    // a ring file in the app's files directory, replacing the previous
+    // capture. PIN- and seed-bearing commands and their replies are
+    // redacted. Pull the file with adb run-as and replay it off-device.
+    @PluginMethod
+    public void startRecording(PluginCall call) {
+        int maxBytes = call.getInt("maxBytes", SessionRecorder.DEFAULT_SIZE);
+        SessionRecorder started;
+        try {
+            synchronized (this) {
+                if (recorder != null) {
+                    recorder.close();
+                    recorder = null;
                 }
+                started = new SessionRecorder(new File(getContext().getFilesDir(), RECORDING_FILE), maxBytes);
+                recorder = started;
             }
-        }, "UsbSerialListener");
-        listenerThread.start();
+        } catch (IOException e) {
+            Log.e(TAG, "Error starting session recording", e);
+            call.reject("Failed to start recording: " + e.getMessage());
+            return;
+        }
+        SerialSession current = session;
+        if (current != null) current.setRecorder(started);
+        resolveRecording(call, started, true);
+    }
+
+    // Stops capturing and resolves with what was recorded; the file stays
+    // until the next startRecording.
+    @PluginMethod
+    public void stopRecording(PluginCall call) {
+        SessionRecorder stopped;
+        synchronized (this) {
+            stopped = recorder;
+            recorder = null;
+        }
+        SerialSession current = session;
+        if (current != null) current.setRecorder(null);
+        if (stopped != null) stopped.close();
+        resolveRecording(call, stopped, false);
+    }
+
+    private static void resolveRecording(PluginCall call, SessionRecorder recorder, boolean recording) {
+        try {
+            JSObject ret = recorder != null ? JSObject.fromJSONObject(recorder.getStats()) : new JSObject();
+            ret.put("recording", recording);
+            call.resolve(ret);
+        } catch (JSONException e) {
+            call.reject("Failed to read recording stats: " + e.getMessage());
+        }
     }
 
     @Override
     protected void handleOnDestroy() {
-        try {
-            getContext().unregisterReceiver(usbReceiver);
-        } catch (Exception e) {
-            Log.e(TAG, "Error unregistering receiver", e);
+        synchronized (this) {
+            if (receiverRegistered) {
+                try {
+                    getContext().unregisterReceiver(usbReceiver);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error unregistering receiver", e);
+                }
+                receiverRegistered = false;
+            }
         }
         closeConnection();
-        if (listenerThread != null) {
-            listenerThread.interrupt();
+        synchronized (this) {
+            if (recorder != null) {
+                recorder.close();
+                recorder = null;
+            }
+            if (commandExecutor != null) {
+                commandExecutor.shutdown();
+                commandExecutor = null;
+            }
+            if (commandScheduler != null) {
+                commandScheduler.shutdown();
+                commandScheduler = null;
+            }
         }
-        commandExecutor.shutdown();
         super.handleOnDestroy();
     }
 }
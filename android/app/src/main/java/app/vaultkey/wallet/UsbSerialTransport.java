@@ -0,0 +1,32 @@
+package app.vaultkey.wallet;
+
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+
+// SerialTransport over the bulk endpoints of a CDC device.
+class UsbSerialTransport implements SerialTransport {
+    private final UsbDeviceConnection connection;
+    private final UsbEndpoint endpointIn;
+    private final UsbEndpoint endpointOut;
+
+    UsbSerialTransport(UsbDeviceConnection connection, UsbEndpoint endpointIn, UsbEndpoint endpointOut) {
+        this.connection = connection;
+        this.endpointIn = endpointIn;
+        this.endpointOut = endpointOut;
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int count, int timeoutMs) {
+        return connection.bulkTransfer(endpointOut, data, offset, count, timeoutMs);
+    }
+
+    @Override
+    public int read(byte[] buffer, int timeoutMs) {
+        return connection.bulkTransfer(endpointIn, buffer, buffer.length, timeoutMs);
+    }
+
+    @Override
+    public void close() {
+        connection.close();
+    }
+}
@@ -0,0 +1,198 @@
+package app.vaultkey.wallet;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Request-scoped tracing for the dApp browser. Each web3 request records a
+// timestamp at every hop it passes (page, WalletBridge, preflight,
+// broadcast, plugin, signer UI, response, delivery); finished traces feed
+// per-hop and per-method histograms and a ring of recent traces. Page loads
+// are timed the same way. When disabled every entry point returns after a
+// single volatile read.
+class Web3Tracer {
+    private static final String TAG = "Web3Tracer";
+    private static final int RECENT_CAPACITY = 64;
+    private static final int MAX_ACTIVE = 256;
+
+    private static volatile boolean enabled = false;
+    private static final Map<Integer, Trace> active = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> histograms = new TreeMap<>();
+    private static final JSONObject[] recent = new JSONObject[RECENT_CAPACITY];
+    private static int recentNext = 0;
+    private static long dropped = 0;
+
+    static class Trace {
+        final String method;
+        final long startedAt = SystemClock.elapsedRealtime();
+        private final List<String> hops = new ArrayList<>();
+        private final List<Long> offsets = new ArrayList<>();
+        private final Map<String, Long> extra = new TreeMap<>();
+
+        Trace(String method) {
+            this.method = method;
+        }
+
+        // Marks the end of the hop with the given name.
+        synchronized void mark(String hop) {
+            hops.add(hop);
+            offsets.add(SystemClock.elapsedRealtime() - startedAt);
+        }
+
+        synchronized void put(String name, long ms) {
+            extra.put(name, ms);
+        }
+    }
+
+    private Web3Tracer() {
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void setEnabled(boolean value) {
+        enabled = value;
+        if (!value) {
+            active.clear();
+        }
+    }
+
+    // Starts a trace for a request the page sent at pageSentAt (wall clock,
+    // as reported by the page's Date.now()); 0 when unknown.
+    static Trace start(String method, long pageSentAt) {
+        if (!enabled) return null;
+        Trace trace = new Trace(method);
+        if (pageSentAt > 0) {
+            trace.put("page", Math.max(0, System.currentTimeMillis() - pageSentAt));
+        }
+        return trace;
+    }
+
+    // Associates a trace with a global request id so later hops in other
+    // components can find it.
+    static void track(int id, Trace trace) {
+        if (trace == null) return;
+        if (active.size() >= MAX_ACTIVE) {
+            synchronized (Web3Tracer.class) {
+                dropped++;
+            }
+            return;
+        }
+        active.put(id, trace);
+    }
+
+    static void mark(int id, String hop) {
+        if (!enabled) return;
+        Trace trace = active.get(id);
+        if (trace != null) {
+            trace.mark(hop);
+        }
+    }
+
+    static void put(int id, String name, long ms) {
+        if (!enabled) return;
+        Trace trace = active.get(id);
+        if (trace != null) {
+            trace.put(name, ms);
+        }
+    }
+
+    // Hands the trace for a request back to the caller, which finishes it.
+    static Trace detach(int id) {
+        if (!enabled) return null;
+        return active.remove(id);
+    }
+
+    static void finish(Trace trace, boolean failed) {
+        if (trace == null || !enabled) return;
+        long total = SystemClock.elapsedRealtime() - trace.startedAt;
+        JSONObject json = new JSONObject();
+        try {
+            json.put("method", trace.method);
+            json.put("totalMs", total);
+            json.put("failed", failed);
+            JSONObject hops = new JSONObject();
+            synchronized (Web3Tracer.class) {
+                synchronized (trace) {
+                    long previous = 0;
+                    for (int i = 0; i < trace.hops.size(); i++) {
+                        long offset = trace.offsets.get(i);
+                        hops.put(trace.hops.get(i), offset - previous);
+                        histogram("hop." + trace.hops.get(i)).record(offset - previous);
+                        previous = offset;
+                    }
+                    for (Map.Entry<String, Long> e : trace.extra.entrySet()) {
+                        hops.put(e.getKey(), e.getValue());
+                        histogram("hop." + e.getKey()).record(e.getValue());
+                    }
+                }
+                histogram("total." + trace.method).record(total);
+                json.put("hops", hops);
+                recent[recentNext] = json;
+                recentNext = (recentNext + 1) % RECENT_CAPACITY;
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Error recording trace", e);
+        }
+    }
+
+    static void recordPageLoad(String metric, long ms) {
+        if (!enabled) return;
+        synchronized (Web3Tracer.class) {
+            histogram("page." + metric).record(ms);
+        }
+    }
+
+    private static LatencyHistogram histogram(String name) {
+        LatencyHistogram h = histograms.get(name);
+        if (h == null) {
+            h = new LatencyHistogram();
+            histograms.put(name, h);
+        }
+        return h;
+    }
+
+    static synchronized JSONObject getMetrics() {
+        JSONObject metrics = new JSONObject();
+        try {
+            metrics.put("enabled", enabled);
+            metrics.put("activeTraces", active.size());
+            metrics.put("droppedTraces", dropped);
+            JSONObject hist = new JSONObject();
+            for (Map.Entry<String, LatencyHistogram> e : histograms.entrySet()) {
+                hist.put(e.getKey(), e.getValue().toJson());
+            }
+            metrics.put("histograms", hist);
+            JSONArray traces = new JSONArray();
+            for (int i = 0; i < RECENT_CAPACITY; i++) {
+                JSONObject trace = recent[(recentNext - 1 - i + RECENT_CAPACITY) % RECENT_CAPACITY];
+                if (trace == null) break;
+                traces.put(trace);
+            }
+            metrics.put("recent", traces);
+        } catch (JSONException e) {
+            Log.e(TAG, "Error building metrics", e);
+        }
+        return metrics;
+    }
+
+    static synchronized void reset() {
+        histograms.clear();
+        for (int i = 0; i < RECENT_CAPACITY; i++) {
+            recent[i] = null;
+        }
+        recentNext = 0;
+        dropped = 0;
+        active.clear();
+    }
+}
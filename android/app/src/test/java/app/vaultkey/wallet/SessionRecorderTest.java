@@ -0,0 +1,128 @@
+package app.vaultkey.wallet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SessionRecorderTest {
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("session", ".vksr");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void out(SessionRecorder recorder, String s) {
+        byte[] b = bytes(s);
+        recorder.recordOut(b, 0, b.length);
+    }
+
+    private static void in(SessionRecorder recorder, String s) {
+        byte[] b = bytes(s);
+        recorder.recordIn(b, 0, b.length);
+    }
+
+    @Test
+    public void secretCommandsAndRepliesAreRedacted() throws Exception {
+        String command = "{\"action\":\"get_seed\",\"pin\":\"4321\"}\r\n";
+        SessionRecorder recorder = new SessionRecorder(file, SessionRecorder.DEFAULT_SIZE);
+        out(recorder, command);
+        in(recorder, "log: reading\n{\"seed\":\"abandon ");
+        in(recorder, "abandon about\"}\n{\"event\":\"idle\"}\n");
+        out(recorder, "{\"action\":\"ping\"}\r\n");
+        in(recorder, "{\"pong\":true}\n");
+        recorder.close();
+
+        StringBuilder all = new StringBuilder();
+        List<SessionRecorder.Record> records = SessionRecorder.read(file);
+        for (SessionRecorder.Record record : records) {
+            all.append(new String(record.payload, StandardCharsets.UTF_8));
+        }
+        String text = all.toString();
+        assertFalse(text.contains("4321"));
+        assertFalse(text.contains("abandon"));
+        assertTrue(text.contains("{\"action\":\"get_seed\",\"redacted\":true}\r\n"));
+        assertTrue(text.contains("{\"redacted\":true}\n{\"event\":\"idle\"}\n"));
+        assertTrue(text.contains("{\"action\":\"ping\"}\r\n{\"pong\":true}\n"));
+        assertTrue(records.get(0).isRedacted());
+        assertEquals(bytes(command).length, records.get(0).originalLength);
+    }
+
+    @Test
+    public void secretFieldAfterTheFirstWriteIsRedacted() throws Exception {
+        StringBuilder message = new StringBuilder();
+        while (message.length() < 40000) {
+            message.append("sign this long message ");
+        }
+        String command = "{\"action\":\"sign_message\",\"message\":\"" + message + "\",\"pin\":\"4321\"}\r\n";
+        byte[] b = bytes(command);
+        for (SessionRecorder recorder : new SessionRecorder[]{
+                new SessionRecorder(file, SessionRecorder.DEFAULT_SIZE),
+                new SessionRecorder(file, SessionRecorder.MIN_SIZE)}) {
+            // Written the way SerialSession does, in 16 KB chunks.
+            for (int offset = 0; offset < b.length; offset += 16384) {
+                recorder.recordOut(b, offset, Math.min(16384, b.length - offset));
+            }
+            in(recorder, "{\"signature\":\"0x01\"}\n");
+            recorder.close();
+
+            List<SessionRecorder.Record> records = SessionRecorder.read(file);
+            assertEquals(2, records.size());
+            assertTrue(records.get(0).isRedacted());
+            assertEquals(b.length, records.get(0).originalLength);
+            assertFalse(new String(records.get(0).payload, StandardCharsets.UTF_8).contains("sign this"));
+            assertTrue(records.get(1).isRedacted());
+        }
+    }
+
+    @Test
+    public void ringKeepsNewestRecordsInOrder() throws Exception {
+        SessionRecorder recorder = new SessionRecorder(file, SessionRecorder.MIN_SIZE);
+        for (int i = 0; i < 1000; i++) {
+            in(recorder, String.format("%0" + (1 + i % 300) + "d\n", i));
+        }
+        recorder.close();
+
+        List<SessionRecorder.Record> records = SessionRecorder.read(file);
+        assertFalse(records.isEmpty());
+        assertTrue(records.size() < 1000);
+        int expected = 1000 - records.size();
+        for (SessionRecorder.Record record : records) {
+            assertEquals(expected++, Integer.parseInt(new String(record.payload, StandardCharsets.UTF_8).trim()));
+        }
+    }
+
+    @Test
+    public void replayAnswersEveryRecordedCommand() throws Exception {
+        SessionRecorder recorder = new SessionRecorder(file, SessionRecorder.DEFAULT_SIZE);
+        out(recorder, "{\"action\":\"unlock\",\"pin\":\"4321\"}\r\n");
+        in(recorder, "{\"success\":true}\n");
+        out(recorder, "{\"action\":\"get_address\",\"chain_id\":1}\r\n");
+        in(recorder, "{\"address\":");
+        in(recorder, "\"0xabc\"}\n");
+        recorder.close();
+
+        SessionReplay replay = new SessionReplay(SessionRecorder.read(file), 0);
+        assertEquals(2, replay.commands().size());
+        SessionReplay.Result result = replay.run(2000);
+        assertEquals(2, result.commands);
+        assertEquals(2, result.answered);
+        assertEquals(0, result.failed);
+        assertEquals(1, result.redacted);
+    }
+}
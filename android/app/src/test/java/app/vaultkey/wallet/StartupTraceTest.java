@@ -0,0 +1,67 @@
+package app.vaultkey.wallet;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StartupTraceTest {
+
+    @Before
+    public void setUp() {
+        StartupTrace.reset();
+    }
+
+    @Test
+    public void nestedSectionsAreTimed() throws Exception {
+        StartupTrace.begin("outer");
+        StartupTrace.begin("inner");
+        Thread.sleep(5);
+        StartupTrace.end();
+        StartupTrace.end();
+
+        Map<String, Long> sections = StartupTrace.durationsMicros();
+        assertEquals(2, sections.size());
+        assertTrue(sections.get("inner") >= 5000);
+        assertTrue(sections.get("outer") >= sections.get("inner"));
+    }
+
+    @Test
+    public void unbalancedEndIsIgnored() {
+        StartupTrace.end();
+        assertTrue(StartupTrace.durationsMicros().isEmpty());
+    }
+
+    @Test
+    public void sectionsAreKeptPerThread() throws Exception {
+        StartupTrace.begin("main");
+        Thread other = new Thread(() -> {
+            StartupTrace.begin("worker");
+            StartupTrace.end();
+        });
+        other.start();
+        other.join();
+        StartupTrace.end();
+
+        List<String> names = new ArrayList<>(StartupTrace.durationsMicros().keySet());
+        assertEquals(2, names.size());
+        assertTrue(names.contains("main"));
+        assertTrue(names.contains("worker"));
+    }
+
+    // Constructing the plugins is on the cold-start path; thread pools,
+    // handlers and receivers must wait until something needs them.
+    @Test
+    public void pluginsDeferWorkUntilFirstUse() {
+        UsbSerialPlugin usb = new UsbSerialPlugin();
+        assertFalse(usb.isExecutorCreated());
+        assertFalse(usb.isReceiverRegistered());
+
+        DAppBrowserPlugin browser = new DAppBrowserPlugin();
+        assertFalse(browser.isInitialized());
+    }
+}
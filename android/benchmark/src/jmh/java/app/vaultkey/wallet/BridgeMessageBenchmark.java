@@ -0,0 +1,61 @@
+package app.vaultkey.wallet;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Parsing what WalletBridge.postMessage receives: BridgeMessage's
+// JsonScanner pass against building the org.json tree. Runs against the
+// reference org.json; the platform copy on Android differs in detail but
+// has the same shape of work.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BridgeMessageBenchmark {
+    @Param({"read", "transaction", "typedData"})
+    String kind;
+
+    private String message;
+
+    @Setup
+    public void setup() {
+        switch (kind) {
+            case "transaction":
+                message = Payloads.transactionMessage(42);
+                break;
+            case "typedData":
+                message = Payloads.typedDataMessage(42);
+                break;
+            default:
+                message = Payloads.readMessage(42);
+        }
+    }
+
+    @Benchmark
+    public BridgeMessage parse() throws JSONException {
+        return BridgeMessage.parse(message, 1);
+    }
+
+    // The tree-building parse BridgeMessage used before JsonScanner.
+    @Benchmark
+    public Object parseTree() throws JSONException {
+        JSONObject json = new JSONObject(message);
+        return new Object[]{
+            json.getInt("id"),
+            json.getString("method"),
+            json.optString("params", "[]"),
+            json.optInt("chainId", 1),
+            json.optBoolean("rpc", false),
+            json.optLong("sentAt", 0)
+        };
+    }
+}
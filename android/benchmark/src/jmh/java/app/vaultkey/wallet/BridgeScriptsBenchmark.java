@@ -0,0 +1,46 @@
+package app.vaultkey.wallet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Scripts evaluated in the page: the provider injected on every page start
+// and finish, and the snippet that settles each response.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BridgeScriptsBenchmark {
+    private final String address = "0xd8dA6BF26964aF9D7eEd9e03E53415D37aA96045";
+    private final String result = Payloads.rpcResult();
+    private int id = 0;
+
+    @Benchmark
+    public String injection() {
+        return BridgeScripts.injection(address, 137);
+    }
+
+    @Benchmark
+    public String resolveResponse() {
+        return BridgeScripts.response(++id, result, null);
+    }
+
+    @Benchmark
+    public String rejectPlainError() {
+        return BridgeScripts.response(++id, null, Payloads.PLAIN_ERROR);
+    }
+
+    @Benchmark
+    public String rejectEscapedError() {
+        return BridgeScripts.response(++id, null, Payloads.NASTY_ERROR);
+    }
+
+    @Benchmark
+    public String escape() {
+        return BridgeScripts.escape(Payloads.NASTY_ERROR);
+    }
+}
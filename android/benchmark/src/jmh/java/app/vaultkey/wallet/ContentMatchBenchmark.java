@@ -0,0 +1,45 @@
+package app.vaultkey.wallet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Path-rule matching done for every third-party subresource request.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ContentMatchBenchmark {
+    private AhoCorasick matcher;
+    private final String cleanUrl = "https://app.uniswap.org/static/js/main.3f2a9c1b.chunk.js?v=20240101";
+    private final String trackerUrl = "https://cdn.example.com/assets/js/analytics/collect?tid=UA-1234";
+
+    @Setup
+    public void setup() {
+        List<String> patterns = new ArrayList<>();
+        String[] stems = {"/analytics", "/collect?", "/pixel", "/beacon", "/track", "/gtag/", "/fbevents", "/hotjar-"};
+        for (String stem : stems) {
+            for (int i = 0; i < 25; i++) {
+                patterns.add(stem + (i == 0 ? "" : String.valueOf(i)));
+            }
+        }
+        matcher = new AhoCorasick(patterns);
+    }
+
+    @Benchmark
+    public int noMatch() {
+        return matcher.findFirst(cleanUrl);
+    }
+
+    @Benchmark
+    public int match() {
+        return matcher.findFirst(trackerUrl);
+    }
+}
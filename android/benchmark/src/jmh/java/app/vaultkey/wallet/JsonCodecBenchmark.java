@@ -0,0 +1,78 @@
+package app.vaultkey.wallet;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// A proxied page read end to end on the JSON side: wrapping the page's
+// params in a JSON-RPC request and taking the result out of the node's
+// response for the page. The raw path is JsonRpcClient.callRaw
+// (JsonWriter and JsonScanner); the tree path is what call() and toJson
+// do with org.json. Run with -PjmhProfilers=gc to compare allocation.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonCodecBenchmark {
+    @Param({"call", "block200"})
+    String response;
+
+    private final String params = Payloads.readParams();
+    private final JsonWriter writer = new JsonWriter(512);
+    private String body;
+    private int id = 0;
+
+    @Setup
+    public void setup() {
+        body = "block200".equals(response) ? Payloads.blockResponse(200) : Payloads.callResponse();
+    }
+
+    @Benchmark
+    public String writeRequestRaw() {
+        return writer.reset().beginObject()
+            .name("jsonrpc").value("2.0")
+            .name("id").value(++id)
+            .name("method").value("eth_call")
+            .name("params").rawValue(params)
+            .endObject()
+            .toString();
+    }
+
+    @Benchmark
+    public String writeRequestTree() throws JSONException {
+        JSONObject request = new JSONObject();
+        request.put("jsonrpc", "2.0");
+        request.put("id", ++id);
+        request.put("method", "eth_call");
+        request.put("params", new JSONArray(params));
+        return request.toString();
+    }
+
+    @Benchmark
+    public String readResultRaw() throws JSONException {
+        JsonScanner scanner = new JsonScanner(body);
+        String result = "null";
+        while (scanner.nextField()) {
+            if (scanner.nameIs("result")) {
+                result = scanner.rawValue();
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public String readResultTree() throws JSONException {
+        JSONObject json = new JSONObject(body);
+        Object result = json.has("result") ? json.get("result") : JSONObject.NULL;
+        return result instanceof String ? JSONObject.quote((String) result) : result.toString();
+    }
+}
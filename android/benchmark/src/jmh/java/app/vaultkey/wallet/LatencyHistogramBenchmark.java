@@ -0,0 +1,25 @@
+package app.vaultkey.wallet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Recording a sample, done once per hop of every traced request.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LatencyHistogramBenchmark {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long sample = 0;
+
+    @Benchmark
+    public void record() {
+        sample = (sample * 6364136223846793005L + 1442695040888963407L);
+        histogram.record((sample >>> 40) % 5000);
+    }
+}
@@ -0,0 +1,116 @@
+package app.vaultkey.wallet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Representative inputs shared by the benchmarks. Sizes follow what the
+// device and dApps actually send: short status replies, signed
+// transactions, and typed-data payloads of a few kilobytes.
+final class Payloads {
+    private Payloads() {
+    }
+
+    static final String STATUS_REPLY = "{\"has_wallet\":true,\"unlocked\":true,\"device_name\":\"Pico \u00e9dition \u2713\"}\r\n";
+
+    static String signedTxReply() {
+        StringBuilder hex = new StringBuilder("0x02f8b1");
+        for (int i = 0; i < 170; i++) {
+            hex.append(String.format("%02x", (i * 31) & 0xff));
+        }
+        return "{\"signed_tx\":\"" + hex + "\"}\r\n";
+    }
+
+    static String batchReply(int items) {
+        StringBuilder sb = new StringBuilder("{\"results\":[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) sb.append(',');
+            sb.append("{\"signature\":\"0x");
+            for (int j = 0; j < 65; j++) {
+                sb.append(String.format("%02x", (i + j * 7) & 0xff));
+            }
+            sb.append("\"}");
+        }
+        return sb.append("]}\r\n").toString();
+    }
+
+    // Splits the stream the way bulk transfers deliver it, ignoring
+    // character boundaries.
+    static List<byte[]> chunks(String stream, int chunkSize) {
+        byte[] bytes = stream.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> chunks = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            int count = Math.min(chunkSize, bytes.length - offset);
+            byte[] chunk = new byte[count];
+            System.arraycopy(bytes, offset, chunk, 0, count);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    static String readMessage(int id) {
+        return "{\"id\":" + id + ",\"method\":\"eth_call\",\"params\":[{\"to\":\"0xA0b86991c6218b36c1d19D4a2e9Eb0cE3606eB48\","
+            + "\"data\":\"0x70a08231000000000000000000000000d8da6bf26964af9d7eed9e03e53415d37aa96045\"},\"latest\"],"
+            + "\"chainId\":1,\"rpc\":true,\"sentAt\":1700000000000}";
+    }
+
+    static String transactionMessage(int id) {
+        return "{\"id\":" + id + ",\"method\":\"eth_sendTransaction\",\"params\":[{\"from\":\"0xd8dA6BF26964aF9D7eEd9e03E53415D37aA96045\","
+            + "\"to\":\"0x68b3465833fb72A70ecDF485E0e4C7bD8665Fc45\",\"value\":\"0x2386f26fc10000\",\"data\":\"0x5ae401dc"
+            + repeat("0", 512) + "\"}],\"chainId\":1,\"rpc\":false,\"sentAt\":1700000000000}";
+    }
+
+    static String typedDataMessage(int id) {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 24; i++) {
+            if (i > 0) message.append(',');
+            message.append("\\\"field").append(i).append("\\\":\\\"0x").append(repeat("ab", 32)).append("\\\"");
+        }
+        return "{\"id\":" + id + ",\"method\":\"eth_signTypedData_v4\",\"params\":[\"0xd8dA6BF26964aF9D7eEd9e03E53415D37aA96045\","
+            + "\"{\\\"domain\\\":{\\\"name\\\":\\\"Permit2\\\",\\\"chainId\\\":1},\\\"primaryType\\\":\\\"PermitSingle\\\","
+            + "\\\"message\\\":{" + message + "}}\"],\"chainId\":1,\"rpc\":false,\"sentAt\":1700000000000}";
+    }
+
+    static String readParams() {
+        return "[{\"to\":\"0xA0b86991c6218b36c1d19D4a2e9Eb0cE3606eB48\","
+            + "\"data\":\"0x70a08231000000000000000000000000d8da6bf26964af9d7eed9e03e53415d37aa96045\"},\"latest\"]";
+    }
+
+    static String callResponse() {
+        return "{\"jsonrpc\":\"2.0\",\"id\":42,\"result\":" + rpcResult() + "}";
+    }
+
+    // A full block as eth_getBlockByNumber(..., false) returns it.
+    static String blockResponse(int transactions) {
+        StringBuilder txs = new StringBuilder();
+        for (int i = 0; i < transactions; i++) {
+            if (i > 0) txs.append(',');
+            txs.append("\"0x").append(String.format("%064x", i * 7919L + 1)).append('"');
+        }
+        return "{\"jsonrpc\":\"2.0\",\"id\":42,\"result\":{\"number\":\"0x12a05f2\",\"hash\":\"0x" + repeat("ab", 32)
+            + "\",\"parentHash\":\"0x" + repeat("cd", 32) + "\",\"logsBloom\":\"0x" + repeat("00", 256)
+            + "\",\"miner\":\"0x95222290dd7278aa3ddd389cc1e1d165cc4bafe5\",\"gasLimit\":\"0x1c9c380\",\"gasUsed\":\"0xe4e1c0\","
+            + "\"timestamp\":\"0x65a1b2c3\",\"baseFeePerGas\":\"0x3b9aca00\",\"transactions\":[" + txs + "]}}";
+    }
+
+    static final String PLAIN_ERROR = "User rejected the request";
+
+    static final String NASTY_ERROR = "execution reverted: 'ERC20: transfer amount exceeds balance'\n"
+        + "at C:\\contracts\\Token.sol:42\r\nreason='insufficient'";
+
+    static final String DEVICE_COMMAND = "{\"action\":\"get_address\",\"chain_id\":1}";
+
+    static final String DEVICE_REPLY = "{\"success\":true,\"address\":\"0xd8da6bf26964af9d7eed9e03e53415d37aa96045\",\"chain_id\":1}\n";
+
+    static String rpcResult() {
+        return "\"0x" + repeat("0", 56) + "0de0b6b3a7640000\"";
+    }
+
+    static String repeat(String s, int count) {
+        StringBuilder sb = new StringBuilder(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}
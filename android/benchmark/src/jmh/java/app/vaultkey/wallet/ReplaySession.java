@@ -0,0 +1,15 @@
+package app.vaultkey.wallet;
+
+import java.io.File;
+
+// Entry point for the replaySession task: replays a capture and prints the
+// result as JSON.
+public class ReplaySession {
+    public static void main(String[] args) throws Exception {
+        File file = new File(args[0]);
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        SessionReplay replay = new SessionReplay(SessionRecorder.read(file), speed);
+        System.out.println("Replaying " + replay.commands().size() + " commands from " + file + " at speed " + speed);
+        System.out.println(replay.run(60000).toJson().toString(2));
+    }
+}
@@ -0,0 +1,101 @@
+package app.vaultkey.wallet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// One device command through SerialSession against a loopback device that
+// answers at once, so the score is the host's own cost per exchange:
+// framing, the read thread hand-off and, with recording on, the ring
+// writes. replay plays a 100-command capture back with no delays.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerialSessionBenchmark {
+    @Param({"false", "true"})
+    boolean recording;
+
+    private File file;
+    private SessionRecorder recorder;
+    private SerialSession session;
+    private List<SessionRecorder.Record> capture;
+
+    // Queues the canned reply for each command line written.
+    static class LoopbackDevice implements SerialTransport {
+        private final byte[] reply = Payloads.DEVICE_REPLY.getBytes(StandardCharsets.UTF_8);
+        private int pending = 0;
+        private boolean closed = false;
+
+        @Override
+        public synchronized int write(byte[] data, int offset, int count, int timeoutMs) {
+            if (count > 0 && data[offset + count - 1] == '\n') {
+                pending++;
+                notifyAll();
+            }
+            return count;
+        }
+
+        @Override
+        public synchronized int read(byte[] buffer, int timeoutMs) throws IOException {
+            try {
+                if (pending == 0 && !closed) wait(timeoutMs);
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted");
+            }
+            if (pending == 0) return closed ? -1 : 0;
+            pending--;
+            System.arraycopy(reply, 0, buffer, 0, reply.length);
+            return reply.length;
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = File.createTempFile("session", ".vksr");
+        recorder = new SessionRecorder(file, SessionRecorder.DEFAULT_SIZE);
+        session = new SerialSession(new LoopbackDevice(), null);
+        session.start("SerialSessionBenchmark");
+        session.setRecorder(recorder);
+        for (int i = 0; i < 100; i++) {
+            session.exchange(Payloads.DEVICE_COMMAND, 1000);
+        }
+        capture = SessionRecorder.read(file);
+        session.setRecorder(recording ? recorder : null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+        recorder.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public String exchange() throws IOException {
+        return session.exchange(Payloads.DEVICE_COMMAND, 1000);
+    }
+
+    @Benchmark
+    public int replay() throws IOException {
+        return new SessionReplay(capture, 0).run(1000).answered;
+    }
+}
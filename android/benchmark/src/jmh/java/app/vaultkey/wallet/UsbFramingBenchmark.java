@@ -0,0 +1,64 @@
+package app.vaultkey.wallet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Turning USB bulk-transfer chunks into reply lines: the native framer
+// versus decoding every chunk to a String as the usbData event does.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class UsbFramingBenchmark {
+    @Param({"64", "512"})
+    int chunkSize;
+
+    @Param({"status", "signedTx", "batch8"})
+    String reply;
+
+    private List<byte[]> chunks;
+    private Blackhole sink;
+    private LineFramer framer;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        String stream;
+        switch (reply) {
+            case "signedTx":
+                stream = Payloads.signedTxReply();
+                break;
+            case "batch8":
+                stream = Payloads.batchReply(8);
+                break;
+            default:
+                stream = Payloads.STATUS_REPLY;
+        }
+        chunks = Payloads.chunks(stream, chunkSize);
+        sink = blackhole;
+        framer = new LineFramer(line -> sink.consume(line));
+    }
+
+    @Benchmark
+    public void frameLines() {
+        for (byte[] chunk : chunks) {
+            framer.feed(chunk, 0, chunk.length);
+        }
+    }
+
+    @Benchmark
+    public void decodePerChunk(Blackhole blackhole) {
+        for (byte[] chunk : chunks) {
+            blackhole.consume(new String(chunk, 0, chunk.length, StandardCharsets.UTF_8));
+        }
+    }
+}
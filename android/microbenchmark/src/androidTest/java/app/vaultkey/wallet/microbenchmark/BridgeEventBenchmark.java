@@ -0,0 +1,85 @@
+package app.vaultkey.wallet.microbenchmark;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.getcapacitor.JSObject;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+// Per-message work on the Capacitor side of the bridge: building the
+// events UsbSerialPlugin and DAppBrowserPlugin emit (including the
+// serialization notifyListeners performs) and parsing postMessage payloads
+// with the platform org.json.
+@RunWith(AndroidJUnit4.class)
+public class BridgeEventBenchmark {
+    private static final String USB_CHUNK = "{\"signed_tx\":\"0x02f8b1018203e8843b9aca00850df8475800825208940000000000000000000000000000000000000000";
+
+    private static final String PREFLIGHT = "{\"chainId\":1,\"nonce\":\"0x2a\",\"gas\":\"0x5208\",\"baseFeePerGas\":\"0x3b9aca00\","
+        + "\"suggestedMaxFeePerGas\":\"0x77359400\",\"suggestedMaxPriorityFeePerGas\":\"0x3b9aca00\",\"isContract\":false,\"elapsedMs\":184}";
+
+    private static final String POST_MESSAGE = "{\"id\":7,\"method\":\"eth_sendTransaction\",\"params\":[{\"from\":\"0xd8dA6BF26964aF9D7eEd9e03E53415D37aA96045\","
+        + "\"to\":\"0x68b3465833fb72A70ecDF485E0e4C7bD8665Fc45\",\"value\":\"0x2386f26fc10000\",\"data\":\"0x5ae401dc\"}],"
+        + "\"chainId\":1,\"rpc\":false,\"sentAt\":1700000000000}";
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    @Test
+    public void usbDataEvent() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            JSObject event = new JSObject();
+            event.put("data", USB_CHUNK);
+            event.toString();
+        }
+    }
+
+    @Test
+    public void usbAttachedEvent() {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            JSObject device = new JSObject();
+            device.put("deviceId", 1002);
+            device.put("vendorId", 11914);
+            device.put("productId", 5);
+            device.put("deviceName", "/dev/bus/usb/001/002");
+            device.put("productName", "Pico");
+            device.put("manufacturerName", "Raspberry Pi");
+            JSObject event = new JSObject();
+            event.put("device", device);
+            event.toString();
+        }
+    }
+
+    @Test
+    public void web3RequestEvent() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            JSObject event = new JSObject();
+            event.put("id", 7);
+            event.put("method", "eth_sendTransaction");
+            event.put("params", "[{\"to\":\"0x68b3465833fb72A70ecDF485E0e4C7bD8665Fc45\"}]");
+            event.put("preflight", new JSObject(PREFLIGHT));
+            event.toString();
+        }
+    }
+
+    @Test
+    public void postMessageParse() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            JSONObject json = new JSONObject(POST_MESSAGE);
+            json.getInt("id");
+            json.getString("method");
+            json.optString("params", "[]");
+            json.optInt("chainId", 1);
+            json.optBoolean("rpc", false);
+            json.optLong("sentAt", 0);
+        }
+    }
+}
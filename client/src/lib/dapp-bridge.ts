@@ -1,5 +1,6 @@
 import { ethers, Mnemonic, HDNodeWallet } from "ethers";
 import { hardwareWallet } from "./hardware-wallet";
+import type { PicoSignItem } from "./mobile-usb-serial";
 import { softWallet } from "./soft-wallet";
 
 function getSoftWalletSigner(): HDNodeWallet | null {
@@ -243,12 +244,8 @@ export class DAppBridge {
     }
   }
 
-  private async signTransaction(txParams: any): Promise<string> {
-    if (!this.isWalletUnlocked()) {
-      throw new Error("Wallet is locked");
-    }
-
-    const tx = {
+  private buildTransaction(txParams: any) {
+    return {
       to: txParams.to,
       value: txParams.value || "0x0",
       data: txParams.data || "0x",
@@ -259,6 +256,14 @@ export class DAppBridge {
       nonce: txParams.nonce ? parseInt(txParams.nonce, 16) : undefined,
       chainId: this.currentChainId,
     };
+  }
+
+  private async signTransaction(txParams: any): Promise<string> {
+    if (!this.isWalletUnlocked()) {
+      throw new Error("Wallet is locked");
+    }
+
+    const tx = this.buildTransaction(txParams);
 
     if (this.walletMode === "hardware") {
       const result = await hardwareWallet.signTransaction(tx);
@@ -273,7 +278,10 @@ export class DAppBridge {
 
   private async sendTransaction(txParams: any): Promise<string> {
     const signedTx = await this.signTransaction(txParams);
-    
+    return this.broadcastTransaction(signedTx);
+  }
+
+  private async broadcastTransaction(signedTx: string): Promise<string> {
     const rpcUrl = CHAIN_RPC_URLS[this.currentChainId];
     const response = await fetch(rpcUrl, {
       method: "POST",
@@ -293,6 +301,101 @@ export class DAppBridge {
     return data.result;
   }
 
+  private async signOne(method: string, params: any[]): Promise<string> {
+    switch (method) {
+      case "personal_sign":
+        return this.signMessage(params[0], params[1]);
+      case "eth_sign":
+        return this.signMessage(params[1], params[0]);
+      case "eth_signTypedData":
+      case "eth_signTypedData_v3":
+      case "eth_signTypedData_v4":
+        return this.signTypedData(params[0], params[1]);
+      case "eth_sendTransaction":
+        return this.sendTransaction(params[0]);
+      case "eth_signTransaction":
+        return this.signTransaction(params[0]);
+      default:
+        throw new Error(`Method ${method} cannot be signed`);
+    }
+  }
+
+  // What the device signs for one request: messages as text, typed data as
+  // its EIP-712 hash, transactions as device transaction objects.
+  private toSignItem(method: string, params: any[]): PicoSignItem {
+    if (method === "eth_sendTransaction" || method === "eth_signTransaction") {
+      return { type: "transaction", tx: hardwareWallet.toPicoTransaction(this.buildTransaction(params[0])) };
+    }
+    if (method.includes("signTypedData")) {
+      const data = typeof params[1] === "string" ? JSON.parse(params[1]) : params[1];
+      const types = { ...data.types };
+      delete types.EIP712Domain;
+      return { type: "message", message: ethers.TypedDataEncoder.hash(data.domain, types, data.message) };
+    }
+    const message = method === "eth_sign" ? params[1] : params[0];
+    return {
+      type: "message",
+      message: message.startsWith("0x") ? Buffer.from(message.slice(2), "hex").toString("utf8") : message,
+    };
+  }
+
+  // Signs several requests approved together. On a hardware wallet that
+  // supports it they go to the device as one sign_batch command with a
+  // single confirmation; otherwise they are signed one after another.
+  // Every request gets its own response, so one failure does not fail the rest.
+  async handleBatch(requests: DAppRequest[]): Promise<DAppResponse[]> {
+    if (!this.isWalletUnlocked()) {
+      return requests.map((r) => ({ id: r.id, error: { code: 4100, message: "Wallet is locked" } }));
+    }
+
+    if (this.walletMode === "hardware") {
+      const items: (PicoSignItem | null)[] = requests.map((r) => {
+        try {
+          return this.toSignItem(r.method, r.params);
+        } catch {
+          return null;
+        }
+      });
+      const signable = items.filter((item): item is PicoSignItem => item !== null);
+      const results = signable.length > 1 ? await hardwareWallet.signBatch(signable) : null;
+      if (results) {
+        // Broadcast in request order so dependent transactions land in sequence
+        const responses: DAppResponse[] = [];
+        let next = 0;
+        for (let i = 0; i < requests.length; i++) {
+          const request = requests[i];
+          if (!items[i]) {
+            responses.push({ id: request.id, error: { code: 4000, message: "Malformed request" } });
+            continue;
+          }
+          const signed = results[next++];
+          const value = signed.signed_tx || signed.signature;
+          if (signed.error || !value) {
+            responses.push({ id: request.id, error: { code: 4000, message: signed.error || "Failed to sign" } });
+            continue;
+          }
+          try {
+            const result = request.method === "eth_sendTransaction" ? await this.broadcastTransaction(value) : value;
+            responses.push({ id: request.id, result });
+          } catch (error: any) {
+            responses.push({ id: request.id, error: { code: error.code || 4000, message: error.message || "Broadcast failed" } });
+          }
+        }
+        return responses;
+      }
+    }
+
+    const responses: DAppResponse[] = [];
+    for (const request of requests) {
+      try {
+        responses.push({ id: request.id, result: await this.signOne(request.method, request.params) });
+      } catch (error: any) {
+        responses.push({ id: request.id, error: { code: error.code || 4000, message: error.message || "Unknown error" } });
+      }
+    }
+    return responses;
+  }
+
   private isWalletUnlocked(): boolean {
     if (this.walletMode === "hardware") {
       return hardwareWallet.getState().status === "unlocked";
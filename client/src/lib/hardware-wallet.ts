@@ -4,7 +4,7 @@ import Eth from "@ledgerhq/hw-app-eth";
 import { ethers } from "ethers";
 import { piWallet, type StoredChainPreference } from "./pi-wallet";
 import { clientStorage } from "./client-storage";
-import { mobileUsbSerial, isMobileWithUsbSupport } from "./mobile-usb-serial";
+import { mobileUsbSerial, isMobileWithUsbSupport, type PicoSignItem, type PicoSignResult, type PicoTransaction } from "./mobile-usb-serial";
 import { 
   signNonEvmTransaction, 
   type NonEvmTransactionParams,
@@ -603,17 +603,7 @@ class HardwareWalletService {
 
     try {
       if (this.state.type === "raspberry_pi") {
-        const txData = {
-          to: unsignedTx.to as string,
-          value: unsignedTx.value?.toString() || "0",
-          data: unsignedTx.data as string,
-          nonce: Number(unsignedTx.nonce),
-          gasLimit: unsignedTx.gasLimit?.toString() || "21000",
-          gasPrice: unsignedTx.gasPrice?.toString(),
-          maxFeePerGas: unsignedTx.maxFeePerGas?.toString(),
-          maxPriorityFeePerGas: unsignedTx.maxPriorityFeePerGas?.toString(),
-          chainId: Number(unsignedTx.chainId) || 1,
-        };
+        const txData = this.toPicoTransaction(unsignedTx);
         if (this.usingMobileUsb) {
           return await mobileUsbSerial.signTransaction(txData);
         }
@@ -673,6 +663,39 @@ class HardwareWalletService {
     }
   }
 
+  toPicoTransaction(unsignedTx: ethers.TransactionRequest): PicoTransaction {
+    return {
+      to: unsignedTx.to as string,
+      value: unsignedTx.value?.toString() || "0",
+      data: unsignedTx.data as string,
+      nonce: Number(unsignedTx.nonce),
+      gasLimit: unsignedTx.gasLimit?.toString() || "21000",
+      gasPrice: unsignedTx.gasPrice?.toString(),
+      maxFeePerGas: unsignedTx.maxFeePerGas?.toString(),
+      maxPriorityFeePerGas: unsignedTx.maxPriorityFeePerGas?.toString(),
+      chainId: Number(unsignedTx.chainId) || 1,
+    };
+  }
+
+  // Signs several items with a single device confirmation. Returns null when
+  // the connected device cannot batch, in which case callers sign one by one.
+  async signBatch(items: PicoSignItem[]): Promise<PicoSignResult[] | null> {
+    if (this.state.status !== "unlocked") {
+      this.setState({ error: "Device is locked" });
+      return null;
+    }
+    if (this.state.type !== "raspberry_pi" || !this.usingMobileUsb) {
+      return null;
+    }
+
+    try {
+      return await mobileUsbSerial.signBatch(items);
+    } catch (error: any) {
+      this.setState({ error: error.message || "Failed to sign batch" });
+      throw error;
+    }
+  }
+
   async signNonEvmTransaction(params: NonEvmTransactionParams): Promise<SignedTransaction | null> {
     if (this.state.status !== "unlocked") {
       this.setState({ error: "Device is locked" });
@@ -16,12 +16,88 @@ interface UsbSerialPlugin {
   write(options: { data: string }): Promise<{ success: boolean; bytesWritten?: number; error?: string }>;
   read(options?: { timeout?: number }): Promise<{ success: boolean; data?: string; bytesRead?: number; error?: string }>;
   isConnected(): Promise<{ connected: boolean }>;
+  sendCommand(options: { action: string; params?: Record<string, any>; timeout?: number } & CommandOptions): Promise<{ success: boolean; response?: any; error?: string }>;
+  cancelCommands(options?: { tag?: string; priority?: CommandPriority }): Promise<{ success: boolean; cancelled: number }>;
+  getCommandStats(): Promise<CommandStats>;
+  startRecording(options?: { maxBytes?: number }): Promise<SessionRecording>;
+  stopRecording(): Promise<SessionRecording>;
+  signBatch(options: { items: PicoSignItem[]; timeout?: number }): Promise<{ success: boolean; supported: boolean; results?: PicoSignResult[]; error?: string }>;
   requestDevice?(options?: { vendorId?: number }): Promise<{ success: boolean; device?: UsbDevice; error?: string }>;
   addListener(event: "usbData", callback: (data: { data: string }) => void): Promise<{ remove: () => void }>;
   addListener(event: "usbDisconnected", callback: () => void): Promise<{ remove: () => void }>;
   addListener(event: "usbAttached", callback: (data: { device: UsbDevice }) => void): Promise<{ remove: () => void }>;
 }
 
+export type CommandPriority = "interactive" | "foreground" | "background";
+
+export interface CommandOptions {
+  // Defaults by action: signing and unlock are interactive, status polls
+  // and address sweeps background, everything else foreground.
+  priority?: CommandPriority;
+  // Drop the command if it has not reached the device within this time.
+  maxQueueMs?: number;
+  // Lets cancelCommands withdraw the command while it is still queued.
+  tag?: string;
+}
+
+export interface CommandClassStats {
+  queued: number;
+  maxQueued: number;
+  executed: number;
+  cancelled: number;
+  expired: number;
+  aged: number;
+  avgWaitMs: number;
+  maxWaitMs: number;
+  avgRunMs: number;
+}
+
+export interface CommandStats {
+  running: string | null;
+  queued: number;
+  interactive: CommandClassStats;
+  foreground: CommandClassStats;
+  background: CommandClassStats;
+}
+
+// A capture of the serial traffic, kept in a ring file of fileBytes on the
+// device. PIN- and seed-bearing commands and their replies are redacted.
+export interface SessionRecording {
+  recording: boolean;
+  path?: string;
+  fileBytes?: number;
+  records?: number;
+  recordsWritten?: number;
+  overwritten?: number;
+  redacted?: number;
+  truncated?: number;
+  bytesOut?: number;
+  bytesIn?: number;
+  durationMs?: number;
+}
+
+export type PicoSignItem =
+  | { type: "message"; message: string }
+  | { type: "transaction"; tx: PicoTransaction };
+
+export interface PicoSignResult {
+  signature?: string;
+  signed_tx?: string;
+  error?: string;
+}
+
+export interface PicoTransaction {
+  to: string;
+  value: string;
+  data?: string;
+  nonce: number;
+  gasLimit: string;
+  gasPrice?: string;
+  maxFeePerGas?: string;
+  maxPriorityFeePerGas?: string;
+  chainId: number;
+}
+
 const UsbSerial = registerPlugin<UsbSerialPlugin>("UsbSerial");
 
 export function isMobileWithUsbSupport(): boolean {
@@ -30,10 +106,6 @@ export function isMobileWithUsbSupport(): boolean {
 
 export class MobileUsbSerialService {
   private connected = false;
-  private readBuffer = "";
-  private responseResolver: ((value: any) => void) | null = null;
-  private responseTimeout: ReturnType<typeof setTimeout> | null = null;
-  private dataListener: { remove: () => void } | null = null;
   private disconnectListener: { remove: () => void } | null = null;
   private attachListener: { remove: () => void } | null = null;
   private cachedSeed: string | null = null;
@@ -126,11 +198,6 @@ export class MobileUsbSerialService {
       }
 
       this.connected = true;
-      
-      this.dataListener = await UsbSerial.addListener("usbData", (event) => {
-        this.handleData(event.data);
-      });
-
       return true;
     } catch (error: any) {
       this.connected = false;
@@ -138,62 +205,28 @@ export class MobileUsbSerialService {
     }
   }
 
-  private handleData(data: string) {
-    this.readBuffer += data;
-    
-    let newlineIndex;
-    while ((newlineIndex = this.readBuffer.indexOf("\n")) !== -1) {
-      const line = this.readBuffer.slice(0, newlineIndex).trim();
-      this.readBuffer = this.readBuffer.slice(newlineIndex + 1);
-      
-      if (line && line.startsWith("{") && this.responseResolver) {
-        try {
-          const response = JSON.parse(line);
-          if (this.responseTimeout) {
-            clearTimeout(this.responseTimeout);
-            this.responseTimeout = null;
-          }
-          this.responseResolver(response);
-          this.responseResolver = null;
-        } catch {}
-      }
-    }
-  }
-
   async disconnect(): Promise<void> {
-    if (this.dataListener) {
-      this.dataListener.remove();
-      this.dataListener = null;
-    }
-    
     try {
       await UsbSerial.disconnect();
     } catch {}
     
     this.connected = false;
     this.cachedSeed = null;
-    this.readBuffer = "";
   }
 
-  async sendCommand(action: string, params?: Record<string, any>): Promise<any> {
+  // Framing and request/response matching happen natively, so commands
+  // from different callers cannot pick up each other's replies. The native
+  // scheduler runs signing ahead of queued queries and background sweeps.
+  async sendCommand(action: string, params?: Record<string, any>, timeout?: number, options?: CommandOptions): Promise<any> {
     if (!this.connected) {
       throw new Error("Not connected to Pico wallet");
     }
 
-    const message = JSON.stringify({ action, ...params }) + "\r\n";
-    
-    const writeResult = await UsbSerial.write({ data: message });
-    if (!writeResult.success) {
-      throw new Error(writeResult.error || "Write failed");
-    }
-
-    return new Promise((resolve, reject) => {
-      this.responseResolver = resolve;
-      this.responseTimeout = setTimeout(() => {
-        this.responseResolver = null;
-        reject(new Error("Command timed out"));
-      }, 10000);
-    });
+    const result = await UsbSerial.sendCommand({ action, params, timeout, ...options });
+    if (!result.success) {
+      throw new Error(result.error || "Command failed");
+    }
+    return result.response;
   }
 
   async ping(): Promise<boolean> {
@@ -207,7 +240,8 @@ export class MobileUsbSerialService {
 
   async getStatus(): Promise<{ initialized: boolean; locked: boolean; has_seed: boolean; device_name: string } | null> {
     try {
-      const response = await this.sendCommand("status");
+      // A poll that could not run within a few seconds is stale anyway.
+      const response = await this.sendCommand("status", undefined, undefined, { maxQueueMs: 5000, tag: "status" });
       return {
         initialized: response.has_wallet === true,
         locked: response.unlocked !== true,
@@ -292,7 +326,7 @@ export class MobileUsbSerialService {
 
   async getAddresses(chainIds: number[]): Promise<{ path: string; address: string; chainId: number }[]> {
     try {
-      const response = await this.sendCommand("get_addresses", { chain_ids: chainIds });
+      const response = await this.sendCommand("get_addresses", { chain_ids: chainIds }, undefined, { tag: "address-sweep" });
       if (response.error) {
         throw new Error(response.error);
       }
@@ -302,17 +336,7 @@ export class MobileUsbSerialService {
     }
   }
 
-  async signTransaction(tx: {
-    to: string;
-    value: string;
-    data?: string;
-    nonce: number;
-    gasLimit: string;
-    gasPrice?: string;
-    maxFeePerGas?: string;
-    maxPriorityFeePerGas?: string;
-    chainId: number;
-  }): Promise<string | null> {
+  async signTransaction(tx: PicoTransaction): Promise<string | null> {
     try {
       const response = await this.sendCommand("sign_transaction", { tx });
       if (response.error) {
@@ -336,6 +360,23 @@ export class MobileUsbSerialService {
     }
   }
 
+  // Signs all items behind one confirmation on the device. Returns null when
+  // the firmware has no sign_batch command; callers then sign item by item.
+  async signBatch(items: PicoSignItem[]): Promise<PicoSignResult[] | null> {
+    if (!this.connected) {
+      throw new Error("Not connected to Pico wallet");
+    }
+
+    const result = await UsbSerial.signBatch({ items });
+    if (!result.supported) {
+      return null;
+    }
+    if (!result.success || !result.results) {
+      throw new Error(result.error || "Batch signing failed");
+    }
+    return result.results;
+  }
+
   async lock(): Promise<boolean> {
     try {
       const response = await this.sendCommand("lock");
@@ -368,6 +409,45 @@ export class MobileUsbSerialService {
     }
   }
 
+  // Withdraws queued commands at or below priority (background by default).
+  async cancelCommands(tag?: string, priority?: CommandPriority): Promise<number> {
+    try {
+      const result = await UsbSerial.cancelCommands({ tag, priority });
+      return result.cancelled;
+    } catch (e) {
+      console.log('[MobileUsbSerial] cancelCommands error:', e);
+      return 0;
+    }
+  }
+
+  async getCommandStats(): Promise<CommandStats | null> {
+    try {
+      return await UsbSerial.getCommandStats();
+    } catch (e) {
+      console.log('[MobileUsbSerial] getCommandStats error:', e);
+      return null;
+    }
+  }
+
+  // Opt-in diagnostics: records this and later connections until stopped.
+  async startRecording(maxBytes?: number): Promise<SessionRecording | null> {
+    try {
+      return await UsbSerial.startRecording({ maxBytes });
+    } catch (e) {
+      console.log('[MobileUsbSerial] startRecording error:', e);
+      return null;
+    }
+  }
+
+  async stopRecording(): Promise<SessionRecording | null> {
+    try {
+      return await UsbSerial.stopRecording();
+    } catch (e) {
+      console.log('[MobileUsbSerial] stopRecording error:', e);
+      return null;
+    }
+  }
+
   isConnectedSync(): boolean {
     return this.connected;
   }
@@ -2,12 +2,210 @@ import { Capacitor, registerPlugin } from "@capacitor/core";
 import { dappBridge } from "./dapp-bridge";
 
 interface DAppBrowserPlugin {
-  open(options: { url: string; address: string; chainId: number }): Promise<{ success: boolean }>;
+  open(options: { url: string; address: string; chainId: number; maxLiveTabs?: number; restoreSession?: boolean }): Promise<{ success: boolean }>;
   close(): Promise<{ success: boolean }>;
   updateAccount(options: { address: string; chainId: number }): Promise<{ success: boolean }>;
-  sendResponse(options: { id: number; result?: string; error?: string }): Promise<{ success: boolean }>;
+  sendResponse(options: { id: number; result?: string; error?: string; signingMs?: number; signer?: string }): Promise<{ success: boolean }>;
+  configureAssetCache(options: { enabled: boolean; maxBytes?: number; clear?: boolean }): Promise<{ success: boolean }>;
+  getAssetCacheStats(): Promise<AssetCacheStats>;
+  warmup(options: { urls: string[]; byteBudget?: number; allowMetered?: boolean }): Promise<{ success: boolean; scheduled: number; skipped?: string }>;
+  getWarmupStats(): Promise<WarmupStats>;
+  reportSignReady(options: { id: number }): Promise<{ success: boolean }>;
+  getPreflightStats(): Promise<PreflightStats>;
+  getRpcStats(): Promise<{ endpoints: RpcEndpointStats[]; ens: EnsCacheStats }>;
+  configureContentBlocker(options: { enabled: boolean }): Promise<{ success: boolean }>;
+  getContentBlockerStats(): Promise<ContentBlockerStats>;
+  getSessionStats(): Promise<BrowserSessionStats>;
+  clearSession(): Promise<{ success: boolean }>;
+  setMetricsEnabled(options: { enabled: boolean }): Promise<{ success: boolean }>;
+  getMetrics(options?: { reset?: boolean }): Promise<BrowserMetrics>;
+  configureSignBatching(options: { enabled: boolean; windowMs?: number }): Promise<{ success: boolean }>;
+  getSignBatchStats(): Promise<SignBatchStats>;
   addListener(event: "browserEvent", callback: (data: { url: string; loading: boolean }) => void): Promise<{ remove: () => void }>;
-  addListener(event: "web3Request", callback: (data: { id: number; method: string; params: string }) => void): Promise<{ remove: () => void }>;
+  addListener(event: "web3Cancel", callback: (data: { id: number; reason: string }) => void): Promise<{ remove: () => void }>;
+  addListener(event: "web3Request", callback: (data: Web3RequestEvent) => void): Promise<{ remove: () => void }>;
+  addListener(event: "web3BatchRequest", callback: (data: { requests: Web3RequestEvent[] }) => void): Promise<{ remove: () => void }>;
+}
+
+interface Web3RequestEvent {
+  id: number;
+  method: string;
+  params: string;
+  preflight?: TransactionPreflight;
+}
+
+export interface AssetCacheStats {
+  enabled: boolean;
+  requests: number;
+  hits: number;
+  misses: number;
+  hitRate: number;
+  bytesSaved: number;
+  bytesFetched: number;
+  revalidations: number;
+  notModified: number;
+  entries: number;
+  blobs: number;
+  sizeBytes: number;
+  maxBytes: number;
+}
+
+export interface WarmupStats {
+  warmups: number;
+  skipped: number;
+  lastSkipReason: string;
+  bytesUsed: number;
+  warmOrigins: number;
+  warmOpens: number;
+  coldOpens: number;
+  avgWarmLoadMs: number;
+  avgColdLoadMs: number;
+  // avgColdLoadMs - avgWarmLoadMs; 0 until both have samples
+  avgSavedMs: number;
+}
+
+export interface TransactionPreflight {
+  chainId: number;
+  from: string;
+  nonce?: string;
+  gas?: string;
+  maxPriorityFeePerGas?: string;
+  baseFeePerGas?: string;
+  suggestedMaxFeePerGas?: string;
+  suggestedMaxPriorityFeePerGas?: string;
+  isContract?: boolean;
+  errors: Record<string, string>;
+  timings: Record<string, number>;
+  elapsedMs: number;
+}
+
+export interface PreflightStats {
+  preflights: number;
+  avgPreflightMs: number;
+  readyCount: number;
+  avgReadyMs: number;
+  maxReadyMs: number;
+}
+
+export interface RpcPriorityStats {
+  queued: number;
+  maxQueued: number;
+  admitted: number;
+  avgWaitMs: number;
+  maxWaitMs: number;
+}
+
+export interface RpcEndpointStats {
+  endpoint: string;
+  inflight: number;
+  ratePerSec: number;
+  throttled: number;
+  timedOut: number;
+  pausedMs: number;
+  user: RpcPriorityStats;
+  foreground: RpcPriorityStats;
+  background: RpcPriorityStats;
+}
+
+export interface EnsCacheStats {
+  entries: number;
+  hits: number;
+  staleHits: number;
+  misses: number;
+  fetches: number;
+  batchedReads: number;
+  loadedFromDisk: number;
+}
+
+export interface LatencySummary {
+  count: number;
+  avgMs: number;
+  p50Ms: number;
+  p90Ms: number;
+  p99Ms: number;
+  maxMs: number;
+}
+
+export interface BrowserMetrics {
+  enabled: boolean;
+  activeTraces: number;
+  droppedTraces: number;
+  histograms: Record<string, LatencySummary>;
+  recent: { method: string; totalMs: number; failed: boolean; hops: Record<string, number> }[];
+  // Cold-start sections (MainActivity.onCreate, bridgeInit, plugin loads).
+  startupMicros: Record<string, number>;
+  pageDispatch: PageDispatchStats;
+}
+
+// Frame-aligned pushes into pages: one evaluateJavascript per tab per frame.
+export interface PageDispatchStats {
+  flushes: number;
+  delivered: number;
+  collapsed: number;
+  dropped: number;
+  avgBatch: number;
+  maxBatch: number;
+  avgFlushMicros: number;
+  maxFlushMicros: number;
+  slowFlushes: number;
+}
+
+export interface ContentBlockerStats {
+  enabled: boolean;
+  loaded: boolean;
+  compiledThisRun: boolean;
+  loadMs: number;
+  domainRules: number;
+  pathRules: number;
+  checked: number;
+  blocked: number;
+  avgMatchMicros: number;
+  maxMatchMicros: number;
+  pages: { tabId: number; url: string; blocked: number; hosts: Record<string, number> }[];
+}
+
+export interface BrowserSessionStats {
+  hasSession: boolean;
+  tabs: number;
+  writes: number;
+  lastWriteBytes: number;
+  lastWriteMs: number;
+  restores: number;
+  lastResumeMs: number;
+  avgResumeMs: number;
+  rendererRecoveries: number;
+  lastRecoveryMs: number;
+}
+
+export interface SignRequestContext {
+  id: number;
+  preflight?: TransactionPreflight;
+  // Filled in by the signer UI so the native trace can split approval from signing
+  timings?: { signingMs?: number; signer?: string };
+  // Aborted when the page navigates away, the tab closes or the request times out.
+  // The outcome must still be resolved once signing has started.
+  signal?: AbortSignal;
+}
+
+export interface BatchSignItem {
+  method: string;
+  params: any[];
+  context: SignRequestContext;
+}
+
+export interface BatchSignResult {
+  result?: string | null;
+  error?: string;
+}
+
+export interface SignBatchStats {
+  enabled: boolean;
+  windowMs: number;
+  singles: number;
+  batches: number;
+  batchedRequests: number;
+  largestBatch: number;
+  waiting: number;
 }
 
 const DAppBrowser = registerPlugin<DAppBrowserPlugin>("DAppBrowser");
@@ -19,13 +217,18 @@ export function isNativeDAppBrowserAvailable(): boolean {
 export class NativeDAppBrowserService {
   private browserEventListener: { remove: () => void } | null = null;
   private web3RequestListener: { remove: () => void } | null = null;
+  private web3CancelListener: { remove: () => void } | null = null;
+  private web3BatchListener: { remove: () => void } | null = null;
+  private inflightSignRequests = new Map<number, AbortController>();
+  private listenersReady: Promise<void> | null = null;
   private currentAddress: string = "";
   private currentChainId: number = 1;
   private onLoadingChange: ((loading: boolean) => void) | null = null;
   private onUrlChange: ((url: string) => void) | null = null;
   private onChainChange: ((chainId: number) => void) | null = null;
   private onDisconnect: (() => void) | null = null;
-  private onSignRequest: ((method: string, params: any[]) => Promise<string | null>) | null = null;
+  private onSignRequest: ((method: string, params: any[], context: SignRequestContext) => Promise<string | null>) | null = null;
+  private onBatchSignRequest: ((items: BatchSignItem[]) => Promise<BatchSignResult[]>) | null = null;
 
   async open(url: string, address: string, chainId: number): Promise<boolean> {
     console.log("[NativeDAppBrowser] open() called - url:", url, "address:", address, "chainId:", chainId);
@@ -39,21 +242,18 @@ export class NativeDAppBrowserService {
     this.currentChainId = chainId;
 
     try {
-      // Setup listeners first
-      this.browserEventListener = await DAppBrowser.addListener("browserEvent", (data) => {
-        console.log("[NativeDAppBrowser] Browser event:", data);
-        if (this.onLoadingChange) {
-          this.onLoadingChange(data.loading);
-        }
-        if (this.onUrlChange && data.url) {
-          this.onUrlChange(data.url);
-        }
-      });
-
-      this.web3RequestListener = await DAppBrowser.addListener("web3Request", async (data) => {
-        console.log("[NativeDAppBrowser] Web3 request:", data.method);
-        await this.handleWeb3Request(data.id, data.method, data.params);
-      });
+      // Opening while the browser is up adds a tab; the listeners stay
+      // registered so other tabs' events and pending signs carry on
+      if (!this.listenersReady) {
+        this.listenersReady = this.addListeners();
+      }
+      try {
+        await this.listenersReady;
+      } catch (e) {
+        // Drop whichever listeners did register so a retry starts clean
+        this.removeListeners();
+        throw e;
+      }
 
       // Open the browser activity
       const result = await DAppBrowser.open({ url, address, chainId });
@@ -65,7 +265,36 @@ export class NativeDAppBrowserService {
     }
   }
 
-  async close(): Promise<void> {
+  private async addListeners(): Promise<void> {
+    this.browserEventListener = await DAppBrowser.addListener("browserEvent", (data) => {
+      console.log("[NativeDAppBrowser] Browser event:", data);
+      if (this.onLoadingChange) {
+        this.onLoadingChange(data.loading);
+      }
+      if (this.onUrlChange && data.url) {
+        this.onUrlChange(data.url);
+      }
+    });
+
+    this.web3CancelListener = await DAppBrowser.addListener("web3Cancel", (data) => {
+      console.log("[NativeDAppBrowser] Request cancelled:", data.id, data.reason);
+      this.inflightSignRequests.get(data.id)?.abort();
+      this.inflightSignRequests.delete(data.id);
+    });
+
+    this.web3RequestListener = await DAppBrowser.addListener("web3Request", async (data) => {
+      console.log("[NativeDAppBrowser] Web3 request:", data.method);
+      await this.handleWeb3Request(data.id, data.method, data.params, data.preflight);
+    });
+
+    this.web3BatchListener = await DAppBrowser.addListener("web3BatchRequest", async (data) => {
+      console.log("[NativeDAppBrowser] Web3 batch request:", data.requests.length);
+      await this.handleWeb3BatchRequest(data.requests);
+    });
+  }
+
+  private removeListeners(): void {
+    this.listenersReady = null;
     if (this.browserEventListener) {
       this.browserEventListener.remove();
       this.browserEventListener = null;
@@ -74,6 +303,21 @@ export class NativeDAppBrowserService {
       this.web3RequestListener.remove();
       this.web3RequestListener = null;
     }
+    if (this.web3CancelListener) {
+      this.web3CancelListener.remove();
+      this.web3CancelListener = null;
+    }
+    if (this.web3BatchListener) {
+      this.web3BatchListener.remove();
+      this.web3BatchListener = null;
+    }
+  }
+
+  async close(): Promise<void> {
+    this.removeListeners();
+    // Only closing the browser ends every tab's pending signs
+    this.inflightSignRequests.forEach((controller) => controller.abort());
+    this.inflightSignRequests.clear();
 
     if (isNativeDAppBrowserAvailable()) {
       try {
@@ -97,6 +341,47 @@ export class NativeDAppBrowserService {
     }
   }
 
+  async configureAssetCache(enabled: boolean, maxBytes?: number): Promise<void> {
+    if (!isNativeDAppBrowserAvailable()) return;
+    try {
+      await DAppBrowser.configureAssetCache({ enabled, maxBytes });
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error configuring asset cache:", e);
+    }
+  }
+
+  async getAssetCacheStats(): Promise<AssetCacheStats | null> {
+    if (!isNativeDAppBrowserAvailable()) return null;
+    try {
+      return await DAppBrowser.getAssetCacheStats();
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error reading asset cache stats:", e);
+      return null;
+    }
+  }
+
+  async warmup(urls: string[], byteBudget?: number): Promise<void> {
+    if (!isNativeDAppBrowserAvailable() || urls.length === 0) return;
+    try {
+      const result = await DAppBrowser.warmup({ urls, byteBudget });
+      if (result.skipped) {
+        console.log("[NativeDAppBrowser] Warm-up skipped:", result.skipped);
+      }
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error warming up:", e);
+    }
+  }
+
+  async getWarmupStats(): Promise<WarmupStats | null> {
+    if (!isNativeDAppBrowserAvailable()) return null;
+    try {
+      return await DAppBrowser.getWarmupStats();
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error reading warm-up stats:", e);
+      return null;
+    }
+  }
+
   setOnLoadingChange(callback: (loading: boolean) => void): void {
     this.onLoadingChange = callback;
   }
@@ -113,15 +398,168 @@ export class NativeDAppBrowserService {
     this.onDisconnect = callback;
   }
 
-  setOnSignRequest(callback: (method: string, params: any[]) => Promise<string | null>): void {
+  setOnSignRequest(callback: (method: string, params: any[], context: SignRequestContext) => Promise<string | null>): void {
     this.onSignRequest = callback;
   }
 
-  private async handleWeb3Request(id: number, method: string, paramsStr: string): Promise<void> {
+  setOnBatchSignRequest(callback: (items: BatchSignItem[]) => Promise<BatchSignResult[]>): void {
+    this.onBatchSignRequest = callback;
+  }
+
+  async configureSignBatching(enabled: boolean, windowMs?: number): Promise<void> {
+    if (!isNativeDAppBrowserAvailable()) return;
+    try {
+      await DAppBrowser.configureSignBatching({ enabled, windowMs });
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error configuring sign batching:", e);
+    }
+  }
+
+  async getSignBatchStats(): Promise<SignBatchStats | null> {
+    if (!isNativeDAppBrowserAvailable()) return null;
+    try {
+      return await DAppBrowser.getSignBatchStats();
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error reading sign batch stats:", e);
+      return null;
+    }
+  }
+
+  // Called once the confirmation screen is on-screen so native code can
+  // measure request-to-ready latency.
+  async reportSignReady(id: number): Promise<void> {
+    if (!isNativeDAppBrowserAvailable()) return;
+    try {
+      await DAppBrowser.reportSignReady({ id });
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error reporting sign ready:", e);
+    }
+  }
+
+  async getPreflightStats(): Promise<PreflightStats | null> {
+    if (!isNativeDAppBrowserAvailable()) return null;
+    try {
+      return await DAppBrowser.getPreflightStats();
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error reading preflight stats:", e);
+      return null;
+    }
+  }
+
+  async setMetricsEnabled(enabled: boolean): Promise<void> {
+    if (!isNativeDAppBrowserAvailable()) return;
+    try {
+      await DAppBrowser.setMetricsEnabled({ enabled });
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error toggling metrics:", e);
+    }
+  }
+
+  async getMetrics(reset = false): Promise<BrowserMetrics | null> {
+    if (!isNativeDAppBrowserAvailable()) return null;
+    try {
+      return await DAppBrowser.getMetrics({ reset });
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error reading metrics:", e);
+      return null;
+    }
+  }
+
+  async configureContentBlocker(enabled: boolean): Promise<boolean> {
+    if (!isNativeDAppBrowserAvailable()) return false;
+    try {
+      const result = await DAppBrowser.configureContentBlocker({ enabled });
+      return result.success;
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error configuring content blocker:", e);
+      return false;
+    }
+  }
+
+  async getContentBlockerStats(): Promise<ContentBlockerStats | null> {
+    if (!isNativeDAppBrowserAvailable()) return null;
+    try {
+      return await DAppBrowser.getContentBlockerStats();
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error reading content blocker stats:", e);
+      return null;
+    }
+  }
+
+  async getSessionStats(): Promise<BrowserSessionStats | null> {
+    if (!isNativeDAppBrowserAvailable()) return null;
+    try {
+      return await DAppBrowser.getSessionStats();
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error reading session stats:", e);
+      return null;
+    }
+  }
+
+  async clearSession(): Promise<boolean> {
+    if (!isNativeDAppBrowserAvailable()) return false;
+    try {
+      const result = await DAppBrowser.clearSession();
+      return result.success;
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error clearing session:", e);
+      return false;
+    }
+  }
+
+  async getRpcStats(): Promise<RpcEndpointStats[]> {
+    if (!isNativeDAppBrowserAvailable()) return [];
+    try {
+      const result = await DAppBrowser.getRpcStats();
+      return result.endpoints;
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error reading RPC stats:", e);
+      return [];
+    }
+  }
+
+  async getEnsStats(): Promise<EnsCacheStats | null> {
+    if (!isNativeDAppBrowserAvailable()) return null;
+    try {
+      const result = await DAppBrowser.getRpcStats();
+      return result.ens;
+    } catch (e) {
+      console.error("[NativeDAppBrowser] Error reading ENS stats:", e);
+      return null;
+    }
+  }
+
+  // Fills fields the dApp left out from the native preflight so the signer
+  // does not have to look them up after the user confirms.
+  private applyPreflight(params: any[], preflight: TransactionPreflight): void {
+    const tx = params[0];
+    if (!tx || typeof tx !== "object") return;
+    // Only fill in values looked up for the chain and account that will sign
+    if (preflight.chainId !== this.currentChainId) return;
+    const account = this.currentAddress.toLowerCase();
+    if (!preflight.from || preflight.from.toLowerCase() !== account) return;
+    if (tx.from && String(tx.from).toLowerCase() !== account) return;
+    if (tx.nonce === undefined && preflight.nonce) {
+      tx.nonce = preflight.nonce;
+    }
+    if (tx.gas === undefined && tx.gasLimit === undefined && preflight.gas) {
+      // 20% headroom over the estimate, as most wallets do.
+      tx.gas = "0x" + ((BigInt(preflight.gas) * BigInt(12)) / BigInt(10)).toString(16);
+    }
+    if (tx.gasPrice === undefined && tx.maxFeePerGas === undefined && preflight.suggestedMaxFeePerGas) {
+      tx.maxFeePerGas = preflight.suggestedMaxFeePerGas;
+      tx.maxPriorityFeePerGas = tx.maxPriorityFeePerGas ?? preflight.suggestedMaxPriorityFeePerGas;
+    }
+  }
+
+  private async handleWeb3Request(id: number, method: string, paramsStr: string, preflight?: TransactionPreflight): Promise<void> {
     console.log("[NativeDAppBrowser] Handling request:", method, "id:", id);
     
     try {
       const params = JSON.parse(paramsStr || "[]");
+      if (preflight) {
+        this.applyPreflight(params, preflight);
+      }
       
       // Handle signing requests through the bridge
       if (method === "eth_sendTransaction" || 
@@ -134,9 +572,23 @@ export class NativeDAppBrowserService {
         
         // Use the callback if set, otherwise use dappBridge
         if (this.onSignRequest) {
-          const result = await this.onSignRequest(method, params);
+          const controller = new AbortController();
+          this.inflightSignRequests.set(id, controller);
+          const context: SignRequestContext = { id, preflight, timings: {}, signal: controller.signal };
+          let result: string | null;
+          try {
+            result = await this.onSignRequest(method, params, context);
+          } finally {
+            this.inflightSignRequests.delete(id);
+          }
+          if (controller.signal.aborted) {
+            // The native side already answered the page, but holds the
+            // request's nonce until it hears whether anything was signed
+            await this.sendResponse(id, result, result ? null : "Request cancelled", context.timings);
+            return;
+          }
           if (result) {
-            await this.sendResponse(id, result, null);
+            await this.sendResponse(id, result, null, context.timings);
           } else {
             await this.sendResponse(id, null, "User rejected");
           }
@@ -177,7 +629,59 @@ export class NativeDAppBrowserService {
     }
   }
 
-  private async sendResponse(id: number, result: string | null, error: string | null): Promise<void> {
+  // Signing requests the native side grouped because they arrived together.
+  // Each one is still answered under its own id.
+  private async handleWeb3BatchRequest(requests: Web3RequestEvent[]): Promise<void> {
+    if (!this.onBatchSignRequest) {
+      for (const request of requests) {
+        await this.handleWeb3Request(request.id, request.method, request.params, request.preflight);
+      }
+      return;
+    }
+
+    const items: BatchSignItem[] = [];
+    for (const request of requests) {
+      try {
+        const params = JSON.parse(request.params || "[]");
+        if (request.preflight) {
+          this.applyPreflight(params, request.preflight);
+        }
+        const controller = new AbortController();
+        this.inflightSignRequests.set(request.id, controller);
+        items.push({
+          method: request.method,
+          params,
+          context: { id: request.id, preflight: request.preflight, timings: {}, signal: controller.signal },
+        });
+      } catch (e: any) {
+        await this.sendResponse(request.id, null, e?.message || "Malformed request");
+      }
+    }
+    if (items.length === 0) return;
+
+    let results: BatchSignResult[];
+    try {
+      results = await this.onBatchSignRequest(items);
+    } catch (e: any) {
+      results = items.map(() => ({ error: e?.message || "Unknown error" }));
+    } finally {
+      items.forEach((item) => this.inflightSignRequests.delete(item.context.id));
+    }
+
+    // Aborted items are still reported: the page has its answer already,
+    // but native code settles their nonces from the outcome
+    for (let i = 0; i < items.length; i++) {
+      const { context } = items[i];
+      const outcome = results[i] || {};
+      if (outcome.result) {
+        await this.sendResponse(context.id, outcome.result, null, context.timings);
+      } else {
+        await this.sendResponse(context.id, null, outcome.error || "User rejected");
+      }
+    }
+  }
+
+  private async sendResponse(id: number, result: string | null, error: string | null, timings?: SignRequestContext["timings"]): Promise<void> {
     if (!isNativeDAppBrowserAvailable()) return;
 
     try {
@@ -185,6 +689,8 @@ export class NativeDAppBrowserService {
         id,
         result: result || undefined,
         error: error || undefined,
+        signingMs: timings?.signingMs,
+        signer: timings?.signer,
       });
     } catch (e) {
       console.error("[NativeDAppBrowser] Error sending response:", e);
@@ -0,0 +1,133 @@
+import { Capacitor, registerPlugin } from "@capacitor/core";
+
+export interface PortfolioChainRequest {
+  chainId: number;
+  addresses: string[];
+  tokens: string[];
+  includeNative?: boolean;
+}
+
+export interface PortfolioBalance {
+  address: string;
+  // Token contract address, or "native" for the chain's coin.
+  token: string;
+  // Raw base-unit amount as a decimal string.
+  balance?: string;
+  error?: string;
+}
+
+export interface PortfolioScanSummary {
+  scanId: string;
+  balances: number;
+  errors: number;
+  elapsedMs: number;
+  cancelled: boolean;
+}
+
+export interface PortfolioStats {
+  scans: number;
+  activeScans: number;
+  batches: number;
+  calls: number;
+  callsPerBatch: number;
+  splits: number;
+  failedCalls: number;
+  avgBatchMs: number;
+  lastScanMs: number;
+}
+
+interface PortfolioPlugin {
+  scan(options: { chains: PortfolioChainRequest[] }): Promise<{ success: boolean; scanId?: string; batches?: number; calls?: number; error?: string }>;
+  cancel(options: { scanId: string }): Promise<{ success: boolean }>;
+  getStats(): Promise<PortfolioStats>;
+  addListener(event: "portfolioBalances", callback: (data: { scanId: string; chainId: number; balances: PortfolioBalance[] }) => void): Promise<{ remove: () => void }>;
+  addListener(event: "portfolioChainDone", callback: (data: { scanId: string; chainId: number; requests: number; elapsedMs: number; cancelled: boolean }) => void): Promise<{ remove: () => void }>;
+  addListener(event: "portfolioComplete", callback: (data: PortfolioScanSummary) => void): Promise<{ remove: () => void }>;
+}
+
+const Portfolio = registerPlugin<PortfolioPlugin>("Portfolio");
+
+export function isNativePortfolioAvailable(): boolean {
+  return Capacitor.isNativePlatform() && Capacitor.getPlatform() === "android";
+}
+
+export class NativePortfolioService {
+  // Scans every (chain, address, token) combination natively via Multicall3.
+  // onBalances is called once per finished batch, so the UI can fill in
+  // while slower chains are still running. Resolves with the summary once
+  // every chain is done, or null when the scan could not start.
+  async scan(
+    chains: PortfolioChainRequest[],
+    onBalances: (chainId: number, balances: PortfolioBalance[]) => void,
+  ): Promise<PortfolioScanSummary | null> {
+    if (!isNativePortfolioAvailable()) return null;
+
+    const listeners: { remove: () => void }[] = [];
+    const removeAll = () => listeners.forEach((l) => l.remove());
+    try {
+      let scanId: string | undefined;
+      // Events can arrive before scan() resolves; hold them until the id is known.
+      const early: { scanId: string; chainId: number; balances: PortfolioBalance[] }[] = [];
+      let resolveDone: (summary: PortfolioScanSummary) => void = () => {};
+      const done = new Promise<PortfolioScanSummary>((resolve) => { resolveDone = resolve; });
+      let earlySummary: PortfolioScanSummary | null = null;
+
+      listeners.push(await Portfolio.addListener("portfolioBalances", (data) => {
+        if (scanId === undefined) {
+          early.push(data);
+        } else if (data.scanId === scanId) {
+          onBalances(data.chainId, data.balances);
+        }
+      }));
+      listeners.push(await Portfolio.addListener("portfolioComplete", (data) => {
+        if (scanId === undefined) {
+          earlySummary = data;
+        } else if (data.scanId === scanId) {
+          resolveDone(data);
+        }
+      }));
+
+      const result = await Portfolio.scan({ chains });
+      if (!result.success || !result.scanId) {
+        console.error("[NativePortfolio] Scan rejected:", result.error);
+        removeAll();
+        return null;
+      }
+      scanId = result.scanId;
+      early.filter((e) => e.scanId === scanId).forEach((e) => onBalances(e.chainId, e.balances));
+      const pendingSummary = earlySummary as PortfolioScanSummary | null;
+      if (pendingSummary && pendingSummary.scanId === scanId) {
+        resolveDone(pendingSummary);
+      }
+
+      const summary = await done;
+      removeAll();
+      return summary;
+    } catch (e) {
+      console.error("[NativePortfolio] Error scanning portfolio:", e);
+      removeAll();
+      return null;
+    }
+  }
+
+  async cancel(scanId: string): Promise<void> {
+    if (!isNativePortfolioAvailable()) return;
+    try {
+      await Portfolio.cancel({ scanId });
+    } catch (e) {
+      console.error("[NativePortfolio] Error cancelling scan:", e);
+    }
+  }
+
+  async getStats(): Promise<PortfolioStats | null> {
+    if (!isNativePortfolioAvailable()) return null;
+    try {
+      return await Portfolio.getStats();
+    } catch (e) {
+      console.error("[NativePortfolio] Error reading stats:", e);
+      return null;
+    }
+  }
+}
+
+export const nativePortfolio = new NativePortfolioService();
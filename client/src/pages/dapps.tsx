@@ -22,16 +22,22 @@ import { useWallet } from "@/lib/wallet-context";
 import { HardwareStatusCard } from "@/components/hardware-status";
 import { ChainIcon } from "@/components/chain-icon";
 import { DEFAULT_CHAINS } from "@shared/schema";
-import { isNativeDAppBrowserAvailable, nativeDAppBrowser } from "@/lib/native-dapp-browser";
+import { isNativeDAppBrowserAvailable, nativeDAppBrowser, type SignRequestContext, type BatchSignItem, type BatchSignResult } from "@/lib/native-dapp-browser";
 import { dappBridge } from "@/lib/dapp-bridge";
 import { ethers } from "ethers";
 
 interface PendingSignRequest {
   method: string;
   params: any[];
+  context?: SignRequestContext;
   resolve: (result: string | null) => void;
 }
 
+interface PendingBatchSignRequest {
+  items: BatchSignItem[];
+  resolve: (results: BatchSignResult[]) => void;
+}
+
 const EVM_CHAINS = DEFAULT_CHAINS.filter(c => c.chainId > 0);
 
 interface DAppInfo {
@@ -61,6 +67,7 @@ export default function DApps() {
   const [connectedWallet, setConnectedWallet] = useState<string | null>(null);
   const [isNativeBrowserOpen, setIsNativeBrowserOpen] = useState(false);
   const [pendingSignRequest, setPendingSignRequest] = useState<PendingSignRequest | null>(null);
+  const [pendingBatchRequest, setPendingBatchRequest] = useState<PendingBatchSignRequest | null>(null);
   const [isSigningInProgress, setIsSigningInProgress] = useState(false);
   const iframeRef = useRef<HTMLIFrameElement>(null);
 
@@ -95,13 +102,89 @@ export default function DApps() {
     }
   }, [connectedWallet, selectedChainId, isNativeBrowserOpen]);
 
+  // Warm up the listed DApps while the user is choosing one
+  useEffect(() => {
+    if (isMobile) {
+      nativeDAppBrowser.warmup(POPULAR_DAPPS.map(d => d.url));
+    }
+  }, [isMobile]);
+
   // Handle sign request from DApp - show confirmation dialog
-  const handleSignRequest = useCallback((method: string, params: any[]): Promise<string | null> => {
+  const handleSignRequest = useCallback((method: string, params: any[], context?: SignRequestContext): Promise<string | null> => {
     return new Promise((resolve) => {
-      setPendingSignRequest({ method, params, resolve });
+      setPendingSignRequest({ method, params, context, resolve });
     });
   }, []);
 
+  // Drop the dialog if the page that asked navigated away or timed out
+  useEffect(() => {
+    const request = pendingSignRequest;
+    const signal = request?.context?.signal;
+    if (!request || !signal || isSigningInProgress) return;
+    const onAbort = () => {
+      request.resolve(null);
+      setPendingSignRequest(null);
+      toast({
+        title: "Request Cancelled",
+        description: "The DApp page is no longer waiting for this request",
+        duration: 3000,
+      });
+    };
+    if (signal.aborted) {
+      onAbort();
+      return;
+    }
+    signal.addEventListener("abort", onAbort);
+    return () => signal.removeEventListener("abort", onAbort);
+  }, [pendingSignRequest, isSigningInProgress, toast]);
+
+  // Report once the confirmation dialog has painted
+  useEffect(() => {
+    const id = pendingSignRequest?.context?.id;
+    if (id === undefined) return;
+    const frame = requestAnimationFrame(() => {
+      nativeDAppBrowser.reportSignReady(id);
+    });
+    return () => cancelAnimationFrame(frame);
+  }, [pendingSignRequest]);
+
+  // Requests the DApp sent together are confirmed together
+  const handleBatchSignRequest = useCallback((items: BatchSignItem[]): Promise<BatchSignResult[]> => {
+    return new Promise((resolve) => {
+      setPendingBatchRequest({ items, resolve });
+    });
+  }, []);
+
+  // Close the batch dialog once the page has stopped waiting for all of it
+  useEffect(() => {
+    const batch = pendingBatchRequest;
+    if (!batch || isSigningInProgress) return;
+    const signals = batch.items.map((item) => item.context.signal).filter((signal): signal is AbortSignal => !!signal);
+    if (signals.length < batch.items.length) return;
+    const onAbort = () => {
+      if (!signals.every((signal) => signal.aborted)) return;
+      batch.resolve(batch.items.map(() => ({ error: "Request cancelled" })));
+      setPendingBatchRequest(null);
+      toast({
+        title: "Requests Cancelled",
+        description: "The DApp page is no longer waiting for these requests",
+        duration: 3000,
+      });
+    };
+    onAbort();
+    signals.forEach((signal) => signal.addEventListener("abort", onAbort));
+    return () => signals.forEach((signal) => signal.removeEventListener("abort", onAbort));
+  }, [pendingBatchRequest, isSigningInProgress, toast]);
+
+  useEffect(() => {
+    const items = pendingBatchRequest?.items;
+    if (!items) return;
+    const frame = requestAnimationFrame(() => {
+      items.forEach((item) => nativeDAppBrowser.reportSignReady(item.context.id));
+    });
+    return () => cancelAnimationFrame(frame);
+  }, [pendingBatchRequest]);
+
   // Format transaction details for display
   const formatTransactionDetails = useCallback((method: string, params: any[]) => {
     if (method === "eth_sendTransaction" || method === "eth_signTransaction") {
@@ -162,13 +245,24 @@ export default function DApps() {
         }
       });
       
+      // Don't start a device round trip for a page that is already gone
+      if (pendingSignRequest.context?.signal?.aborted) {
+        pendingSignRequest.resolve(null);
+        return;
+      }
+
       // Execute the request through dappBridge
+      const signStartedAt = performance.now();
       await dappBridge.handleRequest({
         type: "web3_request",
         id: Date.now(),
         method: pendingSignRequest.method,
         params: pendingSignRequest.params,
       });
+      if (pendingSignRequest.context?.timings) {
+        pendingSignRequest.context.timings.signingMs = Math.round(performance.now() - signStartedAt);
+        pendingSignRequest.context.timings.signer = walletMode === "hard_wallet" ? "hardware" : "soft_wallet";
+      }
       
       pendingSignRequest.resolve(signedResult);
       
@@ -191,6 +285,75 @@ export default function DApps() {
     }
   }, [pendingSignRequest, connectedWallet, selectedChainId, walletMode, toast]);
 
+  // Approve every request of a batch with one confirmation
+  const approveBatchRequest = useCallback(async () => {
+    const batch = pendingBatchRequest;
+    if (!batch) return;
+
+    setIsSigningInProgress(true);
+    try {
+      dappBridge.setAccount(connectedWallet || "");
+      dappBridge.setChainId(selectedChainId);
+      dappBridge.setWalletMode(walletMode === "hard_wallet" ? "hardware" : "soft_wallet");
+
+      const live = batch.items.filter((item) => !item.context.signal?.aborted);
+      const signStartedAt = performance.now();
+      const responses = await dappBridge.handleBatch(live.map((item) => ({
+        type: "web3_request",
+        id: item.context.id,
+        method: item.method,
+        params: item.params,
+      })));
+      const signingMs = Math.round(performance.now() - signStartedAt);
+      const signer = walletMode === "hard_wallet" ? "hardware" : "soft_wallet";
+
+      const byId = new Map(responses.map((response) => [response.id, response]));
+      const results = batch.items.map((item): BatchSignResult => {
+        const response = byId.get(item.context.id);
+        if (!response) return { error: "Request cancelled" };
+        if (item.context.timings) {
+          item.context.timings.signingMs = signingMs;
+          item.context.timings.signer = signer;
+        }
+        return response.error ? { error: response.error.message } : { result: response.result };
+      });
+      batch.resolve(results);
+
+      const failed = results.filter((result) => result.error).length;
+      toast({
+        title: failed === 0 ? "Signed Successfully" : "Partially Signed",
+        description: failed === 0
+          ? `${results.length} requests signed`
+          : `${results.length - failed} of ${results.length} requests signed`,
+        variant: failed === results.length ? "destructive" : undefined,
+        duration: 3000,
+      });
+    } catch (error: any) {
+      console.error("[DApps] Batch sign error:", error);
+      toast({
+        title: "Signing Failed",
+        description: error?.message || "Failed to sign requests",
+        variant: "destructive",
+      });
+      batch.resolve(batch.items.map(() => ({ error: error?.message || "Failed to sign" })));
+    } finally {
+      setIsSigningInProgress(false);
+      setPendingBatchRequest(null);
+    }
+  }, [pendingBatchRequest, connectedWallet, selectedChainId, walletMode, toast]);
+
+  const rejectBatchRequest = useCallback(() => {
+    if (pendingBatchRequest) {
+      pendingBatchRequest.resolve(pendingBatchRequest.items.map(() => ({ error: "User rejected" })));
+      setPendingBatchRequest(null);
+      toast({
+        title: "Requests Rejected",
+        description: "You declined the signing requests",
+        duration: 2000,
+      });
+    }
+  }, [pendingBatchRequest, toast]);
+
   // Reject sign request
   const rejectSignRequest = useCallback(() => {
     if (pendingSignRequest) {
@@ -254,6 +417,7 @@ export default function DApps() {
 
     // Set up sign request handler to show confirmation dialog
     nativeDAppBrowser.setOnSignRequest(handleSignRequest);
+    nativeDAppBrowser.setOnBatchSignRequest(handleBatchSignRequest);
 
     try {
       toast({
@@ -744,6 +908,97 @@ export default function DApps() {
           </DialogFooter>
         </DialogContent>
       </Dialog>
+
+      {/* Batch Sign Confirmation Dialog */}
+      <Dialog open={!!pendingBatchRequest} onOpenChange={(open) => !open && rejectBatchRequest()}>
+        <DialogContent className="max-w-sm">
+          <DialogHeader>
+            <DialogTitle className="flex items-center gap-2">
+              <FileSignature className="h-5 w-5 text-primary" />
+              Sign {pendingBatchRequest?.items.length} Requests
+            </DialogTitle>
+            <DialogDescription>
+              {currentUrl ? new URL(currentUrl).hostname : "DApp"} is requesting several signatures at once
+            </DialogDescription>
+          </DialogHeader>
+
+          {pendingBatchRequest && (
+            <div className="space-y-3">
+              <div className="max-h-64 overflow-y-auto space-y-2">
+                {pendingBatchRequest.items.map((item, index) => {
+                  const details = formatTransactionDetails(item.method, item.params);
+                  return (
+                    <div key={item.context.id} className="p-3 bg-muted rounded-lg space-y-1">
+                      <div className="flex justify-between">
+                        <span className="text-sm text-muted-foreground">{index + 1}. Type</span>
+                        <span className="text-sm font-medium">{details.type}</span>
+                      </div>
+                      {"to" in details && (
+                        <div className="flex justify-between">
+                          <span className="text-sm text-muted-foreground">To</span>
+                          <span className="text-sm font-mono">
+                            {details.to.length > 20 ? `${details.to.slice(0, 10)}...${details.to.slice(-8)}` : details.to}
+                          </span>
+                        </div>
+                      )}
+                      {"value" in details && (
+                        <div className="flex justify-between">
+                          <span className="text-sm text-muted-foreground">Value</span>
+                          <span className="text-sm font-medium">{details.value}</span>
+                        </div>
+                      )}
+                      {"message" in details && (
+                        <p className="text-xs bg-background p-2 rounded font-mono break-all">
+                          {details.message}
+                        </p>
+                      )}
+                      {"domain" in details && (
+                        <div className="flex justify-between">
+                          <span className="text-sm text-muted-foreground">Domain</span>
+                          <span className="text-sm">{details.domain}</span>
+                        </div>
+                      )}
+                    </div>
+                  );
+                })}
+              </div>
+
+              <div className="p-2 bg-amber-50 dark:bg-amber-900/20 border border-amber-200 dark:border-amber-800 rounded-lg">
+                <p className="text-xs text-amber-700 dark:text-amber-300">
+                  All requests are signed together. Only sign if you trust this DApp.
+                </p>
+              </div>
+            </div>
+          )}
+
+          <DialogFooter className="flex-col gap-2 sm:flex-col">
+            <Button
+              onClick={approveBatchRequest}
+              className="w-full"
+              disabled={isSigningInProgress}
+              data-testid="button-approve-batch"
+            >
+              {isSigningInProgress ? (
+                <>
+                  <RefreshCw className="mr-2 h-4 w-4 animate-spin" />
+                  Signing...
+                </>
+              ) : (
+                `Sign All (${pendingBatchRequest?.items.length ?? 0})`
+              )}
+            </Button>
+            <Button
+              variant="outline"
+              onClick={rejectBatchRequest}
+              className="w-full"
+              disabled={isSigningInProgress}
+              data-testid="button-reject-batch"
+            >
+              Reject All
+            </Button>
+          </DialogFooter>
+        </DialogContent>
+      </Dialog>
     </div>
   );
 }